@@ -0,0 +1,174 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.util.Random;
+
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.SimilarityMatrixComparator;
+
+/**
+ * <p>
+ * This makes up proteins for the tests to align: random ones, and relatives of them.  It
+ * draws from the test's own random number generator, so a test that seeds it gets the same
+ * proteins every time.  There's BLOSUM62 to score them with, too.
+ * </p><p>
+ * The amino acids have to have been initialized (see {@link org.aisb.bio.tools.DynamicDuo}).
+ * </p>
+ */
+public class RandomProteins {
+	public static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+	static final String[] BLOSUM62 = {
+		"A  4 -1 -2 -1  0 -1 -1  0 -2 -1 -1 -1 -1 -2 -1  1  0 -3 -2  0",
+		"R -1  5  0 -2 -3  1  0 -2  0 -3 -2  2 -1 -3 -2 -1 -1 -3 -2 -3",
+		"N -2  0  6  1 -3  0  0  0  1 -3 -3  0 -2 -3 -2  1  0 -4 -2 -3",
+		"D -2 -2  1  6 -3  0  2 -1 -1 -3 -4 -1 -3 -3 -1  0 -1 -4 -3 -3",
+		"C  0 -3 -3 -3  9 -3 -4 -3 -3 -1 -1 -3 -1 -2 -3 -1 -1 -2 -2 -1",
+		"Q -1  1  0  0 -3  5  2 -2  0 -3 -2  1  0 -3 -1  0 -1 -2 -1 -2",
+		"E -1  0  0  2 -4  2  5 -2  0 -3 -3  1 -2 -3 -1  0 -1 -3 -2 -2",
+		"G  0 -2  0 -1 -3 -2 -2  6 -2 -4 -4 -2 -3 -3 -2  0 -2 -2 -3 -3",
+		"H -2  0  1 -1 -3  0  0 -2  8 -3 -3 -1 -2 -1 -2 -1 -2 -2  2 -3",
+		"I -1 -3 -3 -3 -1 -3 -3 -4 -3  4  2 -3  1  0 -3 -2 -1 -3 -1  3",
+		"L -1 -2 -3 -4 -1 -2 -3 -4 -3  2  4 -2  2  0 -3 -2 -1 -2 -1  1",
+		"K -1  2  0 -1 -3  1  1 -2 -1 -3 -2  5 -1 -3 -1  0 -1 -3 -2 -2",
+		"M -1 -1 -2 -3 -1  0 -2 -3 -2  1  2 -1  5  0 -2 -1 -1 -1 -1  1",
+		"F -2 -3 -3 -3 -2 -3 -3 -3 -1  0  0 -3  0  6 -4 -2 -2  1  3 -1",
+		"P -1 -2 -2 -1 -3 -1 -1 -2 -2 -3 -3 -1 -2 -4  7 -1 -1 -4 -3 -2",
+		"S  1 -1  1  0 -1  0  0  0 -1 -2 -2  0 -1 -2 -1  4  1 -3 -2 -2",
+		"T  0 -1  0 -1 -1 -1 -1 -2 -2 -1 -1 -1 -1 -2 -1  1  5 -2 -2  0",
+		"W -3 -3 -4 -4 -2 -2 -3 -2 -2 -3 -2 -3 -1  1 -4 -3 -2 11  2 -3",
+		"Y -2 -2 -2 -3 -2 -1 -2 -3  2 -1 -1 -2 -1  3 -3 -2 -2  2  7 -1",
+		"V  0 -3 -3 -3 -1 -2 -2 -3 -3  3  1 -2  1 -1 -2 -2  0 -3 -1  4"
+	};
+
+	Random random;
+
+	/**
+	 * @param random Where the randomness comes from.
+	 */
+	public RandomProteins(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Make a random protein out of any of the twenty amino acids.
+	 */
+	public Sequence randomSequence(int length) {
+		return randomSequence(length, RESIDUES);
+	}
+
+	/**
+	 * Make a random protein out of the letters given.
+	 */
+	public Sequence randomSequence(int length, String letters) {
+		StringBuffer residues = new StringBuffer(length);
+		for (int i=0; i < length; i++) {
+			residues.append(letters.charAt(random.nextInt(letters.length())));
+		}
+		return new Sequence(AminoAcid.class, residues.toString());
+	}
+
+	/**
+	 * Make a relative of a sequence: about one residue in ten changed, and the odd one added or lost.
+	 */
+	public Sequence mutate(Sequence original) {
+		return mutate(original, 0.025, 0.075, 0.025, 1);
+	}
+
+	/**
+	 * Make a relative of a sequence.  Each residue is either lost, or changed, or kept, and
+	 * any that aren't lost can have some new ones put in front of them.  It never comes out
+	 * shorter than two residues, since Needleman won't align anything shorter.
+	 *
+	 * @param original The sequence.
+	 * @param loss The chance of losing a residue.
+	 * @param change The chance of changing one.
+	 * @param gain The chance of putting new ones in front of one.
+	 * @param longest The most new ones put in at once.
+	 * @return The relative.
+	 */
+	public Sequence mutate(Sequence original, double loss, double change, double gain, int longest) {
+		StringBuffer residues = new StringBuffer();
+		for (int i=0; i < original.size(); i++) {
+			double roll = random.nextDouble();
+			if (roll < loss) {
+				continue;
+			}
+			if (random.nextDouble() < gain) {
+				for (int k = 1 + random.nextInt(longest); k > 0; k--) {
+					residues.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+				}
+			}
+			if (roll < loss + change) {
+				residues.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+			} else {
+				residues.append(((Monomer) original.get(i)).getCode().charValue());
+			}
+		}
+		if (residues.length() < 2) {
+			residues.append("AC");
+		}
+		return new Sequence(AminoAcid.class, residues.toString());
+	}
+
+	/**
+	 * Make a relative of a sequence that only differs by gaps.  Each residue has one chance in
+	 * twenty of being lost, one of getting a new residue put in front of it, and one of getting
+	 * up to <code>longest</code> new ones put in front of it.
+	 *
+	 * @param original The sequence.
+	 * @param longest The most new ones put in at once.
+	 * @return The relative.
+	 */
+	public Sequence gapped(Sequence original, int longest) {
+		StringBuffer residues = new StringBuffer();
+		for (int i=0; i < original.size(); i++) {
+			int roll = random.nextInt(20);
+			if (roll == 0) {
+				continue;
+			} else if (roll == 1) {
+				residues.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+			} else if (roll == 2) {
+				for (int k = random.nextInt(longest); k >= 0; k--) {
+					residues.append(RESIDUES.charAt(random.nextInt(RESIDUES.length())));
+				}
+			}
+			residues.append(((Monomer) original.get(i)).getCode().charValue());
+		}
+		if (residues.length() < 2) {
+			residues.append("AC");
+		}
+		return new Sequence(AminoAcid.class, residues.toString());
+	}
+
+	/**
+	 * @return The letters of a sequence.
+	 */
+	public static String toString(Sequence sequence) {
+		StringBuffer residues = new StringBuffer(sequence.size());
+		for (int i=0; i < sequence.size(); i++) {
+			residues.append(((Monomer) sequence.get(i)).getCode().charValue());
+		}
+		return residues.toString();
+	}
+
+	/**
+	 * @return BLOSUM62, the usual matrix for proteins.
+	 */
+	public static SimilarityMatrixComparator blosum62() {
+		SimilarityMatrixComparator blosum = new SimilarityMatrixComparator();
+		String order = "ARNDCQEGHILKMFPSTWYV";
+		for (int i=0; i < BLOSUM62.length; i++) {
+			String[] values = BLOSUM62[i].substring(1).trim().split("\\s+");
+			int row = AminoAcid.getByCode(order.charAt(i)).getNumber() - 1;
+			for (int j=0; j < values.length; j++) {
+				blosum.value[row][AminoAcid.getByCode(order.charAt(j)).getNumber() - 1] = Integer.parseInt(values[j]);
+			}
+		}
+		return blosum;
+	}
+}
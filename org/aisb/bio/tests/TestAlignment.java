@@ -0,0 +1,856 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.Alignment;
+import org.aisb.bio.tools.AlignmentListener;
+import org.aisb.bio.tools.AlignmentMetrics;
+import org.aisb.bio.tools.BatchAligner;
+import org.aisb.bio.tools.DynamicDuo;
+import org.aisb.bio.tools.IdentityComparator;
+import org.aisb.bio.tools.MonomerComparator;
+import org.aisb.bio.tools.Needleman;
+import org.aisb.bio.tools.QueryProfile;
+import org.aisb.bio.tools.ScoreTable;
+import org.aisb.bio.tools.ScoringScheme;
+import org.aisb.bio.tools.SequenceAligner;
+import org.aisb.bio.tools.SimilarityMatrixComparator;
+import org.aisb.bio.tools.SmithWaterman;
+
+/**
+ * <p>
+ * These are unit tests for the aligners.  Scores are checked against a straightforward
+ * copy of the original <code>Needleman</code> recurrence, which looks back along the whole
+ * row and column for every cell.  It's far too slow for real work, but it's easy to believe.
+ * </p>
+ */
+public class TestAlignment extends TestCase {
+	// The gap penalties HomeworkB1 was developed and tested with.
+	static final int[][] PENALTIES = { { 10, 1 }, { 15, 2 }, { 0, 0 }, { 3, 1 } };
+
+	Random random = new Random(1234);
+	RandomProteins proteins = new RandomProteins(random);
+	SimilarityMatrixComparator similarity;
+
+	/**
+	 * Make sure linear space mode gets the same score as the original recurrence, and
+	 * that the alignment it hands back really has that score.
+	 */
+	public void testLinearSpace() {
+		MonomerComparator[] comparators = { new IdentityComparator(), similarity };
+		for (int trial = 0; trial < 60; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(trial < 50 ? 150 : 500));
+			Sequence second = random.nextBoolean() ? mutate(first) : proteins.randomSequence(2 + random.nextInt(150));
+			MonomerComparator comparator = comparators[trial % 2];
+			int[] penalties = PENALTIES[trial % PENALTIES.length];
+			Needleman aligner = new Needleman(comparator, penalties[0], penalties[1]);
+			aligner.setLinearSpace(true);
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			int expected = referenceScore(first, second, comparator, penalties[0], penalties[1]);
+			assertEquals(expected, aligner.getBestAlignmentScore());
+			assertEquals(expected, scoreOf(aligner.getBestAlignmentAsString(), first, second, comparator, penalties[0], penalties[1]));
+		}
+	}
+
+	/**
+	 * Make sure the listener hears about every alignment, in every mode, with sensible
+	 * numbers, and that nothing gets printed any more.
+	 */
+	public void testAlignmentListener() {
+		Sequence first = proteins.randomSequence(150), second = mutate(first);
+		Needleman needleman = new Needleman(similarity, 10, 1);
+		needleman.setFirstSequence(first);
+		needleman.setSecondSequence(second);
+		final List heard = new ArrayList();
+		needleman.setAlignmentListener(new AlignmentListener() {
+			public void alignmentFinished(AlignmentMetrics metrics) {
+				heard.add(metrics);
+			}
+		});
+		PrintStream out = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed));
+		try {
+			needleman.execute();
+			needleman.setScoreOnly(true);
+			needleman.execute();
+			needleman.setScoreOnly(false);
+			needleman.setLinearSpace(true);
+			needleman.execute();
+			needleman.setBandWidth(20);
+			needleman.execute();
+		} finally {
+			System.setOut(out);
+		}
+		assertEquals("", printed.toString());
+		assertEquals(4, heard.size());
+		long cells = (long) first.size() * second.size();
+		String[] methods = { "full matrix", "score only", "linear space", "banded" };
+		for (int k=0; k < methods.length; k++) {
+			AlignmentMetrics metrics = (AlignmentMetrics) heard.get(k);
+			assertSame(needleman, metrics.getSource());
+			assertEquals(methods[k], metrics.getMethod());
+			assertEquals(first.size(), metrics.getFirstLength());
+			assertEquals(second.size(), metrics.getSecondLength());
+			assertTrue(metrics.getFillNanos() > 0);
+			assertTrue(metrics.getPeakBytes() > 0);
+			assertTrue(metrics.getGcups() > 0);
+		}
+		AlignmentMetrics full = (AlignmentMetrics) heard.get(0);
+		assertEquals(cells, full.getCells());
+		assertTrue(full.getTracebackNanos() > 0);
+		assertTrue(full.getPeakBytes() >= 8 * cells);
+		assertEquals(cells, ((AlignmentMetrics) heard.get(1)).getCells());
+		// Linear space works most of the matrix out twice, but keeps far less of it.
+		AlignmentMetrics linear = (AlignmentMetrics) heard.get(2);
+		assertTrue(linear.getCells() > cells && linear.getCells() <= 2 * cells);
+		assertTrue(linear.getPeakBytes() < full.getPeakBytes());
+		assertTrue(((AlignmentMetrics) heard.get(3)).getCells() < cells);
+
+		needleman.setAlignmentListener(null);
+		needleman.execute();
+		assertEquals(4, heard.size());
+	}
+
+	/**
+	 * Make sure score-only mode gets the same score as the original recurrence, and won't
+	 * pretend to have an alignment.
+	 */
+	public void testScoreOnly() {
+		MonomerComparator[] comparators = { new IdentityComparator(), similarity };
+		for (int trial = 0; trial < 40; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(150));
+			Sequence second = random.nextBoolean() ? mutate(first) : proteins.randomSequence(2 + random.nextInt(150));
+			MonomerComparator comparator = comparators[trial % 2];
+			int[] penalties = PENALTIES[trial % PENALTIES.length];
+			Needleman aligner = new Needleman(comparator, penalties[0], penalties[1]);
+			aligner.setScoreOnly(true);
+			aligner.setBandWidth(trial % 3);
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			assertEquals(referenceScore(first, second, comparator, penalties[0], penalties[1]), aligner.getBestAlignmentScore());
+		}
+		Needleman aligner = new Needleman(similarity, 10, 1);
+		aligner.setScoreOnly(true);
+		aligner.setFirstSequence(proteins.randomSequence(20));
+		aligner.setSecondSequence(proteins.randomSequence(20));
+		aligner.execute();
+		try {
+			aligner.getBestAlignmentAsString();
+			fail("Score-only mode shouldn't have an alignment.");
+		} catch (IllegalStateException e) {
+			// That's what should happen.
+		}
+	}
+
+	/**
+	 * Make sure the full matrix version still gets the scores the original recurrence did,
+	 * with the gap penalties HomeworkB1 uses, on sequences of all sorts of sizes.
+	 */
+	public void testFullMatrix() {
+		for (int trial = 0; trial < 40; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(80));
+			Sequence second = trial % 2 == 0 ? mutate(first) : proteins.randomSequence(2 + random.nextInt(80));
+			int[] penalties = PENALTIES[trial % 2];
+			Needleman aligner = new Needleman(similarity, penalties[0], penalties[1]);
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			assertEquals(referenceScore(first, second, similarity, penalties[0], penalties[1]), aligner.getBestAlignmentScore());
+		}
+	}
+
+	/**
+	 * Make sure the best alignments are counted the same way the original traceback counted
+	 * them, and that listing them turns up that many different ones, all with the best score.
+	 * Sequences of two letters have lots of ties.
+	 */
+	public void testCountingAlignments() {
+		MonomerComparator identity = new IdentityComparator();
+		for (int trial = 0; trial < 200; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(7), "AC");
+			Sequence second = proteins.randomSequence(2 + random.nextInt(7), "AC");
+			int[] penalties = PENALTIES[trial % PENALTIES.length];
+			Needleman aligner = new Needleman(identity, penalties[0], penalties[1]);
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			int[][] f = referenceScores(first, second, identity, penalties[0], penalties[1]);
+			long expected = referenceCount(f, f.length - 1, f[0].length - 1, penalties[0], penalties[1]);
+			assertEquals(expected, aligner.getAlignmentCount());
+			assertEquals(expected, aligner.getNumberOfAlignments());
+			Set alignments = new HashSet();
+			for (Iterator i = aligner.getBestAlignments(); i.hasNext(); ) {
+				String alignment = i.next().toString();
+				assertEquals(aligner.getBestAlignmentScore(), scoreOf(alignment, first, second, identity, penalties[0], penalties[1]));
+				alignments.add(alignment);
+			}
+			assertEquals(expected, alignments.size());
+			assertEquals(Arrays.asList(aligner.getBestAlignmentsAsStrings()), asStrings(listed(aligner.getBestAlignments())));
+			assertEquals(aligner.getBestAlignmentAsString(), aligner.getAlignmentAsString(1));
+		}
+	}
+
+	/**
+	 * Make sure a repetitive pair with a colossal number of best alignments is counted quickly,
+	 * without overflowing, and that the first few can still be listed.
+	 */
+	public void testManyAlignments() {
+		StringBuffer residues = new StringBuffer();
+		for (int i=0; i < 300; i++) {
+			residues.append('A');
+		}
+		Sequence first = new Sequence(AminoAcid.class, residues.toString());
+		Sequence second = first.subSequence(0, 150);
+		Needleman aligner = new Needleman(new IdentityComparator(), 0, 0);
+		aligner.setFirstSequence(first);
+		aligner.setSecondSequence(second);
+		aligner.execute();
+		assertEquals(Long.MAX_VALUE, aligner.getAlignmentCount());
+		assertEquals(Integer.MAX_VALUE, aligner.getNumberOfAlignments());
+		List some = listed(aligner.getBestAlignments(5));
+		assertEquals(5, some.size());
+		assertEquals(5, new HashSet(asStrings(some)).size());
+		assertEquals(some.get(3).toString(), aligner.getAlignmentAsString(4));
+	}
+
+	/**
+	 * Make sure filling the matrices on several threads gives exactly the same results
+	 * as filling them on one, with sizes that don't come out to whole tiles.
+	 */
+	public void testParallelFill() {
+		Sequence first = proteins.randomSequence(700);
+		Sequence second = mutate(first);
+		Needleman sequential = new Needleman(similarity, 15, 2);
+		sequential.setFirstSequence(first);
+		sequential.setSecondSequence(second);
+		sequential.execute();
+		Needleman parallel = new Needleman(similarity, 15, 2);
+		parallel.setParallelism(3);
+		parallel.setFirstSequence(first);
+		parallel.setSecondSequence(second);
+		parallel.execute();
+		assertEquals(referenceScore(first, second, similarity, 15, 2), parallel.getBestAlignmentScore());
+		assertEquals(sequential.getBestAlignmentScore(), parallel.getBestAlignmentScore());
+		assertEquals(sequential.getNumberOfAlignments(), parallel.getNumberOfAlignments());
+		assertEquals(sequential.getBestAlignmentAsString(), parallel.getBestAlignmentAsString());
+	}
+
+	/**
+	 * Make sure linear space mode agrees with the full matrix version on the size the
+	 * full matrix version was written for.
+	 */
+	public void testLinearSpaceMatchesMatrices() {
+		Sequence first = proteins.randomSequence(30);
+		Sequence second = mutate(first);
+		while (second.size() < 30) {
+			second = mutate(first);
+		}
+		second = second.subSequence(0, 30);
+		Needleman full = new Needleman(similarity, 10, 1);
+		full.setFirstSequence(first);
+		full.setSecondSequence(second);
+		full.execute();
+		Needleman linear = new Needleman(similarity, 10, 1);
+		linear.setLinearSpace(true);
+		linear.setFirstSequence(first);
+		linear.setSecondSequence(second);
+		linear.execute();
+		assertEquals(full.getBestAlignmentScore(), linear.getBestAlignmentScore());
+	}
+
+	/**
+	 * Make sure banded mode finds the best alignment in the band, and, for close relatives,
+	 * the best one there is once the band widens to fit it.
+	 */
+	public void testBanded() {
+		for (int trial = 0; trial < 40; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(400));
+			Sequence second = mutate(first);
+			int[] penalties = PENALTIES[trial % PENALTIES.length];
+			MonomerComparator comparator = trial % 3 == 0 ? (MonomerComparator) new IdentityComparator() : similarity;
+			int expected = referenceScore(first, second, comparator, penalties[0], penalties[1]);
+			Needleman aligner = new Needleman(comparator, penalties[0], penalties[1]);
+			aligner.setBandWidth(1 + random.nextInt(10));
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			int score = aligner.getBestAlignmentScore();
+			assertEquals(score, scoreOf(aligner.getBestAlignmentAsString(), first, second, comparator, penalties[0], penalties[1]));
+			assertTrue(score <= expected);
+			aligner.setAutoWiden(true);
+			aligner.execute();
+			assertFalse(aligner.isBandEdgeTouched());
+			assertEquals(expected, aligner.getBestAlignmentScore());
+		}
+	}
+
+	/**
+	 * Make sure a band that's too narrow is noticed, and a wide enough one isn't.
+	 */
+	public void testBandTooNarrow() {
+		// The second sequence is the first moved over by 30, so the best alignment runs
+		// along a diagonal 30 away from the main one.
+		Sequence first = proteins.randomSequence(300);
+		Sequence second = new Sequence(AminoAcid.class, RandomProteins.toString(first.subSequence(30, 300)) + RandomProteins.toString(proteins.randomSequence(30)));
+		int expected = referenceScore(first, second, similarity, 10, 1);
+		Needleman aligner = new Needleman(similarity, 10, 1);
+		aligner.setBandWidth(5);
+		aligner.setFirstSequence(first);
+		aligner.setSecondSequence(second);
+		aligner.execute();
+		assertTrue(aligner.isBandEdgeTouched());
+		assertTrue(aligner.getBestAlignmentScore() < expected);
+		aligner.setBandWidth(35);
+		aligner.execute();
+		assertFalse(aligner.isBandEdgeTouched());
+		assertEquals(expected, aligner.getBestAlignmentScore());
+	}
+
+	/**
+	 * Make sure both Smith-Waterman kernels get the right local score, and that the
+	 * alignment really has that score.
+	 */
+	public void testSmithWaterman() {
+		ScoringScheme[] schemes = {
+				new ScoringScheme(similarity, 11, 1), new ScoringScheme(similarity, 5, 5),
+				new ScoringScheme(new IdentityComparator(), 2, 1), new ScoringScheme(similarity, 1, 3) };
+		for (int trial = 0; trial < 60; trial++) {
+			Sequence first = proteins.randomSequence(1 + random.nextInt(300));
+			Sequence second = random.nextBoolean() ? mutate(first) : proteins.randomSequence(1 + random.nextInt(300));
+			ScoringScheme scheme = schemes[trial % schemes.length];
+			int expected = referenceLocalScore(first, second, scheme);
+			SmithWaterman vector = new SmithWaterman(scheme);
+			vector.setFirstSequence(first);
+			vector.setSecondSequence(second);
+			vector.execute();
+			assertEquals(expected, vector.getBestAlignmentScore());
+			SmithWaterman scalar = new SmithWaterman(scheme);
+			scalar.setVectorized(false);
+			scalar.setFirstSequence(first);
+			scalar.setSecondSequence(second);
+			scalar.execute();
+			assertEquals(32, scalar.getLaneBits());
+			assertEquals(expected, scalar.getBestAlignmentScore());
+			// If opening a gap is cheaper than extending one, a long gap is really several
+			// short ones, and adding up the columns the simple way won't work.
+			if (expected > 0 && scheme.getGapOpen() >= scheme.getGapExtension()) {
+				assertEquals(expected, localScoreOf(vector, scheme));
+			}
+		}
+	}
+
+	/**
+	 * Make sure changing the query in place between targets, rather than setting a new one,
+	 * doesn't leave the kernel working on what it used to be, with either kernel.
+	 */
+	public void testChangedQuery() {
+		ScoringScheme scheme = new ScoringScheme(similarity, 11, 1);
+		boolean[] vectorized = { true, false };
+		for (int v=0; v < vectorized.length; v++) {
+			Sequence query = proteins.randomSequence(60), target = mutate(query);
+			SmithWaterman aligner = new SmithWaterman(scheme);
+			aligner.setVectorized(vectorized[v]);
+			aligner.setFirstSequence(query);
+			aligner.setSecondSequence(target);
+			aligner.execute();
+			assertEquals(referenceLocalScore(query, target, scheme), aligner.getBestAlignmentScore());
+			for (int i=0; i < query.size(); i++) {
+				query.set(i, AminoAcid.getByCode('W'));
+			}
+			aligner.execute();
+			assertEquals(referenceLocalScore(query, target, scheme), aligner.getBestAlignmentScore());
+			query.add(AminoAcid.getByCode('C'));
+			aligner.execute();
+			assertEquals(referenceLocalScore(query, target, scheme), aligner.getBestAlignmentScore());
+		}
+	}
+
+	/**
+	 * Make sure scores too big for the narrow lanes come out right, and that a query is
+	 * reused properly against several targets.
+	 */
+	public void testSmithWatermanOverflow() {
+		ScoringScheme scheme = new ScoringScheme(similarity, 11, 1);
+		Sequence query = proteins.randomSequence(6000);
+		SmithWaterman aligner = new SmithWaterman(scheme);
+		aligner.setFirstSequence(query);
+		int[] lengths = { 10, 400, 6000 };
+		for (int k=0; k < lengths.length; k++) {
+			Sequence target = query.subSequence(1000 - lengths[k] / 6, 1000 - lengths[k] / 6 + lengths[k]);
+			aligner.setSecondSequence(target);
+			aligner.execute();
+			int expected = 0;
+			for (int i=0; i < target.size(); i++) {
+				expected += similarity.compare(target.getAlphabet(), target.getIndex(i), target.getIndex(i));
+			}
+			assertEquals(expected, aligner.getBestAlignmentScore());
+			assertEquals(1000 - lengths[k] / 6, aligner.getFirstStart());
+			assertEquals(target.size(), aligner.getSecondEnd());
+		}
+	}
+
+	/**
+	 * Make sure an alignment's coordinates, counts and CIGAR string agree with its text,
+	 * for both global and local alignments.
+	 */
+	public void testAlignmentObject() throws IOException {
+		ScoringScheme scheme = new ScoringScheme(similarity, 10, 1);
+		for (int trial = 0; trial < 30; trial++) {
+			Sequence first = proteins.randomSequence(2 + random.nextInt(200));
+			Sequence second = random.nextBoolean() ? mutate(first) : proteins.randomSequence(2 + random.nextInt(200));
+			SequenceAligner aligner;
+			if (trial % 2 == 0) {
+				Needleman needleman = new Needleman(similarity, 10, 1);
+				needleman.setLinearSpace(trial % 4 == 0);
+				aligner = needleman;
+			} else {
+				aligner = new SmithWaterman(scheme);
+			}
+			aligner.setFirstSequence(first);
+			aligner.setSecondSequence(second);
+			aligner.execute();
+			Alignment alignment = aligner.getBestAlignment();
+			assertEquals(aligner.getBestAlignmentScore(), alignment.getScore());
+			assertEquals(aligner.getBestAlignmentAsString(), alignment.toString());
+			StringWriter out = new StringWriter();
+			alignment.write(out);
+			assertEquals(alignment.toString(), out.toString());
+			if (aligner instanceof SmithWaterman) {
+				SmithWaterman local = (SmithWaterman) aligner;
+				assertEquals(local.getFirstStart(), alignment.getFirstStart());
+				assertEquals(local.getFirstEnd(), alignment.getFirstEnd());
+				assertEquals(local.getSecondStart(), alignment.getSecondStart());
+				assertEquals(local.getSecondEnd(), alignment.getSecondEnd());
+			} else {
+				assertEquals(0, alignment.getFirstStart());
+				assertEquals(first.size(), alignment.getFirstEnd());
+				assertEquals(0, alignment.getSecondStart());
+				assertEquals(second.size(), alignment.getSecondEnd());
+			}
+			// Work out the CIGAR string and the counts from the text.
+			String[] lines = alignment.toString().split("\n");
+			StringBuffer cigar = new StringBuffer();
+			int identities = 0, similarities = 0, run = 0, i = alignment.getFirstStart(), j = alignment.getSecondStart();
+			for (int k=0; k < lines[0].length(); k++) {
+				char kind = lines[0].charAt(k) == '-' ? 'D' : lines[1].charAt(k) == '-' ? 'I' : 'M';
+				char next = k + 1 == lines[0].length() ? ' ' : lines[0].charAt(k+1) == '-' ? 'D' : lines[1].charAt(k+1) == '-' ? 'I' : 'M';
+				run++;
+				if (next != kind) {
+					cigar.append(run).append(kind);
+					run = 0;
+				}
+				if (kind == 'M') {
+					identities += lines[0].charAt(k) == lines[1].charAt(k) ? 1 : 0;
+					similarities += similarity.compare(first.getAlphabet(), first.getIndex(i), second.getIndex(j)) > 0 ? 1 : 0;
+				}
+				i += kind == 'D' ? 0 : 1;
+				j += kind == 'I' ? 0 : 1;
+			}
+			assertEquals(cigar.toString(), alignment.getCigar());
+			assertEquals(lines[0].length(), alignment.getLength());
+			assertEquals(identities, alignment.getIdentities());
+			assertEquals(similarities, alignment.getSimilarities());
+		}
+	}
+
+	/**
+	 * Make sure the stateless entry points get the right answers when lots of threads use
+	 * them at once, with sizes going up and down so the scratch space gets reused.
+	 */
+	public void testAlignFromManyThreads() throws InterruptedException {
+		final ScoringScheme scheme = new Needleman(similarity, 10, 1).getScoringScheme();
+		final Sequence[] firsts = new Sequence[40], seconds = new Sequence[40];
+		final int[] globalScores = new int[40], localScores = new int[40];
+		for (int k=0; k < firsts.length; k++) {
+			firsts[k] = proteins.randomSequence(2 + random.nextInt(k % 2 == 0 ? 40 : 120));
+			seconds[k] = random.nextBoolean() ? mutate(firsts[k]) : proteins.randomSequence(2 + random.nextInt(120));
+			globalScores[k] = referenceScore(firsts[k], seconds[k], similarity, 10, 1);
+			localScores[k] = referenceLocalScore(firsts[k], seconds[k], scheme);
+		}
+		final List problems = Collections.synchronizedList(new ArrayList());
+		Thread[] threads = new Thread[4];
+		for (int t=0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int pass=0; pass < 3; pass++) {
+						for (int k=0; k < firsts.length; k++) {
+							int pair = (k + offset * 7) % firsts.length;
+							Alignment global = Needleman.align(firsts[pair], seconds[pair], scheme);
+							if (global.getScore() != globalScores[pair]) {
+								problems.add("Global score " + global.getScore() + " for pair " + pair + ", not " + globalScores[pair]);
+							}
+							Alignment local = SmithWaterman.align(firsts[pair], seconds[pair], scheme);
+							if (local.getScore() != localScores[pair]) {
+								problems.add("Local score " + local.getScore() + " for pair " + pair + ", not " + localScores[pair]);
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t=0; t < threads.length; t++) {
+			threads[t].join();
+		}
+		assertEquals(Collections.EMPTY_LIST, problems);
+	}
+
+	/**
+	 * Make sure a score table and a profile give the same scores the comparator does, and
+	 * that a scoring scheme only works out its table once.
+	 */
+	public void testScoreTable() {
+		ScoringScheme scheme = new ScoringScheme(similarity, 10, 1);
+		Sequence query = proteins.randomSequence(50);
+		Alphabet alphabet = query.getAlphabet();
+		ScoreTable table = scheme.getScoreTable(alphabet);
+		assertSame(table, scheme.getScoreTable(alphabet));
+		// Leave out the holes in the alphabet.
+		List real = new ArrayList(Arrays.asList(alphabet.getMonomers()));
+		real.removeAll(Collections.singleton(null));
+		Monomer[] monomers = (Monomer[]) real.toArray(new Monomer[real.size()]);
+		for (int a=0; a < monomers.length; a++) {
+			for (int b=0; b < monomers.length; b++) {
+				int expected = similarity.compare(monomers[a], monomers[b]);
+				assertEquals(expected, table.score(monomers[a].getNumber(), monomers[b].getNumber()));
+				assertTrue(table.getMinimum() <= expected && expected <= table.getMaximum());
+			}
+		}
+		QueryProfile profile = table.profile(query);
+		assertEquals(query.size(), profile.length());
+		for (int j=0; j < query.size(); j++) {
+			for (int b=0; b < monomers.length; b++) {
+				assertEquals(similarity.compare((Monomer) query.get(j), monomers[b]), profile.score(j, monomers[b].getNumber()));
+			}
+		}
+	}
+
+	/**
+	 * Make sure changing the second sequence between alignments doesn't leave the profile
+	 * of what it used to be behind.
+	 */
+	public void testChangedSecondSequence() {
+		Sequence first = proteins.randomSequence(40), second = mutate(first);
+		Needleman aligner = new Needleman(similarity, 10, 1);
+		aligner.setFirstSequence(first);
+		aligner.setSecondSequence(second);
+		aligner.execute();
+		assertEquals(referenceScore(first, second, similarity, 10, 1), aligner.getBestAlignmentScore());
+		second.set(0, AminoAcid.getByCode('W'));
+		second.set(second.size() - 1, AminoAcid.getByCode('W'));
+		aligner.execute();
+		assertEquals(referenceScore(first, second, similarity, 10, 1), aligner.getBestAlignmentScore());
+		second.add(AminoAcid.getByCode('C'));
+		aligner.execute();
+		assertEquals(referenceScore(first, second, similarity, 10, 1), aligner.getBestAlignmentScore());
+	}
+
+	/**
+	 * Make sure a batch finds every pair once, with the same scores as aligning them one at a time.
+	 */
+	public void testBatch() {
+		List queries = new ArrayList();
+		List targets = new ArrayList();
+		for (int k=0; k < 7; k++) {
+			queries.add(proteins.randomSequence(2 + random.nextInt(200)));
+			targets.add(random.nextBoolean() ? mutate((Sequence) queries.get(k)) : proteins.randomSequence(2 + random.nextInt(200)));
+		}
+		Needleman needleman = new Needleman(similarity, 10, 1);
+		needleman.setLinearSpace(true);
+		BatchAligner batch = new BatchAligner(needleman.getScoringScheme());
+		batch.setQueries(queries);
+		batch.setTargets(targets);
+		batch.setThreads(3);
+		batch.setAlignments(true);
+		batch.execute();
+		boolean[][] seen = new boolean[7][7];
+		while (batch.hasNext()) {
+			BatchAligner.Result result = (BatchAligner.Result) batch.next();
+			assertFalse(seen[result.getQueryIndex()][result.getTargetIndex()]);
+			seen[result.getQueryIndex()][result.getTargetIndex()] = true;
+			needleman.setFirstSequence(result.getQuery());
+			needleman.setSecondSequence(result.getTarget());
+			needleman.execute();
+			assertEquals(needleman.getBestAlignmentScore(), result.getScore());
+			assertEquals(needleman.getBestAlignmentAsString(), result.getAlignment().toString());
+		}
+		for (int i=0; i < 7; i++) {
+			for (int j=0; j < 7; j++) {
+				assertTrue(seen[i][j]);
+			}
+		}
+		// Just the scores, with the scratch space left over from bigger pairs.
+		batch.setAlignments(false);
+		batch.setThreads(1);
+		batch.execute();
+		while (batch.hasNext()) {
+			BatchAligner.Result result = (BatchAligner.Result) batch.next();
+			assertNull(result.getAlignment());
+			assertEquals(Needleman.align(result.getQuery(), result.getTarget(), needleman.getScoringScheme()).getScore(), result.getScore());
+		}
+		// Now the queries against each other, locally.
+		ScoringScheme scheme = new ScoringScheme(similarity, 11, 1);
+		batch.setScoringScheme(scheme);
+		batch.setTargets(null);
+		batch.setLocal(true);
+		batch.setAlignments(false);
+		batch.execute();
+		int count = 0;
+		BatchAligner.Result result;
+		while ((result = batch.nextResult()) != null) {
+			assertTrue(result.getQueryIndex() < result.getTargetIndex());
+			assertNull(result.getAlignment());
+			assertEquals(referenceLocalScore(result.getQuery(), result.getTarget(), scheme), result.getScore());
+			count++;
+		}
+		assertEquals(7 * 6 / 2, count);
+	}
+
+	/**
+	 * Smith-Waterman written out the plain way.
+	 */
+	static int referenceLocalScore(Sequence first, Sequence second, ScoringScheme scheme) {
+		int n = first.size(), m = second.size(), best = 0;
+		int[][] h = new int[n+1][m+1];
+		for (int i=1; i <= n; i++) {
+			for (int j=1; j <= m; j++) {
+				int here = Math.max(0, h[i-1][j-1] + scheme.score(first.getAlphabet(), first.getIndex(i-1), second.getIndex(j-1)));
+				for (int k=0; k < i; k++) {
+					here = Math.max(here, h[k][j] - scheme.gapPenalty(i-k));
+				}
+				for (int k=0; k < j; k++) {
+					here = Math.max(here, h[i][k] - scheme.gapPenalty(j-k));
+				}
+				h[i][j] = here;
+				best = Math.max(best, here);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Score a local alignment the way Smith-Waterman does, making sure it really is part
+	 * of the two sequences.
+	 */
+	static int localScoreOf(SmithWaterman aligner, ScoringScheme scheme) {
+		Sequence first = aligner.getFirstSequence(), second = aligner.getSecondSequence();
+		String[] lines = aligner.getBestAlignmentAsString().split("\n");
+		assertEquals(lines[0].length(), lines[1].length());
+		int score = 0, i = aligner.getFirstStart(), j = aligner.getSecondStart(), gap = 0;
+		char gapKind = ' ';
+		for (int k=0; k <= lines[0].length(); k++) {
+			char kind = k == lines[0].length() ? 'M' : lines[0].charAt(k) == '-' ? 'D' : lines[1].charAt(k) == '-' ? 'I' : 'M';
+			if (kind != gapKind && gap > 0) {
+				score -= scheme.gapPenalty(gap);
+				gap = 0;
+			}
+			if (k == lines[0].length()) {
+				break;
+			}
+			if (kind == 'M') {
+				assertEquals(lines[0].charAt(k), ((Monomer) first.get(i)).getCode().charValue());
+				assertEquals(lines[1].charAt(k), ((Monomer) second.get(j)).getCode().charValue());
+				score += scheme.score(first.getAlphabet(), first.getIndex(i++), second.getIndex(j++));
+			} else {
+				gap++;
+				if (kind == 'I') {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			gapKind = kind;
+		}
+		assertEquals(aligner.getFirstEnd(), i);
+		assertEquals(aligner.getSecondEnd(), j);
+		return score;
+	}
+
+	/**
+	 * This is the original Needleman recurrence, gap penalty and all, written out plainly.
+	 */
+	static int referenceScore(Sequence first, Sequence second, MonomerComparator comparator, int creation, int extension) {
+		int[][] f = referenceScores(first, second, comparator, creation, extension);
+		return referenceBest(f, f.length - 1, f[0].length - 1, creation, extension);
+	}
+
+	/**
+	 * The final score matrix, the way the original recurrence worked it out.
+	 */
+	static int[][] referenceScores(Sequence first, Sequence second, MonomerComparator comparator, int creation, int extension) {
+		int n = first.size(), m = second.size();
+		int[][] f = new int[n][m];
+		for (int i=0; i < n; i++) {
+			for (int j=0; j < m; j++) {
+				int s = comparator.compare(first.getAlphabet(), first.getIndex(i), second.getIndex(j));
+				if (i == 0 || j == 0) {
+					f[i][j] = s - oldGapPenalty(i + j, creation, extension);
+					continue;
+				}
+				int best = f[i-1][j-1];
+				for (int k=0; k < i-1; k++) {
+					best = Math.max(best, f[k][j-1] - oldGapPenalty(i-1-k, creation, extension));
+				}
+				for (int k=0; k < j-1; k++) {
+					best = Math.max(best, f[i-1][k] - oldGapPenalty(j-1-k, creation, extension));
+				}
+				f[i][j] = s + best;
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * The best score of the sequences up to a cell, with end gaps.
+	 */
+	static int referenceBest(int[][] f, int p, int q, int creation, int extension) {
+		int best = f[p][q];
+		for (int i=0; i < p; i++) {
+			best = Math.max(best, f[i][q] - oldGapPenalty(p-i, creation, extension));
+		}
+		for (int j=0; j < q; j++) {
+			best = Math.max(best, f[p][j] - oldGapPenalty(q-j, creation, extension));
+		}
+		return best;
+	}
+
+	/**
+	 * Count the best alignments up to a cell by following every one of them, the way the
+	 * original traceback did.  That takes exponential time, so it's only for tiny sequences.
+	 */
+	static long referenceCount(int[][] f, int p, int q, int creation, int extension) {
+		if (p < 0 || q < 0) {
+			return 1;
+		}
+		int best = referenceBest(f, p, q, creation, extension);
+		long count = 0;
+		if (f[p][q] == best) {
+			count += referenceCount(f, p-1, q-1, creation, extension);
+		}
+		for (int i=0; i < p; i++) {
+			if (f[i][q] - oldGapPenalty(p-i, creation, extension) == best) {
+				count += referenceCount(f, i-1, q-1, creation, extension);
+			}
+		}
+		for (int j=0; j < q; j++) {
+			if (f[p][j] - oldGapPenalty(q-j, creation, extension) == best) {
+				count += referenceCount(f, p-1, j-1, creation, extension);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The gap penalty exactly as Needleman has always worked it out.
+	 */
+	static int oldGapPenalty(int length, int creation, int extension) {
+		return length == 0 ? 0 : creation + (length-1 * extension);
+	}
+
+	/**
+	 * Score an alignment written out as two lines, making sure it's a legal one.
+	 */
+	static int scoreOf(String alignment, Sequence first, Sequence second, MonomerComparator comparator, int creation, int extension) {
+		String[] lines = alignment.split("\n");
+		assertEquals(lines[0].length(), lines[1].length());
+		int score = 0, i = 0, j = 0, gap = 0;
+		char gapKind = ' ';
+		for (int k=0; k <= lines[0].length(); k++) {
+			char kind = k == lines[0].length() ? 'M' : lines[0].charAt(k) == '-' ? 'D' : lines[1].charAt(k) == '-' ? 'I' : 'M';
+			if (kind != gapKind && gap > 0) {
+				assertEquals("Gaps in both sequences next to each other", 'M', kind);
+				score -= oldGapPenalty(gap, creation, extension);
+				gap = 0;
+			}
+			if (k == lines[0].length()) {
+				break;
+			}
+			if (kind == 'M') {
+				assertEquals(lines[0].charAt(k), ((Monomer) first.get(i)).getCode().charValue());
+				assertEquals(lines[1].charAt(k), ((Monomer) second.get(j)).getCode().charValue());
+				score += comparator.compare(first.getAlphabet(), first.getIndex(i++), second.getIndex(j++));
+			} else {
+				gap++;
+				if (kind == 'I') {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			gapKind = kind;
+		}
+		assertEquals(first.size(), i);
+		assertEquals(second.size(), j);
+		return score;
+	}
+
+	/**
+	 * Write out everything in a list.
+	 */
+	static List asStrings(List items) {
+		List strings = new ArrayList();
+		for (int i=0; i < items.size(); i++) {
+			strings.add(items.get(i).toString());
+		}
+		return strings;
+	}
+
+	/**
+	 * Collect everything an iterator hands out.
+	 */
+	static List listed(Iterator items) {
+		List list = new ArrayList();
+		while (items.hasNext()) {
+			list.add(items.next());
+		}
+		return list;
+	}
+
+	/**
+	 * Make a relative of a sequence, with some insertions and deletions.
+	 */
+	Sequence mutate(Sequence original) {
+		return proteins.gapped(original, 6);
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() {
+		DynamicDuo.initialize();
+		// A made-up similarity matrix: symmetric, positive on the diagonal, mostly negative off it.
+		similarity = new SimilarityMatrixComparator();
+		Random values = new Random(99);
+		for (int i=0; i < 26; i++) {
+			similarity.value[i][i] = 4 + values.nextInt(8);
+			for (int j=0; j < i; j++) {
+				similarity.value[i][j] = similarity.value[j][i] = values.nextInt(7) - 4;
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.Alignment;
+import org.aisb.bio.tools.DatabaseSearch;
+import org.aisb.bio.tools.DynamicDuo;
+import org.aisb.bio.tools.ScoringScheme;
+import org.aisb.bio.tools.SmithWaterman;
+import org.aisb.bio.tools.WordIndex;
+
+/**
+ * <p>
+ * These are unit tests for searching a database of proteins.  The words are checked against
+ * counting with strings, and the search is checked by hiding relatives of the query in a
+ * database of random proteins and making sure they're found, with the same scores
+ * {@link SmithWaterman} gives them.
+ * </p>
+ */
+public class TestDatabaseSearch extends TestCase {
+	Random random = new Random(4321);
+	RandomProteins proteins = new RandomProteins(random);
+	ScoringScheme scheme;
+
+	/**
+	 * Make sure the index counts every word the same as looking for it in the strings does.
+	 */
+	public void testIndex() {
+		List database = new ArrayList();
+		for (int i=0; i < 50; i++) {
+			database.add(proteins.randomSequence(1 + random.nextInt(40), "ACDE"));
+		}
+		WordIndex index = new WordIndex(database, 2);
+		assertEquals(50, index.size());
+		long total = 0;
+		for (int i=0; i < database.size(); i++) {
+			total += ((Sequence) database.get(i)).size();
+		}
+		assertEquals(total, index.getResidueCount());
+		String letters = "ACDEW";
+		for (int a=0; a < letters.length(); a++) {
+			for (int b=0; b < letters.length(); b++) {
+				String word = "" + letters.charAt(a) + letters.charAt(b);
+				int expected = 0;
+				for (int i=0; i < database.size(); i++) {
+					String residues = RandomProteins.toString((Sequence) database.get(i));
+					for (int at = residues.indexOf(word); at >= 0; at = residues.indexOf(word, at + 1)) {
+						expected++;
+					}
+				}
+				assertEquals(word, expected, index.count(new Sequence(AminoAcid.class, word)));
+			}
+		}
+	}
+
+	/**
+	 * Hide some relatives of a query in a database of random proteins, and make sure the
+	 * search finds them, scores them the way Smith-Waterman does, and ranks them first.
+	 */
+	public void testFindsRelatives() {
+		Sequence query = proteins.randomSequence(250);
+		List database = new ArrayList();
+		for (int i=0; i < 3000; i++) {
+			database.add(proteins.randomSequence(100 + random.nextInt(300)));
+		}
+		int[] planted = { 17, 400, 1234, 2222, 2999 };
+		for (int k=0; k < planted.length; k++) {
+			// A mutated copy of some of the query, with unrelated stuff on either end.
+			Sequence relative = proteins.mutate(query.subSequence(k * 20, query.size() - k * 10));
+			String residues = RandomProteins.toString(proteins.randomSequence(random.nextInt(50))) + RandomProteins.toString(relative) + RandomProteins.toString(proteins.randomSequence(random.nextInt(50)));
+			database.set(planted[k], new Sequence(AminoAcid.class, residues));
+		}
+		DatabaseSearch search = new DatabaseSearch(new WordIndex(database), scheme);
+		search.setQuery(query);
+		search.setMaxHits(10);
+		search.execute();
+		List hits = search.getHits();
+		assertTrue(hits.size() >= planted.length && hits.size() <= 10);
+		// Only a few of the sequences should have needed a proper alignment.
+		assertTrue(search.getGappedExtensions() < database.size() / 10);
+		for (int k=0; k < hits.size(); k++) {
+			DatabaseSearch.Hit hit = (DatabaseSearch.Hit) hits.get(k);
+			assertSame(database.get(hit.getIndex()), hit.getTarget());
+			assertEquals(SmithWaterman.align(query, hit.getTarget(), scheme).getScore(), hit.getScore());
+			if (k > 0) {
+				assertTrue(((DatabaseSearch.Hit) hits.get(k - 1)).getScore() >= hit.getScore());
+			}
+			if (k < planted.length) {
+				boolean isPlanted = false;
+				for (int p=0; p < planted.length; p++) {
+					isPlanted |= hit.getIndex() == planted[p];
+				}
+				assertTrue("Hit " + k + " is " + hit, isPlanted);
+				Alignment alignment = hit.getAlignment();
+				assertEquals(hit.getScore(), alignment.getScore());
+				assertTrue(alignment.getIdentity() > 0.6);
+			}
+		}
+
+		// Asking for fewer gets the same ones, as far as they go.
+		search.setMaxHits(2);
+		search.execute();
+		assertEquals(2, search.getHits().size());
+		for (int k=0; k < 2; k++) {
+			assertEquals(((DatabaseSearch.Hit) hits.get(k)).getIndex(), ((DatabaseSearch.Hit) search.getHits().get(k)).getIndex());
+		}
+	}
+
+	/**
+	 * Make sure a query that has nothing to do with the database doesn't find anything worth mentioning.
+	 */
+	public void testNothingToFind() {
+		List database = new ArrayList();
+		for (int i=0; i < 500; i++) {
+			database.add(proteins.randomSequence(200, "ACDEFGHIK"));
+		}
+		DatabaseSearch search = new DatabaseSearch(new WordIndex(database), scheme);
+		search.setQuery(proteins.randomSequence(200, "LMNPQRSTVWY"));
+		search.execute();
+		assertEquals(0, search.getHits().size());
+		assertEquals(0, search.getWordHits());
+	}
+
+	/**
+	 * Make sure a hit at the end of one sequence and a hit at the start of the next, on the same
+	 * diagonal of the block, don't count as two hits, the way they would if it were all one sequence.
+	 */
+	public void testHitsInDifferentSequences() {
+		List database = new ArrayList();
+		database.add(new Sequence(AminoAcid.class, "WWW"));
+		database.add(new Sequence(AminoAcid.class, "CCC"));
+		DatabaseSearch search = new DatabaseSearch(new WordIndex(database), scheme);
+		search.setQuery(new Sequence(AminoAcid.class, "WWWGCCC"));
+		search.execute();
+		assertEquals(4, search.getWordHits());
+		assertEquals(0, search.getExtensions());
+
+		database = new ArrayList();
+		database.add(new Sequence(AminoAcid.class, "WWWGCCC"));
+		search.setDatabase(new WordIndex(database));
+		search.execute();
+		assertTrue(search.getExtensions() > 0);
+		assertEquals(1, search.getHits().size());
+	}
+
+	protected void setUp() {
+		DynamicDuo.initialize();
+		// BLOSUM62, which is what the search's defaults are meant for.
+		scheme = new ScoringScheme(RandomProteins.blosum62(), 11, 1);
+	}
+}
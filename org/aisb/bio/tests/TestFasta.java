@@ -0,0 +1,193 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.*;
+import org.aisb.bio.tools.DarwinsCrucible;
+import org.aisb.bio.tools.DynamicDuo;
+import org.aisb.bio.tools.io.*;
+
+/**
+ * <p>
+ * These are unit tests for reading and writing FASTA files.  Each test writes a small
+ * file of its own to a temporary location, so nothing needs to be shipped with them.
+ * </p>
+ */
+public class TestFasta extends TestCase {
+	static final String FASTA =
+		">first The first record\n" +
+		"MVLSPADKTN\n" +
+		"VKAAWGKVGA\n" +
+		"HAGEY\n" +
+		">second\r\n" +
+		"GAEALERMFL\r\n" +
+		"SFPTT\r\n" +
+		">empty nothing here\n" +
+		">third\n" +
+		"KTYFPHF";
+
+	File fastaFile;
+
+	/**
+	 * Build an index, and make sure it describes the file correctly and gets saved.
+	 */
+	public void testIndexing() throws IOException {
+		IndexedFastaReader reader = new IndexedFastaReader(fastaFile);
+		FastaIndex index = reader.getIndex();
+		assertEquals(4, index.size());
+		assertEquals(25, index.getEntry("first").getLength());
+		assertEquals(10, index.getEntry("first").getLineBases());
+		assertEquals(11, index.getEntry("first").getLineWidth());
+		assertEquals(12, index.getEntry("second").getLineWidth());
+		assertEquals(0, index.getEntry("empty").getLength());
+		reader.close();
+		// The saved index should say exactly the same thing.
+		FastaIndex saved = FastaIndex.load(IndexedFastaReader.getIndexFile(fastaFile));
+		for (int i=0; i < index.size(); i++) {
+			assertEquals(index.getEntry(i).getName(), saved.getEntry(i).getName());
+			assertEquals(index.getEntry(i).getOffset(), saved.getEntry(i).getOffset());
+			assertEquals(index.getEntry(i).getLength(), saved.getEntry(i).getLength());
+		}
+	}
+
+	/**
+	 * Fetch whole records and parts of records by name.
+	 */
+	public void testRandomAccess() throws IOException {
+		IndexedFastaReader reader = new IndexedFastaReader(fastaFile);
+		reader.setPacked(true);
+		Sequence first = reader.getSequence("first");
+		assertEquals(">first The first record", first.getComment());
+		assertEquals(new Sequence(AminoAcid.class, "MVLSPADKTNVKAAWGKVGAHAGEY").toString(), first.toString());
+		Sequence second = reader.getSequence("second");
+		assertEquals(">second", second.getComment());
+		assertEquals(new Sequence(AminoAcid.class, "GAEALERMFLSFPTT").toString(), second.toString());
+		Sequence middle = reader.getSequence("first", 8, 22);
+		assertEquals(new Sequence(AminoAcid.class, "TNVKAAWGKVGAHA").toString(), middle.toString());
+		assertEquals(0, reader.getSequence("empty").size());
+		assertEquals(new Sequence(AminoAcid.class, "KTYFPHF").toString(), reader.getSequence(3).toString());
+		reader.close();
+	}
+
+	/**
+	 * Stream every record out of the file, in order.
+	 */
+	public void testStreaming() throws IOException {
+		FastaReader reader = new FastaReader(new FileInputStream(fastaFile));
+		String[] comments = { ">first The first record", ">second", ">empty nothing here", ">third" };
+		String[] residues = { "MVLSPADKTNVKAAWGKVGAHAGEY", "GAEALERMFLSFPTT", "", "KTYFPHF" };
+		int count = 0;
+		while (reader.hasNext()) {
+			Sequence s = (Sequence) reader.next();
+			assertEquals(comments[count], s.getComment());
+			assertEquals(new Sequence(AminoAcid.class, residues[count]).toString(), s.toString());
+			count++;
+		}
+		assertEquals(4, count);
+		assertNull(reader.read());
+		reader.close();
+		// Bad data should say where it is.
+		reader = new FastaReader(new ByteArrayInputStream(">bad\nMVL\nSP#DK\n".getBytes("US-ASCII")));
+		try {
+			reader.read();
+			fail("Should have complained about the '#'.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("line 3") >= 0);
+		}
+	}
+
+	/**
+	 * Write records out, through both kinds of output, and read them back.
+	 */
+	public void testWriting() throws IOException {
+		Sequence dna = new Sequence(Nucleotide.class, "GATTACAGATTACAGATTACA", true);
+		dna.setComment(">dna Some DNA");
+		Sequence protein = new Sequence(AminoAcid.class, "MVLSPADKTN");
+		protein.setComment("protein");
+		StringWriter text = new StringWriter();
+		FastaWriter writer = new FastaWriter(text);
+		writer.setLineLength(10);
+		writer.write(dna);
+		writer.write(protein);
+		writer.close();
+		assertEquals(">dna Some DNA\nGATTACAGAT\nTACAGATTAC\nA\n>protein\nMVLSPADKTN\n", text.toString());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writer = new FastaWriter(bytes);
+		writer.setLineLength(10);
+		writer.write(dna);
+		writer.write(protein);
+		writer.close();
+		assertEquals(text.toString(), bytes.toString("US-ASCII"));
+		FastaReader reader = new FastaReader(new ByteArrayInputStream(bytes.toByteArray()));
+		reader.setType(Nucleotide.class);
+		reader.setPacked(true);
+		assertEquals(dna.toString(), reader.read().toString());
+	}
+
+	/**
+	 * Load a file big enough to be split up, and make sure it comes back the same as
+	 * reading it straight through.
+	 */
+	public void testParallelLoading() throws IOException {
+		File big = File.createTempFile("test", ".fasta");
+		big.deleteOnExit();
+		FastaWriter writer = new FastaWriter(new FileOutputStream(big));
+		writer.setLineLength(60);
+		java.util.Random random = new java.util.Random(42);
+		for (int i=0; i < 3000; i++) {
+			StringBuffer residues = new StringBuffer();
+			int length = random.nextInt(2000);
+			for (int j=0; j < length; j++) {
+				residues.append("ACGT".charAt(random.nextInt(4)));
+			}
+			Sequence s = new Sequence(Nucleotide.class, residues.toString());
+			s.setComment(">record" + i);
+			writer.write(s);
+		}
+		writer.close();
+		ParallelFastaLoader loader = new ParallelFastaLoader();
+		loader.setFile(big);
+		loader.setType(Nucleotide.class);
+		loader.setPacked(true);
+		loader.setParallelism(4);
+		loader.execute();
+		java.util.List loaded = loader.getSequences();
+		FastaReader reader = new FastaReader(new FileInputStream(big));
+		reader.setType(Nucleotide.class);
+		int count = 0;
+		while (reader.hasNext()) {
+			Sequence expected = (Sequence) reader.next();
+			Sequence actual = (Sequence) loaded.get(count++);
+			assertEquals(expected.getComment(), actual.getComment());
+			assertEquals(expected.toString(), actual.toString());
+		}
+		reader.close();
+		assertEquals(3000, count);
+		assertEquals(3000, loaded.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws IOException {
+		DarwinsCrucible.initialize();
+		DynamicDuo.initialize();
+		fastaFile = File.createTempFile("test", ".fasta");
+		fastaFile.deleteOnExit();
+		IndexedFastaReader.getIndexFile(fastaFile).deleteOnExit();
+		FileOutputStream out = new FileOutputStream(fastaFile);
+		out.write(FASTA.getBytes("US-ASCII"));
+		out.close();
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.Nucleotide;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.DarwinsCrucible;
+import org.aisb.bio.tools.KmerCounter;
+import org.aisb.bio.tools.LongIntHashMap;
+
+/**
+ * <p>
+ * These are unit tests for k-mer counting.  The counts are checked against a slow,
+ * obviously-correct count done with strings and a {@link java.util.HashMap}.
+ * </p>
+ */
+public class TestKmerCounter extends TestCase {
+	List sequences;
+
+	/**
+	 * Make sure the table gets the same answers as a HashMap, through several rounds of growing.
+	 */
+	public void testTable() {
+		LongIntHashMap table = new LongIntHashMap(4);
+		Map expected = new HashMap();
+		Random random = new Random(7);
+		for (int i=0; i < 20000; i++) {
+			long key = random.nextInt(5000) - 100;	// Including zero and some negatives.
+			table.add(key, 1);
+			Long boxed = Long.valueOf(key);
+			Integer old = (Integer) expected.get(boxed);
+			expected.put(boxed, Integer.valueOf(old == null ? 1 : old.intValue() + 1));
+		}
+		assertEquals(expected.size(), table.size());
+		long[] keys = table.getSortedKeys();
+		for (int i=0; i < keys.length; i++) {
+			if (i > 0) {
+				assertTrue(keys[i-1] < keys[i]);
+			}
+			assertEquals(((Integer) expected.get(Long.valueOf(keys[i]))).intValue(), table.get(keys[i]));
+		}
+		assertEquals(0, table.get(123456789L));
+		table.add(42, Integer.MAX_VALUE);
+		assertEquals(Integer.MAX_VALUE, table.get(42));
+	}
+
+	/**
+	 * Count with several threads, in memory, and compare with the slow way.
+	 */
+	public void testCounting() throws IOException {
+		KmerCounter counter = new KmerCounter();
+		counter.setSequences(sequences);
+		counter.setK(5);
+		counter.setThreads(3);
+		counter.execute();
+		assertFalse(counter.isSpilled());
+		Map expected = countSlowly(5);
+		long total = 0;
+		long[] histogram = counter.getHistogram(1000000);
+		for (int i=0; i < histogram.length; i++) {
+			total += histogram[i];
+		}
+		assertEquals(expected.size(), total);
+		java.util.Iterator i = expected.keySet().iterator();
+		while (i.hasNext()) {
+			String kmer = (String) i.next();
+			int count = ((Integer) expected.get(kmer)).intValue();
+			assertEquals(kmer, count, counter.getCount(new Sequence(Nucleotide.class, kmer)));
+		}
+		// GATTA and TAATC are each other's reverse complements.
+		assertEquals(counter.getCount(new Sequence(Nucleotide.class, "GATTA")),
+				counter.getCount(new Sequence(Nucleotide.class, "TAATC")));
+	}
+
+	/**
+	 * Give the counter very little memory, so it has to spill, and make sure the merged
+	 * results are the same as counting in memory.
+	 */
+	public void testSpilling() throws IOException {
+		KmerCounter inMemory = new KmerCounter();
+		inMemory.setSequences(sequences);
+		inMemory.setK(11);
+		inMemory.setThreads(2);
+		inMemory.execute();
+		KmerCounter spilled = new KmerCounter();
+		spilled.setSequences(sequences);
+		spilled.setK(11);
+		spilled.setThreads(2);
+		spilled.setMemoryBudget(1 << 16);
+		spilled.execute();
+		assertTrue(spilled.isSpilled());
+		assertEquals(inMemory.getTotalCount(), spilled.getTotalCount());
+		final List codes = new ArrayList();
+		final List counts = new ArrayList();
+		inMemory.visit(new KmerCounter.Visitor() {
+			public void visit(long code, int count) {
+				codes.add(Long.valueOf(code));
+				counts.add(Integer.valueOf(count));
+			}
+		});
+		final int[] position = new int[1];
+		spilled.visit(new KmerCounter.Visitor() {
+			public void visit(long code, int count) {
+				assertEquals(codes.get(position[0]), Long.valueOf(code));
+				assertEquals(counts.get(position[0]), Integer.valueOf(count));
+				position[0]++;
+			}
+		});
+		assertEquals(codes.size(), position[0]);
+	}
+
+	/**
+	 * Count canonical k-mers using strings.
+	 */
+	Map countSlowly(int k) {
+		Map result = new HashMap();
+		for (int i=0; i < sequences.size(); i++) {
+			Sequence s = (Sequence) sequences.get(i);
+			StringBuffer buffer = new StringBuffer();
+			for (int j=0; j < s.size(); j++) {
+				buffer.append("ACGT".charAt(s.getIndex(j) - 1));
+			}
+			String bases = buffer.toString();
+			for (int j=0; j + k <= bases.length(); j++) {
+				String kmer = bases.substring(j, j + k);
+				String rc = reverseComplement(kmer);
+				String canonical = kmer.compareTo(rc) <= 0 ? kmer : rc;
+				Integer old = (Integer) result.get(canonical);
+				result.put(canonical, Integer.valueOf(old == null ? 1 : old.intValue() + 1));
+			}
+		}
+		return result;
+	}
+
+	static String reverseComplement(String kmer) {
+		StringBuffer result = new StringBuffer();
+		for (int i = kmer.length() - 1; i >= 0; i--) {
+			result.append("TGCA".charAt("ACGT".indexOf(kmer.charAt(i))));
+		}
+		return result.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() {
+		DarwinsCrucible.initialize();
+		sequences = new ArrayList();
+		Random random = new Random(11);
+		for (int i=0; i < 40; i++) {
+			StringBuffer bases = new StringBuffer();
+			int length = random.nextInt(3000);
+			for (int j=0; j < length; j++) {
+				bases.append("ACGT".charAt(random.nextInt(4)));
+			}
+			sequences.add(new Sequence(Nucleotide.class, bases.toString(), i % 2 == 0));
+		}
+	}
+}
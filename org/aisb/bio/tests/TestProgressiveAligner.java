@@ -0,0 +1,235 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.DynamicDuo;
+import org.aisb.bio.tools.MatchComparator;
+import org.aisb.bio.tools.Needleman;
+import org.aisb.bio.tools.ProgressiveAligner;
+import org.aisb.bio.tools.ScoringScheme;
+
+/**
+ * <p>
+ * These are unit tests for aligning lots of sequences at once.  The sequences are made up
+ * in families, so the guide tree has to put each family together, and the alignment has to
+ * keep every sequence intact.
+ * </p>
+ */
+public class TestProgressiveAligner extends TestCase {
+	Random random = new Random(97531);
+	RandomProteins proteins = new RandomProteins(random);
+	ScoringScheme scheme;
+
+	/**
+	 * Make sure two sequences on their own come out the same as Needleman aligns them.
+	 */
+	public void testTwoSequences() {
+		for (int trial = 0; trial < 20; trial++) {
+			Sequence first = proteins.randomSequence(20 + random.nextInt(80));
+			Sequence second = trial % 2 == 0 ? proteins.mutate(first) : proteins.randomSequence(20 + random.nextInt(80));
+			List pair = new ArrayList();
+			pair.add(first);
+			pair.add(second);
+			ProgressiveAligner aligner = new ProgressiveAligner(scheme);
+			aligner.setSequences(pair);
+			aligner.setDistanceMethod(trial % 4 < 2 ? ProgressiveAligner.KMER_DISTANCE : ProgressiveAligner.ALIGNMENT_DISTANCE);
+			aligner.execute();
+			assertEquals(Needleman.align(first, second, scheme).getScore(), score(aligner.getRow(0), aligner.getRow(1), scheme));
+		}
+
+		// With cheap gaps and a harsh mismatch, a gap either side would beat a mismatch, if
+		// one gap could follow the other.  It can't, in Needleman.
+		ScoringScheme cheapGaps = new ScoringScheme(new MatchComparator(1, -4), 1, 1);
+		for (int trial = 0; trial < 21; trial++) {
+			Sequence first = trial == 0 ? new Sequence(AminoAcid.class, "AAAACTTTT") : proteins.randomSequence(10 + random.nextInt(40));
+			Sequence second = trial == 0 ? new Sequence(AminoAcid.class, "AAAAGTTTT") : proteins.mutate(first);
+			List pair = new ArrayList();
+			pair.add(first);
+			pair.add(second);
+			ProgressiveAligner aligner = new ProgressiveAligner(cheapGaps);
+			aligner.setSequences(pair);
+			aligner.execute();
+			assertEquals(Needleman.align(first, second, cheapGaps).getScore(), score(aligner.getRow(0), aligner.getRow(1), cheapGaps));
+		}
+	}
+
+	/**
+	 * Make three families of relatives, and make sure the guide tree keeps each family
+	 * together, whichever way it's built, and the alignment keeps every sequence intact.
+	 */
+	public void testFamilies() throws IOException {
+		List sequences = new ArrayList();
+		for (int f = 0; f < 3; f++) {
+			Sequence founder = proteins.randomSequence(150);
+			for (int i = 0; i < 8; i++) {
+				Sequence member = proteins.mutate(founder);
+				member.setComment(">f" + f + "m" + i + " family " + f);
+				sequences.add(member);
+			}
+		}
+		for (int method = ProgressiveAligner.UPGMA; method <= ProgressiveAligner.NEIGHBOR_JOINING; method++) {
+			ProgressiveAligner aligner = new ProgressiveAligner(scheme);
+			aligner.setSequences(sequences);
+			aligner.setTreeMethod(method);
+			aligner.setThreads(3);
+			aligner.execute();
+
+			Set clades = clades(aligner.getTree());
+			for (int f = 0; f < 3; f++) {
+				Set family = new HashSet();
+				for (int i = 0; i < 8; i++) {
+					family.add("f" + f + "m" + i);
+				}
+				assertTrue(aligner.getTree(), clades.contains(family));
+			}
+
+			int columns = aligner.getColumnCount();
+			assertTrue(columns >= 150);
+			int identical = 0, pairwise = 0;
+			for (int i = 0; i < sequences.size(); i++) {
+				String row = aligner.getRow(i);
+				assertEquals(columns, row.length());
+				assertEquals(RandomProteins.toString((Sequence) sequences.get(i)), row.replaceAll("-", ""));
+				if (i % 8 > 0) {
+					String previous = aligner.getRow(i - 1);
+						pairwise += Needleman.align((Sequence) sequences.get(i - 1), (Sequence) sequences.get(i), scheme).getIdentities();
+					for (int p = 0; p < columns; p++) {
+						identical += row.charAt(p) != '-' && row.charAt(p) == previous.charAt(p) ? 1 : 0;
+					}
+				}
+			}
+			// Relatives should line up nearly as well as they do on their own.
+			assertTrue("Only " + identical + " identities out of " + pairwise, identical >= pairwise * 0.95);
+
+			StringWriter out = new StringWriter();
+			aligner.write(out);
+			String[] lines = out.toString().split("\n");
+			assertEquals(">f0m0 family 0", lines[0]);
+			assertEquals(aligner.getRow(0).substring(0, 72), lines[1]);
+		}
+	}
+
+	/**
+	 * Make sure the distances come out the same however many threads work them out, and look
+	 * like distances.
+	 */
+	public void testDistances() {
+		List sequences = new ArrayList();
+		Sequence founder = proteins.randomSequence(200);
+		for (int i = 0; i < 60; i++) {
+			sequences.add(i % 2 == 0 ? proteins.mutate(founder) : proteins.randomSequence(100 + random.nextInt(100)));
+		}
+		sequences.add(sequences.get(0));
+		for (int distance = ProgressiveAligner.KMER_DISTANCE; distance <= ProgressiveAligner.ALIGNMENT_DISTANCE; distance++) {
+			ProgressiveAligner one = new ProgressiveAligner(scheme), many = new ProgressiveAligner(scheme);
+			one.setSequences(sequences);
+			many.setSequences(sequences);
+			one.setDistanceMethod(distance);
+			many.setDistanceMethod(distance);
+			one.setThreads(1);
+			many.setThreads(5);
+			one.execute();
+			many.execute();
+			for (int i = 0; i < sequences.size(); i++) {
+				for (int j = 0; j < sequences.size(); j++) {
+					assertEquals(one.getDistance(i, j), many.getDistance(i, j), 0);
+					assertEquals(one.getDistance(i, j), one.getDistance(j, i), 0);
+					assertTrue(one.getDistance(i, j) >= 0 && one.getDistance(i, j) <= 1);
+				}
+				assertEquals(one.getRow(i), many.getRow(i));
+			}
+			assertEquals(0, one.getDistance(0, 60), 0);
+			// Relatives are closer to each other than to strangers.
+			assertTrue(one.getDistance(0, 2) < one.getDistance(0, 1));
+		}
+	}
+
+	/**
+	 * Make sure one sequence on its own is its own alignment.
+	 */
+	public void testOneSequence() {
+		List sequences = new ArrayList();
+		sequences.add(proteins.randomSequence(30));
+		ProgressiveAligner aligner = new ProgressiveAligner(scheme);
+		aligner.setSequences(sequences);
+		aligner.execute();
+		assertEquals(RandomProteins.toString((Sequence) sequences.get(0)), aligner.getRow(0));
+		assertEquals("seq0;", aligner.getTree());
+	}
+
+	/**
+	 * Score a pair of rows the way Needleman does: the scheme's scores for the pairs, and its
+	 * gap penalties, end gaps included.
+	 */
+	static int score(String first, String second, ScoringScheme scheme) {
+		int score = 0;
+		for (int p = 0; p < first.length(); ) {
+			char a = first.charAt(p), b = second.charAt(p);
+			if (a != '-' && b != '-') {
+				score += scheme.score(Alphabet.forType(AminoAcid.class), AminoAcid.getByCode(a).getNumber(), AminoAcid.getByCode(b).getNumber());
+				p++;
+				continue;
+			}
+			int length = 0;
+			boolean firstGap = a == '-';
+			while (p < first.length() && (firstGap ? first.charAt(p) == '-' : second.charAt(p) == '-')) {
+				length++;
+				p++;
+			}
+			score -= scheme.gapPenalty(length);
+		}
+		return score;
+	}
+
+	/**
+	 * Get every clade of a tree in Newick format, as sets of names.
+	 */
+	static Set clades(String newick) {
+		Set clades = new HashSet();
+		LinkedList open = new LinkedList();
+		for (int p = 0; p < newick.length(); p++) {
+			char c = newick.charAt(p);
+			if (c == '(') {
+				open.addFirst(new HashSet());
+			} else if (c == ')') {
+				Set clade = (Set) open.removeFirst();
+				clades.add(clade);
+				if (!open.isEmpty()) {
+					((Set) open.getFirst()).addAll(clade);
+				}
+			} else if (c == ':') {
+				while (p + 1 < newick.length() && ",);".indexOf(newick.charAt(p + 1)) < 0) {
+					p++;
+				}
+			} else if (c != ',' && c != ';') {
+				int end = p;
+				while (",():;".indexOf(newick.charAt(end)) < 0) {
+					end++;
+				}
+				((Set) open.getFirst()).add(newick.substring(p, end));
+				p = end - 1;
+			}
+		}
+		return clades;
+	}
+
+	protected void setUp() {
+		DynamicDuo.initialize();
+		scheme = new ScoringScheme(RandomProteins.blosum62(), 11, 1);
+	}
+}
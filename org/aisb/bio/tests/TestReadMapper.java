@@ -0,0 +1,189 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.Nucleotide;
+import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.DarwinsCrucible;
+import org.aisb.bio.tools.MinimizerIndex;
+import org.aisb.bio.tools.ReadMapper;
+import org.aisb.bio.tools.io.FastaReader;
+
+/**
+ * <p>
+ * These are unit tests for mapping reads.  The reads are cut out of a random genome, from
+ * either strand, with some mistakes put in, and they have to map back to where they came from.
+ * </p>
+ */
+public class TestReadMapper extends TestCase {
+	static final String BASES = "ACGT";
+
+	Random random = new Random(2468);
+
+	/**
+	 * Map reads from both strands, some with substitutions and some with small gaps, plus some
+	 * that come from nowhere, with several threads, and check every line.
+	 */
+	public void testMapping() throws IOException {
+		String genome = randomBases(200000);
+		MinimizerIndex index = new MinimizerIndex(new Sequence(Nucleotide.class, genome));
+		assertTrue(index.size() > 200000 / 11 && index.size() < 200000 / 3);
+
+		List reads = new ArrayList();
+		Map truth = new HashMap();
+		for (int r = 0; r < 2000; r++) {
+			int start = random.nextInt(genome.length() - 200);
+			StringBuffer read = new StringBuffer(genome.substring(start, start + 150));
+			for (int k = random.nextInt(4); k > 0; k--) {
+				int at = random.nextInt(read.length());
+				read.setCharAt(at, BASES.charAt((BASES.indexOf(read.charAt(at)) + 1 + random.nextInt(3)) % 4));
+			}
+			if (r % 5 == 0) {
+				// A little deletion in the middle.
+				read.delete(70, 70 + 1 + random.nextInt(3));
+			} else if (r % 5 == 1) {
+				read.insert(70, randomBases(1 + random.nextInt(3)));
+			}
+			boolean minus = random.nextBoolean();
+			Sequence sequence = new Sequence(Nucleotide.class, minus ? reverseComplement(read.toString()) : read.toString());
+			sequence.setComment("read" + r + " from " + start);
+			reads.add(sequence);
+			truth.put("read" + r, new int[] { start, minus ? 1 : 0 });
+		}
+		for (int r = 0; r < 50; r++) {
+			Sequence junk = new Sequence(Nucleotide.class, randomBases(150));
+			junk.setComment("junk" + r);
+			reads.add(junk);
+		}
+
+		ReadMapper mapper = new ReadMapper(index);
+		mapper.setThreads(3);
+		mapper.setReads(reads.iterator());
+		StringWriter out = new StringWriter();
+		mapper.setOutput(out);
+		mapper.execute();
+		assertEquals(reads.size(), mapper.getReadCount());
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(reads.size(), lines.length);
+		int mapped = 0, right = 0;
+		for (int l = 0; l < lines.length; l++) {
+			String[] fields = lines[l].split("\t");
+			assertEquals(lines[l], 9, fields.length);
+			if (fields[0].startsWith("junk")) {
+				assertEquals(lines[l], "*", fields[2]);
+				continue;
+			}
+			int[] where = (int[]) truth.get(fields[0]);
+			assertNotNull(fields[0], where);
+			if (fields[2].equals("*")) {
+				continue;
+			}
+			mapped++;
+			int start = Integer.parseInt(fields[3]), end = Integer.parseInt(fields[4]);
+			if (fields[2].equals(where[1] == 0 ? "+" : "-") && Math.abs(start - where[0]) <= 3) {
+				right++;
+				// Whatever the CIGAR says has to add up to the read and the stretch of the genome.
+				int readLength = 0, genomeLength = 0;
+				String cigar = fields[8];
+				for (int at = 0, number = 0; at < cigar.length(); at++) {
+					char c = cigar.charAt(at);
+					if (Character.isDigit(c)) {
+						number = number * 10 + (c - '0');
+						continue;
+					}
+					if (c != 'D') {
+						readLength += number;
+					}
+					if (c != 'I') {
+						genomeLength += number;
+					}
+					number = 0;
+				}
+				assertEquals(lines[l], Integer.parseInt(fields[1]), readLength);
+				assertEquals(lines[l], end - start, genomeLength);
+				assertTrue(lines[l], Integer.parseInt(fields[7]) <= 8);
+			}
+		}
+		assertEquals(mapped + 0L, mapper.getMappedCount());
+		assertTrue("Only " + mapped + " mapped", mapped >= 1990);
+		assertTrue("Only " + right + " mapped to the right place", right >= 1980);
+	}
+
+	/**
+	 * Make sure a read from a repeat gets a low mapping quality, and a unique one a high one.
+	 */
+	public void testMappingQuality() throws IOException {
+		String repeat = randomBases(300);
+		String genome = randomBases(5000) + repeat + randomBases(5000) + repeat + randomBases(5000);
+		MinimizerIndex index = new MinimizerIndex(new Sequence(Nucleotide.class, genome));
+		List reads = new ArrayList();
+		reads.add(new Sequence(Nucleotide.class, repeat.substring(50, 200)));
+		reads.add(new Sequence(Nucleotide.class, genome.substring(1000, 1150)));
+		ReadMapper mapper = new ReadMapper(index);
+		mapper.setThreads(1);
+		mapper.setReads(reads.iterator());
+		StringWriter out = new StringWriter();
+		mapper.setOutput(out);
+		mapper.execute();
+		String[] lines = out.toString().split("\n");
+		assertEquals("read0\t150\t+", lines[0].substring(0, lines[0].indexOf('\t', 10)));
+		assertEquals("0", lines[0].split("\t")[5]);
+		assertEquals("read1\t150\t+\t1000\t1150\t60\t150\t0\t150M", lines[1]);
+	}
+
+	/**
+	 * Feed the mapper from a FastaReader, the way it's meant to be used, and make sure the
+	 * names come out without the '>' and the rest of the header.
+	 */
+	public void testReadsFromFasta() throws IOException {
+		String genome = randomBases(20000);
+		MinimizerIndex index = new MinimizerIndex(new Sequence(Nucleotide.class, genome));
+		String fasta = ">first read\n" + genome.substring(1000, 1150) + "\n>second\n"
+				+ genome.substring(5000, 5100) + "\n" + genome.substring(5100, 5150) + "\n";
+		FastaReader reader = new FastaReader(new ByteArrayInputStream(fasta.getBytes("US-ASCII")));
+		reader.setType(Nucleotide.class);
+		ReadMapper mapper = new ReadMapper(index);
+		mapper.setThreads(1);
+		mapper.setReads(reader);
+		StringWriter out = new StringWriter();
+		mapper.setOutput(out);
+		mapper.execute();
+		String[] lines = out.toString().split("\n");
+		assertEquals(2, lines.length);
+		assertEquals("first\t150\t+\t1000\t1150\t60\t150\t0\t150M", lines[0]);
+		assertEquals("second\t150\t+\t5000\t5150\t60\t150\t0\t150M", lines[1]);
+	}
+
+	String randomBases(int length) {
+		StringBuffer bases = new StringBuffer(length);
+		for (int i = 0; i < length; i++) {
+			bases.append(BASES.charAt(random.nextInt(4)));
+		}
+		return bases.toString();
+	}
+
+	static String reverseComplement(String bases) {
+		StringBuffer result = new StringBuffer(bases.length());
+		for (int i = bases.length() - 1; i >= 0; i--) {
+			result.append(BASES.charAt(3 - BASES.indexOf(bases.charAt(i))));
+		}
+		return result.toString();
+	}
+
+	protected void setUp() {
+		DarwinsCrucible.initialize();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.aisb.bio.things.*;
+import org.aisb.bio.things.evolution.AsexualOrganism;
+import org.aisb.bio.things.evolution.Mutator;
+import org.aisb.bio.tools.DarwinsCrucible;
+import org.aisb.bio.tools.DynamicDuo;
+import org.aisb.bio.tools.io.SequenceArchive;
+
+/**
+ * <p>
+ * These are unit tests for the compact ways a {@link org.aisb.bio.things.Sequence} can
+ * store its contents.  Every test builds the same sequence both ways and makes sure
+ * nobody using the {@link java.util.List} interface can tell the difference.
+ * </p>
+ */
+public class TestSequenceStorage extends TestCase {
+
+	/**
+	 * Make sure a packed sequence hands back exactly the same monomer objects as
+	 * an unpacked one, across a word boundary.
+	 */
+	public void testPackedMatchesUnpacked() {
+		String bases = "GATTACACGTACGTACGTACGTACGTACGTACGTTTGACA";
+		Sequence plain = new Sequence(Nucleotide.class, bases);
+		Sequence packed = new Sequence(Nucleotide.class, bases, true);
+		assertTrue(packed.isPacked());
+		assertEquals(plain.size(), packed.size());
+		for (int i=0; i < plain.size(); i++) {
+			assertSame(plain.get(i), packed.get(i));
+		}
+		assertEquals(plain.toString(), packed.toString());
+	}
+
+	/**
+	 * Make sure the list operations that move things around still work when packed.
+	 */
+	public void testPackedEditing() {
+		Sequence packed = new Sequence(Nucleotide.class, "GATTACA", true);
+		packed.add(0, Nucleotide.getByCode('C'));
+		packed.remove(3);
+		packed.set(1, Nucleotide.getByCode('T'));
+		Sequence expected = new Sequence(Nucleotide.class, "CTATACA");
+		assertEquals(expected.toString(), packed.toString());
+		packed.setPacked(false);
+		assertFalse(packed.isPacked());
+		assertEquals(expected.toString(), packed.toString());
+	}
+
+	/**
+	 * Make sure the byte-per-monomer list works, and that <code>getIndex</code> agrees
+	 * with the monomer objects no matter how the sequence is stored.
+	 */
+	public void testByteStorageAndIndices() {
+		String bases = "GATTACA";
+		Sequence plain = new Sequence(Nucleotide.class, bases);
+		Sequence packed = new Sequence(Nucleotide.class, bases, true);
+		ByteMonomerList bytes = new ByteMonomerList(Nucleotide.class);
+		bytes.addAll(plain);
+		bytes.add(2, Nucleotide.getByCode('C'));
+		bytes.remove(2);
+		for (int i=0; i < plain.size(); i++) {
+			int number = ((Monomer) plain.get(i)).getNumber();
+			assertEquals(number, plain.getIndex(i));
+			assertEquals(number, packed.getIndex(i));
+			assertEquals(number, bytes.getNumber(i));
+			assertSame(plain.get(i), bytes.get(i));
+		}
+	}
+
+	/**
+	 * Make sure all the bulk parsing entry points agree with each other, and still
+	 * report bad characters with their position.
+	 */
+	public void testBulkParsing() throws Exception {
+		String bases = "xxGATTACAxx";
+		Sequence expected = new Sequence(Nucleotide.class, "GATTACA");
+		Sequence fromChars = new Sequence(Nucleotide.class);
+		fromChars.appendFrom(new StringBuffer(bases), 2, 9);
+		Sequence fromBytes = new Sequence(Nucleotide.class, "", true);
+		fromBytes.appendFrom(bases.getBytes("US-ASCII"), 2, 7);
+		Sequence fromBuffer = new Sequence(Nucleotide.class);
+		java.nio.CharBuffer buffer = java.nio.CharBuffer.wrap(bases.toCharArray(), 2, 7);
+		fromBuffer.appendFrom(buffer);
+		assertEquals(0, buffer.remaining());
+		assertEquals(expected.toString(), fromChars.toString());
+		assertEquals(expected.toString(), fromBytes.toString());
+		assertEquals(expected.toString(), fromBuffer.toString());
+		try {
+			new Sequence(Nucleotide.class, "GATXACA");
+			fail("An invalid character was accepted.");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().indexOf("position 4") >= 0);
+		}
+	}
+
+	/**
+	 * Make sure proteins stored a byte per residue behave like any other protein.
+	 */
+	public void testPackedProtein() {
+		String residues = "MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHF";
+		Sequence plain = new Sequence(AminoAcid.class, residues);
+		Sequence packed = new Sequence(AminoAcid.class, residues, true);
+		assertTrue(packed.isPacked());
+		for (int i=0; i < plain.size(); i++) {
+			assertSame(plain.get(i), packed.get(i));
+			assertEquals(((Monomer) plain.get(i)).getNumber(), packed.getIndex(i));
+		}
+	}
+
+	/**
+	 * Make sure nucleotides and amino acids can both be in use at once, each with
+	 * its own alphabet, even though they share letters.
+	 */
+	public void testSeparateAlphabets() {
+		Sequence dna = new Sequence(Nucleotide.class, "GATTACA");
+		Sequence protein = new Sequence(AminoAcid.class, "GATTACA");
+		assertNotSame(dna.get(0), protein.get(0));
+		assertSame(Nucleotide.getNucleotideAlphabet(), dna.getAlphabet());
+		assertSame(AminoAcid.getAminoAcidAlphabet(), protein.getAlphabet());
+		assertSame(dna.getAlphabet(), ((Monomer) dna.get(0)).getAlphabet());
+		assertEquals("Gly", ((Monomer) protein.get(0)).getName());
+		// Mutating a nucleotide gives a nucleotide, no matter what was initialized last.
+		Mutator m = new Mutator(1);
+		Monomer mutant = m.mutate((Monomer) dna.get(0));
+		assertSame(Nucleotide.getNucleotideAlphabet(), mutant.getAlphabet());
+	}
+
+	/**
+	 * Make sure subsequences share storage with the original, packed or not.
+	 */
+	public void testSubSequenceViews() {
+		Sequence[] sequences = {
+				new Sequence(Nucleotide.class, "GATTACAGATTACA"),
+				new Sequence(Nucleotide.class, "GATTACAGATTACA", true) };
+		for (int s=0; s < sequences.length; s++) {
+			Sequence whole = sequences[s];
+			Sequence part = whole.subSequence(3, 10);
+			assertEquals(whole.isPacked(), part.isPacked());
+			assertEquals(7, part.size());
+			assertEquals(whole.getIndex(3), part.getIndex(0));
+			assertEquals("[Sequence: org.aisb.bio.things.Nucleotide : TACAGAT]", part.toString());
+			Sequence smaller = part.subSequence(1, 3);
+			assertEquals("[Sequence: org.aisb.bio.things.Nucleotide : AC]", smaller.toString());
+			smaller.set(0, Nucleotide.getByCode('G'));
+			assertSame(Nucleotide.getByCode('G'), whole.get(4));
+		}
+	}
+
+	/**
+	 * Make sure the window and k-mer cursors visit what they should.
+	 */
+	public void testCursors() {
+		Sequence dna = new Sequence(Nucleotide.class, "GATTACA", true);
+		SequenceWindow window = new SequenceWindow(dna, 3, 2);
+		int count = 0;
+		while (window.next()) {
+			assertEquals(dna.getIndex(window.getStart() + 2), window.getIndex(2));
+			count++;
+		}
+		assertEquals(3, count);
+
+		KmerCursor kmers = new KmerCursor(dna, 3);
+		String[] expected = { "GAT", "ATT", "TTA", "TAC", "ACA" };
+		String[] reverse = { "ATC", "AAT", "TAA", "GTA", "TGT" };
+		for (int i=0; i < expected.length; i++) {
+			assertTrue(kmers.next());
+			assertEquals(i, kmers.getPosition());
+			assertEquals(expected[i], KmerCursor.decode(kmers.getCode(), 3));
+			assertEquals(reverse[i], KmerCursor.decode(kmers.getReverseComplementCode(), 3));
+		}
+		assertFalse(kmers.next());
+		kmers.moveTo(3);
+		assertTrue(kmers.next());
+		assertEquals("TAC", KmerCursor.decode(kmers.getCode(), 3));
+		assertEquals("GTA", KmerCursor.decode(kmers.getCanonicalCode(), 3));
+	}
+
+	/**
+	 * Make sure the evolution code keeps working on packed genotypes.
+	 */
+	public void testPackedOrganism() {
+		AsexualOrganism eve = new AsexualOrganism();
+		eve.setGenotype(new Sequence(Nucleotide.class, "GATTACAGATTACA", true));
+		eve.setMutator(new Mutator(1));
+		AsexualOrganism baby = eve.haveMutantBaby(1);
+		assertTrue(baby.getGenotype().isPacked());
+		for (int i=0; i < eve.getGenotype().size(); i++) {
+			assertNotSame(eve.getGenotype().get(i), baby.getGenotype().get(i));
+		}
+	}
+
+	/**
+	 * Write a mixed bag of sequences out as an archive and read them back.
+	 */
+	public void testArchive() throws IOException {
+		List sequences = new ArrayList();
+		Sequence dna = new Sequence(Nucleotide.class, "GATTACACGTACGTACGTACGTACGTACGTACGTTTGACAG");
+		dna.setComment(">dna");
+		sequences.add(dna);
+		sequences.add(new Sequence(AminoAcid.class, "MVLSPADKTNVKAAWGKVGAHAGEY"));
+		sequences.add(new Sequence(Nucleotide.class, ""));
+		Sequence protein = new Sequence(AminoAcid.class, "WYV", true);
+		protein.setComment(">prot\u00e9in");
+		sequences.add(protein);
+		File file = File.createTempFile("test", ".seqs");
+		file.deleteOnExit();
+		SequenceArchive.write(file, sequences);
+		SequenceArchive archive = new SequenceArchive(file);
+		assertEquals(4, archive.size());
+		List loaded = archive.getSequences();
+		for (int i=0; i < sequences.size(); i++) {
+			Sequence expected = (Sequence) sequences.get(i);
+			Sequence actual = (Sequence) loaded.get(i);
+			assertEquals(expected.getComment(), actual.getComment());
+			assertEquals(expected.toString(), actual.toString());
+			assertTrue(actual.isPacked());
+		}
+		assertSame(dna.get(5), archive.getSequence(0).get(5));
+		archive.close();
+		// A damaged record should be noticed, not loaded.
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(16 + 16 + 8 + 16 + 16);	// The first residue of the protein.
+		raf.write(99);
+		raf.close();
+		archive = new SequenceArchive(file);
+		try {
+			archive.getSequence(1);
+			fail("Should have noticed the bad residue.");
+		} catch (IOException e) {
+			// That's what we wanted.
+		}
+		archive.close();
+	}
+
+	/**
+	 * Make sure an archive that says its sequences are made of something that isn't a monomer
+	 * gets turned away.
+	 */
+	public void testArchiveOfNonMonomers() throws IOException {
+		List sequences = new ArrayList();
+		sequences.add(new Sequence(AminoAcid.class, "MVLSPADKTNVKAAWGKVGAHAGEY"));
+		File file = File.createTempFile("test", ".seqs");
+		file.deleteOnExit();
+		SequenceArchive.write(file, sequences);
+		// Put another class's name, just as long, where the type's name is.
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		byte[] contents = new byte[(int) raf.length()];
+		raf.readFully(contents);
+		String name = AminoAcid.class.getName();
+		int at = new String(contents, "ISO-8859-1").indexOf(name);
+		assertTrue(at > 0);
+		raf.seek(at);
+		raf.write("java.util.concurrent.TimeUnit".getBytes("US-ASCII"));
+		raf.close();
+		try {
+			new SequenceArchive(file).close();
+			fail("Should have turned down a type that isn't a monomer.");
+		} catch (IOException e) {
+			// That's what we wanted.
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() {
+		// Both of these are harmless to repeat.
+		DarwinsCrucible.initialize();
+		DynamicDuo.initialize();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.things;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * An alphabet is the complete set of one kind of monomer: all the nucleotides, or all the amino
+ * acids.  There's exactly one of these for each kind of monomer, created when that kind of
+ * monomer is initialized (see for example {@link org.aisb.bio.things.Nucleotide#initialize()}),
+ * and it holds all the lookup tables for that kind of monomer.
+ * </p><p>
+ * This is what finally fixes the problem described in {@link org.aisb.bio.things.Monomer}: each
+ * kind of monomer gets its own tables, so initializing amino acids no longer clobbers nucleotides,
+ * and a DNA job and a protein job can run side by side in the same JVM.
+ * </p><p>
+ * An alphabet never changes once it's been created, and it's published through a registry that's
+ * only ever replaced wholesale, so any number of threads can read from it without locking.
+ * </p>
+ */
+public final class Alphabet {
+	static final int DECODING_TABLE_SIZE = 256;
+
+	// The registry.  It's replaced, never modified, so readers don't need to lock.
+	private static volatile Map alphabets = Collections.EMPTY_MAP;
+
+	private final Class type;
+	private final Monomer[] monomers;		// Indexed by number minus one; unused numbers are null.
+	private final Monomer[] decodingTable;	// Indexed by 8-bit character code.
+	private final Map monomersByName;
+	private final Map monomersByCode;
+
+	/**
+	 * Build an alphabet.  Only {@link Monomer} does this, as part of initialization.
+	 */
+	Alphabet(Class type, Monomer[] monomers) {
+		this.type = type;
+		this.monomers = monomers.clone();
+		Monomer[] table = new Monomer[DECODING_TABLE_SIZE];
+		Map byName = new HashMap(monomers.length);
+		Map byCode = new HashMap(monomers.length);
+		for (int i=0; i < monomers.length; i++) {
+			Monomer m = monomers[i];
+			if (m == null) {
+				continue;
+			}
+			byName.put(m.getName(), m);
+			byCode.put(m.getCode(), m);
+			char code = m.getCode().charValue();
+			if (code < DECODING_TABLE_SIZE) {
+				table[code] = m;
+			}
+		}
+		this.decodingTable = table;
+		this.monomersByName = Collections.unmodifiableMap(byName);
+		this.monomersByCode = Collections.unmodifiableMap(byCode);
+	}
+
+	/**
+	 * Add an alphabet to the registry, replacing any older one for the same type.
+	 */
+	static synchronized void register(Alphabet alphabet) {
+		Map newAlphabets = new HashMap(alphabets);
+		newAlphabets.put(alphabet.getType(), alphabet);
+		alphabets = Collections.unmodifiableMap(newAlphabets);
+	}
+
+	/**
+	 * Find out whether a kind of monomer has been initialized yet.
+	 *
+	 * @param type The type of monomer, eg. Nucleotide.class.
+	 * @return True if there's an alphabet for it.
+	 */
+	public static boolean isInitialized(Class type) {
+		return alphabets.containsKey(type);
+	}
+
+	/**
+	 * Get the alphabet for a kind of monomer.  If the type is a subclass of a kind of monomer
+	 * that's been initialized (such as a class describing some constrained set of amino acids),
+	 * this returns the alphabet of the nearest initialized superclass.
+	 *
+	 * @param type The type of monomer, eg. Nucleotide.class.
+	 * @return The alphabet.
+	 */
+	public static Alphabet forType(Class type) {
+		Map current = alphabets;
+		for (Class c = type; c != null; c = c.getSuperclass()) {
+			Alphabet alphabet = (Alphabet) current.get(c);
+			if (alphabet != null) {
+				return alphabet;
+			}
+		}
+		throw new IllegalStateException("Monomers of type " + type + " have not been initialized.");
+	}
+
+	/**
+	 * @return The type of monomer in this alphabet.
+	 */
+	public Class getType() {
+		return type;
+	}
+
+	/**
+	 * @return The highest monomer number in this alphabet.
+	 */
+	public int getQuantity() {
+		return monomers.length;
+	}
+
+	/**
+	 * Given the numeric code for a monomer, return the representation of that monomer.
+	 *
+	 * @param number The code for the monomer.
+	 * @return The object representing the monomer, or null if there isn't one.
+	 */
+	public Monomer getByNumber(int number) {
+		return monomers[number-1];
+	}
+
+	/**
+	 * Given the one-character code of a monomer, return the representation of that monomer.
+	 *
+	 * @param code The code for the monomer.
+	 * @return The object representing the monomer, or null if there isn't one.
+	 */
+	public Monomer getByCode(char code) {
+		if (code < DECODING_TABLE_SIZE) {
+			return decodingTable[code];
+		}
+		return (Monomer) monomersByCode.get(Character.valueOf(code));
+	}
+
+	/**
+	 * Given the name of a monomer, return the representation of that monomer.
+	 *
+	 * @param name The name of the monomer.
+	 * @return The object representing the monomer, or null if there isn't one.
+	 */
+	public Monomer getByName(String name) {
+		return (Monomer) monomersByName.get(name);
+	}
+
+	/**
+	 * @return A copy of the monomers in this alphabet, indexed by number minus one.
+	 */
+	public Monomer[] getMonomers() {
+		return monomers.clone();
+	}
+
+	/**
+	 * Get the table used to turn 8-bit character codes into monomers in bulk.  The entry is
+	 * null if that character isn't the code for any monomer.  This is shared, so don't modify it.
+	 */
+	Monomer[] getDecodingTable() {
+		return decodingTable;
+	}
+
+	/**
+	 * Get the monomers, indexed by number minus one, without copying.  Don't modify it.
+	 */
+	Monomer[] monomers() {
+		return monomers;
+	}
+
+	public String toString() {
+		return "[Alphabet: " + type.getName() + "]";
+	}
+}
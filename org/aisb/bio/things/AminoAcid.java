@@ -17,9 +17,17 @@ public class AminoAcid extends Monomer {
 	}
 	
 	public static void initialize() {
+		synchronized (Monomer.class) {
+			initializeAlphabet();
+		}
+	}
+
+	private static void initializeAlphabet() {
 		// Save room for 26 entries.  We'll make the numeric code equal the location of the
 		// letter code in the alphabet (A=1, B=2...).
-		initialize(26);
+		if (!initialize(AminoAcid.class, 26)) {
+			return;	// Already done.
+		}
 		// Now, add all the amino acids we'll use.
 		// These values are taken directly from the Mount text, page 43, table 2.2.
 		addMonomer(AminoAcid.class, "Ala", 'A', 1);
@@ -53,4 +61,43 @@ public class AminoAcid extends Monomer {
 		finishInitializing();
 	}
 
+	/**
+	 * @return The alphabet of all the amino acids.
+	 */
+	public static Alphabet getAminoAcidAlphabet() {
+		return Alphabet.forType(AminoAcid.class);
+	}
+
+	/**
+	 * Given the one-character code of an amino acid, return the representation of it.
+	 * Unlike {@link Monomer#getByCode(char)}, this works no matter what other kinds of
+	 * monomer have been initialized since.
+	 * 
+	 * @param code The code for the amino acid.
+	 * @return The object representing the amino acid.
+	 */
+	public static Monomer getByCode(char code) {
+		return getAminoAcidAlphabet().getByCode(code);
+	}
+
+	/**
+	 * Given the name of an amino acid, return the representation of it.
+	 * 
+	 * @param name The name of the amino acid.
+	 * @return The object representing the amino acid.
+	 */
+	public static Monomer getByName(String name) {
+		return getAminoAcidAlphabet().getByName(name);
+	}
+
+	/**
+	 * Given the numeric code for an amino acid, return the representation of it.
+	 * 
+	 * @param number The code for the amino acid.
+	 * @return The object representing the amino acid.
+	 */
+	public static Monomer getByNumber(int number) {
+		return getAminoAcidAlphabet().getByNumber(number);
+	}
+
 }
@@ -0,0 +1,239 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.things;
+
+import java.util.AbstractList;
+
+/**
+ * <p>
+ * This is the basis for the lists a {@link org.aisb.bio.things.Sequence} uses when it's been
+ * asked to store its contents compactly.  Instead of holding a reference to a monomer at each
+ * position, a compact list only holds the monomer's number (see {@link org.aisb.bio.things.Monomer#getNumber()}),
+ * squeezed into as few bits as the subclass can manage.
+ * </p><p>
+ * The monomer objects themselves come from the list's {@link org.aisb.bio.things.Alphabet}, so <code>get</code>
+ * hands back the same canonical objects as any other list would.  Code that's in a hurry can skip
+ * the objects entirely and call <code>getNumber</code>.
+ * </p><p>
+ * Subclasses only need to know how to read and write a number at a position and how to grow.
+ * Everything else is done here.
+ * </p>
+ */
+public abstract class CompactMonomerList extends AbstractList {
+	Alphabet alphabet;	// The kind of monomer we hold.
+	Monomer[] monomers;	// The canonical monomer for each number, offset by one.
+	int size = 0;		// How many monomers we're actually holding.
+
+	/**
+	 * @param alphabet The kind of monomer this list can hold.
+	 */
+	CompactMonomerList(Alphabet alphabet) {
+		this.alphabet = alphabet;
+		this.monomers = alphabet.monomers();
+	}
+
+	/**
+	 * @return The alphabet of the monomers this list can hold.
+	 */
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+
+	/**
+	 * Get the number at a position, without bounds checking.
+	 */
+	abstract int numberAt(int index);
+
+	/**
+	 * Set the number at a position, without bounds checking.
+	 */
+	abstract void setNumberAt(int index, int number);
+
+	/**
+	 * Make sure there's room for at least this many monomers.
+	 */
+	abstract void ensureCapacity(int count);
+
+	/**
+	 * Turn a monomer into its number, making sure it really is one this list can hold.
+	 */
+	int encode(Object element) {
+		if (element instanceof Monomer) {
+			int number = ((Monomer) element).getNumber();
+			if (number >= 1 && number <= monomers.length && monomers[number-1] == element) {
+				return number;
+			}
+		}
+		throw new IllegalArgumentException("Element can't be stored in this list: " + element);
+	}
+
+	void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * Get the number of the monomer at a given position without going through
+	 * the monomer object at all.
+	 *
+	 * @param index The position in the list.
+	 * @return The number of the monomer at that position.
+	 */
+	public int getNumber(int index) {
+		checkIndex(index);
+		return numberAt(index);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.List#get(int)
+	 */
+	public Object get(int index) {
+		checkIndex(index);
+		return monomers[numberAt(index)-1];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.List#set(int, java.lang.Object)
+	 */
+	public Object set(int index, Object element) {
+		checkIndex(index);
+		int number = encode(element);
+		Object old = monomers[numberAt(index)-1];
+		setNumberAt(index, number);
+		return old;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Collection#add(java.lang.Object)
+	 */
+	public boolean add(Object element) {
+		int number = encode(element);
+		ensureCapacity(size + 1);
+		setNumberAt(size, number);
+		size++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Add a monomer to the end of the list given only its number.  This doesn't check the
+	 * number, and doesn't grow the list, so it's only for callers that have already done both.
+	 */
+	void appendNumber(int number) {
+		setNumberAt(size, number);
+		size++;
+		modCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.List#add(int, java.lang.Object)
+	 */
+	public void add(int index, Object element) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int number = encode(element);
+		ensureCapacity(size + 1);
+		// Slide everything after the insertion point down by one.
+		for (int i = size; i > index; i--) {
+			setNumberAt(i, numberAt(i-1));
+		}
+		setNumberAt(index, number);
+		size++;
+		modCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.List#remove(int)
+	 */
+	public Object remove(int index) {
+		checkIndex(index);
+		Object old = monomers[numberAt(index)-1];
+		// Slide everything after the removal point up by one.
+		for (int i = index; i < size - 1; i++) {
+			setNumberAt(i, numberAt(i+1));
+		}
+		size--;
+		modCount++;
+		return old;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Collection#clear()
+	 */
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Collection#size()
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get a view of part of this list.  The view shares this list's storage, so making one
+	 * costs nothing, and changes made with <code>set</code> show through in both directions.
+	 * The view has a fixed length: it can't be added to or removed from.  Structural changes
+	 * to this list make the view meaningless.
+	 *
+	 * @param fromIndex The first position in the view.
+	 * @param toIndex The position just past the last position in the view.
+	 * @return The view.
+	 */
+	public CompactMonomerList view(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+		}
+		return new View(this, fromIndex, toIndex - fromIndex);
+	}
+
+	/**
+	 * A fixed-length window onto another compact list.
+	 */
+	static class View extends CompactMonomerList {
+		CompactMonomerList parent;
+		int offset;
+
+		View(CompactMonomerList parent, int offset, int size) {
+			super(parent.alphabet);
+			this.parent = parent;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		int numberAt(int index) {
+			return parent.numberAt(offset + index);
+		}
+
+		void setNumberAt(int index, int number) {
+			parent.setNumberAt(offset + index, number);
+		}
+
+		void ensureCapacity(int count) {
+			if (count > size) {
+				throw new UnsupportedOperationException("A view can't grow.");
+			}
+		}
+
+		public Object remove(int index) {
+			throw new UnsupportedOperationException("A view can't shrink.");
+		}
+
+		public void clear() {
+			throw new UnsupportedOperationException("A view can't shrink.");
+		}
+
+		public CompactMonomerList view(int fromIndex, int toIndex) {
+			if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+				throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+			}
+			// Don't stack views on views; go straight to the real storage.
+			return new View(parent, offset + fromIndex, toIndex - fromIndex);
+		}
+	}
+}
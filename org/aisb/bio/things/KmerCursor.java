@@ -0,0 +1,153 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.things;
+
+/**
+ * <p>
+ * This is a cursor that walks every k-mer (every run of <i>k</i> consecutive bases) of a
+ * nucleotide {@link Sequence}, handing back each one as a number instead of an object.
+ * It's the basis for k-mer counting and for seeding alignments.
+ * </p><p>
+ * Each base gets two bits, the same code the packed storage uses (A=0, C=1, G=2, T=3), and
+ * the first base of the k-mer ends up in the highest bits, so for example "GAT" is
+ * 10 00 11 = 35.  That means <i>k</i> can be at most 32.  The code is updated by shifting one
+ * base in and one base out each step, rather than being rebuilt, and the reverse complement
+ * is rolled along at the same time, so asking for the strand-neutral (canonical) code is free.
+ * </p><p>
+ * Nothing is allocated once the cursor has been made, so it can walk a whole genome without
+ * creating any garbage:
+ * </p>
+ * <pre>
+ * KmerCursor kmers = new KmerCursor(genome, 21);
+ * while (kmers.next()) {
+ *     count(kmers.getCanonicalCode());
+ * }
+ * </pre>
+ */
+public class KmerCursor {
+	public static final int MAX_K = 32;
+
+	Sequence sequence;
+	int k;
+	long mask;			// The low 2k bits.
+	int rcShift;		// Where a new base goes in the reverse complement.
+	long code;			// The current k-mer.
+	long rcCode;		// Its reverse complement.
+	int next;			// The position of the next base to shift in.
+	int filled;			// How many bases have been shifted in since the last reset.
+
+	/**
+	 * @param sequence The nucleotide sequence to walk.
+	 * @param k The length of each k-mer, from 1 to 32.
+	 */
+	public KmerCursor(Sequence sequence, int k) {
+		if (k < 1 || k > MAX_K) {
+			throw new IllegalArgumentException("k must be between 1 and " + MAX_K + ": " + k);
+		}
+		if (sequence.getAlphabet().getQuantity() != 4) {
+			throw new IllegalArgumentException("k-mer codes only work on nucleotide sequences.");
+		}
+		this.sequence = sequence;
+		this.k = k;
+		this.mask = k == MAX_K ? -1L : (1L << (2 * k)) - 1;
+		this.rcShift = 2 * (k - 1);
+		reset();
+	}
+
+	/**
+	 * Go back to the start of the sequence.
+	 */
+	public void reset() {
+		moveTo(0);
+	}
+
+	/**
+	 * Get ready to walk from a particular position.  The next call to <code>next</code>
+	 * lands on the k-mer starting there.
+	 *
+	 * @param position The position of the first base of the next k-mer.
+	 */
+	public void moveTo(int position) {
+		code = 0;
+		rcCode = 0;
+		next = position;
+		filled = 0;
+	}
+
+	/**
+	 * Move to the next k-mer.
+	 *
+	 * @return False if there are no more k-mers in the sequence.
+	 */
+	public boolean next() {
+		int size = sequence.size();
+		// Normally one base goes in, but right after a reset we need k of them.
+		do {
+			if (next >= size) {
+				return false;
+			}
+			int base = sequence.getIndex(next) - 1;
+			code = ((code << 2) | base) & mask;
+			rcCode = (rcCode >>> 2) | ((long) (3 - base) << rcShift);
+			next++;
+			filled++;
+		} while (filled < k);
+		return true;
+	}
+
+	/**
+	 * @return The position in the sequence of the first base of the current k-mer.
+	 */
+	public int getPosition() {
+		return next - k;
+	}
+
+	/**
+	 * @return The two-bit code of the current k-mer.
+	 */
+	public long getCode() {
+		return code;
+	}
+
+	/**
+	 * @return The two-bit code of the reverse complement of the current k-mer.
+	 */
+	public long getReverseComplementCode() {
+		return rcCode;
+	}
+
+	/**
+	 * Get the code of whichever strand's version of this k-mer is smaller.  A k-mer and
+	 * its reverse complement have the same canonical code.
+	 *
+	 * @return The canonical code.
+	 */
+	public long getCanonicalCode() {
+		// Compare as unsigned, so k=32 codes order the same way as shorter ones.
+		return (code ^ Long.MIN_VALUE) < (rcCode ^ Long.MIN_VALUE) ? code : rcCode;
+	}
+
+	/**
+	 * @return The length of each k-mer.
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * Turn a k-mer code back into letters.  This is meant for printing and debugging.
+	 *
+	 * @param code The code.
+	 * @param k The length of the k-mer.
+	 * @return The k-mer as a string, such as "GAT".
+	 */
+	public static String decode(long code, int k) {
+		char[] letters = new char[k];
+		for (int i = k - 1; i >= 0; i--) {
+			letters[i] = "ACGT".charAt((int) code & 3);
+			code >>>= 2;
+		}
+		return new String(letters);
+	}
+}
@@ -21,46 +21,62 @@ import java.util.Map;
  * implementations that work on them to make this blazingly efficient; for the moment we'll
  * concentrate on clarity instead of performance.
  * </p><p>
- * (This isn't working quite right when I've got multiple subclasses yet.  Works just fine when
- * there's only one subclass, and that's all we need for the first assignment, so I'll worry
- * about fixing that aspect of it later.  Might have to make a distinct object factory class.
- * I'll figure it out, but not by 2005-02-01.)
+ * Each subclass gets its own {@link Alphabet}, which holds all the lookup tables for that
+ * kind of monomer, so more than one subclass can be in use at the same time.  (This used to
+ * be one set of static tables shared by everybody, which only worked when there was just one
+ * subclass.)
  * </p>
  * @author Doug DeJulio
  */
 public class Monomer {
 	// Static fields.
-	static int quantity = 0;
-	static Monomer[] monomers = null;
-	static Map monomersByName = null;
-	static Map monomersByCode = null;
-	static boolean doneInitializing = false;
+	static Alphabet current = null;		// The most recently initialized alphabet.
+	static Class pendingType = null;	// The kind of monomer being initialized right now.
+	static Monomer[] pending = null;	// The monomers being initialized right now.
 	// Fields.
 	String name;
 	Character code;
 	int number;
 	Class type;
+	Alphabet alphabet;
 	Map properties = new HashMap();
 
 	/**
-	 * This should only be invoked by subclasses.
+	 * This should only be invoked by subclasses, from a synchronized <code>initialize()</code>
+	 * method.  If this kind of monomer has already been initialized, nothing is created; the
+	 * existing alphabet just becomes the current one again, and this returns false.
 	 * 
+	 * @param type The kind of monomer being initialized.
 	 * @param quantity The highest numbered element in this set of monomers.  Note that gaps
 	 * are allowed, but if present they'll cause inefficiencies in memory.
+	 * @return True if the caller should go on to add the monomers.
 	 */
-	static void initialize(int quantity) {
-		if (quantity == 0) {
-			// You can only do this once...
-			throw new IllegalStateException("Illegal attempt to initialize more than once.");
+	static synchronized boolean initialize(Class type, int quantity) {
+		if (pending != null) {
+			throw new IllegalStateException("Illegal attempt to initialize " + type + " while " + pendingType + " is being initialized.");
+		}
+		if (Alphabet.isInitialized(type)) {
+			// You can only do this once...  but asking twice is harmless.
+			current = Alphabet.forType(type);
+			return false;
 		}
-		Monomer.quantity = quantity;
-		monomers = new Monomer[quantity]; // Make an array to hold one of each monomer.
-		monomersByName = new HashMap(quantity); // Make a map of exactly the right size.
-		monomersByCode = new HashMap(quantity); // Ditto.
+		pendingType = type;
+		pending = new Monomer[quantity]; // Make an array to hold one of each monomer.
+		return true;
 	}
 	
-	static void finishInitializing() {
-		doneInitializing = true;
+	static synchronized void finishInitializing() {
+		Alphabet alphabet = new Alphabet(pendingType, pending);
+		for (int i=0; i < pending.length; i++) {
+			if (pending[i] != null) {
+				pending[i].alphabet = alphabet;
+			}
+		}
+		pending = null;
+		pendingType = null;
+		// Publishing the alphabet makes all of the above visible to other threads.
+		Alphabet.register(alphabet);
+		current = alphabet;
 	}
 	
 	/**
@@ -72,7 +88,7 @@ public class Monomer {
 	 */
 	public Monomer(Class type, String name, Character code, int number) {
 		// NEVER NEVER NEVER call this outside of classes that implement Monomers.
-		if (doneInitializing) {
+		if (pending == null || type != pendingType) {
 			throw new IllegalStateException("Illegal attempt to use constructor directly.");
 		}
 		this.type = type;	// What sort of thing am I?
@@ -85,17 +101,25 @@ public class Monomer {
 		addMonomer(type, name, new Character(code), number);
 	}
 	
-	static void addMonomer(Class type, String name, Character code, int number) {
+	static synchronized void addMonomer(Class type, String name, Character code, int number) {
 		// The numbers must all be positive integers.
 		if (number < 1) {
 			throw new IllegalArgumentException("The number must be a positive integer.");
 		}
 		Monomer newMonomer = new Monomer(type, name, code, number); // Make the object.
-		monomers[number-1] = newMonomer; // Stuff it in the array.
-		monomersByName.put(name, newMonomer); // Stuff it in the name map.
-		monomersByCode.put(code, newMonomer); // Stuff it in the code map.
+		pending[number-1] = newMonomer; // Stuff it in the array.
 	}
 
+	/**
+	 * Get the most recently initialized alphabet, for the static lookup methods below.
+	 */
+	static Alphabet current() {
+		Alphabet alphabet = current;
+		if (alphabet == null) {
+			throw new IllegalStateException("Monomers have not been initialized.");
+		}
+		return alphabet;
+	}
 
 	/**
 	 * Assign a named property to this monomer.  This can be used for things like
@@ -121,14 +145,20 @@ public class Monomer {
 
 	
 	/**
+	 * <p>
 	 * Given the name of a monomer, perhaps such as "tyrosine" or "fructose",
-	 * return the representation of that monomer. 
+	 * return the representation of that monomer.
+	 * </p><p>
+	 * This and the other static lookup methods here use whichever kind of monomer was
+	 * initialized most recently.  If more than one kind is in use, look monomers up through
+	 * the right {@link Alphabet} instead (or through the subclass, eg. <code>Nucleotide.getByName</code>).
+	 * </p>
 	 * 
 	 * @param name The name of the monomer.
 	 * @return The object representing the monomer.
 	 */
 	public static Monomer getByName(String name) {
-		return (Monomer) monomersByName.get(name);
+		return current().getByName(name);
 	}
 
 	/**
@@ -138,7 +168,7 @@ public class Monomer {
 	 * @return The object representing the monomer.
 	 */
 	public static Monomer getByCode(char code) {
-		return (Monomer) monomersByCode.get(new Character(code));
+		return current().getByCode(code);
 	}
 	
 	/**
@@ -148,7 +178,7 @@ public class Monomer {
 	 * @return The object representing the monomer.
 	 */
 	public static Monomer getByCode(Character code) {
-		return (Monomer) monomersByCode.get(code);
+		return current().getByCode(code.charValue());
 	}
 
 	/**
@@ -158,7 +188,7 @@ public class Monomer {
 	 * @return The object representing the monomer.
 	 */
 	public static Monomer getByNumber(int number) {
-		return monomers[number-1];
+		return current().getByNumber(number);
 	}
 	
 	/**
@@ -168,11 +198,19 @@ public class Monomer {
 	 * @return The object representing the monomer.
 	 */
 	public static Monomer getByNumber(Integer number) {
-		return monomers[number.intValue()-1];
+		return current().getByNumber(number.intValue());
 	}
 	
 	public static int getQuantity() {
-		return quantity;
+		Alphabet alphabet = current;
+		return alphabet == null ? 0 : alphabet.getQuantity();
+	}
+
+	/**
+	 * @return The alphabet this monomer belongs to.
+	 */
+	public Alphabet getAlphabet() {
+		return this.alphabet;
 	}
 
 	/**
@@ -5,8 +5,8 @@ package org.aisb.bio.things;
 
 /**
  * This subclass of monomer specifically encodes nucleotides.
- * You use it by for example calling AminoAcid.getByCode('A'), or
- * AminoAcid.getByNumber(1).
+ * You use it by for example calling Nucleotide.getByCode('A'), or
+ * Nucleotide.getByNumber(1).
  * 
  * @author Doug DeJulio
  *
@@ -24,10 +24,18 @@ public class Nucleotide extends Monomer {
 	}
 	
 	public static void initialize() {
+		synchronized (Monomer.class) {
+			initializeAlphabet();
+		}
+	}
+
+	private static void initializeAlphabet() {
 		// Save room for 4 entries.  We'll make the numeric code equal "1" for "A",
 		// "2" for "C", "3" for "G", and "4" for "T", for compatibility with our PSSM
 		// routine.
-		initialize(4);
+		if (!initialize(Nucleotide.class, 4)) {
+			return;	// Already done.
+		}
 		
 		// Now add all the nucleotides we'll use.
 		addMonomer(Nucleotide.class, "A", 'A', 1);
@@ -39,4 +47,43 @@ public class Nucleotide extends Monomer {
 		finishInitializing();
 	}
 
+	/**
+	 * @return The alphabet of all the nucleotides.
+	 */
+	public static Alphabet getNucleotideAlphabet() {
+		return Alphabet.forType(Nucleotide.class);
+	}
+
+	/**
+	 * Given the one-character code of a nucleotide, return the representation of it.
+	 * Unlike {@link Monomer#getByCode(char)}, this works no matter what other kinds of
+	 * monomer have been initialized since.
+	 * 
+	 * @param code The code for the nucleotide.
+	 * @return The object representing the nucleotide.
+	 */
+	public static Monomer getByCode(char code) {
+		return getNucleotideAlphabet().getByCode(code);
+	}
+
+	/**
+	 * Given the name of a nucleotide, return the representation of it.
+	 * 
+	 * @param name The name of the nucleotide.
+	 * @return The object representing the nucleotide.
+	 */
+	public static Monomer getByName(String name) {
+		return getNucleotideAlphabet().getByName(name);
+	}
+
+	/**
+	 * Given the numeric code for a nucleotide, return the representation of it.
+	 * 
+	 * @param number The code for the nucleotide.
+	 * @return The object representing the nucleotide.
+	 */
+	public static Monomer getByNumber(int number) {
+		return getNucleotideAlphabet().getByNumber(number);
+	}
+
 }
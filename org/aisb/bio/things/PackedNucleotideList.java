@@ -0,0 +1,106 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.things;
+
+/**
+ * <p>
+ * This is a {@link java.util.List} of nucleotides that only spends two bits on each base.
+ * The bases are packed 32 to a <code>long</code>, so a megabase genome costs about 250k
+ * of heap instead of the 4-8 megabytes of references an {@link java.util.ArrayList} needs.
+ * </p><p>
+ * Nothing outside of this class ever sees the bits.  Calling <code>get</code> hands back the
+ * same canonical {@link org.aisb.bio.things.Monomer} objects everything else uses, so code
+ * that compares monomers with "==" keeps working.  The two-bit code of a base is just its
+ * number minus one (A=0, C=1, G=2, T=3), for compatibility with the PSSM routines.
+ * </p><p>
+ * Appending and replacing bases is cheap.  Inserting or removing anywhere but the end has
+ * to shift every base after that point, just like it would in an ArrayList.
+ * </p>
+ */
+public class PackedNucleotideList extends CompactMonomerList {
+	static final int BASES_PER_WORD = 32;
+
+	long[] words;		// The packed bases.
+
+	/**
+	 * Make an empty list.
+	 */
+	public PackedNucleotideList() {
+		this(BASES_PER_WORD);
+	}
+
+	/**
+	 * Make an empty list with room for a given number of bases.
+	 *
+	 * @param capacity How many bases to make room for up front.
+	 */
+	public PackedNucleotideList(int capacity) {
+		super(Nucleotide.getNucleotideAlphabet());
+		if (monomers.length != 4) {
+			throw new IllegalStateException("Only an alphabet of four nucleotides can be packed: " + alphabet);
+		}
+		words = new long[wordsFor(capacity)];
+	}
+
+	/**
+	 * Make a list out of bases that are already packed, such as ones read back from a
+	 * {@link org.aisb.bio.tools.io.SequenceArchive}.  The list takes over the array; don't
+	 * change it afterwards.
+	 *
+	 * @param words The packed bases, 32 to a word, the first one in the lowest two bits.
+	 * @param size How many bases there are.
+	 */
+	public PackedNucleotideList(long[] words, int size) {
+		super(Nucleotide.getNucleotideAlphabet());
+		if (monomers.length != 4) {
+			throw new IllegalStateException("Only an alphabet of four nucleotides can be packed: " + alphabet);
+		}
+		if (size < 0 || wordsFor(size) > words.length) {
+			throw new IllegalArgumentException("There aren't " + size + " bases in " + words.length + " words.");
+		}
+		this.words = words;
+		this.size = size;
+	}
+
+	static int wordsFor(int count) {
+		return (count + BASES_PER_WORD - 1) / BASES_PER_WORD;
+	}
+
+	/**
+	 * Get the two-bit code at a position, without bounds checking.
+	 */
+	int codeAt(int index) {
+		return (int) (words[index >>> 5] >>> ((index & 31) << 1)) & 3;
+	}
+
+	/**
+	 * Set the two-bit code at a position, without bounds checking.
+	 */
+	void setCodeAt(int index, int code) {
+		int shift = (index & 31) << 1;
+		int word = index >>> 5;
+		words[word] = (words[word] & ~(3L << shift)) | ((long) code << shift);
+	}
+
+	int numberAt(int index) {
+		return codeAt(index) + 1;
+	}
+
+	void setNumberAt(int index, int number) {
+		setCodeAt(index, number - 1);
+	}
+
+	void ensureCapacity(int count) {
+		int needed = wordsFor(count);
+		if (needed > words.length) {
+			int newLength = words.length * 2;
+			if (newLength < needed) {
+				newLength = needed;
+			}
+			long[] newWords = new long[newLength];
+			System.arraycopy(words, 0, newWords, 0, words.length);
+			words = newWords;
+		}
+	}
+}
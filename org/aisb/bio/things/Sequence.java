@@ -4,7 +4,8 @@
 package org.aisb.bio.things;
 
 import java.io.StringWriter;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -37,7 +38,7 @@ import java.util.ListIterator;
  */
 public class Sequence implements List {
 	List data = new ArrayList();	// This contains the real data.
-	Method factory; // This turns a 'char' into an object that makes sense in this Sequence.
+	Alphabet alphabet; // This knows every monomer that makes sense in this Sequence.
 	String comment; // This is just some useful comment.  Not meaningful for the algorithms.
 	
 	// What is this a sequence *of*?
@@ -77,16 +78,118 @@ public class Sequence implements List {
 
 		// Remember it.
 		this.type = type;
+		// We'll look up the alphabet the first time we need it.
+		alphabet = null;
+	}
 
-		// Now, get the factory method we'll use.
-		Class[] arguments = { Character.class };
-		try {
-			factory = type.getMethod("getByCode", arguments);
-		} catch (Exception e) {
-			throw new IllegalStateException("Type not conforming to the Monomer contract: " + type);
+	/**
+	 * Get the alphabet of this sequence's type.  All monomers in this sequence should be
+	 * looked up through this, rather than through the static methods on {@link Monomer}.
+	 * 
+	 * @return The alphabet.
+	 */
+	public Alphabet getAlphabet() {
+		if (alphabet == null) {
+			if (type == null) {
+				throw new IllegalStateException("The type must be set before the alphabet is known.");
+			}
+			alphabet = Alphabet.forType(type);
 		}
+		return alphabet;
+	}
+
+	/**
+	 * Get the table that turns character codes into monomers of our type.
+	 */
+	Monomer[] getDecoder() {
+		return getAlphabet().getDecodingTable();
 	}
 	
+	/**
+	 * <p>
+	 * Switch between packed and unpacked storage.  A packed sequence stores each monomer's
+	 * number instead of a reference to the monomer.  Nucleotides take two bits each (see
+	 * {@link org.aisb.bio.things.PackedNucleotideList}), which is what you want for anything
+	 * genome-sized.  Anything else, such as amino acids, takes one byte each (see
+	 * {@link org.aisb.bio.things.ByteMonomerList}).  A packed sequence still behaves exactly
+	 * like any other <code>Sequence</code>, and still hands back the usual monomer objects.
+	 * </p><p>
+	 * The type must be set first.  Anything already in the sequence is carried over.
+	 * </p>
+	 *
+	 * @param packed True to use compact storage, false to use a plain list.
+	 */
+	public void setPacked(boolean packed) {
+		if (packed == isPacked()) {
+			return;
+		}
+		List newData;
+		if (packed) {
+			if (type == null) {
+				throw new IllegalStateException("The type must be set before a sequence can be packed.");
+			}
+			if (Nucleotide.class.isAssignableFrom(type)) {
+				newData = new PackedNucleotideList(data.size());
+			} else {
+				newData = new ByteMonomerList(type, data.size());
+			}
+		} else {
+			newData = new ArrayList(data.size());
+		}
+		newData.addAll(data);
+		data = newData;
+	}
+
+	/**
+	 * @return True if this sequence is using compact storage.
+	 */
+	public boolean isPacked() {
+		return data instanceof CompactMonomerList;
+	}
+
+	/**
+	 * Get the number (see {@link Monomer#getNumber()}) of the monomer at a given position.
+	 * On a packed sequence this reads the stored number directly and never touches the
+	 * monomer object, so it's the thing to call from inner loops.
+	 *
+	 * @param index The position in the sequence.
+	 * @return The number of the monomer at that position.
+	 */
+	public int getIndex(int index) {
+		if (data instanceof CompactMonomerList) {
+			return ((CompactMonomerList) data).getNumber(index);
+		}
+		return ((Monomer) data.get(index)).getNumber();
+	}
+
+	/**
+	 * <p>
+	 * Get part of this sequence as a sequence in its own right, without copying anything.
+	 * The result shares this sequence's storage, has the same type and comment, and can be
+	 * handed to anything that takes a <code>Sequence</code>.  On a packed sequence, it's packed too.
+	 * </p><p>
+	 * Like {@link java.util.List#subList(int, int)}, changes to the contents show through in
+	 * both directions, and changing the length of this sequence makes the subsequence meaningless.
+	 * A subsequence of a packed sequence has a fixed length.
+	 * </p>
+	 * 
+	 * @param fromIndex The first position to include.
+	 * @param toIndex The position just past the last one to include.
+	 * @return The subsequence.
+	 */
+	public Sequence subSequence(int fromIndex, int toIndex) {
+		Sequence result = new Sequence();
+		result.type = type;
+		result.alphabet = alphabet;
+		result.comment = comment;
+		if (data instanceof CompactMonomerList) {
+			result.data = ((CompactMonomerList) data).view(fromIndex, toIndex);
+		} else {
+			result.data = data.subList(fromIndex, toIndex);
+		}
+		return result;
+	}
+
 	/**
 	 * Return this sequence in FASTA format.
 	 * 
@@ -99,13 +202,13 @@ public class Sequence implements List {
 		int i;
 		for (i=0; i < this.size(); i++) {
 			if (i % linelength == 0) {
-				fasta.write('\r');
+				fasta.write('\n');
 			}
 			Monomer m = (Monomer) this.get(i);
 			fasta.write(m.getCode().charValue());
 		}
 		if (i % linelength != 0) {
-			fasta.write('\r');
+			fasta.write('\n');
 		}
 		return fasta.toString();
 	}
@@ -160,31 +263,155 @@ public class Sequence implements List {
 		appendFromString(input);
 	}
 	
+	/**
+	 * Parse a string and add the monomers it represents to the end of this sequence.
+	 * 
+	 * @param input The string of monomer codes.
+	 */
 	public void appendFromString(String input) {
-		int size = input.length();  // How long is this batch?
-		for (int i=0; i < size; i++) {
-			Object element = null;
-			Character code;
-			// Get the nth character in the string.
-			code = new Character(input.charAt(i));
-			// Turn it into an object of the appropriate type...
-			Object[] arguments = new Object[1];
-			arguments[0] = code;
-			try {
-				// By calling that objects "getByCode" method.
-				element = factory.invoke(type, arguments);
-			} catch (Exception e) {
-				throw new IllegalStateException("Type not honoring Monomer contract: " + type);
+		appendFrom(input, 0, input.length());
+	}
+
+	/**
+	 * <p>
+	 * Parse part of any sequence of characters and add the monomers it represents to the end
+	 * of this sequence.  Each character is turned into a monomer with a single lookup in a
+	 * 256-entry table belonging to this sequence's {@link Alphabet}, so this is about as fast as
+	 * parsing gets.
+	 * </p><p>
+	 * If a character isn't a valid code, an {@link IllegalArgumentException} is thrown giving
+	 * its position, counting from one at <code>start</code>.  Everything before it will
+	 * already have been added.
+	 * </p>
+	 * 
+	 * @param input The characters to parse.
+	 * @param start The position of the first character to parse.
+	 * @param end The position just past the last character to parse.
+	 */
+	public void appendFrom(CharSequence input, int start, int end) {
+		Monomer[] table = getDecoder();
+		prepareToAppend(end - start);
+		for (int i=start; i < end; i++) {
+			char code = input.charAt(i);
+			Monomer element = code < table.length ? table[code] : null;
+			if (element == null) {
+				throw invalidElement(i - start, code);
 			}
-			// If the letter isn't in our code list, element will be null here.
+			appendDecoded(element);
+		}
+	}
+
+	/**
+	 * Parse part of an array of characters.  See {@link #appendFrom(CharSequence, int, int)}.
+	 * 
+	 * @param input The characters to parse.
+	 * @param offset The position of the first character to parse.
+	 * @param length How many characters to parse.
+	 */
+	public void appendFrom(char[] input, int offset, int length) {
+		Monomer[] table = getDecoder();
+		prepareToAppend(length);
+		for (int i=0; i < length; i++) {
+			char code = input[offset + i];
+			Monomer element = code < table.length ? table[code] : null;
 			if (element == null) {
-				throw new IllegalArgumentException("Invalid element at position " + Integer.toString(i+1) + " : " + code);
+				throw invalidElement(i, code);
 			}
-			// Set put the object in the nth position of the list.
+			appendDecoded(element);
+		}
+	}
+
+	/**
+	 * Parse whatever is left in a buffer of characters, leaving the buffer's position
+	 * at its limit.  See {@link #appendFrom(CharSequence, int, int)}.
+	 * 
+	 * @param input The characters to parse.
+	 */
+	public void appendFrom(CharBuffer input) {
+		int length = input.remaining();
+		if (input.hasArray()) {
+			appendFrom(input.array(), input.arrayOffset() + input.position(), length);
+		} else {
+			appendFrom(input, 0, length);
+		}
+		input.position(input.limit());
+	}
+
+	/**
+	 * Parse part of an array of 8-bit (ASCII) character codes, as read straight from a file.
+	 * This skips decoding the bytes into characters at all.  See
+	 * {@link #appendFrom(CharSequence, int, int)}.
+	 * 
+	 * @param input The bytes to parse.
+	 * @param offset The position of the first byte to parse.
+	 * @param length How many bytes to parse.
+	 */
+	public void appendFrom(byte[] input, int offset, int length) {
+		Monomer[] table = getDecoder();
+		prepareToAppend(length);
+		for (int i=0; i < length; i++) {
+			int code = input[offset + i] & 0xff;
+			Monomer element = table[code];
+			if (element == null) {
+				throw invalidElement(i, (char) code);
+			}
+			appendDecoded(element);
+		}
+	}
+
+	/**
+	 * Parse whatever is left in a buffer of 8-bit character codes, leaving the buffer's
+	 * position at its limit.  This works on memory-mapped files as well as on ordinary
+	 * buffers.  See {@link #appendFrom(CharSequence, int, int)}.
+	 * 
+	 * @param input The bytes to parse.
+	 */
+	public void appendFrom(ByteBuffer input) {
+		int length = input.remaining();
+		if (input.hasArray()) {
+			appendFrom(input.array(), input.arrayOffset() + input.position(), length);
+		} else {
+			Monomer[] table = getDecoder();
+			prepareToAppend(length);
+			int start = input.position();
+			for (int i=0; i < length; i++) {
+				int code = input.get(start + i) & 0xff;
+				Monomer element = table[code];
+				if (element == null) {
+					throw invalidElement(i, (char) code);
+				}
+				appendDecoded(element);
+			}
+		}
+		input.position(input.limit());
+	}
+
+	/**
+	 * Make room for a batch of new monomers.
+	 */
+	void prepareToAppend(int count) {
+		if (data instanceof CompactMonomerList) {
+			CompactMonomerList compact = (CompactMonomerList) data;
+			compact.ensureCapacity(compact.size() + count);
+		} else if (data instanceof ArrayList) {
+			((ArrayList) data).ensureCapacity(data.size() + count);
+		}
+	}
+
+	/**
+	 * Add a monomer that came out of our own decoding table, so it doesn't need checking.
+	 */
+	void appendDecoded(Monomer element) {
+		if (data instanceof CompactMonomerList) {
+			((CompactMonomerList) data).appendNumber(element.number);
+		} else {
 			data.add(element);
-			
 		}
 	}
+
+	IllegalArgumentException invalidElement(int position, char code) {
+		return new IllegalArgumentException("Invalid element at position " + Integer.toString(position+1) + " : " + code);
+	}
 	
 	/* Now, some interesting constructors. */
 	
@@ -196,7 +423,28 @@ public class Sequence implements List {
 		this.setType(monomer);
 		this.loadFromString(sequence);
 	}
-	
+
+	public Sequence(Class monomer, String sequence, boolean packed) {
+		this.setType(monomer);
+		this.setPacked(packed);
+		this.loadFromString(sequence);
+	}
+
+	/**
+	 * Make a sequence around a compact list that's already been filled in.  The sequence
+	 * takes over the list.
+	 *
+	 * @param monomer The type of monomer.
+	 * @param data The monomers.
+	 */
+	public Sequence(Class monomer, CompactMonomerList data) {
+		this.setType(monomer);
+		if (data.getAlphabet() != getAlphabet()) {
+			throw new IllegalArgumentException("A list of " + data.getAlphabet() + " can't hold " + monomer.getName());
+		}
+		this.data = data;
+	}
+
 	/* And, an actually useful toString method. */
 	public String toString() {
 		StringBuffer buf = new StringBuffer();
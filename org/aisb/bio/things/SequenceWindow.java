@@ -0,0 +1,131 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.things;
+
+/**
+ * <p>
+ * This is a cursor that slides a fixed-width window along a {@link Sequence}.  It's meant for
+ * scanners (PSSM motif searches, say) that need to look at every window of a long sequence:
+ * one cursor is created up front and then moved along, so walking a multi-megabase sequence
+ * doesn't create any garbage at all.
+ * </p><p>
+ * Use it like an iterator, but without the objects:
+ * </p>
+ * <pre>
+ * SequenceWindow window = new SequenceWindow(genome, 16);
+ * while (window.next()) {
+ *     int first = window.getIndex(0);	// The number of the first monomer in the window.
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * If you really do want a window as a <code>Sequence</code>, see {@link Sequence#subSequence(int, int)}.
+ * </p>
+ */
+public class SequenceWindow {
+	Sequence sequence;
+	int width;
+	int step;
+	int start;
+
+	/**
+	 * Make a window that moves one position at a time.
+	 *
+	 * @param sequence The sequence to walk along.
+	 * @param width How many monomers the window covers.
+	 */
+	public SequenceWindow(Sequence sequence, int width) {
+		this(sequence, width, 1);
+	}
+
+	/**
+	 * @param sequence The sequence to walk along.
+	 * @param width How many monomers the window covers.
+	 * @param step How far the window moves each time.
+	 */
+	public SequenceWindow(Sequence sequence, int width, int step) {
+		if (width < 1 || step < 1) {
+			throw new IllegalArgumentException("The width and step must be positive integers.");
+		}
+		this.sequence = sequence;
+		this.width = width;
+		this.step = step;
+		reset();
+	}
+
+	/**
+	 * Go back to before the start of the sequence, so the next call to <code>next</code>
+	 * lands on the first window.
+	 */
+	public void reset() {
+		start = -step;
+	}
+
+	/**
+	 * Put the window at a particular position.
+	 *
+	 * @param position The first position the window should cover.
+	 */
+	public void moveTo(int position) {
+		if (position < 0 || position + width > sequence.size()) {
+			throw new IndexOutOfBoundsException("A window of width " + width + " doesn't fit at " + position);
+		}
+		start = position;
+	}
+
+	/**
+	 * Move to the next window.
+	 *
+	 * @return False if there are no more windows that fit in the sequence.
+	 */
+	public boolean next() {
+		int nextStart = start + step;
+		if (nextStart + width > sequence.size()) {
+			return false;
+		}
+		start = nextStart;
+		return true;
+	}
+
+	/**
+	 * @return The position in the sequence of the first monomer in the window.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return How many monomers the window covers.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return The sequence we're walking along.
+	 */
+	public Sequence getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the number of a monomer in the window.  See {@link Sequence#getIndex(int)}.
+	 *
+	 * @param offset The position within the window, from zero.
+	 * @return The monomer's number.
+	 */
+	public int getIndex(int offset) {
+		return sequence.getIndex(start + offset);
+	}
+
+	/**
+	 * Get a monomer in the window.
+	 *
+	 * @param offset The position within the window, from zero.
+	 * @return The monomer.
+	 */
+	public Monomer get(int offset) {
+		return (Monomer) sequence.get(start + offset);
+	}
+}
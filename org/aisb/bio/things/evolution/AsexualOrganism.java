@@ -118,6 +118,8 @@ public class AsexualOrganism {
 		// Start with parent's genotype.
 		Monomer[] babyGeneArray = (Monomer[]) genotype.toArray(new Monomer[0]);
 		Sequence babyGene = new Sequence(Nucleotide.class);
+		// Store it the same way the parent does.
+		babyGene.setPacked(genotype.isPacked());
 		for (int i=0; i < babyGeneArray.length; i++) {
 			// Mutate!
 			babyGene.add(mutator.mutate(babyGeneArray[i]));
@@ -61,8 +61,8 @@ public class Mutator {
 		number = number % 4;
 		// Add one to turn it back into a nucleotide number.
 		number++;
-		// Fetch the nucleotide!
-		newNucleotide = Monomer.getByNumber(number);
+		// Fetch the nucleotide, from the same alphabet we started with!
+		newNucleotide = oldNucleotide.getAlphabet().getByNumber(number);
 		return newNucleotide;
 	}
 	
@@ -0,0 +1,238 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is one alignment of two sequences, as an aligner found it: where it starts and ends
+ * in each sequence, its score, how many of its pairs are identical or similar, and the
+ * columns themselves.  The columns are kept as runs, the way a CIGAR string writes them:
+ * so many pairs (M), then so many residues of the first sequence against gaps (I), then so
+ * many of the second against gaps (D), and so on.  Along with references to the sequences,
+ * that's all there is, so even a long alignment takes a few bytes per gap.
+ * </p><p>
+ * Nothing is written out as text until it's asked for, and then it can be written straight
+ * to a <code>Writer</code> (see <code>write</code>), without making a string of the whole
+ * thing first.
+ * </p><p>
+ * An alignment never changes once it's made, so it can be shared by any number of threads.
+ * </p>
+ */
+public final class Alignment {
+	final Sequence first, second;
+	final int firstStart, firstEnd, secondStart, secondEnd;
+	final int score;
+	final int identities, similarities;
+	final int length;		// In columns.
+	final byte[] ops;		// The kind of each run: 'M', 'I' or 'D'.
+	final int[] runs;		// The length of each run.
+
+	/**
+	 * Make an alignment out of the path an aligner found.
+	 *
+	 * @param first The first sequence.
+	 * @param firstStart Where the alignment starts in the first sequence.
+	 * @param second The second sequence.
+	 * @param secondStart Where the alignment starts in the second sequence.
+	 * @param path The columns.
+	 * @param score The score.
+	 * @param table The scores of the pairs, for counting the similar ones.
+	 */
+	Alignment(Sequence first, int firstStart, Sequence second, int secondStart, AlignmentPath path, int score, ScoreTable table) {
+		this.first = first;
+		this.second = second;
+		this.firstStart = firstStart;
+		this.secondStart = secondStart;
+		this.score = score;
+		this.length = path.length();
+		int count = 0;
+		for (int k = 0; k < length; k++) {
+			if (k == 0 || path.get(k) != path.get(k - 1)) {
+				count++;
+			}
+		}
+		ops = new byte[count];
+		runs = new int[count];
+		int run = -1, i = firstStart, j = secondStart, same = 0, similar = 0;
+		for (int k = 0; k < length; k++) {
+			byte op = path.get(k);
+			if (k == 0 || op != ops[run]) {
+				ops[++run] = op;
+			}
+			runs[run]++;
+			if (op == AlignmentPath.MATCH) {
+				int a = first.getIndex(i), b = second.getIndex(j);
+				if (a == b) {
+					same++;
+				}
+				if (table.score(a, b) > 0) {
+					similar++;
+				}
+			}
+			if (op != AlignmentPath.DELETE) {
+				i++;
+			}
+			if (op != AlignmentPath.INSERT) {
+				j++;
+			}
+		}
+		firstEnd = i;
+		secondEnd = j;
+		identities = same;
+		similarities = similar;
+	}
+
+	/**
+	 * @return The first sequence.
+	 */
+	public Sequence getFirst() {
+		return first;
+	}
+	/**
+	 * @return The second sequence.
+	 */
+	public Sequence getSecond() {
+		return second;
+	}
+	/**
+	 * @return Where the alignment starts in the first sequence, counting from zero.
+	 */
+	public int getFirstStart() {
+		return firstStart;
+	}
+	/**
+	 * @return Where the alignment ends in the first sequence (one past the last residue).
+	 */
+	public int getFirstEnd() {
+		return firstEnd;
+	}
+	/**
+	 * @return Where the alignment starts in the second sequence, counting from zero.
+	 */
+	public int getSecondStart() {
+		return secondStart;
+	}
+	/**
+	 * @return Where the alignment ends in the second sequence (one past the last residue).
+	 */
+	public int getSecondEnd() {
+		return secondEnd;
+	}
+	/**
+	 * @return The score.
+	 */
+	public int getScore() {
+		return score;
+	}
+	/**
+	 * @return How many pairs have the same monomer on both sides.
+	 */
+	public int getIdentities() {
+		return identities;
+	}
+	/**
+	 * @return How many pairs score better than zero, which includes the identical ones
+	 * with any sensible comparator.
+	 */
+	public int getSimilarities() {
+		return similarities;
+	}
+	/**
+	 * @return The number of columns, gaps and all.
+	 */
+	public int getLength() {
+		return length;
+	}
+	/**
+	 * @return The fraction of the columns that are identical pairs.
+	 */
+	public double getIdentity() {
+		return length == 0 ? 0 : identities / (double) length;
+	}
+	/**
+	 * @return The number of runs of columns of one kind.
+	 */
+	public int getRunCount() {
+		return ops.length;
+	}
+	/**
+	 * @param run Which run, counting from zero.
+	 * @return What kind of run it is: 'M' for pairs, 'I' for residues of the first sequence
+	 * against gaps, or 'D' for residues of the second against gaps.
+	 */
+	public char getRunKind(int run) {
+		return (char) ops[run];
+	}
+	/**
+	 * @param run Which run, counting from zero.
+	 * @return How many columns long it is.
+	 */
+	public int getRunLength(int run) {
+		return runs[run];
+	}
+
+	/**
+	 * @return The columns as a CIGAR string, such as "12M3I40M", with the first sequence as the query.
+	 */
+	public String getCigar() {
+		StringBuffer cigar = new StringBuffer(ops.length * 4);
+		for (int k = 0; k < ops.length; k++) {
+			cigar.append(runs[k]).append((char) ops[k]);
+		}
+		return cigar.toString();
+	}
+
+	/**
+	 * Write the alignment out as two lines of letters, with '-' for gaps, each followed
+	 * by a newline.
+	 *
+	 * @param out Where to write it.
+	 * @throws IOException If the writer does.
+	 */
+	public void write(Writer out) throws IOException {
+		writeLine(out, true);
+		out.write('\n');
+		writeLine(out, false);
+		out.write('\n');
+	}
+
+	/**
+	 * Write out one side of the alignment.
+	 */
+	void writeLine(Writer out, boolean firstLine) throws IOException {
+		Sequence sequence = firstLine ? first : second;
+		int position = firstLine ? firstStart : secondStart;
+		byte gap = firstLine ? AlignmentPath.DELETE : AlignmentPath.INSERT;
+		for (int k = 0; k < ops.length; k++) {
+			for (int n = runs[k]; n > 0; n--) {
+				if (ops[k] == gap) {
+					out.write('-');
+				} else {
+					out.write(((Monomer) sequence.get(position++)).getCode().charValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The alignment as two lines of text, the same as <code>write</code> writes.
+	 */
+	public String toString() {
+		StringWriter out = new StringWriter(2 * length + 2);
+		try {
+			write(out);
+		} catch (IOException e) {
+			// A StringWriter doesn't do that.
+			throw new IllegalStateException(e.getMessage());
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.EventListener;
+
+/**
+ * <p>
+ * Something that wants to know how much work each alignment took: how many cells were
+ * worked out, how long that took, and how much memory the matrices needed.  Attach one to
+ * an aligner (see <code>Needleman.setAlignmentListener</code>) and it's told about every
+ * alignment the aligner does, once the alignment is done.
+ * </p><p>
+ * The listener is called on whatever thread did the alignment, so a listener shared by
+ * aligners on several threads has to look after itself.  It should be quick about it, too,
+ * since the aligner waits for it.
+ * </p>
+ */
+public interface AlignmentListener extends EventListener {
+	/**
+	 * An alignment has been done.
+	 *
+	 * @param metrics What it took.
+	 */
+	void alignmentFinished(AlignmentMetrics metrics);
+}
@@ -0,0 +1,107 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.EventObject;
+
+/**
+ * <p>
+ * What one alignment took, as told to an {@link AlignmentListener}.  The source of the event
+ * is the aligner that did it, so the sequences and the results can be had from there, as long
+ * as nothing else has been aligned with it since.
+ * </p><p>
+ * The time is split into the fill, which works out the scores, and the traceback, which works
+ * out which alignments have them.  Where an aligner does the two together (the linear space
+ * and banded modes of {@link Needleman}) or doesn't trace back at all (the score-only mode), it's
+ * all counted as fill.  A cell is one entry of the matrix, whichever of the scores in it were
+ * worked out; the linear space mode works out most of them twice, and says so.
+ * </p>
+ */
+public class AlignmentMetrics extends EventObject {
+	private static final long serialVersionUID = 1L;
+
+	String method;
+	int firstLength, secondLength;
+	long cells;
+	long fillNanos, tracebackNanos;
+	long peakBytes;
+
+	/**
+	 * @param source The aligner.
+	 * @param method How it went about it, for instance "full matrix" or "banded".
+	 * @param firstLength The length of the first sequence.
+	 * @param secondLength The length of the second sequence.
+	 * @param cells How many cells were worked out.
+	 * @param fillNanos How long the fill took, in nanoseconds.
+	 * @param tracebackNanos How long the traceback took, in nanoseconds.
+	 * @param peakBytes The most memory the matrices and rows took at once.
+	 */
+	public AlignmentMetrics(Object source, String method, int firstLength, int secondLength,
+			long cells, long fillNanos, long tracebackNanos, long peakBytes) {
+		super(source);
+		this.method = method;
+		this.firstLength = firstLength;
+		this.secondLength = secondLength;
+		this.cells = cells;
+		this.fillNanos = fillNanos;
+		this.tracebackNanos = tracebackNanos;
+		this.peakBytes = peakBytes;
+	}
+
+	/**
+	 * @return How the aligner went about it.
+	 */
+	public String getMethod() {
+		return method;
+	}
+	/**
+	 * @return The length of the first sequence.
+	 */
+	public int getFirstLength() {
+		return firstLength;
+	}
+	/**
+	 * @return The length of the second sequence.
+	 */
+	public int getSecondLength() {
+		return secondLength;
+	}
+	/**
+	 * @return How many cells of the matrix were worked out, counting any worked out twice twice.
+	 */
+	public long getCells() {
+		return cells;
+	}
+	/**
+	 * @return How long the fill took, in nanoseconds.
+	 */
+	public long getFillNanos() {
+		return fillNanos;
+	}
+	/**
+	 * @return How long the traceback took, in nanoseconds.
+	 */
+	public long getTracebackNanos() {
+		return tracebackNanos;
+	}
+	/**
+	 * @return The most memory the matrices and rows took at once, in bytes.  It's worked out
+	 * from the sizes of the arrays, not measured, so it leaves out the sequences and the
+	 * alignments themselves.
+	 */
+	public long getPeakBytes() {
+		return peakBytes;
+	}
+	/**
+	 * @return How fast the fill went, in billions of cells a second.
+	 */
+	public double getGcups() {
+		return fillNanos == 0 ? 0 : cells / (double) fillNanos;
+	}
+
+	public String toString() {
+		return "[AlignmentMetrics: " + method + ", " + firstLength + "x" + secondLength + ", " + cells + " cells, fill "
+				+ fillNanos + "ns, traceback " + tracebackNanos + "ns, " + peakBytes + " bytes, " + getGcups() + " GCUPS]";
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+/**
+ * <p>
+ * This is one path through an alignment, as the list of its columns from left to right.
+ * Each column is either a pair of residues (MATCH, whether or not they're the same),
+ * a residue of the first sequence across from a gap (INSERT), or a residue of the second
+ * sequence across from a gap (DELETE).  These are the same letters a CIGAR string uses,
+ * with the first sequence as the query.
+ * </p><p>
+ * It takes one byte a column, which is a lot less than the matrices it replaces.  It's
+ * only scratch space for the aligners; what they hand out is an {@link Alignment}.
+ * </p>
+ */
+class AlignmentPath {
+	static final byte MATCH = 'M';
+	static final byte INSERT = 'I';
+	static final byte DELETE = 'D';
+
+	byte[] ops = new byte[64];
+	int length = 0;
+
+	void add(byte op) {
+		if (length == ops.length) {
+			byte[] newOps = new byte[length * 2];
+			System.arraycopy(ops, 0, newOps, 0, length);
+			ops = newOps;
+		}
+		ops[length++] = op;
+	}
+
+	/**
+	 * Add columns that were collected backwards, as they are during a traceback.
+	 */
+	void addReversed(byte[] reversed, int from, int to) {
+		for (int k = to - 1; k >= from; k--) {
+			add(reversed[k]);
+		}
+	}
+
+	void clear() {
+		length = 0;
+	}
+
+	int length() {
+		return length;
+	}
+
+	byte get(int column) {
+		return ops[column];
+	}
+}
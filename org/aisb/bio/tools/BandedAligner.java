@@ -0,0 +1,178 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Alphabet;
+
+/**
+ * <p>
+ * This finds the best global alignment that stays within a band around the diagonal of the
+ * matrix.  For two close relatives, the best alignment never wanders far from the diagonal,
+ * so there's no point filling in the rest: the time and memory go up with the length times
+ * the width of the band, instead of the product of the lengths.
+ * </p><p>
+ * The band runs from the main diagonal to the diagonal through the far corner (they're the
+ * same if the sequences are the same length), plus <code>width</code> cells on either side.
+ * If the alignment it finds ever touches the side of the band, a wider band might well have
+ * found a better one, and <code>isEdgeTouched</code> says so.  If it doesn't, it's very
+ * likely the best alignment there is, though that can't be promised: a much better alignment
+ * could be lurking on some diagonal far away, the way it would if one sequence had a big chunk
+ * cut off one end and stuck on the other.
+ * </p><p>
+ * It scores alignments exactly the way {@link Needleman} does.  The state is only scratch
+ * space, so an instance can be reused, but not shared between threads.
+ * </p>
+ */
+class BandedAligner {
+	static final int NEG = Integer.MIN_VALUE / 4;	// Minus infinity, with room to subtract from.
+
+	ScoringScheme scheme;
+	Alphabet alphabet;
+	boolean edgeTouched;
+	long cells;			// How many cells the last alignment worked out...
+	long bytes;			// ...and how many bytes of flags and rows it took.
+
+	BandedAligner(ScoringScheme scheme, Alphabet alphabet) {
+		this.scheme = scheme;
+		this.alphabet = alphabet;
+	}
+
+	/**
+	 * Align two sequences within a band.
+	 *
+	 * @param a The monomer numbers of the first sequence.
+	 * @param b The monomer numbers of the second sequence.
+	 * @param width How far the band reaches past the diagonals on either side.
+	 * @param path Where to put the alignment.
+	 * @return The score.
+	 */
+	int align(int[] a, int[] b, int width, AlignmentPath path) {
+		int n = a.length, m = b.length;
+		int open = scheme.getGapOpen(), extend = scheme.getGapExtension();
+		int[][] table = scheme.tableFor(alphabet);
+		int stride = Math.min(m + 1, 2 * width + Math.abs(m - n) + 1);
+		// Each flag byte says where the M (bits 0-1), X (bit 2) and Y (bit 3) scores came from:
+		// M from M, X or Y, and X and Y either from M (bit clear) or their own kind (bit set).
+		byte[] flags = new byte[(n + 1) * stride];
+		int[] lows = new int[n + 1];
+		int[] highs = new int[n + 1];
+		int[] prevM = new int[m + 2], prevX = new int[m + 2], prevY = new int[m + 2];
+		int[] curM = new int[m + 2], curX = new int[m + 2], curY = new int[m + 2];
+		bytes = flags.length + 4L * (2 * (n + 1) + 6 * (m + 2)) + n + m;
+		cells = 0;
+		for (int i = 0; i <= n; i++) {
+			int low = Math.max(0, Math.min(i, i + m - n) - width);
+			int high = Math.min(m, Math.max(i, i + m - n) + width);
+			lows[i] = low;
+			highs[i] = high;
+			cells += high - low + 1;
+			int[] row = i > 0 ? table[a[i - 1]] : null;
+			int base = i * stride - low;
+			int leftM = NEG, leftY = NEG;
+			for (int j = low; j <= high; j++) {
+				int m0, x0, y0, flag = 0;
+				if (i == 0 && j == 0) {
+					m0 = 0;
+					x0 = NEG;
+					y0 = NEG;
+				} else {
+					m0 = NEG;
+					if (i > 0 && j > 0) {
+						int diagonal = prevM[j - 1], from = 0;
+						if (prevX[j - 1] > diagonal) {
+							diagonal = prevX[j - 1];
+							from = 1;
+						}
+						if (prevY[j - 1] > diagonal) {
+							diagonal = prevY[j - 1];
+							from = 2;
+						}
+						m0 = row[b[j - 1]] + diagonal;
+						flag = from;
+					}
+					x0 = NEG;
+					if (i > 0) {
+						x0 = prevM[j] - open;
+						if (prevX[j] - extend > x0) {
+							x0 = prevX[j] - extend;
+							flag |= 4;
+						}
+					}
+					y0 = leftM - open;
+					if (leftY - extend > y0) {
+						y0 = leftY - extend;
+						flag |= 8;
+					}
+				}
+				flags[base + j] = (byte) flag;
+				curM[j] = m0;
+				curX[j] = x0;
+				curY[j] = y0;
+				leftM = m0;
+				leftY = y0;
+			}
+			// The cells just past the band have to look like they're not there to the next row.
+			if (low > 0) {
+				curM[low - 1] = NEG;
+				curX[low - 1] = NEG;
+				curY[low - 1] = NEG;
+			}
+			curM[high + 1] = NEG;
+			curX[high + 1] = NEG;
+			curY[high + 1] = NEG;
+			int[] swap = prevM;
+			prevM = curM;
+			curM = swap;
+			swap = prevX;
+			prevX = curX;
+			curX = swap;
+			swap = prevY;
+			prevY = curY;
+			curY = swap;
+		}
+		// Pick the end, and trace back from it.
+		int kind = 0, score = prevM[m];
+		if (prevX[m] > score) {
+			kind = 1;
+			score = prevX[m];
+		}
+		if (prevY[m] > score) {
+			kind = 2;
+			score = prevY[m];
+		}
+		byte[] reversed = new byte[n + m];
+		int i = n, j = m, count = 0;
+		edgeTouched = false;
+		while (i > 0 || j > 0) {
+			if ((j == lows[i] && j > 0) || (j == highs[i] && j < m)) {
+				edgeTouched = true;
+			}
+			int flag = flags[i * stride + j - lows[i]];
+			if (kind == 0) {
+				reversed[count++] = AlignmentPath.MATCH;
+				kind = flag & 3;
+				i--;
+				j--;
+			} else if (kind == 1) {
+				reversed[count++] = AlignmentPath.INSERT;
+				kind = (flag & 4) != 0 ? 1 : 0;
+				i--;
+			} else {
+				reversed[count++] = AlignmentPath.DELETE;
+				kind = (flag & 8) != 0 ? 2 : 0;
+				j--;
+			}
+		}
+		path.clear();
+		path.addReversed(reversed, 0, count);
+		return score;
+	}
+
+	/**
+	 * @return True if the last alignment touched the side of the band.
+	 */
+	boolean isEdgeTouched() {
+		return edgeTouched;
+	}
+}
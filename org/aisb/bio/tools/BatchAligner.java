@@ -0,0 +1,399 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This aligns lots of pairs of sequences at once: every query against every target, or, if
+ * there are no targets, every query against every other query.  It's a command bean, like the
+ * aligners: set the sequences and the scoring scheme, call <code>execute</code>, and then
+ * use it as an iterator to get the results.  They come back in whatever order they're
+ * finished in, as soon as they're finished, so there's no waiting for the whole batch.
+ * </p><p>
+ * The work is shared out a query at a time among a fixed number of threads, the queries
+ * with the most work first, so no thread gets stuck with a big one at the end while the
+ * others sit idle.  Each thread keeps its own aligner and scratch space, and reuses them for
+ * every pair it does.  Only so many results are held waiting to be picked up; if nobody
+ * picks them up, the threads wait, so a big batch doesn't fill up the memory.
+ * </p><p>
+ * Global alignments are scored the way {@link Needleman} does it (in linear space), and local
+ * ones the way {@link SmithWaterman} does it.
+ * </p>
+ */
+public class BatchAligner implements Iterator {
+	static final int QUEUE_SIZE = 1024;	// Results held waiting to be picked up.
+
+	List queries;
+	List targets;	// If null, the queries are aligned against each other.
+	ScoringScheme scheme;
+	boolean local = false;
+	boolean alignments = false;	// Keep the alignments themselves, not just the scores.
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	BlockingQueue results;
+	Worker[] workers;
+	int running;	// Workers that haven't said they're done yet.
+	Object next;	// The next result, if hasNext has already fetched it.
+
+	/**
+	 * @param scheme How to score alignments.
+	 */
+	public BatchAligner(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Start aligning.  The results are available through <code>next</code> as soon as they're done.
+	 */
+	public void execute() {
+		if (queries == null || scheme == null) {
+			throw new IllegalStateException("Cannot execute until the queries and scoring scheme have been set.");
+		}
+		if (results != null && running > 0) {
+			throw new IllegalStateException("The last batch hasn't finished yet.");
+		}
+		final Sequence[] query = (Sequence[]) queries.toArray(new Sequence[queries.size()]);
+		final Sequence[] target = targets == null ? query : (Sequence[]) targets.toArray(new Sequence[targets.size()]);
+		// Each query is one piece of work.  Work out how much work it is, and do the biggest first.
+		long[] totals = new long[target.length + 1];
+		for (int j = target.length - 1; j >= 0; j--) {
+			totals[j] = totals[j + 1] + target[j].size();
+		}
+		Integer[] order = new Integer[query.length];
+		final long[] work = new long[query.length];
+		for (int i=0; i < query.length; i++) {
+			order[i] = Integer.valueOf(i);
+			work[i] = query[i].size() * totals[targets == null ? i + 1 : 0];
+		}
+		Arrays.sort(order, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				long w1 = work[((Integer) o1).intValue()], w2 = work[((Integer) o2).intValue()];
+				return w1 > w2 ? -1 : w1 < w2 ? 1 : 0;
+			}
+		});
+		int[] tasks = new int[order.length];
+		for (int i=0; i < order.length; i++) {
+			tasks[i] = order[i].intValue();
+		}
+		results = new ArrayBlockingQueue(QUEUE_SIZE);
+		next = null;
+		int[] nextTask = new int[1];
+		workers = new Worker[threads];
+		running = threads;
+		for (int i=0; i < threads; i++) {
+			workers[i] = new Worker(query, target, tasks, nextTask);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Stop aligning, and throw away any results that haven't been picked up.
+	 */
+	public void cancel() {
+		if (workers == null) {
+			return;
+		}
+		for (int i=0; i < workers.length; i++) {
+			workers[i].interrupt();
+		}
+		for (int i=0; i < workers.length; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		results.clear();
+		running = 0;
+		next = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		if (results == null) {
+			throw new IllegalStateException("Cannot get results until the batch has been started.");
+		}
+		while (next == null && running > 0) {
+			Object item;
+			try {
+				item = results.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for alignments.");
+			}
+			if (item instanceof Worker) {
+				// A worker has run out of work.
+				running--;
+				Throwable problem = ((Worker) item).problem;
+				if (problem != null) {
+					cancel();
+					if (problem instanceof RuntimeException) {
+						throw (RuntimeException) problem;
+					}
+					throw (Error) problem;
+				}
+			} else {
+				next = item;
+			}
+		}
+		return next != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object result = next;
+		next = null;
+		return result;
+	}
+
+	/**
+	 * @return The next result, or null if there aren't any more.
+	 */
+	public Result nextResult() {
+		return hasNext() ? (Result) next() : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Results can't be removed.");
+	}
+
+	/**
+	 * This aligns queries until there aren't any left.
+	 */
+	class Worker extends Thread {
+		Sequence[] query, target;
+		int[] tasks;
+		int[] nextTask;		// Shared by every worker.
+		Throwable problem;
+		// The scratch space, kept from one pair to the next.
+		LinearSpaceAligner globalAligner;
+		SmithWaterman localAligner;
+		AlignmentPath path = new AlignmentPath();
+		int[] first = new int[0], second = new int[0];	// The monomer numbers of the pair.
+
+		Worker(Sequence[] query, Sequence[] target, int[] tasks, int[] nextTask) {
+			this.query = query;
+			this.target = target;
+			this.tasks = tasks;
+			this.nextTask = nextTask;
+		}
+
+		int takeTask() {
+			synchronized (nextTask) {
+				if (nextTask[0] >= tasks.length) {
+					return -1;
+				}
+				return tasks[nextTask[0]++];
+			}
+		}
+
+		public void run() {
+			try {
+				int i;
+				while ((i = takeTask()) >= 0) {
+					first = SequenceAligner.numbers(query[i], first);
+					for (int j = targets == null ? i + 1 : 0; j < target.length; j++) {
+						results.put(align(i, j));
+					}
+				}
+			} catch (InterruptedException e) {
+				// We've been cancelled.
+				return;
+			} catch (Throwable t) {
+				problem = t;
+			}
+			try {
+				results.put(this);
+			} catch (InterruptedException e) {
+				// We've been cancelled, so nobody's listening anyway.
+			}
+		}
+
+		Result align(int i, int j) {
+			Sequence s1 = query[i], s2 = target[j];
+			if (local) {
+				if (localAligner == null) {
+					localAligner = new SmithWaterman(scheme);
+				}
+				localAligner.setFirstSequence(s1);
+				localAligner.setSecondSequence(s2);
+				localAligner.execute();
+				Alignment alignment = alignments ? localAligner.getBestAlignment() : null;
+				return new Result(i, s1, j, s2, localAligner.getBestAlignmentScore(), alignment);
+			}
+			Alphabet alphabet = s1.getAlphabet();
+			if (globalAligner == null || globalAligner.alphabet != alphabet) {
+				globalAligner = new LinearSpaceAligner(scheme, alphabet);
+			}
+			second = SequenceAligner.numbers(s2, second);
+			if (!alignments) {
+				return new Result(i, s1, j, s2, globalAligner.score(first, s1.size(), second, s2.size()), null);
+			}
+			int score = globalAligner.align(first, s1.size(), second, s2.size(), path);
+			return new Result(i, s1, j, s2, score, new Alignment(s1, 0, s2, 0, path, score, scheme.getScoreTable(alphabet)));
+		}
+	}
+
+	/**
+	 * This is the result of aligning one pair.
+	 */
+	public static class Result {
+		int queryIndex, targetIndex;
+		Sequence query, target;
+		int score;
+		Alignment alignment;
+
+		Result(int queryIndex, Sequence query, int targetIndex, Sequence target, int score, Alignment alignment) {
+			this.queryIndex = queryIndex;
+			this.query = query;
+			this.targetIndex = targetIndex;
+			this.target = target;
+			this.score = score;
+			this.alignment = alignment;
+		}
+
+		/**
+		 * @return Where the query is in the list of queries.
+		 */
+		public int getQueryIndex() {
+			return queryIndex;
+		}
+		/**
+		 * @return Where the target is in the list of targets (or of queries, if there are no targets).
+		 */
+		public int getTargetIndex() {
+			return targetIndex;
+		}
+		/**
+		 * @return The query.
+		 */
+		public Sequence getQuery() {
+			return query;
+		}
+		/**
+		 * @return The target.
+		 */
+		public Sequence getTarget() {
+			return target;
+		}
+		/**
+		 * @return The best alignment score.
+		 */
+		public int getScore() {
+			return score;
+		}
+		/**
+		 * @return The best alignment, or null if alignments weren't kept.
+		 */
+		public Alignment getAlignment() {
+			return alignment;
+		}
+		public String toString() {
+			return "[Result: query " + queryIndex + ", target " + targetIndex + ", score " + score + "]";
+		}
+	}
+
+	/**
+	 * @return The queries.
+	 */
+	public List getQueries() {
+		return queries;
+	}
+	/**
+	 * @param queries The queries (a collection of {@link Sequence}).
+	 */
+	public void setQueries(Collection queries) {
+		this.queries = queries == null ? null : new ArrayList(queries);
+	}
+	/**
+	 * @return The targets, or null if the queries are aligned against each other.
+	 */
+	public List getTargets() {
+		return targets;
+	}
+	/**
+	 * @param targets The targets (a collection of {@link Sequence}), or null to align the
+	 * queries against each other (each pair once).
+	 */
+	public void setTargets(Collection targets) {
+		this.targets = targets == null ? null : new ArrayList(targets);
+	}
+	/**
+	 * @return The scoring scheme.
+	 */
+	public ScoringScheme getScoringScheme() {
+		return scheme;
+	}
+	/**
+	 * @param scheme The scoring scheme.
+	 */
+	public void setScoringScheme(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+	/**
+	 * @return True for local alignment, false for global.
+	 */
+	public boolean isLocal() {
+		return local;
+	}
+	/**
+	 * @param local True for local alignment, false for global (the default).
+	 */
+	public void setLocal(boolean local) {
+		this.local = local;
+	}
+	/**
+	 * @return True if the alignments themselves are kept, not just the scores.
+	 */
+	public boolean isAlignments() {
+		return alignments;
+	}
+	/**
+	 * @param alignments True to keep the alignments themselves, not just the scores.  It's
+	 * off by default, since the scores are often all that's wanted, and they're much cheaper.
+	 */
+	public void setAlignments(boolean alignments) {
+		this.alignments = alignments;
+	}
+	/**
+	 * @return How many threads to align with.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * @param threads How many threads to align with.  The default is one per processor.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be a positive integer.");
+		}
+		this.threads = threads;
+	}
+}
@@ -0,0 +1,505 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This searches a database of sequences (usually proteins) for the ones most like a query,
+ * the way BLAST does, without aligning the query against every one of them.
+ * </p><p>
+ * First, every word of the query gets a neighborhood: all the words that score at least
+ * <code>threshold</code> against it, which includes the word itself as long as it scores that
+ * much.  Then every occurrence of every neighborhood word in the database is looked up in a
+ * {@link WordIndex}.  Each of those is a hit, on some diagonal of the matrix of the query
+ * against the database.  A lone hit doesn't mean much, so nothing happens until a diagonal
+ * gets a second hit, not overlapping the first and within <code>window</code> of it.  Then the
+ * hit is extended both ways along the diagonal, without gaps, until the score drops more than
+ * <code>xDrop</code> below the best it's been.  If the best score of that reaches
+ * <code>gapTrigger</code>, the database sequence is promising enough to align properly, so
+ * the query is aligned against it with {@link SmithWaterman}, gaps and all.  The best
+ * <code>maxHits</code> of those are kept, in order, best first.
+ * </p><p>
+ * The database is gone through in blocks of whole sequences, so the bookkeeping for the
+ * diagonals only needs to be as big as a block.  Almost all of the database is never looked at
+ * except for the words that hit, and almost all of the hits go nowhere, so a search takes
+ * time in proportion to the number of hits, not the size of the database.
+ * </p><p>
+ * The defaults are BLAST's for proteins, which assume a similarity matrix scaled like
+ * BLOSUM62 and words of three.  This is a command bean: set the database, query and scoring
+ * scheme, call <code>execute</code>, and then look at the hits.  It keeps scratch space, so
+ * it can't be shared between threads, but any number of them can search the same index.
+ * </p>
+ */
+public class DatabaseSearch {
+	static final int BLOCK_SIZE = 1 << 20;		// How many monomers of the database to go through at a time.
+
+	// The best hits first, and the first in the database first if they're tied.
+	static final Comparator BEST_FIRST = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			Hit h1 = (Hit) o1, h2 = (Hit) o2;
+			if (h1.score != h2.score) {
+				return h1.score > h2.score ? -1 : 1;
+			}
+			return h1.index < h2.index ? -1 : h1.index > h2.index ? 1 : 0;
+		}
+	};
+
+	WordIndex database;
+	Sequence query;
+	ScoringScheme scheme;
+	int threshold = 11;		// The lowest score of a neighborhood word.
+	int window = 40;		// The furthest apart two hits can be on a diagonal.
+	int xDrop = 16;			// How far below the best the ungapped score can drop.
+	int gapTrigger = 41;	// The ungapped score worth doing a gapped alignment for.
+	int maxHits = 50;
+
+	// The results.
+	List hits = Collections.EMPTY_LIST;
+	long wordHits, extensions, gappedExtensions;
+
+	// Scratch space, kept from one search to the next.
+	int[] lastHit = new int[0];		// For each diagonal, one more than the query position of its last hit.
+	int[] extendedTo = new int[0];	// For each diagonal, how far along the query it has been extended.
+	SmithWaterman aligner = new SmithWaterman(null);
+
+	/**
+	 * @param database The database to search.
+	 * @param scheme How to score alignments.
+	 */
+	public DatabaseSearch(WordIndex database, ScoringScheme scheme) {
+		this.database = database;
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Search the database for the query.
+	 */
+	public void execute() {
+		if (database == null || query == null || scheme == null) {
+			throw new IllegalStateException("Cannot execute until the database, query and scoring scheme have been set.");
+		}
+		if (query.getAlphabet() != database.getAlphabet()) {
+			throw new IllegalArgumentException("The query isn't in the same alphabet as the database.");
+		}
+		wordHits = 0;
+		extensions = 0;
+		gappedExtensions = 0;
+		int[] q = SequenceAligner.numbers(query);
+		int[][] table = scheme.tableFor(database.getAlphabet());
+
+		// Work out the neighborhood of each word of the query.
+		int w = database.getWordSize(), m = q.length;
+		int[] neighborStarts = new int[Math.max(m - w + 1, 0) + 1];
+		int[] neighbors = neighborhoods(q, table, neighborStarts);
+
+		// Go through the database a block at a time, finding the promising sequences.
+		int[] best = new int[database.size()];		// The best ungapped score of each sequence so far.
+		int[] candidates = new int[16];
+		int candidateCount = 0;
+		int[] cursors = new int[neighbors.length];	// Where each neighbor is in its list of positions.
+		for (int e = 0; e < neighbors.length; e++) {
+			cursors[e] = database.wordStarts[neighbors[e]];
+		}
+		byte[] residues = database.residues;
+		int[] positions = database.positions;
+		for (int first = 0; first < database.size(); ) {
+			// Take whole sequences until the block is big enough.
+			int last = first + 1;
+			while (last < database.size() && database.starts[last + 1] - database.starts[first] <= BLOCK_SIZE) {
+				last++;
+			}
+			int blockStart = database.starts[first], blockEnd = database.starts[last];
+			int diagonals = blockEnd - blockStart + m + 1;
+			if (lastHit.length < diagonals) {
+				lastHit = new int[diagonals];
+				extendedTo = new int[diagonals];
+			} else {
+				Arrays.fill(lastHit, 0, diagonals, 0);
+				Arrays.fill(extendedTo, 0, diagonals, 0);
+			}
+			// Take the query positions in order, so each diagonal's hits come along in order.
+			for (int p = 0; p + 1 < neighborStarts.length; p++) {
+				for (int e = neighborStarts[p]; e < neighborStarts[p + 1]; e++) {
+					int end = database.wordStarts[neighbors[e] + 1];
+					int cursor = cursors[e];
+					for (; cursor < end && positions[cursor] < blockEnd; cursor++) {
+						int s = positions[cursor];
+						int d = s - blockStart - p + m;
+						wordHits++;
+						if (p < extendedTo[d]) {
+							continue;	// It's inside an extension already done.
+						}
+						int previous = lastHit[d] - 1;
+						if (previous < 0 || p - previous > window) {
+							lastHit[d] = p + 1;
+							continue;
+						}
+						if (p - previous < w) {
+							continue;	// It overlaps the last one, so it doesn't count as a second hit.
+						}
+						// A block's diagonals run on from one sequence into the next, so the last
+						// hit might not have been in this one.  If it wasn't, this is a first hit.
+						int sequence = database.sequenceAt(s);
+						if (s - (p - previous) < database.starts[sequence]) {
+							lastHit[d] = p + 1;
+							continue;
+						}
+						// Two hits: extend them without gaps.
+						extensions++;
+						int score = 0;
+						for (int k = 0; k < w; k++) {
+							score += table[q[p + k]][residues[s + k]];
+						}
+						int right = score, rightEnd = p + w;
+						for (int i = p + w, j = s + w, sum = score; i < m && residues[j] != 0; i++, j++) {
+							sum += table[q[i]][residues[j]];
+							if (sum > right) {
+								right = sum;
+								rightEnd = i + 1;
+							} else if (right - sum > xDrop) {
+								break;
+							}
+						}
+						int left = 0;
+						for (int i = p - 1, j = s - 1, sum = 0; i >= 0 && residues[j] != 0; i--, j--) {
+							sum += table[q[i]][residues[j]];
+							if (sum > left) {
+								left = sum;
+							} else if (left - sum > xDrop) {
+								break;
+							}
+						}
+						extendedTo[d] = rightEnd;
+						lastHit[d] = 0;
+						score = right + left;
+						if (score >= gapTrigger) {
+							if (best[sequence] == 0) {
+								if (candidateCount == candidates.length) {
+									int[] more = new int[candidates.length * 2];
+									System.arraycopy(candidates, 0, more, 0, candidateCount);
+									candidates = more;
+								}
+								candidates[candidateCount++] = sequence;
+							}
+							best[sequence] = Math.max(best[sequence], score);
+						}
+					}
+					cursors[e] = cursor;
+				}
+			}
+			first = last;
+		}
+
+		// Align the query properly against the promising ones, and keep the best.
+		aligner.setScoringScheme(scheme);
+		aligner.setFirstSequence(query);
+		List found = new ArrayList(candidateCount);
+		for (int c = 0; c < candidateCount; c++) {
+			int sequence = candidates[c];
+			aligner.setSecondSequence(database.getSequence(sequence));
+			aligner.execute();
+			gappedExtensions++;
+			found.add(new Hit(sequence, database.getSequence(sequence), aligner.getBestAlignmentScore(), best[sequence]));
+		}
+		Collections.sort(found, BEST_FIRST);
+		if (found.size() > maxHits) {
+			found = new ArrayList(found.subList(0, maxHits));
+		}
+		hits = Collections.unmodifiableList(found);
+	}
+
+	/**
+	 * Work out every word that scores at least the threshold against each word of the query.
+	 *
+	 * @param q The monomer numbers of the query.
+	 * @param table The scores.
+	 * @param starts Filled in with where each query position's words start in the result.
+	 * @return The numbers of the words, by query position.
+	 */
+	int[] neighborhoods(int[] q, int[][] table, int[] starts) {
+		int w = database.getWordSize(), radix = database.radix;
+		int[] monomers = new int[radix];	// The monomer number of each dense number.
+		for (int number = 1; number < database.dense.length; number++) {
+			if (database.dense[number] >= 0) {
+				monomers[database.dense[number]] = number;
+			}
+		}
+		// The best any monomer can score against each one, for knowing when to give up on a word.
+		int[] bestAgainst = new int[table.length];
+		for (int a = 1; a < table.length; a++) {
+			bestAgainst[a] = Integer.MIN_VALUE / 4;
+			for (int d = 0; d < radix; d++) {
+				bestAgainst[a] = Math.max(bestAgainst[a], table[a][monomers[d]]);
+			}
+		}
+		int[] result = new int[64];
+		int count = 0;
+		int[] rest = new int[w + 1];	// The best the rest of the word could score, from each position on.
+		int[] digits = new int[w];
+		int[] partial = new int[w + 1];
+		for (int p = 0; p + 1 < starts.length; p++) {
+			starts[p] = count;
+			if (database.code(q, p) < 0) {
+				continue;
+			}
+			rest[w] = 0;
+			for (int k = w - 1; k >= 0; k--) {
+				rest[k] = rest[k + 1] + bestAgainst[q[p + k]];
+			}
+			// Go through the words like an odometer, skipping the rest of any prefix that can't make it.
+			int k = 0;
+			digits[0] = -1;
+			partial[0] = 0;
+			while (k >= 0) {
+				if (++digits[k] == radix) {
+					k--;
+					continue;
+				}
+				int score = partial[k] + table[q[p + k]][monomers[digits[k]]];
+				if (score + rest[k + 1] < threshold) {
+					continue;
+				}
+				if (k + 1 < w) {
+					partial[k + 1] = score;
+					digits[++k] = -1;
+					continue;
+				}
+				int code = 0;
+				for (int i = 0; i < w; i++) {
+					code = code * radix + digits[i];
+				}
+				if (count == result.length) {
+					int[] more = new int[result.length * 2];
+					System.arraycopy(result, 0, more, 0, count);
+					result = more;
+				}
+				result[count++] = code;
+			}
+		}
+		starts[starts.length - 1] = count;
+		return result;
+	}
+
+	/**
+	 * Work out the alignment of a hit.  It's only worked out when it's asked for.
+	 */
+	Alignment align(Hit hit) {
+		aligner.setScoringScheme(hit.scheme);
+		aligner.setFirstSequence(hit.query);
+		aligner.setSecondSequence(hit.target);
+		aligner.execute();
+		return aligner.getBestAlignment();
+	}
+
+	/**
+	 * @return The best hits of the last search, best first.
+	 */
+	public List getHits() {
+		return hits;
+	}
+	/**
+	 * @return How many times a neighborhood word was found in the database in the last search.
+	 */
+	public long getWordHits() {
+		return wordHits;
+	}
+	/**
+	 * @return How many pairs of hits were extended without gaps in the last search.
+	 */
+	public long getExtensions() {
+		return extensions;
+	}
+	/**
+	 * @return How many database sequences the query was properly aligned against in the last search.
+	 */
+	public long getGappedExtensions() {
+		return gappedExtensions;
+	}
+	/**
+	 * @return The database.
+	 */
+	public WordIndex getDatabase() {
+		return database;
+	}
+	/**
+	 * @param database The database to search.
+	 */
+	public void setDatabase(WordIndex database) {
+		this.database = database;
+	}
+	/**
+	 * @return The query.
+	 */
+	public Sequence getQuery() {
+		return query;
+	}
+	/**
+	 * @param query The sequence to search for.
+	 */
+	public void setQuery(Sequence query) {
+		this.query = query;
+	}
+	/**
+	 * @return The scoring scheme.
+	 */
+	public ScoringScheme getScoringScheme() {
+		return scheme;
+	}
+	/**
+	 * @param scheme How to score alignments.
+	 */
+	public void setScoringScheme(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+	/**
+	 * @return The lowest score a neighborhood word can have against a word of the query.
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+	/**
+	 * Set the lowest score a neighborhood word can have against a word of the query.  The
+	 * default is 11.  Lower finds more distant relatives, but there are many more words, and
+	 * many more hits.
+	 *
+	 * @param threshold The threshold.
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+	/**
+	 * @return How far apart two hits on a diagonal can be and still count as a pair.
+	 */
+	public int getWindow() {
+		return window;
+	}
+	/**
+	 * @param window How far apart two hits on a diagonal can be and still count as a pair.
+	 * The default is 40.
+	 */
+	public void setWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window must be a positive integer.");
+		}
+		this.window = window;
+	}
+	/**
+	 * @return How far the score of an ungapped extension can drop below its best.
+	 */
+	public int getXDrop() {
+		return xDrop;
+	}
+	/**
+	 * @param xDrop How far the score of an ungapped extension can drop below its best before
+	 * it's given up on.  The default is 16.
+	 */
+	public void setXDrop(int xDrop) {
+		if (xDrop < 0) {
+			throw new IllegalArgumentException("The X-drop can't be negative.");
+		}
+		this.xDrop = xDrop;
+	}
+	/**
+	 * @return The ungapped score it takes for a sequence to be properly aligned against.
+	 */
+	public int getGapTrigger() {
+		return gapTrigger;
+	}
+	/**
+	 * @param gapTrigger The ungapped score it takes for a sequence to be properly aligned
+	 * against.  The default is 41.
+	 */
+	public void setGapTrigger(int gapTrigger) {
+		if (gapTrigger < 1) {
+			throw new IllegalArgumentException("The gap trigger must be a positive integer.");
+		}
+		this.gapTrigger = gapTrigger;
+	}
+	/**
+	 * @return How many hits are kept.
+	 */
+	public int getMaxHits() {
+		return maxHits;
+	}
+	/**
+	 * @param maxHits How many hits to keep.  The default is 50.
+	 */
+	public void setMaxHits(int maxHits) {
+		if (maxHits < 1) {
+			throw new IllegalArgumentException("The number of hits must be a positive integer.");
+		}
+		this.maxHits = maxHits;
+	}
+
+	/**
+	 * This is a database sequence that looks like the query.
+	 */
+	public class Hit {
+		Sequence query;
+		ScoringScheme scheme;
+		int index;
+		Sequence target;
+		int score, ungappedScore;
+		Alignment alignment;
+
+		Hit(int index, Sequence target, int score, int ungappedScore) {
+			this.query = DatabaseSearch.this.query;
+			this.scheme = DatabaseSearch.this.scheme;
+			this.index = index;
+			this.target = target;
+			this.score = score;
+			this.ungappedScore = ungappedScore;
+		}
+
+		/**
+		 * @return Where the sequence is in the database.
+		 */
+		public int getIndex() {
+			return index;
+		}
+		/**
+		 * @return The sequence.
+		 */
+		public Sequence getTarget() {
+			return target;
+		}
+		/**
+		 * @return The score of the best local alignment of the query against it.
+		 */
+		public int getScore() {
+			return score;
+		}
+		/**
+		 * @return The best score of any ungapped extension of a pair of hits.
+		 */
+		public int getUngappedScore() {
+			return ungappedScore;
+		}
+		/**
+		 * Get the best local alignment of the query against the sequence.  It's worked out the
+		 * first time it's asked for, using the search's scratch space, so it has to be done on
+		 * the search's thread.
+		 *
+		 * @return The alignment.
+		 */
+		public Alignment getAlignment() {
+			if (alignment == null) {
+				alignment = align(this);
+			}
+			return alignment;
+		}
+
+		public String toString() {
+			return "[Hit: " + index + ", score " + score + ", ungapped " + ungappedScore + "]";
+		}
+	}
+}
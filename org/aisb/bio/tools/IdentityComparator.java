@@ -3,6 +3,7 @@
  */
 package org.aisb.bio.tools;
 
+import org.aisb.bio.things.Alphabet;
 import org.aisb.bio.things.Monomer;
 
 /**
@@ -25,4 +26,12 @@ public class IdentityComparator extends MonomerComparator {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.MonomerComparator#compare(org.aisb.bio.things.Alphabet, int, int)
+	 */
+	public int compare(Alphabet alphabet, int number1, int number2) {
+		// There's exactly one object per monomer, so equal numbers mean identical monomers.
+		return number1 == number2 ? 1 : 0;
+	}
+
 }
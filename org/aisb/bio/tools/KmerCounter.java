@@ -0,0 +1,435 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.aisb.bio.things.KmerCursor;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This counts how many times every k-mer occurs in a collection of nucleotide sequences.
+ * That's the k-mer spectrum, which is handy for checking the quality of an assembly, and
+ * for throwing out obviously unrelated pairs before bothering to align them.
+ * </p><p>
+ * The k-mers are walked with a {@link KmerCursor} and counted in a {@link LongIntHashMap},
+ * so nothing gets allocated per k-mer.  By default a k-mer and its reverse complement are
+ * counted as the same thing (see {@link KmerCursor#getCanonicalCode()}), since we usually
+ * don't know which strand a sequence came from.
+ * </p><p>
+ * The sequences are cut into pieces, and the pieces are shared out among several threads,
+ * each with its own table; the tables are added together at the end.  If a thread's table
+ * would grow past its share of the memory budget, it's sorted and written to a temporary
+ * file instead, and emptied.  When that happens, the results are merged from the files as
+ * they're visited, so the whole spectrum never has to fit in memory at once.
+ * </p><p>
+ * This class implements the "command bean" design pattern, like
+ * {@link org.aisb.bio.tools.SequenceFetcher}: set the sequences and <i>k</i>, call
+ * <code>execute</code>, and then look at the results.
+ * </p>
+ */
+public class KmerCounter {
+	static final int PIECE_SIZE = 1 << 20;	// How many k-mers each thread takes at a time.
+
+	/**
+	 * This is told about each k-mer and its count.  See {@link KmerCounter#visit(Visitor)}.
+	 */
+	public interface Visitor {
+		/**
+		 * @param code The k-mer's code (see {@link KmerCursor}).
+		 * @param count How many times it occurred.
+		 */
+		public void visit(long code, int count);
+	}
+
+	Collection sequences;
+	int k = 21;
+	boolean canonical = true;
+	int threads = Runtime.getRuntime().availableProcessors();
+	long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+	File spillDirectory;			// Null means the usual temporary directory.
+
+	LongIntHashMap counts;			// The results, if they fit in memory...
+	List runs = new ArrayList();	// ...or the files they were spilled to.
+	long totalCount;
+
+	/**
+	 * @return The sequences to count the k-mers of.
+	 */
+	public Collection getSequences() {
+		return sequences;
+	}
+	/**
+	 * @param sequences The nucleotide sequences to count the k-mers of.
+	 */
+	public void setSequences(Collection sequences) {
+		this.sequences = sequences;
+	}
+	/**
+	 * @return The length of the k-mers.
+	 */
+	public int getK() {
+		return k;
+	}
+	/**
+	 * @param k The length of the k-mers, from 1 to 32.
+	 */
+	public void setK(int k) {
+		if (k < 1 || k > KmerCursor.MAX_K) {
+			throw new IllegalArgumentException("k must be between 1 and " + KmerCursor.MAX_K + ": " + k);
+		}
+		this.k = k;
+	}
+	/**
+	 * @return True if a k-mer and its reverse complement are counted together.
+	 */
+	public boolean isCanonical() {
+		return canonical;
+	}
+	/**
+	 * @param canonical True to count a k-mer and its reverse complement together (the default).
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+	/**
+	 * @return How many threads to count with.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * @param threads How many threads to count with.  The default is one per processor.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be a positive integer.");
+		}
+		this.threads = threads;
+	}
+	/**
+	 * @return How many bytes the tables may use between them.
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+	/**
+	 * @param memoryBudget How many bytes the tables may use between them before they're
+	 * spilled to disk.  The default is half the heap.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	/**
+	 * @return Where spilled counts are written.
+	 */
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+	/**
+	 * @param spillDirectory Where to write spilled counts.  The default is the usual temporary directory.
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Count the k-mers.
+	 *
+	 * @throws IOException If the counts had to be spilled and couldn't be.
+	 */
+	public void execute() throws IOException {
+		if (sequences == null) {
+			throw new IllegalStateException("Cannot execute until the sequences have been set.");
+		}
+		discardRuns();
+		counts = null;
+		totalCount = 0;
+		Sequence[] all = (Sequence[]) sequences.toArray(new Sequence[sequences.size()]);
+		int[] pieces = cutIntoPieces(all);
+		long budget = Math.max(1, memoryBudget / threads);
+		int[] nextPiece = new int[1];
+		Worker[] workers = new Worker[threads];
+		for (int i=0; i < threads; i++) {
+			workers[i] = new Worker(all, pieces, nextPiece, budget);
+			workers[i].start();
+		}
+		for (int i=0; i < threads; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while counting k-mers.");
+			}
+		}
+		for (int i=0; i < threads; i++) {
+			if (workers[i].problem instanceof IOException) {
+				throw (IOException) workers[i].problem;
+			} else if (workers[i].problem instanceof RuntimeException) {
+				throw (RuntimeException) workers[i].problem;
+			} else if (workers[i].problem != null) {
+				throw (Error) workers[i].problem;
+			}
+			totalCount += workers[i].count;
+		}
+		if (runs.isEmpty()) {
+			// Everything fit, so just add the tables together.
+			counts = workers[0].table;
+			for (int i=1; i < threads; i++) {
+				counts.addAll(workers[i].table);
+				workers[i].table = null;
+			}
+		} else {
+			// Some of it's on disk already, so put the rest there too.
+			for (int i=0; i < threads; i++) {
+				if (workers[i].table.size() > 0) {
+					spill(workers[i].table);
+				}
+				workers[i].table = null;
+			}
+		}
+	}
+
+	/**
+	 * Share the sequences out in pieces.  Each piece is three numbers: which sequence,
+	 * where the first k-mer starts, and where the k-mers stop starting.
+	 */
+	int[] cutIntoPieces(Sequence[] all) {
+		int count = 0;
+		for (int i=0; i < all.length; i++) {
+			int kmers = all[i].size() - k + 1;
+			if (kmers > 0) {
+				count += (kmers + PIECE_SIZE - 1) / PIECE_SIZE;
+			}
+		}
+		int[] pieces = new int[count * 3];
+		int p = 0;
+		for (int i=0; i < all.length; i++) {
+			int kmers = all[i].size() - k + 1;
+			for (int start = 0; start < kmers; start += PIECE_SIZE) {
+				pieces[p++] = i;
+				pieces[p++] = start;
+				pieces[p++] = Math.min(kmers, start + PIECE_SIZE);
+			}
+		}
+		return pieces;
+	}
+
+	/**
+	 * This counts pieces until there aren't any left.
+	 */
+	class Worker extends Thread {
+		Sequence[] all;
+		int[] pieces;
+		int[] nextPiece;	// Shared by every worker.
+		long budget;
+		LongIntHashMap table;
+		long count;
+		Throwable problem;
+
+		Worker(Sequence[] all, int[] pieces, int[] nextPiece, long budget) {
+			this.all = all;
+			this.pieces = pieces;
+			this.nextPiece = nextPiece;
+			this.budget = budget;
+			this.table = new LongIntHashMap((int) Math.min(1 << 16, budget / 32));
+		}
+
+		int takePiece() {
+			synchronized (nextPiece) {
+				if (nextPiece[0] * 3 >= pieces.length) {
+					return -1;
+				}
+				return nextPiece[0]++ * 3;
+			}
+		}
+
+		public void run() {
+			try {
+				int piece;
+				while ((piece = takePiece()) >= 0) {
+					KmerCursor cursor = new KmerCursor(all[pieces[piece]], k);
+					int end = pieces[piece + 2];
+					cursor.moveTo(pieces[piece + 1]);
+					while (cursor.getPosition() + 1 < end && cursor.next()) {
+						if (table.isFull() && table.getMemoryUsage() * 2 > budget) {
+							spill(table);
+						}
+						table.add(canonical ? cursor.getCanonicalCode() : cursor.getCode(), 1);
+						count++;
+					}
+				}
+			} catch (Throwable t) {
+				problem = t;
+			}
+		}
+	}
+
+	/**
+	 * Write a table out to a file, sorted, and empty it.
+	 */
+	void spill(LongIntHashMap table) throws IOException {
+		File file = File.createTempFile("kmers", ".run", spillDirectory);
+		file.deleteOnExit();
+		long[] keys = table.getSortedKeys();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			for (int i=0; i < keys.length; i++) {
+				out.writeLong(keys[i]);
+				out.writeInt(table.get(keys[i]));
+			}
+		} finally {
+			out.close();
+		}
+		table.clear();
+		synchronized (runs) {
+			runs.add(file);
+		}
+	}
+
+	void discardRuns() {
+		for (int i=0; i < runs.size(); i++) {
+			((File) runs.get(i)).delete();
+		}
+		runs.clear();
+	}
+
+	/**
+	 * @return True if the counts didn't fit in the memory budget and are on disk.
+	 */
+	public boolean isSpilled() {
+		return !runs.isEmpty();
+	}
+
+	/**
+	 * @return The number of k-mers counted, including repeats.
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Look up one k-mer's count.  This only works if the counts fit in memory.
+	 *
+	 * @param code The k-mer's code.  If the counts are canonical, so should this be.
+	 * @return How many times it occurred.
+	 */
+	public int getCount(long code) {
+		if (counts == null) {
+			throw new IllegalStateException(isSpilled() ? "The counts were spilled to disk; use visit instead." : "Cannot get counts until execute has been called.");
+		}
+		return counts.get(code);
+	}
+
+	/**
+	 * Look up one k-mer's count.  This only works if the counts fit in memory.
+	 *
+	 * @param kmer The k-mer, such as "GATTACA".
+	 * @return How many times it (or, if the counts are canonical, its reverse complement) occurred.
+	 */
+	public int getCount(Sequence kmer) {
+		if (kmer.size() != k) {
+			throw new IllegalArgumentException("Expected a " + k + "-mer, not " + kmer.size() + " bases.");
+		}
+		KmerCursor cursor = new KmerCursor(kmer, k);
+		cursor.next();
+		return getCount(canonical ? cursor.getCanonicalCode() : cursor.getCode());
+	}
+
+	/**
+	 * Hand every distinct k-mer and its count to a visitor, in order of their codes
+	 * (compared as signed numbers, which only matters when k is 32).
+	 *
+	 * @param visitor Who to tell.
+	 * @throws IOException If the counts are on disk and can't be read.
+	 */
+	public void visit(Visitor visitor) throws IOException {
+		if (counts != null) {
+			long[] keys = counts.getSortedKeys();
+			for (int i=0; i < keys.length; i++) {
+				visitor.visit(keys[i], counts.get(keys[i]));
+			}
+			return;
+		}
+		// Merge the sorted runs, adding up the counts of any k-mer that's in more than one.
+		int n = runs.size();
+		DataInputStream[] in = new DataInputStream[n];
+		long[] keys = new long[n];
+		int[] values = new int[n];
+		boolean[] live = new boolean[n];
+		try {
+			for (int i=0; i < n; i++) {
+				in[i] = new DataInputStream(new BufferedInputStream(new FileInputStream((File) runs.get(i)), 1 << 16));
+				live[i] = advance(in[i], keys, values, i);
+			}
+			while (true) {
+				boolean any = false;
+				long smallest = 0;
+				for (int i=0; i < n; i++) {
+					if (live[i] && (!any || keys[i] < smallest)) {
+						smallest = keys[i];
+						any = true;
+					}
+				}
+				if (!any) {
+					break;
+				}
+				int total = 0;
+				for (int i=0; i < n; i++) {
+					if (live[i] && keys[i] == smallest) {
+						total = LongIntHashMap.saturatingAdd(total, values[i]);
+						live[i] = advance(in[i], keys, values, i);
+					}
+				}
+				visitor.visit(smallest, total);
+			}
+		} finally {
+			for (int i=0; i < n; i++) {
+				if (in[i] != null) {
+					in[i].close();
+				}
+			}
+		}
+	}
+
+	static boolean advance(DataInputStream in, long[] keys, int[] values, int i) throws IOException {
+		try {
+			keys[i] = in.readLong();
+		} catch (EOFException e) {
+			return false;
+		}
+		values[i] = in.readInt();
+		return true;
+	}
+
+	/**
+	 * Work out the spectrum: how many distinct k-mers occurred once, twice, and so on.
+	 *
+	 * @param maximum The biggest count to keep track of separately.  Anything more
+	 * frequent is lumped in with it.
+	 * @return The number of distinct k-mers with each count, indexed by the count.
+	 * @throws IOException If the counts are on disk and can't be read.
+	 */
+	public long[] getHistogram(int maximum) throws IOException {
+		final long[] histogram = new long[maximum + 1];
+		final int top = maximum;
+		visit(new Visitor() {
+			public void visit(long code, int count) {
+				histogram[Math.min(count, top)]++;
+			}
+		});
+		return histogram;
+	}
+}
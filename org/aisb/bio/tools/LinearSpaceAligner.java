@@ -0,0 +1,382 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This finds an optimal global alignment in linear space, using the divide-and-conquer trick
+ * of Hirschberg, in the form Myers and Miller worked out for affine gap penalties.  Instead of
+ * keeping the whole matrix, it works out the best scores into the middle row from the top and
+ * from the bottom, one row at a time, picks the column (and the kind of column) where the best
+ * path crosses the middle, and then does the same to the two halves that leaves.  Once a piece
+ * is small enough, it's aligned the ordinary way, matrix and all.  That takes about twice the
+ * arithmetic of filling the matrix once, but the memory is a few rows instead of the whole thing.
+ * </p><p>
+ * It scores alignments exactly the way {@link Needleman} does: three kinds of column (a pair,
+ * a residue of the first sequence against a gap, and a residue of the second against a gap),
+ * affine gaps, and no gap in one sequence right next to a gap in the other.
+ * </p><p>
+ * The state is only scratch space, so an instance can be reused, but not shared between threads.
+ * Everything it needs is kept from one alignment to the next, and only made bigger when a
+ * bigger pair comes along, so aligning lots of pairs with one instance makes no garbage
+ * except the alignments themselves.
+ * </p>
+ */
+class LinearSpaceAligner {
+	static final int NEG = Integer.MIN_VALUE / 4;	// Minus infinity, with room to subtract from.
+	static final int M = 0, X = 1, Y = 2, ANY = 3;	// Kinds of column: pair, gap in second, gap in first.
+	static final int BASE_CELLS = 1 << 14;			// Pieces this small are aligned the ordinary way.
+
+	ScoringScheme scheme;
+	Alphabet alphabet;
+	int[][] table;			// The scores of every pair of monomers.
+	int open, extend;
+
+	int[] a, b;				// The monomer numbers of the two sequences...
+	int[] ra = new int[0], rb = new int[0];	// ...and the same, backwards.
+	int n, m;
+	int[] firstNumbers = new int[0], secondNumbers = new int[0];	// For aligning sequences.
+	AlignmentPath ownPath = new AlignmentPath();
+	int[] fM, fX, fY;		// Rows of scores coming down from the top...
+	int[] gM, gX, gY;		// ...and coming up from the bottom.
+	byte[] flags = new byte[BASE_CELLS];
+	byte[] reversed = new byte[256];
+	AlignmentPath path;
+	long cells;				// How many cells the last alignment or score worked out.
+
+	LinearSpaceAligner() {
+	}
+
+	LinearSpaceAligner(ScoringScheme scheme, Alphabet alphabet) {
+		setScoring(scheme, alphabet);
+	}
+
+	/**
+	 * Say how to score alignments from now on.
+	 */
+	void setScoring(ScoringScheme scheme, Alphabet alphabet) {
+		this.scheme = scheme;
+		this.alphabet = alphabet;
+		this.table = scheme.tableFor(alphabet);
+		this.open = scheme.getGapOpen();
+		this.extend = scheme.getGapExtension();
+	}
+
+	/**
+	 * Align two sequences.
+	 *
+	 * @param a The monomer numbers of the first sequence.
+	 * @param b The monomer numbers of the second sequence.
+	 * @param path Where to put the alignment.
+	 * @return The score.
+	 */
+	int align(int[] a, int[] b, AlignmentPath path) {
+		return align(a, a.length, b, b.length, path);
+	}
+
+	/**
+	 * Align two sequences whose monomer numbers might not fill their arrays.
+	 */
+	int align(int[] a, int n, int[] b, int m, AlignmentPath path) {
+		this.a = a;
+		this.b = b;
+		this.n = n;
+		this.m = m;
+		this.path = path;
+		ra = reverse(a, n, ra);
+		rb = reverse(b, m, rb);
+		makeRows(m);
+		path.clear();
+		cells = 0;
+		return solve(0, n, 0, m, M, ANY);
+	}
+
+	/**
+	 * Work out the best score of two sequences, without the alignment.  That's just the
+	 * fill from the top, a row at a time, so it's a single pass and a few rows of memory.
+	 *
+	 * @param a The monomer numbers of the first sequence.
+	 * @param b The monomer numbers of the second sequence.
+	 * @return The score.
+	 */
+	int score(int[] a, int[] b) {
+		return score(a, a.length, b, b.length);
+	}
+
+	/**
+	 * Work out the best score of two sequences whose monomer numbers might not fill their arrays.
+	 */
+	int score(int[] a, int n, int[] b, int m) {
+		makeRows(m);
+		cells = 0;
+		forward(a, 0, n, b, 0, m, 0, -open, -open, fM, fX, fY);
+		return max(fM[m], max(fX[m], fY[m]));
+	}
+
+	/**
+	 * Make sure the rows are long enough for a second sequence this long.
+	 */
+	void makeRows(int m) {
+		if (fM == null || fM.length < m + 1) {
+			fM = new int[m + 1];
+			fX = new int[m + 1];
+			fY = new int[m + 1];
+			gM = new int[m + 1];
+			gX = new int[m + 1];
+			gY = new int[m + 1];
+		}
+	}
+
+	/**
+	 * @return How many bytes of rows and flags are kept, which is as much as any
+	 * alignment so far has needed at once.
+	 */
+	long getWorkspaceBytes() {
+		long bytes = flags.length + reversed.length + 4L * (ra.length + rb.length);
+		if (fM != null) {
+			bytes += 4L * 6 * fM.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Align two sequences, with the scoring scheme given.
+	 *
+	 * @return The alignment.
+	 */
+	Alignment align(Sequence first, Sequence second, ScoringScheme scheme) {
+		Alphabet alphabet = first.getAlphabet();
+		if (this.scheme != scheme || this.alphabet != alphabet) {
+			setScoring(scheme, alphabet);
+		}
+		firstNumbers = SequenceAligner.numbers(first, firstNumbers);
+		secondNumbers = SequenceAligner.numbers(second, secondNumbers);
+		int score = align(firstNumbers, first.size(), secondNumbers, second.size(), ownPath);
+		return new Alignment(first, 0, second, 0, ownPath, score, scheme.getScoreTable(alphabet));
+	}
+
+	/**
+	 * Copy the first few values backwards into a buffer, making the buffer bigger if it has to be.
+	 */
+	static int[] reverse(int[] values, int length, int[] buffer) {
+		int[] result = buffer.length < length ? new int[length] : buffer;
+		for (int k = 0; k < length; k++) {
+			result[k] = values[length - 1 - k];
+		}
+		return result;
+	}
+
+	/**
+	 * Align one piece of the matrix, adding its columns to the path.
+	 *
+	 * @param before The kind of column just before this piece (M at the very start).
+	 * @param last The kind of column this piece has to end with, or ANY.
+	 * @return The score of the piece.
+	 */
+	int solve(int a0, int a1, int b0, int b1, int before, int last) {
+		int rows = a1 - a0;
+		if (rows <= 1 || (long) (rows + 1) * (b1 - b0 + 1) <= BASE_CELLS) {
+			return alignPiece(a0, a1, b0, b1, before, last);
+		}
+		int mid = (a0 + a1) >>> 1;
+		// Come down from the top, knowing what came before...
+		forward(a, a0, mid, b, b0, b1, 0, enterGap(before, X), enterGap(before, Y), fM, fX, fY);
+		// ...and up from the bottom, knowing how it has to end.
+		forward(ra, n - a1, n - mid, rb, m - b1, m - b0,
+				last == ANY || last == M ? 0 : NEG,
+				last == ANY || last == X ? -open : NEG,
+				last == ANY || last == Y ? -open : NEG,
+				gM, gX, gY);
+		// Find where the best path crosses the middle.
+		int best = NEG + NEG, bestJ = b0, bestKind = M;
+		for (int j = b0; j <= b1; j++) {
+			int f = j - b0, g = b1 - j;
+			// The bottom half scored its first gap as a new one; if it really carries
+			// on a gap from the top half, it should only have been charged an extension.
+			int afterM = max(gM[g], max(gX[g], gY[g]));
+			int afterX = max(gM[g], gX[g] + open - extend);
+			int afterY = max(gM[g], gY[g] + open - extend);
+			if (fM[f] + afterM > best) {
+				best = fM[f] + afterM;
+				bestJ = j;
+				bestKind = M;
+			}
+			if (fX[f] + afterX > best) {
+				best = fX[f] + afterX;
+				bestJ = j;
+				bestKind = X;
+			}
+			if (fY[f] + afterY > best) {
+				best = fY[f] + afterY;
+				bestJ = j;
+				bestKind = Y;
+			}
+		}
+		solve(a0, mid, b0, bestJ, before, bestKind);
+		solve(mid, a1, bestJ, b1, bestKind, last);
+		return best;
+	}
+
+	/**
+	 * What it costs to start a piece with a gap of a given kind, given the kind of column
+	 * before it.  Carrying on a gap only costs an extension, and a gap in one sequence can't
+	 * follow a gap in the other.
+	 */
+	int enterGap(int before, int kind) {
+		if (before == kind) {
+			return -extend;
+		}
+		return before == M ? -open : NEG;
+	}
+
+	/**
+	 * Fill a piece of the matrix a row at a time, keeping only the last row.  The piece
+	 * starts with nothing aligned, and the "enter" scores say what it costs to make each
+	 * kind of column the first one.
+	 */
+	void forward(int[] a, int a0, int a1, int[] b, int b0, int b1,
+			int enterM, int enterX, int enterY, int[] rM, int[] rX, int[] rY) {
+		int w = b1 - b0;
+		cells += (long) (a1 - a0) * w;
+		rM[0] = enterM;
+		rX[0] = NEG;
+		rY[0] = NEG;
+		for (int j = 1; j <= w; j++) {
+			rM[j] = NEG;
+			rX[j] = NEG;
+			rY[j] = j == 1 ? enterY : rY[j - 1] - extend;
+		}
+		for (int i = 1; i <= a1 - a0; i++) {
+			int[] row = table[a[a0 + i - 1]];
+			int dM = rM[0], dX = rX[0], dY = rY[0];
+			rM[0] = NEG;
+			rX[0] = i == 1 ? enterX : rX[0] - extend;
+			rY[0] = NEG;
+			int leftM = NEG, leftY = NEG;
+			for (int j = 1; j <= w; j++) {
+				int upM = rM[j], upX = rX[j], upY = rY[j];
+				int newM = row[b[b0 + j - 1]] + max(dM, max(dX, dY));
+				int newY = max(leftM - open, leftY - extend);
+				rM[j] = newM;
+				rX[j] = max(upM - open, upX - extend);
+				rY[j] = newY;
+				leftM = newM;
+				leftY = newY;
+				dM = upM;
+				dX = upX;
+				dY = upY;
+			}
+		}
+	}
+
+	/**
+	 * Align a small piece the ordinary way: fill it, remembering where each score came from,
+	 * and trace back.  Only the directions are kept for the whole piece, at one byte a cell.
+	 */
+	int alignPiece(int a0, int a1, int b0, int b1, int before, int last) {
+		int rows = a1 - a0, cols = b1 - b0, w = cols + 1;
+		if (rows == 0 && cols == 0) {
+			return 0;
+		}
+		cells += (long) rows * cols;
+		if (flags.length < (rows + 1) * w) {
+			flags = new byte[(rows + 1) * w];
+		}
+		if (reversed.length < rows + cols) {
+			reversed = new byte[rows + cols];
+		}
+		int enterX = enterGap(before, X), enterY = enterGap(before, Y);
+		// Each flag byte says where the M (bits 0-1), X (bits 2-3) and Y (bits 4-5) scores came from.
+		fM[0] = 0;
+		fX[0] = NEG;
+		fY[0] = NEG;
+		for (int j = 1; j <= cols; j++) {
+			fM[j] = NEG;
+			fX[j] = NEG;
+			fY[j] = j == 1 ? enterY : fY[j - 1] - extend;
+			flags[j] = (byte) (Y << 4);
+		}
+		for (int i = 1; i <= rows; i++) {
+			int[] scores = table[a[a0 + i - 1]];
+			int dM = fM[0], dX = fX[0], dY = fY[0];
+			fM[0] = NEG;
+			fX[0] = i == 1 ? enterX : fX[0] - extend;
+			fY[0] = NEG;
+			int row = i * w;
+			flags[row] = (byte) (X << 2);
+			int leftM = NEG, leftY = NEG;
+			for (int j = 1; j <= cols; j++) {
+				int upM = fM[j], upX = fX[j], upY = fY[j];
+				int from = M, diagonal = dM;
+				if (dX > diagonal) {
+					diagonal = dX;
+					from = X;
+				}
+				if (dY > diagonal) {
+					diagonal = dY;
+					from = Y;
+				}
+				int newM = scores[b[b0 + j - 1]] + diagonal;
+				int newX = upM - open;
+				if (upX - extend > newX) {
+					newX = upX - extend;
+					from |= X << 2;
+				}
+				int newY = leftM - open;
+				if (leftY - extend > newY) {
+					newY = leftY - extend;
+					from |= Y << 4;
+				}
+				flags[row + j] = (byte) from;
+				fM[j] = newM;
+				fX[j] = newX;
+				fY[j] = newY;
+				leftM = newM;
+				leftY = newY;
+				dM = upM;
+				dX = upX;
+				dY = upY;
+			}
+		}
+		// Pick the end, and trace back from it.
+		int kind = last;
+		if (kind == ANY) {
+			kind = M;
+			if (fX[cols] > fM[cols]) {
+				kind = X;
+			}
+			if (fY[cols] > (kind == M ? fM[cols] : fX[cols])) {
+				kind = Y;
+			}
+		}
+		int score = kind == M ? fM[cols] : kind == X ? fX[cols] : fY[cols];
+		int i = rows, j = cols, count = 0;
+		while (i > 0 || j > 0) {
+			int flag = flags[i * w + j];
+			if (kind == M) {
+				reversed[count++] = AlignmentPath.MATCH;
+				kind = flag & 3;
+				i--;
+				j--;
+			} else if (kind == X) {
+				reversed[count++] = AlignmentPath.INSERT;
+				kind = (flag >> 2) & 3;
+				i--;
+			} else {
+				reversed[count++] = AlignmentPath.DELETE;
+				kind = (flag >> 4) & 3;
+				j--;
+			}
+		}
+		path.addReversed(reversed, 0, count);
+		return score;
+	}
+
+	static int max(int x, int y) {
+		return x > y ? x : y;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+/**
+ * <p>
+ * This is the inner loop of {@link SmithWaterman}: it finds the best local alignment score
+ * of one query against any number of targets.  There's a plain Java one
+ * ({@link ScalarLocalKernel}) and one that uses the vector instructions of the processor
+ * (<code>VectorStripedKernel</code>), when the JVM lets us have them.
+ * </p><p>
+ * A kernel keeps scratch space, so it can't be shared between threads.
+ * </p>
+ */
+interface LocalKernel {
+	/**
+	 * Get ready to align a query.  Anything worked out here is reused for every target.
+	 *
+	 * @param profile The profile of the query.
+	 * @param open The penalty for a gap one residue long.
+	 * @param extend The penalty for each residue a gap is longer than that.
+	 */
+	void setQuery(QueryProfile profile, int open, int extend);
+
+	/**
+	 * Find the best local alignment score of the query against a target.
+	 *
+	 * @param target The monomer numbers of the target.
+	 * @param length How many of them there are, which might be fewer than the array holds.
+	 * @return The score, which is never negative.
+	 */
+	int align(int[] target, int length);
+
+	/**
+	 * @return How many bits each score took in the last call to <code>align</code>.
+	 */
+	int getLaneBits();
+}
@@ -0,0 +1,215 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This is a hash table from <code>long</code> keys to <code>int</code> counts, made for
+ * counting k-mers.  A {@link java.util.HashMap} would need a <code>Long</code>, an
+ * <code>Integer</code> and an entry object for every k-mer, which is around 80 bytes each;
+ * this spends 12 bytes a slot, in two plain arrays, and never allocates anything while counting.
+ * </p><p>
+ * It uses open addressing with linear probing.  The key zero marks an empty slot, so the
+ * count for zero (which is the k-mer "AAA...A") is kept off to the side.  Counts stop at
+ * <code>Integer.MAX_VALUE</code> rather than wrapping around.
+ * </p><p>
+ * This isn't safe to use from several threads at once.
+ * </p>
+ */
+public class LongIntHashMap {
+	static final double MAXIMUM_LOAD = 0.7;
+	static final int BYTES_PER_SLOT = 12;
+
+	long[] keys;
+	int[] values;
+	int mask;			// The capacity, minus one.
+	int size;			// How many slots are in use.
+	int threshold;		// When size gets here, it's time to grow.
+	boolean hasZero;	// Whether the key zero has a count...
+	int zeroValue;		// ...and what it is.
+
+	/**
+	 * Make an empty table.
+	 */
+	public LongIntHashMap() {
+		this(1024);
+	}
+
+	/**
+	 * Make an empty table with room for a given number of keys before it has to grow.
+	 *
+	 * @param expected How many keys to make room for.
+	 */
+	public LongIntHashMap(int expected) {
+		int capacity = 16;
+		while (capacity * MAXIMUM_LOAD < expected) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * MAXIMUM_LOAD);
+		size = 0;
+	}
+
+	/**
+	 * Scramble the bits of a key, so k-mers that only differ at one end don't crowd together.
+	 * This is the finishing step of MurmurHash3.
+	 */
+	static int slotFor(long key, int mask) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	/**
+	 * Add to the count for a key.
+	 *
+	 * @param key The key.
+	 * @param amount How much to add.
+	 * @return The new count.
+	 */
+	public int add(long key, int amount) {
+		if (key == 0) {
+			hasZero = true;
+			zeroValue = saturatingAdd(zeroValue, amount);
+			return zeroValue;
+		}
+		int slot = slotFor(key, mask);
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				values[slot] = saturatingAdd(values[slot], amount);
+				return values[slot];
+			}
+			if (k == 0) {
+				keys[slot] = key;
+				values[slot] = amount;
+				if (++size >= threshold) {
+					grow();
+				}
+				return amount;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	static int saturatingAdd(int a, int b) {
+		long sum = (long) a + b;
+		return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+	}
+
+	void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		for (int i=0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if (key != 0) {
+				int slot = slotFor(key, mask);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * @param key The key.
+	 * @return Its count, or zero if it isn't in the table.
+	 */
+	public int get(long key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		int slot = slotFor(key, mask);
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				return values[slot];
+			}
+			if (k == 0) {
+				return 0;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return The number of keys in the table.
+	 */
+	public int size() {
+		return size + (hasZero ? 1 : 0);
+	}
+
+	/**
+	 * @return True if adding one more new key will make the table double in size.
+	 */
+	public boolean isFull() {
+		return size + 1 >= threshold;
+	}
+
+	/**
+	 * @return Roughly how many bytes the table is using.
+	 */
+	public long getMemoryUsage() {
+		return (long) keys.length * BYTES_PER_SLOT;
+	}
+
+	/**
+	 * Empty the table, keeping the space it's already got.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		hasZero = false;
+		zeroValue = 0;
+	}
+
+	/**
+	 * Add everything in another table to this one.
+	 *
+	 * @param other The other table.
+	 */
+	public void addAll(LongIntHashMap other) {
+		if (other.hasZero) {
+			add(0, other.zeroValue);
+		}
+		for (int i=0; i < other.keys.length; i++) {
+			if (other.keys[i] != 0) {
+				add(other.keys[i], other.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return Every key in the table, smallest first (comparing them as signed numbers).
+	 */
+	public long[] getSortedKeys() {
+		long[] result = new long[size()];
+		int count = 0;
+		if (hasZero) {
+			result[count++] = 0;
+		}
+		for (int i=0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				result[count++] = keys[i];
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Monomer;
+
+/**
+ * This is the usual comparison function for nucleotides: one score for a match, and another
+ * (usually negative) for a mismatch.  {@link IdentityComparator} is the same thing with
+ * one and zero.
+ */
+public class MatchComparator extends MonomerComparator {
+	int match, mismatch;
+
+	/**
+	 * @param match The score of two identical monomers.
+	 * @param mismatch The score of two different ones.
+	 */
+	public MatchComparator(int match, int mismatch) {
+		this.match = match;
+		this.mismatch = mismatch;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.MonomerComparator#compare(org.aisb.bio.things.Monomer, org.aisb.bio.things.Monomer)
+	 */
+	public int compare(Monomer m1, Monomer m2) {
+		return m1 == m2 ? match : mismatch;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.MonomerComparator#compare(org.aisb.bio.things.Alphabet, int, int)
+	 */
+	public int compare(Alphabet alphabet, int number1, int number2) {
+		return number1 == number2 ? match : mismatch;
+	}
+
+	/**
+	 * @return The score of two identical monomers.
+	 */
+	public int getMatch() {
+		return match;
+	}
+	/**
+	 * @return The score of two different ones.
+	 */
+	public int getMismatch() {
+		return mismatch;
+	}
+}
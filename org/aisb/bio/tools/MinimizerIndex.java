@@ -0,0 +1,202 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.Arrays;
+
+import org.aisb.bio.things.KmerCursor;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is an index of the minimizers of a reference genome, for finding where short reads
+ * came from (see {@link ReadMapper}).  Indexing every k-mer of a genome takes a lot of memory,
+ * and most of it is wasted, since neighbouring k-mers overlap almost entirely.  Instead, out of
+ * every <i>w</i> k-mers in a row, only the one with the smallest hash is kept: its minimizer.
+ * Two sequences that share a stretch of <i>w</i> + <i>k</i> - 1 bases are guaranteed to pick
+ * the same minimizer in it, so nothing that matters is lost, and only about one k-mer in
+ * (<i>w</i> + 1) / 2 is indexed.
+ * </p><p>
+ * The k-mers are canonical (see {@link KmerCursor#getCanonicalCode()}), so a read matches
+ * whichever strand it came from, and each minimizer remembers which strand its k-mer was on.
+ * The k-mers that read the same on both strands are left out, since they can't say which.
+ * Every minimizer is kept in one sorted array of <code>long</code>s, eight bytes each: a 31-bit
+ * hash in the top half, and the position and strand in the bottom half.  Two k-mers can share
+ * a hash, but that only ever costs a wasted seed, never a wrong alignment.
+ * </p><p>
+ * The index keeps its own copy of the genome too, a byte per base, for the aligner to read.
+ * An index never changes once it's made, so it can be shared by any number of threads.
+ * </p>
+ */
+public class MinimizerIndex {
+	public static final int DEFAULT_K = 15;
+	public static final int DEFAULT_W = 10;
+	static final long HASH_MASK = 0x7fffffffL;
+
+	Sequence reference;
+	int k, w;
+	byte[] bases;		// The monomer numbers of the reference.
+	long[] entries;		// hash << 32 | position << 1 | strand, sorted.
+
+	/**
+	 * Index a reference with the default k-mer and window sizes.
+	 *
+	 * @param reference The reference genome.
+	 */
+	public MinimizerIndex(Sequence reference) {
+		this(reference, DEFAULT_K, DEFAULT_W);
+	}
+
+	/**
+	 * @param reference The reference genome.
+	 * @param k How long each k-mer is, from 1 to 32.
+	 * @param w How many k-mers in a row each minimizer is picked from.
+	 */
+	public MinimizerIndex(Sequence reference, int k, int w) {
+		if (w < 1) {
+			throw new IllegalArgumentException("The window must be a positive integer.");
+		}
+		if (reference.size() >= Integer.MAX_VALUE / 2) {
+			throw new IllegalArgumentException("The reference is too long to index in one piece.");
+		}
+		this.reference = reference;
+		this.k = k;
+		this.w = w;
+		bases = new byte[reference.size()];
+		for (int i = 0; i < bases.length; i++) {
+			bases[i] = (byte) reference.getIndex(i);
+		}
+		Sketch sketch = new Sketch(k, w);
+		sketch.sketch(reference);
+		entries = new long[sketch.size];
+		System.arraycopy(sketch.minimizers, 0, entries, 0, sketch.size);
+		Arrays.sort(entries);
+	}
+
+	/**
+	 * Find where the entries for a hash start.
+	 *
+	 * @param hash The hash.
+	 * @return The first entry with that hash or a bigger one.
+	 */
+	int find(long hash) {
+		long key = hash << 32;
+		int low = 0, high = entries.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (entries[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Count how many times a hash is in the index, starting from where <code>find</code> found
+	 * it.  Past a limit, it stops counting.
+	 */
+	int count(long hash, int from, int limit) {
+		int to = from;
+		while (to < entries.length && entries[to] >>> 32 == hash && to - from <= limit) {
+			to++;
+		}
+		return to - from;
+	}
+
+	/**
+	 * @return The reference genome.
+	 */
+	public Sequence getReference() {
+		return reference;
+	}
+	/**
+	 * @return How long each k-mer is.
+	 */
+	public int getK() {
+		return k;
+	}
+	/**
+	 * @return How many k-mers in a row each minimizer is picked from.
+	 */
+	public int getW() {
+		return w;
+	}
+	/**
+	 * @return How many minimizers the reference has.
+	 */
+	public int size() {
+		return entries.length;
+	}
+	/**
+	 * @return Roughly how much memory the index takes, in bytes, leaving out the reference itself.
+	 */
+	public long getMemoryUsage() {
+		return bases.length + 8L * entries.length;
+	}
+
+	/**
+	 * <p>
+	 * This works out the minimizers of a sequence, in the order they turn up.  It keeps its
+	 * scratch space from one sequence to the next, so it can't be shared between threads.
+	 * </p>
+	 */
+	static class Sketch {
+		int k, w;
+		long[] minimizers = new long[64];	// The same form as the index's entries.
+		int size;
+		long[] window;		// The last w k-mers, in the same form, round and round.
+
+		Sketch(int k, int w) {
+			this.k = k;
+			this.w = w;
+			window = new long[w];
+		}
+
+		/**
+		 * Work out the minimizers of a sequence.
+		 */
+		void sketch(Sequence sequence) {
+			size = 0;
+			if (sequence.size() < k) {
+				return;
+			}
+			KmerCursor kmers = new KmerCursor(sequence, k);
+			long last = -1;
+			int t = 0;
+			while (kmers.next()) {
+				long code = kmers.getCode(), rcCode = kmers.getReverseComplementCode();
+				long entry;
+				if (code == rcCode) {
+					entry = Long.MAX_VALUE;		// It's on both strands, so it can't be picked.
+				} else {
+					long hash = LongIntHashMap.slotFor(kmers.getCanonicalCode(), (int) HASH_MASK);
+					entry = hash << 32 | (long) kmers.getPosition() << 1 | (code == kmers.getCanonicalCode() ? 0 : 1);
+				}
+				window[t % w] = entry;
+				if (++t < w) {
+					continue;
+				}
+				// Pick the smallest hash in the window; on a tie, the first one.
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < w; i++) {
+					long candidate = window[(t + i) % w];
+					if (candidate >>> 32 < best >>> 32) {
+						best = candidate;
+					}
+				}
+				if (best != Long.MAX_VALUE && best != last) {
+					if (size == minimizers.length) {
+						long[] more = new long[size * 2];
+						System.arraycopy(minimizers, 0, more, 0, size);
+						minimizers = more;
+					}
+					minimizers[size++] = best;
+					last = best;
+				}
+			}
+		}
+	}
+}
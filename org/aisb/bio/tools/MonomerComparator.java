@@ -4,6 +4,7 @@
  */
 package org.aisb.bio.tools;
 
+import org.aisb.bio.things.Alphabet;
 import org.aisb.bio.things.Monomer;
 
 /**
@@ -18,4 +19,20 @@ import org.aisb.bio.things.Monomer;
  */
 public abstract class MonomerComparator {
 	abstract public int compare(Monomer m1, Monomer m2);
+
+	/**
+	 * Compare two monomers given only their numbers (see {@link Monomer#getNumber()}).
+	 * This is what the inner loops of the aligners call, together with
+	 * {@link org.aisb.bio.things.Sequence#getIndex(int)}, so they never have to touch
+	 * the monomer objects.  By default it just looks the monomers up in the alphabet and
+	 * calls <code>compare</code>; implementations that can do better should override it.
+	 * 
+	 * @param alphabet The alphabet both monomers belong to.
+	 * @param number1 The number of the first monomer.
+	 * @param number2 The number of the second monomer.
+	 * @return The same thing <code>compare</code> would return for those monomers.
+	 */
+	public int compare(Alphabet alphabet, int number1, int number2) {
+		return compare(alphabet.getByNumber(number1), alphabet.getByNumber(number2));
+	}
 }
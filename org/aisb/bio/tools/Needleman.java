@@ -3,23 +3,37 @@
  */
 package org.aisb.bio.tools;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
 
 /**
  * This implements the Needleman/Wunsch algorithm, with gap penalties,
  * including end gap penalties.  This version gets the gap penalties correct.
- * Another recent change is in the traceback matrix.  Now, instead of each
- * cell holding "0" or "1", it essentially holds the number of alignments known
- * as of that location in the matrix.
+ * Another recent change is in the traceback matrix.  Now each cell holds
+ * a few bits saying which ways a best alignment can go from there, so the
+ * alignments with the best score can be counted in one pass over the matrix,
+ * instead of following every one of them, and listed one at a time (see
+ * <code>getBestAlignments</code>) without ever having them all in memory.
+ * There can be astronomically many of them on repetitive sequences.
+ * 
+ * The comparator is only called once for each pair of monomers in the alphabet;
+ * after that, the scores are looked up in a profile of the second sequence (see
+ * {@link QueryProfile}).  The profile is kept as long as the second sequence doesn't
+ * change, so when aligning lots of sequences against one, make that one the second sequence.
  * 
- * Known problems:
+ * For long sequences, there's also a linear space mode (see <code>setLinearSpace</code>),
+ * which finds one best alignment without keeping any of the matrices.  For close relatives,
+ * there's a banded mode (see <code>setBandWidth</code>), which only looks near the diagonal.
+ * When only the score is wanted, there's a score-only mode (see <code>setScoreOnly</code>).
  * 
- * I did not have time to implement the options I wanted to
- * for printing out the sequences alignments.  They're all
- * calculated, in the "traceback" matrix.  Generating one
- * string from that matrix is easy (and done); generating the full
- * set turned out to take more time than I had allotted for
- * this task. 
+ * Nothing is printed while aligning.  To see what each alignment takes, attach an
+ * {@link AlignmentListener} (see <code>setAlignmentListener</code>).
  * 
  * @author Doug DeJulio
  *
@@ -34,11 +48,45 @@ public class Needleman extends SequenceAligner {
 	MonomerComparator comparator = new IdentityComparator();
 	
 	// These are used in the calculations.
-	int[][] matrix;	// The matrix of initial scores.
+	ScoringScheme scheme;	// Our scoring, in the newer form, made when it's first needed.
+	QueryProfile profile;	// The scores of every monomer against the second sequence.
 	int[][] finalScores; // The matrix of final scores.
-	int[][] traceback; // A boolean matrix to calculate and hold the actual traceback.
+	int[][] traceback; // Which ways the best alignments go from each cell; see the bits below.
 	int score;		// The highest current score in the whole matrix.
 	int numberOfAlignments;
+	long alignmentCount;	// The same, but it only stops counting at Long.MAX_VALUE.
+	boolean linearSpace = false;	// Find one alignment in O(n+m) memory instead of using the matrices.
+	boolean scoreOnly = false;	// Just work out the score, a row at a time, with no traceback.
+	AlignmentPath path;	// The alignment found in linear space or banded mode.
+	int bandWidth = 0;	// How far from the diagonal to look in banded mode; 0 for the whole matrix.
+	boolean autoWiden = false;	// In banded mode, widen the band until the alignment fits in it.
+	boolean bandEdgeTouched;
+	
+	int parallelism = 1;	// How many threads to fill the matrices with.
+	AlignmentListener listener;	// Told what each alignment took, if there is one.
+	
+	static final int NO_SCORE = Integer.MIN_VALUE / 4;	// Worse than any real score, with room to subtract from.
+	static final int TILE = 256;	// The matrices are filled in tiles this many cells on a side.
+
+	// The scratch space for align, one for each thread that uses it.
+	static final ThreadLocal workspaces = new ThreadLocal() {
+		protected Object initialValue() {
+			return new LinearSpaceAligner();
+		}
+	};
+
+	// The bits of the traceback matrix.  The first three say how a best alignment of the
+	// sequences up to this cell can end: with these two monomers paired up, or with a gap
+	// going down (in the second sequence) or across (in the first).
+	static final int END_PAIRED = 1, END_DOWN = 2, END_ACROSS = 4;
+	// The next four say where a best gap ending at this cell can start: right after the
+	// pair in the cell before it, or further back.
+	static final int DOWN_OPENED = 8, DOWN_EXTENDED = 16, ACROSS_OPENED = 32, ACROSS_EXTENDED = 64;
+	static final int ON_BEST_PATH = 128;	// These two are paired up in some best alignment.
+	static final int SEEN_END = 256, SEEN_DOWN = 512, SEEN_ACROSS = 1024;	// For marking the paths.
+	// The steps of a traceback: the best alignment up to a cell, these two paired up, and
+	// a gap going down or across that ends here.
+	static final int END = 0, PAIRED = 1, DOWN = 2, ACROSS = 3;
 	
 	/**
 	 * This constructor is a little cleaner to use outside of contexts in which
@@ -54,6 +102,23 @@ public class Needleman extends SequenceAligner {
 		this.comparator = comparator;
 	}
 
+	/**
+	 * Find one best global alignment of two sequences, without all the setting up.  This is
+	 * safe to call from any number of threads at once.  Each thread keeps its own scratch
+	 * space from one call to the next, as big as the biggest pair it's aligned, so calling
+	 * this over and over doesn't make any garbage to speak of except the alignments.  The
+	 * alignment is found in linear space (see <code>setLinearSpace</code>).
+	 * 
+	 * @param first The first sequence.
+	 * @param second The second sequence.
+	 * @param scheme How to score the alignment.  Note that this uses the scheme's gap
+	 * penalties as they are, unlike our constructor (see <code>getScoringScheme</code>).
+	 * @return The alignment.
+	 */
+	public static Alignment align(Sequence first, Sequence second, ScoringScheme scheme) {
+		return ((LinearSpaceAligner) workspaces.get()).align(first, second, scheme);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.aisb.bio.tools.SequenceAligner#execute()
 	 */
@@ -67,85 +132,127 @@ public class Needleman extends SequenceAligner {
 		if (firstSize < 2 || secondSize < 2) {
 			throw new IllegalArgumentException("Oh come on, do you really need a computer to align those sequences...?");
 		}
+		path = null;
+		bandEdgeTouched = false;
+		// Nothing is timed unless somebody's listening.
+		long start = listener == null ? 0 : System.nanoTime();
+		if (scoreOnly) {
+			executeScoreOnly(start);
+			return;
+		}
+		if (bandWidth > 0) {
+			executeBanded(start);
+			return;
+		}
+		if (linearSpace) {
+			executeInLinearSpace(start);
+			return;
+		}
 		
 		// We'll use multiple matrices, because it's easier to debug our work
-		// if we don't throw away data.  A simple optimization would be to
-		// just use one matrix.
-		matrix = new int[firstSize][secondSize];
+		// if we don't throw away data.  The comparison values don't need one,
+		// though: they're looked up in a profile of the second sequence.
 		finalScores = new int[firstSize][secondSize];
 		traceback = new int[firstSize][secondSize];
-		// Fill with comparison values.
-		for (int i=0; i < firstSize; i++) {
-			for (int j=0; j < secondSize; j++) {
-				matrix[i][j] = comparator.compare((Monomer)s1.get(i),(Monomer)s2.get(j));
-			}
+		// Pull out the monomer numbers once, so the loop below is all primitives.
+		int[] first = numbers(s1);
+		int[] second = numbers(s2);
+		// Work out the comparison values, and do the actual dynamic programming.
+		ScoreTable table = getScoringScheme().getScoreTable(s1.getAlphabet());
+		if (profile == null || !profile.isProfileOf(s2) || profile.getTable() != table) {
+			profile = table.profile(s2);
+		}
+		fillScores(first, second);
+		long filled = listener == null ? 0 : System.nanoTime();
+		// The penalties at the other end are handled by the traceBack method.
+		// Now, do the traceback and find the best score.
+		traceBack();
+		if (listener != null) {
+			// The two matrices, the rows the traceback counts with, and the profile.
+			long bytes = 8L * firstSize * secondSize + 44L * secondSize + 4L * profile.rows.length * secondSize;
+			report("full matrix", (long) firstSize * secondSize, filled - start, System.nanoTime() - filled, bytes);
 		}
-		// We've already got something interesting, and printing it out would let us
-		// eyeball the final solution.  Now for the actual dynamic programming.
+	}
 
-		// Uncomment one of the following to dump a matrix to stdout, for debugging.
-		System.out.println("Original matrix:"); dumpMatrix(matrix);
-		
-		// The edges are pretty easy.
-		for (int i=0; i < matrix.length; i++) {
-			finalScores[i][0] = matrix[i][0] - gapPenalty(i);
-		}
-		for (int j=1; j < matrix[0].length; j++) {
-			finalScores[0][j] = matrix[0][j] - gapPenalty(j);
-		}
-		// Now do the math for the interior spaces.
-		for (int i=1; i < matrix.length; i++) {
-			for (int j=1; j < matrix[0].length; j++) {
-				int thisScore = calculateScoreAt(i,j);
-				finalScores[i][j] = thisScore;
-			}
+	/**
+	 * Tell the listener what an alignment took.
+	 */
+	private void report(String method, long cells, long fillNanos, long tracebackNanos, long peakBytes) {
+		listener.alignmentFinished(new AlignmentMetrics(this, method, s1.size(), s2.size(), cells, fillNanos, tracebackNanos, peakBytes));
+	}
+	
+	/**
+	 * Work out the best score and nothing else, keeping only the current row.
+	 */
+	private void executeScoreOnly(long start) {
+		finalScores = null;
+		traceback = null;
+		LinearSpaceAligner aligner = new LinearSpaceAligner(getScoringScheme(), s1.getAlphabet());
+		score = aligner.score(numbers(s1), numbers(s2));
+		numberOfAlignments = 1;
+		alignmentCount = 1;
+		if (listener != null) {
+			report("score only", aligner.cells, System.nanoTime() - start, 0, aligner.getWorkspaceBytes());
+		}
+	}
+
+	/**
+	 * Find one best alignment without any of the matrices.  See {@link LinearSpaceAligner}.
+	 */
+	private void executeInLinearSpace(long start) {
+		finalScores = null;
+		traceback = null;
+		path = new AlignmentPath();
+		LinearSpaceAligner aligner = new LinearSpaceAligner(getScoringScheme(), s1.getAlphabet());
+		score = aligner.align(numbers(s1), numbers(s2), path);
+		numberOfAlignments = 1;
+		alignmentCount = 1;
+		if (listener != null) {
+			report("linear space", aligner.cells, System.nanoTime() - start, 0, aligner.getWorkspaceBytes());
 		}
-		// The penalties at the other end are handled by the doTracebackAt method.
+	}
 
-		// Uncomment the following if you want more debugging.
-		System.out.println("Final scores (except along lower/right edges):"); dumpMatrix(finalScores);
-		// Now, do the traceback and find the best score.
-		// There will always be at least one alignment.
+	/**
+	 * Find one best alignment near the diagonal.  See {@link BandedAligner}.
+	 */
+	private void executeBanded(long start) {
+		finalScores = null;
+		traceback = null;
+		int[] first = numbers(s1);
+		int[] second = numbers(s2);
+		BandedAligner aligner = new BandedAligner(getScoringScheme(), s1.getAlphabet());
+		path = new AlignmentPath();
+		int width = bandWidth;
+		score = aligner.align(first, second, width, path);
+		long cells = aligner.cells, bytes = aligner.bytes;
+		// Once the band is as wide as the matrix, there's no edge left to touch.
+		while (autoWiden && aligner.isEdgeTouched() && width < Math.max(first.length, second.length)) {
+			width *= 2;
+			score = aligner.align(first, second, width, path);
+			cells += aligner.cells;
+			bytes = Math.max(bytes, aligner.bytes);
+		}
+		bandEdgeTouched = aligner.isEdgeTouched();
 		numberOfAlignments = 1;
-		// If a traceback turns up a branch, it'll increase the number of alignments.
-		score = doTracebackAt(29,29);
-		
-		// Uncomment this to see the traceback matrix.
-		//dumpMatrix(traceback);
+		alignmentCount = 1;
+		if (listener != null) {
+			report("banded", cells, System.nanoTime() - start, 0, bytes);
+		}
 	}
-	
+
 	/**
-	 * @return
-	 */
-	private int doTraceback() {
-		int score;
-		// First, do the actual traceback.
-		score =  doTracebackAt(matrix.length-1, matrix[0].length-1);
-if (false) {		
-		int diag = matrix.length < matrix[0].length ? matrix.length : matrix[0].length;
-		int count = 0;
-		for (int slice = 0; slice < diag; slice++) {
-			int localCount = 0;
-			if (traceback[slice][slice] > 0) {
-				traceback[slice][slice] += count + localCount;
-				localCount++;
-			}
-			for (int i=slice+1; i < matrix.length; i++) {
-				if (traceback[i][slice] > 0) {
-					traceback[i][slice] += count + localCount;
-					localCount++;
-				}
-			}
-			for (int j=slice+1; j < matrix[0].length; j++) {
-				if (traceback[slice][j] > 0) {
-					traceback[slice][j] += count + localCount;
-					localCount++;
-				}
-			}
-			count += localCount - 1;
+	 * Describe our scoring in the form the newer aligners use.  Our gap penalty is affine,
+	 * so it's fully described by what gaps of length one and two cost.
+	 * 
+	 * @return The scoring scheme equivalent to our comparator and gap penalties.
+	 */
+	public ScoringScheme getScoringScheme() {
+		int open = gapPenalty(1), extend = gapPenalty(2) - gapPenalty(1);
+		// Keep the same one as long as it's still right, so its score tables are kept too.
+		if (scheme == null || scheme.getComparator() != comparator || scheme.getGapOpen() != open || scheme.getGapExtension() != extend) {
+			scheme = new ScoringScheme(comparator, open, extend);
 		}
-}		
-		return score;
+		return scheme;
 	}
 
 	/* (non-Javadoc)
@@ -154,83 +261,458 @@ if (false) {
 	public int getNumberOfAlignments() {
 		return numberOfAlignments;
 	}
-	
-	private int doTracebackAt(int firstPos, int secondPos) {
-		// First, if we fell off the edge, give up.
-		if (firstPos < 0 || secondPos < 0) {
-			// The key thing here is that we're not recursing anymore.
-			return 0;
+
+	/**
+	 * @return The number of alignments with the best score.  Unlike <code>getNumberOfAlignments</code>,
+	 * this doesn't stop at the biggest int; if it's <code>Long.MAX_VALUE</code>, there are at
+	 * least that many.
+	 */
+	public long getAlignmentCount() {
+		return alignmentCount;
+	}
+
+	/**
+	 * Work out the best score, fill in the traceback matrix, and count the best alignments.
+	 * <p>
+	 * The best alignment of the sequences up to any cell ends either with those two monomers
+	 * paired up, which is the final score, or with a gap going down or across.  The best gap
+	 * scores are worked out again the same way the fill does it, and each cell gets a bit for
+	 * each of those three that ties for the best, and for whether each gap was just opened
+	 * or extended.  The number of best alignments up to a cell is then just the sum of the
+	 * numbers for the ways it can go, so they're all counted in one pass, a row at a time.
+	 * The counts can get enormous, so they stop at <code>Long.MAX_VALUE</code>.
+	 */
+	private void traceBack() {
+		int n = finalScores.length, m = finalScores[0].length;
+		int open = gapPenalty(1), extend = gapPenalty(2) - gapPenalty(1);
+		int[] down = new int[m];		// Best scores of a gap going down, in the row above.
+		long[] downCounts = new long[m];
+		long[] pairedCounts = new long[m], lastPairedCounts = new long[m];
+		long[] counts = new long[m], lastCounts = new long[m];
+		for (int j=0; j < m; j++) {
+			down[j] = NO_SCORE;
+		}
+		int best = NO_SCORE;
+		for (int i=0; i < n; i++) {
+			int[] here = finalScores[i];
+			int[] above = i == 0 ? null : finalScores[i-1];
+			int[] flags = traceback[i];
+			int across = NO_SCORE;
+			long acrossCount = 0;
+			for (int j=0; j < m; j++) {
+				int flag = 0;
+				// Everything before a pair is the best alignment up to the cell before it.
+				long pairedCount = i == 0 || j == 0 ? 1 : lastCounts[j-1];
+				int newDown = NO_SCORE;
+				long downCount = 0;
+				if (i > 0) {
+					newDown = max(above[j] - open, down[j] - extend);
+					if (above[j] - open == newDown) {
+						flag |= DOWN_OPENED;
+						downCount = lastPairedCounts[j];
+					}
+					if (i > 1 && down[j] - extend == newDown) {
+						flag |= DOWN_EXTENDED;
+						downCount = addCounts(downCount, downCounts[j]);
+					}
+				}
+				int newAcross = NO_SCORE;
+				long acrossCountHere = 0;
+				if (j > 0) {
+					newAcross = max(here[j-1] - open, across - extend);
+					if (here[j-1] - open == newAcross) {
+						flag |= ACROSS_OPENED;
+						acrossCountHere = pairedCounts[j-1];
+					}
+					if (j > 1 && across - extend == newAcross) {
+						flag |= ACROSS_EXTENDED;
+						acrossCountHere = addCounts(acrossCountHere, acrossCount);
+					}
+				}
+				best = max(here[j], max(newDown, newAcross));
+				long count = 0;
+				if (here[j] == best) {
+					flag |= END_PAIRED;
+					count = pairedCount;
+				}
+				if (i > 0 && newDown == best) {
+					flag |= END_DOWN;
+					count = addCounts(count, downCount);
+				}
+				if (j > 0 && newAcross == best) {
+					flag |= END_ACROSS;
+					count = addCounts(count, acrossCountHere);
+				}
+				flags[j] = flag;
+				down[j] = newDown;
+				downCounts[j] = downCount;
+				pairedCounts[j] = pairedCount;
+				counts[j] = count;
+				across = newAcross;
+				acrossCount = acrossCountHere;
+			}
+			long[] swap = counts;
+			counts = lastCounts;
+			lastCounts = swap;
+			swap = pairedCounts;
+			pairedCounts = lastPairedCounts;
+			lastPairedCounts = swap;
+		}
+		// The last cell worked out was the far corner.
+		score = best;
+		alignmentCount = lastCounts[m-1];
+		numberOfAlignments = (int) Math.min(alignmentCount, Integer.MAX_VALUE);
+		markBestPaths();
+	}
+
+	/**
+	 * Add two counts of alignments, stopping at the biggest long instead of wrapping around.
+	 */
+	static long addCounts(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+	/**
+	 * Mark the pairs on any best alignment, working back from the far corner.  Each step
+	 * is only looked at once, however many alignments go through it.
+	 */
+	private void markBestPaths() {
+		int[] stack = new int[3 * 64];
+		int depth = 0;
+		stack[depth++] = END;
+		stack[depth++] = finalScores.length - 1;
+		stack[depth++] = finalScores[0].length - 1;
+		while (depth > 0) {
+			int j = stack[--depth], i = stack[--depth], kind = stack[--depth];
+			if (i < 0 || j < 0) {
+				continue;
+			}
+			int flag = traceback[i][j];
+			int seen = kind == END ? SEEN_END : kind == PAIRED ? ON_BEST_PATH : kind == DOWN ? SEEN_DOWN : SEEN_ACROSS;
+			if ((flag & seen) != 0) {
+				continue;
+			}
+			traceback[i][j] = flag | seen;
+			if (stack.length < depth + 9) {
+				int[] newStack = new int[stack.length * 2];
+				System.arraycopy(stack, 0, newStack, 0, depth);
+				stack = newStack;
+			}
+			for (int choice=0; choice < 3; choice++) {
+				int previous = previousStep(flag, kind, choice);
+				if (previous >= 0) {
+					stack[depth++] = previous;
+					stack[depth++] = kind == PAIRED || kind == DOWN ? i - 1 : i;
+					stack[depth++] = kind == PAIRED || kind == ACROSS ? j - 1 : j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find one of the steps a best alignment could have taken to get to this one.  The step
+	 * before a pair is the best alignment up to the cell diagonally before it; the step before
+	 * a gap going down is in the cell above, and the step before one going across is in the
+	 * cell to the left.  The best alignment up to a cell ends in that same cell.
+	 * 
+	 * @param flag The traceback bits of the cell.
+	 * @param kind The kind of step.
+	 * @param choice Which of the possible steps before it (0, 1 or 2).
+	 * @return The kind of step before it, or -1 if that choice isn't one of the best.
+	 */
+	static int previousStep(int flag, int kind, int choice) {
+		switch (kind) {
+		case END:
+			if (choice == 0 && (flag & END_PAIRED) != 0) {
+				return PAIRED;
+			}
+			if (choice == 1 && (flag & END_DOWN) != 0) {
+				return DOWN;
+			}
+			if (choice == 2 && (flag & END_ACROSS) != 0) {
+				return ACROSS;
+			}
+			return -1;
+		case PAIRED:
+			return choice == 0 ? END : -1;
+		case DOWN:
+			if (choice == 0 && (flag & DOWN_OPENED) != 0) {
+				return PAIRED;
+			}
+			return choice == 1 && (flag & DOWN_EXTENDED) != 0 ? DOWN : -1;
+		default:
+			if (choice == 0 && (flag & ACROSS_OPENED) != 0) {
+				return PAIRED;
+			}
+			return choice == 1 && (flag & ACROSS_EXTENDED) != 0 ? ACROSS : -1;
 		}
-		// Start at the far corner.
-		int bestScore = finalScores[firstPos][secondPos];
-		int countOfBestScore = 0;	// How many times does it appear?
-		// Can we do better along one edge?
-		for (int i=0; i < firstPos; i++) {
-			int thisScore = finalScores[i][secondPos] - gapPenalty(firstPos - i);
-			if (thisScore > bestScore) {
-				bestScore = thisScore;
+	}
+
+	/**
+	 * This lists the best alignments one at a time, by going back through the traceback
+	 * matrix depth first.  Only the current alignment is kept, along with which way it went
+	 * at each step, so it takes no more memory however many alignments there are.
+	 */
+	class BestAlignments implements Iterator {
+		Sequence first = s1, second = s2;
+		int[][] steps = traceback;
+		int best = score;
+		ScoreTable table = getScoringScheme().getScoreTable(s1.getAlphabet());
+		long remaining;		// How many more we're allowed to hand out.
+		// The steps from the far corner back to where we are, and which way we went from each.
+		int[] kinds, rows, columns, choices, lengths;
+		int depth = 0;
+		byte[] reversed;	// The columns of the alignment so far, from the end.
+		int length = 0;
+		AlignmentPath path = new AlignmentPath();
+		Alignment next;
+
+		BestAlignments(long limit) {
+			int size = 2 * (first.size() + second.size()) + 2;
+			kinds = new int[size];
+			rows = new int[size];
+			columns = new int[size];
+			choices = new int[size];
+			lengths = new int[size];
+			reversed = new byte[first.size() + second.size()];
+			remaining = limit;
+			if (remaining > 0) {
+				push(END, first.size() - 1, second.size() - 1);
+				next = find();
 			}
 		}
-		for (int j=0; j < secondPos; j++) {
-			int thisScore = finalScores[firstPos][j] - gapPenalty(secondPos - j);
-			if (thisScore > bestScore) {
-				bestScore = thisScore;
+
+		void push(int kind, int i, int j) {
+			kinds[depth] = kind;
+			rows[depth] = i;
+			columns[depth] = j;
+			choices[depth] = -1;
+			lengths[depth] = length;
+			depth++;
+			if (kind == PAIRED) {
+				reversed[length++] = AlignmentPath.MATCH;
+			} else if (kind == DOWN) {
+				reversed[length++] = AlignmentPath.INSERT;
+			} else if (kind == ACROSS) {
+				reversed[length++] = AlignmentPath.DELETE;
+			} else {
+				// Off the edge, whatever's left of the other sequence is an end gap.
+				for (int k = i < 0 ? j : -1; k >= 0; k--) {
+					reversed[length++] = AlignmentPath.DELETE;
+				}
+				for (int k = j < 0 ? i : -1; k >= 0; k--) {
+					reversed[length++] = AlignmentPath.INSERT;
+				}
 			}
 		}
-		// We know the best score. It could happen more than once.
-		// Mark that score, and at each location, continue the traceback.
-		if (finalScores[firstPos][secondPos] == bestScore) {
-			traceback[firstPos][secondPos] = 1;
-			countOfBestScore++;
-			doTracebackAt(firstPos-1, secondPos-1);
-		}
-		for (int i=0; i < firstPos; i++) {
-			if (finalScores[i][secondPos] - gapPenalty(firstPos - i) == bestScore) {
-				traceback[i][secondPos] = 1;
-				countOfBestScore++;
-				doTracebackAt(i-1, secondPos-1);
+
+		void pop() {
+			depth--;
+			length = lengths[depth];
+		}
+
+		/**
+		 * Carry on from where we are to the next complete alignment.
+		 */
+		Alignment find() {
+			while (depth > 0) {
+				int top = depth - 1;
+				int kind = kinds[top], i = rows[top], j = columns[top];
+				if (i < 0 || j < 0) {
+					// This is the start of an alignment.  The first time we get here, it's done.
+					if (choices[top] < 0) {
+						choices[top] = 0;
+						path.clear();
+						path.addReversed(reversed, 0, length);
+						return new Alignment(first, 0, second, 0, path, best, table);
+					}
+					pop();
+					continue;
+				}
+				int previous = -1;
+				while (previous < 0 && ++choices[top] < 3) {
+					previous = previousStep(steps[i][j], kind, choices[top]);
+				}
+				if (previous < 0) {
+					pop();
+					continue;
+				}
+				push(previous, kind == PAIRED || kind == DOWN ? i - 1 : i, kind == PAIRED || kind == ACROSS ? j - 1 : j);
 			}
+			return null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
 		}
-		for (int j=0; j < secondPos; j++) {
-			if (finalScores[firstPos][j] - gapPenalty(secondPos - j) == bestScore) {
-				traceback[firstPos][j] = 1 + countOfBestScore;
-				countOfBestScore++;
-				doTracebackAt(firstPos-1, j-1);
+
+		public Object next() {
+			if (next == null) {
+				throw new NoSuchElementException();
 			}
+			Alignment result = next;
+			next = --remaining > 0 ? find() : null;
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Alignments can't be removed.");
 		}
-		// If we found more than one alignment at this level, that's a branch.
-		// Each branch at any level increases the total number of alignments by one.
-		numberOfAlignments += (countOfBestScore-1);
-		
-		// ...then return the best score at *this* level, 
-		return bestScore;
 	}
 	
-	private int calculateScoreAt(int firstPos, int secondPos) {
-		// Seed with the one directly "diagonally above" us.
-		int maximumSoFar = finalScores[firstPos-1][secondPos-1];
-		// See if there's a higher value along one direction.
-		if (firstPos > 1) {
-			for (int i=0; i < firstPos-1; i++) {
-				int gapLength = (firstPos - i) - 1;	// Calculate the gap length.
-				// Figure out the score if this slot is used, including gap penalties.
-				int thisValue = finalScores[i][secondPos-1] - gapPenalty(gapLength);
-				// See if this is the best path we've found so far.
-				maximumSoFar = max(maximumSoFar,thisValue);
+	/**
+	 * Fill in the final scores.  Each final score is the score of
+	 * the best alignment that ends with those two monomers paired up.  Working that out used
+	 * to mean looking back along the whole row and column for the best place for a gap to
+	 * start, for every cell.  Since the gap penalty is affine, it's enough to carry along, for
+	 * each cell, the best score of an alignment ending in a gap in each direction (Gotoh's
+	 * trick), so each cell takes a fixed amount of work.  The scores come out exactly the same.
+	 * <p>
+	 * The matrix is done in square tiles.  A tile only needs the tiles above it and to its left
+	 * to be done first, so all the tiles on one anti-diagonal can be done at once, and if we've
+	 * been given more than one thread, they are.  Each cell is worked out exactly the same way
+	 * either way, so so are the scores.
+	 */
+	private void fillScores(int[] first, int[] second) {
+		final int tileRows = (first.length + TILE - 1) / TILE;
+		final int tileColumns = (second.length + TILE - 1) / TILE;
+		final TileFill fill = new TileFill(first, second, tileRows, tileColumns);
+		if (parallelism <= 1 || tileRows == 1 || tileColumns == 1) {
+			for (int row=0; row < tileRows; row++) {
+				for (int column=0; column < tileColumns; column++) {
+					fill.fillTile(row, column);
+				}
 			}
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (int diagonal=0; diagonal < tileRows + tileColumns - 1; diagonal++) {
+				int firstRow = Math.max(0, diagonal - tileColumns + 1);
+				int lastRow = Math.min(tileRows, diagonal + 1);
+				pool.invoke(new TileTask(fill, diagonal, firstRow, lastRow));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * This fills in one tile of the matrices at a time.  Besides the matrices themselves, each
+	 * tile needs the best scores ending in a gap along the bottom row of the tile above it and
+	 * the right column of the tile to its left, so those are kept too.
+	 */
+	class TileFill {
+		int[] first, second;
+		int open, extend;
+		// Scores ending in a gap going down (X) and across (Y), along the last row
+		// above each row of tiles, and the last column before each column of tiles.
+		int[][] rowX, rowY, columnX, columnY;
+
+		TileFill(int[] first, int[] second, int tileRows, int tileColumns) {
+			this.first = first;
+			this.second = second;
+			open = gapPenalty(1);
+			extend = gapPenalty(2) - gapPenalty(1);
+			rowX = new int[tileRows][];
+			rowY = new int[tileRows][];
+			columnX = new int[tileColumns][];
+			columnY = new int[tileColumns][];
+			for (int row=1; row < tileRows; row++) {
+				rowX[row] = new int[second.length];
+				rowY[row] = new int[second.length];
+			}
+			for (int column=1; column < tileColumns; column++) {
+				columnX[column] = new int[first.length];
+				columnY[column] = new int[first.length];
+			}
+		}
+
+		void fillTile(int tileRow, int tileColumn) {
+			int i0 = tileRow * TILE, i1 = Math.min(first.length, i0 + TILE);
+			int j0 = tileColumn * TILE, j1 = Math.min(second.length, j0 + TILE);
+			int width = j1 - j0;
+			// The gap scores for the row above, starting with the ones from the tile above.
+			int[] downGaps = new int[width];
+			int[] acrossGaps = new int[width];
+			for (int j=0; j < width; j++) {
+				downGaps[j] = i0 == 0 ? NO_SCORE : rowX[tileRow][j0 + j];
+				acrossGaps[j] = i0 == 0 ? NO_SCORE : rowY[tileRow][j0 + j];
+			}
+			for (int i=i0; i < i1; i++) {
+				// The comparison values for this row: this monomer against the whole second sequence.
+				int[] scores = profile.row(first[i]);
+				int[] here = finalScores[i];
+				int[] above = i == 0 ? null : finalScores[i-1];
+				// What's just to the left of this row, and diagonally up and left of it.
+				int left = NO_SCORE, across = NO_SCORE, diagonalDown = NO_SCORE, diagonalAcross = NO_SCORE;
+				if (j0 > 0) {
+					left = here[j0-1];
+					across = columnY[tileColumn][i];
+					if (i > 0) {
+						diagonalDown = columnX[tileColumn][i-1];
+						diagonalAcross = columnY[tileColumn][i-1];
+					}
+				}
+				for (int j=j0; j < j1; j++) {
+					int k = j - j0;
+					int upDown = downGaps[k], upAcross = acrossGaps[k];
+					int score;
+					if (i == 0 || j == 0) {
+						// The edges are pretty easy.
+						score = scores[j] - gapPenalty(i + j);
+					} else {
+						score = scores[j] + max(above[j-1], max(diagonalDown, diagonalAcross));
+					}
+					here[j] = score;
+					downGaps[k] = i == 0 ? NO_SCORE : max(above[j] - open, upDown - extend);
+					across = j == 0 ? NO_SCORE : max(left - open, across - extend);
+					acrossGaps[k] = across;
+					left = score;
+					diagonalDown = upDown;
+					diagonalAcross = upAcross;
+				}
+				// Pass the right column along to the tile to the right.
+				if (tileColumn + 1 < columnX.length) {
+					columnX[tileColumn+1][i] = downGaps[width-1];
+					columnY[tileColumn+1][i] = acrossGaps[width-1];
+				}
+			}
+			// Pass the bottom row along to the tile below.
+			if (tileRow + 1 < rowX.length) {
+				System.arraycopy(downGaps, 0, rowX[tileRow+1], j0, width);
+				System.arraycopy(acrossGaps, 0, rowY[tileRow+1], j0, width);
+			}
+		}
+	}
+
+	/**
+	 * This fills in a run of the tiles on one anti-diagonal, splitting the run in half until
+	 * it's down to one tile.
+	 */
+	class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		TileFill fill;
+		int diagonal;
+		int firstRow, lastRow;	// The tiles from firstRow up to (not including) lastRow.
+
+		TileTask(TileFill fill, int diagonal, int firstRow, int lastRow) {
+			this.fill = fill;
+			this.diagonal = diagonal;
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
 		}
 
-		// See if there's a higher value along the other direction.
-		if (secondPos > 1) {
-			for (int j=0; j < secondPos-1; j++) {
-				int gapLength = (secondPos - j) - 1;	// Calculate the gap length.
-				// Figure out the score if this slot is used, including gap penalties.
-				int thisValue = finalScores[firstPos-1][j] - gapPenalty(gapLength);
-				// See if this is the best path we've found so far.
-				maximumSoFar = max(maximumSoFar,thisValue);
+		protected void compute() {
+			if (lastRow - firstRow > 1) {
+				int middle = (firstRow + lastRow) >>> 1;
+				invokeAll(new TileTask(fill, diagonal, firstRow, middle), new TileTask(fill, diagonal, middle, lastRow));
+				return;
 			}
+			fill.fillTile(firstRow, diagonal - firstRow);
 		}
-		return matrix[firstPos][secondPos] + maximumSoFar;
 	}
 	
 	// For convenience and readability.
@@ -250,20 +732,6 @@ if (false) {
 		return i>j?i:j;
 	}
 	
-	// This is for debugging only.
-	private void dumpMatrix(int[][] matrix) {
-		//for (int i = 0; i < matrix.length; i++) {
-		for (int i = 0; i < 29; i++) {
-			//for (int j=0; j < matrix[0].length; j++) {
-			for (int j=0; j < 29; j++) {
-				//System.out.print("(" + ((Monomer)s1.get(i)).getCode() + "," + ((Monomer)s2.get(j)).getCode() + "," + matrix[i][j] + ")");
-				System.out.print("\t" + matrix[i][j]);
-				//System.out.print(matrix[i][j]);
-			}
-			System.out.println();
-		}
-	}
-
 	/**
 	 * Set the comparator to use to match each pair of elements.
 	 * 
@@ -304,6 +772,125 @@ if (false) {
 	public void setGapExtensionPenalty(int gapExtensionPenalty) {
 		this.gapExtensionPenalty = gapExtensionPenalty;
 	}
+	/**
+	 * @return True if we're in linear space mode.
+	 */
+	public boolean isLinearSpace() {
+		return linearSpace;
+	}
+	/**
+	 * Switch linear space mode on or off.  In linear space mode, the memory used goes up with
+	 * the sum of the sequence lengths instead of their product, so two 50,000-residue proteins
+	 * can be aligned in a few megabytes.  It finds the same best score, and one of the best
+	 * alignments, but it doesn't keep track of how many best alignments there are (it says
+	 * there's one) and there's no alignment matrix.
+	 * 
+	 * @param linearSpace True for linear space mode.
+	 */
+	public void setLinearSpace(boolean linearSpace) {
+		this.linearSpace = linearSpace;
+	}
+	/**
+	 * @return True if we're in score-only mode.
+	 */
+	public boolean isScoreOnly() {
+		return scoreOnly;
+	}
+	/**
+	 * Switch score-only mode on or off.  In score-only mode, the best score is worked out a
+	 * row at a time, keeping only the row before, and that's all: there's no traceback, so
+	 * asking for an alignment is an error.  It's the cheapest way to rank or compare lots of
+	 * sequences, in both time and memory.  It takes precedence over the other modes, and
+	 * the score is always exact.
+	 * 
+	 * @param scoreOnly True for score-only mode.
+	 */
+	public void setScoreOnly(boolean scoreOnly) {
+		this.scoreOnly = scoreOnly;
+	}
+	/**
+	 * @return How many threads the matrices are filled with.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	/**
+	 * Set how many threads to fill the matrices with.  The default is one.  More only helps
+	 * with long sequences (a few thousand residues or more), since the threads can't all
+	 * get going until the fill is a few tiles in.  The results are exactly the same.
+	 * 
+	 * @param parallelism How many threads to use.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be a positive integer.");
+		}
+		this.parallelism = parallelism;
+	}
+	/**
+	 * @return The listener told about each alignment, or null if there isn't one.
+	 */
+	public AlignmentListener getAlignmentListener() {
+		return listener;
+	}
+	/**
+	 * Set something to be told what each alignment takes: the cells worked out, the time spent
+	 * filling and tracing back, and how much memory the matrices took (see {@link AlignmentMetrics}).
+	 * Without one, nothing is timed, so it costs nothing.
+	 * 
+	 * @param listener The listener, or null for none.
+	 */
+	public void setAlignmentListener(AlignmentListener listener) {
+		this.listener = listener;
+	}
+	/**
+	 * @return How far from the diagonal banded mode looks, or 0 if it's off.
+	 */
+	public int getBandWidth() {
+		return bandWidth;
+	}
+	/**
+	 * Switch banded mode on or off.  In banded mode, only the cells within some distance of the
+	 * diagonal are filled in (the diagonal through the far corner too, if the sequences aren't
+	 * the same length), so the time and memory go up with the length times the band width.
+	 * That's a big saving for close relatives, whose best alignment never strays far from the
+	 * diagonal.  Like linear space mode, it finds one alignment, and there's no alignment matrix.
+	 * Banded mode takes precedence over linear space mode.
+	 * 
+	 * @param bandWidth How far from the diagonal to look, or 0 to fill the whole matrix.
+	 */
+	public void setBandWidth(int bandWidth) {
+		if (bandWidth < 0) {
+			throw new IllegalArgumentException("Negative band width: " + bandWidth);
+		}
+		this.bandWidth = bandWidth;
+	}
+	/**
+	 * @return True if the band gets wider automatically.
+	 */
+	public boolean isAutoWiden() {
+		return autoWiden;
+	}
+	/**
+	 * Say whether to widen the band automatically.  If this is on, and the best alignment in the
+	 * band touches its edge, the band is doubled and the alignment done again, until the best
+	 * alignment stays clear of the edge.  If the sequences are more different than expected,
+	 * this can end up filling the whole matrix, a bit at a time.
+	 * 
+	 * @param autoWiden True to widen the band automatically.
+	 */
+	public void setAutoWiden(boolean autoWiden) {
+		this.autoWiden = autoWiden;
+	}
+	/**
+	 * Tell whether the last banded alignment touched the edge of the band.  If it did, there
+	 * might be a better alignment outside the band, and it's worth trying again with a wider one.
+	 * 
+	 * @return True if the alignment touched the edge of the band.
+	 */
+	public boolean isBandEdgeTouched() {
+		return bandEdgeTouched;
+	}
 	/* (non-Javadoc)
 	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentScore()
 	 */
@@ -318,81 +905,75 @@ if (false) {
 		return getAlignmentAsString(1);
 	}
 	
+	/**
+	 * Get one of the best alignments.  They're numbered in the order <code>getBestAlignments</code>
+	 * lists them in, starting from one.
+	 * 
+	 * @param n Which alignment.
+	 * @return The alignment, as two lines of text.
+	 */
 	public String getAlignmentAsString(int n) {
-		// Find one, any one.
-		String sequenceLineOne = new String();
-		String sequenceLineTwo = new String();
-
-		int i=0, j=0, oldi=0, oldj=0;
-		outerLoop: while (i < matrix.length && j < matrix[0].length) {
-			// Is there a match at this spot?
-			if (traceback[i][j] >= n) {
-				sequenceLineOne = sequenceLineOne + ((Monomer)s1.get(i)).getCode();
-				sequenceLineTwo = sequenceLineTwo + ((Monomer)s2.get(j)).getCode();
-				// Now go "southeast" by one.
-				i++;
-				j++;
-				oldi = i;
-				oldj = j;
-				continue outerLoop;
-			}
-			// There's a gap.  Is there a match in sequence 1?
-			i = oldi;
-			for (j = oldj; j < matrix[0].length; j++) {
-				if (traceback[i][j] >= n) {
-					// A match!  Fill in the blanks...
-					for (int count = 0; count < j - oldj; count++) {
-						sequenceLineOne = sequenceLineOne + "-";
-						sequenceLineTwo = sequenceLineTwo + ((Monomer)s2.get(oldj + count)).getCode();
-					}
-					oldi = i;
-					oldj = j;
-					continue outerLoop;
-				}
-			}
-			// There's no match in sequence 1.  How about 2?
-			j = oldj;
-			for (i = oldi; i < matrix.length; i++) {
-				if (traceback[i][j] >= n) {
-					// A match!  Fill in the blanks...
-					for (int count = 0; count < i - oldi; count++) {
-						sequenceLineOne = sequenceLineOne + ((Monomer)s1.get(oldi + count)).getCode();
-						sequenceLineTwo = sequenceLineTwo + "-";
-					}
-					oldi = i;
-					oldj = j;
-					continue outerLoop;
-				}
-			}
+		if (n < 1) {
+			throw new IllegalArgumentException("The alignments are numbered from 1, not " + n + ".");
+		}
+		Iterator alignments = getBestAlignments(n);
+		for (int i=1; i < n && alignments.hasNext(); i++) {
+			alignments.next();
+		}
+		if (!alignments.hasNext()) {
+			throw new IllegalArgumentException("There are only " + alignmentCount + " alignments, not " + n + ".");
+		}
+		return alignments.next().toString();
+	}
 
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignment()
+	 */
+	public Alignment getBestAlignment() {
+		if (path != null) {
+			return new Alignment(s1, 0, s2, 0, path, score, getScoringScheme().getScoreTable(s1.getAlphabet()));
 		}
-		
-		// Exactly one sequence had to finish.  The other may not have.
-		// Did sequence 1 finish?  If not...
-		if (i < matrix.length) {
-			for (i = oldi; i < matrix.length; i++) {
-				sequenceLineOne = sequenceLineOne + ((Monomer)s1.get(i)).getCode();
-				sequenceLineTwo = sequenceLineTwo + "-";
-			}
+		return (Alignment) getBestAlignments(1).next();
+	}
+
+	/**
+	 * List the best alignments, one at a time.  Each is worked out when it's asked for, so
+	 * it's fine to look at the first few of a huge number of them.  In linear space and banded
+	 * modes, there's only the one.
+	 * 
+	 * @param limit The most alignments to list.
+	 * @return An iterator over the alignments, each an {@link Alignment}.
+	 */
+	public Iterator getBestAlignments(long limit) {
+		if (path != null) {
+			return limit < 1 ? Collections.EMPTY_LIST.iterator() : Collections.singletonList(getBestAlignment()).iterator();
 		}
-		// Did sequence 2 finish?  If not...
-		if (j < matrix[0].length) {
-			for (j = oldj; j < matrix[0].length; j++) {
-				sequenceLineOne = sequenceLineOne + "-";
-				sequenceLineTwo = sequenceLineTwo + ((Monomer)s2.get(j)).getCode();
-			}
+		if (traceback == null) {
+			throw new IllegalStateException("There's no alignment in score-only mode.");
 		}
-		
-		return sequenceLineOne + "\n" + sequenceLineTwo + "\n";
+		return new BestAlignments(limit);
+	}
+
+	/**
+	 * List all of the best alignments, one at a time.
+	 * 
+	 * @return An iterator over the alignments, each an {@link Alignment}.
+	 */
+	public Iterator getBestAlignments() {
+		return getBestAlignments(Long.MAX_VALUE);
 	}
 	
 	/* (non-Javadoc)
 	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentsAsStrings()
 	 */
 	public String[] getBestAlignmentsAsStrings() {
+		if (alignmentCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException("There are too many alignments to list them all at once; use getBestAlignments instead.");
+		}
 		String[] alignments = new String[numberOfAlignments];
+		Iterator all = getBestAlignments(numberOfAlignments);
 		for (int i=0; i < numberOfAlignments; i++) {
-			alignments[i] = this.getAlignmentAsString(i+1);
+			alignments[i] = all.next().toString();
 		}
 		return alignments;
 	}
@@ -401,11 +982,16 @@ if (false) {
 	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentsAsStrings()
 	 */
 	public Character[][] getBestAlignmentsAsMatrix() {
+		if (path != null) {
+			throw new UnsupportedOperationException("There's no alignment matrix in linear space and banded modes.");
+		}
+		if (traceback == null) {
+			throw new IllegalStateException("There's no alignment in score-only mode.");
+		}
 		Character yes = new Character('*');	// If there's a match, put a star.
 		Character no = new Character('+');	// If no match, put a '+', to help people trace lines.
 		// Make a matrix one bigger in each dimension than our traceback matrix.
-		//int s1size=s1.size(); int s2size=s2.size();
-		int s1size=30; int s2size=30;
+		int s1size=s1.size(); int s2size=s2.size();
 		Character[][] alignmentMatrix = new Character[s1size+1][s2size+1];
 		// Label the edges.
 		alignmentMatrix[0][0] = new Character(' ');
@@ -418,8 +1004,8 @@ if (false) {
 		// Now, fill in the matrix so it's visually useful.
 		for (int i=0; i < s1size; i++) {
 			for (int j=0; j < s2size; j++) {
-				if (traceback[i][j] > 0) {
-					alignmentMatrix[i+1][j+1] = new Character((char) (traceback[i][j] + '0'));
+				if ((traceback[i][j] & ON_BEST_PATH) != 0) {
+					alignmentMatrix[i+1][j+1] = yes;
 				} else {
 					alignmentMatrix[i+1][j+1] = no;
 				}
@@ -25,14 +25,37 @@ public class PSSMFitnessFunction implements FitnessFunction {
 	 */
 	public int fitness(Sequence inputSequence) {
 		int fitness = 0;
-		Monomer[] sequence = (Monomer[]) inputSequence.toArray(new Monomer[0]);
-		for (int i=0; i < sequence.length; i++) {
+		int size = inputSequence.size();
+		for (int i=0; i < size; i++) {
 			// Get the location at this position for this nucleotide.
-			fitness += pssm[i][sequence[i].getNumber()-1];
+			fitness += pssm[i][inputSequence.getIndex(i)-1];
 		}
 		return fitness;
 	}
 	
+	/**
+	 * Calculate the fitness of one window of a longer sequence.  This is how to scan a
+	 * whole genome for the motif: slide a {@link SequenceWindow} as wide as the PSSM along
+	 * it and score each position, without creating any new sequences.
+	 * 
+	 * @param window The window to score.  Only the first <code>getLength()</code> positions are used.
+	 * @return The fitness of the window.
+	 */
+	public int fitness(SequenceWindow window) {
+		int fitness = 0;
+		for (int i=0; i < pssm.length; i++) {
+			fitness += pssm[i][window.getIndex(i)-1];
+		}
+		return fitness;
+	}
+
+	/**
+	 * @return The number of positions in the PSSM.
+	 */
+	public int getLength() {
+		return pssm.length;
+	}
+	
 	/**
 	 * Calculate and return the maximum score.
 	 * 
@@ -0,0 +1,1106 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This aligns lots of sequences at once, the progressive way, like Clustal and MUSCLE.  It's
+ * a command bean: set the sequences and the scoring scheme, call <code>execute</code>, and
+ * then get the aligned rows, or write them all out.
+ * </p><p>
+ * There are three stages.  First, the distance between every pair of sequences is worked out.
+ * That's the only part that grows with the square of the number of sequences, so it's shared
+ * out a row at a time among all the threads.  By default the distance is the k-mer distance,
+ * one minus the fraction of k-mers the two sequences have in common, which is quick and good
+ * enough for building a tree.  The alternative is to align every pair (score only, in linear
+ * space, with the scheme given), and use one minus the score over the score of the shorter
+ * sequence against itself, kept between zero and one like the other.  Either way only the
+ * distances are kept, four bytes a pair, never the alignments.
+ * </p><p>
+ * Second, the distances are turned into a guide tree, by UPGMA (the default) or neighbor
+ * joining.  UPGMA keeps track of each cluster's nearest neighbor, so it usually takes time in
+ * proportion to the number of pairs.  Neighbor joining looks at every pair at every step, so
+ * it takes time in proportion to the cube of the number of sequences, which is several seconds
+ * for a few thousand of them.  Its tree is rooted halfway along its longest path.
+ * </p><p>
+ * Third, the sequences are aligned along the tree, from the leaves up: wherever two subtrees
+ * meet, their alignments are aligned to each other as profiles, and gaps are only ever added,
+ * never taken away.  Two columns score the average of every pair of monomers in them (a gap
+ * against anything scores nothing), and gaps cost the same as in the scheme, including at the
+ * ends, so two sequences on their own come out the same as {@link Needleman} aligns them.
+ * Subtrees that don't depend on each other are aligned by different threads at the same time.
+ * Only the alignments of the subtrees that haven't been joined yet are kept.
+ * </p>
+ */
+public class ProgressiveAligner {
+	public static final int KMER_DISTANCE = 0, ALIGNMENT_DISTANCE = 1;
+	public static final int UPGMA = 0, NEIGHBOR_JOINING = 1;
+	static final int MAX_SEQUENCES = 65536;		// So every pair has an int index.
+	static final int MAX_KMER_CODES = 1 << 20;	// How big each thread's table of k-mer counts can get.
+	static final float NEG = -1e30f;	// Minus infinity, with room to subtract from.
+	// The bits of the profile aligner's traceback: which state each state came from.
+	static final int FROM_PAIRED = 0, FROM_DOWN = 1, FROM_ACROSS = 2;
+
+	List sequences;
+	ScoringScheme scheme;
+	int distance = KMER_DISTANCE;
+	int tree = UPGMA;
+	int k = 0;		// The k-mer length for k-mer distances; 0 to pick one to suit the alphabet.
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	// The results.
+	Sequence[] members;
+	Alphabet alphabet;
+	float[] distances;	// Between every pair; see index.
+	int[] left, right;	// The children of each node of the guide tree.  The leaves are 0 to N-1, and the root is last.
+	float[] branch;		// The length of the branch above each node.
+	byte[][] rows;		// The aligned sequences, as monomer numbers with 0 for a gap, in the order they were given.
+
+	/**
+	 * @param scheme How to score alignments.
+	 */
+	public ProgressiveAligner(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * Align the sequences.  This doesn't return until they're done.
+	 */
+	public void execute() {
+		if (sequences == null || scheme == null) {
+			throw new IllegalStateException("Cannot execute until the sequences and scoring scheme have been set.");
+		}
+		members = (Sequence[]) sequences.toArray(new Sequence[sequences.size()]);
+		if (members.length == 0 || members.length > MAX_SEQUENCES) {
+			throw new IllegalArgumentException("Can only align from 1 to " + MAX_SEQUENCES + " sequences, not " + members.length + ".");
+		}
+		alphabet = members[0].getAlphabet();
+		int[][] numbers = new int[members.length][];
+		for (int i = 0; i < members.length; i++) {
+			if (members[i].getAlphabet() != alphabet) {
+				throw new IllegalArgumentException("Sequences of different types can't be aligned to each other.");
+			}
+			numbers[i] = SequenceAligner.numbers(members[i]);
+		}
+		rows = null;
+		computeDistances(numbers);
+		int n = members.length;
+		left = new int[2 * n - 1];
+		right = new int[2 * n - 1];
+		branch = new float[2 * n - 1];
+		Arrays.fill(left, -1);
+		Arrays.fill(right, -1);
+		if (tree == NEIGHBOR_JOINING) {
+			joinNeighbors();
+		} else {
+			upgma();
+		}
+		alignAlongTree(numbers);
+	}
+
+	/**
+	 * Where the distance between two sequences is kept.
+	 */
+	static int index(int i, int j) {
+		if (i < j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		return (int) ((long) i * (i - 1) / 2) + j;
+	}
+
+	/**
+	 * Work out the distance between every pair of sequences, on all the threads.
+	 */
+	void computeDistances(int[][] numbers) {
+		int n = numbers.length;
+		distances = new float[index(n, 0)];
+		int[][] kmers = null;
+		int[] selfScores = null;
+		int k = 0;
+		if (distance == ALIGNMENT_DISTANCE) {
+			// A sequence's best alignment with itself is just itself.
+			int[][] table = scheme.tableFor(alphabet);
+			selfScores = new int[n];
+			for (int i = 0; i < n; i++) {
+				for (int p = 0; p < numbers[i].length; p++) {
+					selfScores[i] += table[numbers[i][p]][numbers[i][p]];
+				}
+			}
+		} else {
+			k = getEffectiveK();
+			kmers = new int[n][];
+			for (int i = 0; i < n; i++) {
+				kmers[i] = kmers(numbers[i], k, alphabet.getQuantity() + 1);
+			}
+		}
+		// The rows are handed out longest first, so nobody's left with a long one at the end.
+		int[] nextRow = { n - 1 };
+		Worker[] workers = new Worker[Math.max(1, Math.min(threads, n - 1))];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new DistanceWorker(numbers, k, kmers, selfScores, nextRow);
+		}
+		run(workers);
+	}
+
+	/**
+	 * Start some workers, wait for them all to finish, and pass on whatever went wrong.
+	 */
+	void run(Worker[] workers) {
+		for (int t = 0; t < workers.length; t++) {
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		Throwable problem = null;
+		for (int t = 0; t < workers.length; t++) {
+			try {
+				workers[t].join();
+			} catch (InterruptedException e) {
+				for (int u = 0; u < workers.length; u++) {
+					workers[u].interrupt();
+				}
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while aligning sequences.");
+			}
+			if (problem == null) {
+				problem = workers[t].problem;
+			}
+		}
+		if (problem instanceof RuntimeException) {
+			throw (RuntimeException) problem;
+		}
+		if (problem != null) {
+			throw (Error) problem;
+		}
+	}
+
+	/**
+	 * Get every different k-mer of a sequence, as numbers, and how many times each one turns up.
+	 *
+	 * @return Each k-mer followed by its count, in order.
+	 */
+	static int[] kmers(int[] numbers, int k, int radix) {
+		if (numbers.length < k) {
+			return new int[0];
+		}
+		int[] codes = new int[numbers.length - k + 1];
+		int top = 1;	// What the first monomer of a k-mer is worth.
+		for (int p = 1; p < k; p++) {
+			top *= radix;
+		}
+		int code = 0;
+		for (int p = 0; p < numbers.length; p++) {
+			if (p >= k) {
+				code -= numbers[p - k] * top;
+			}
+			code = code * radix + numbers[p];
+			if (p >= k - 1) {
+				codes[p - k + 1] = code;
+			}
+		}
+		Arrays.sort(codes);
+		int different = 0;
+		for (int p = 0; p < codes.length; p++) {
+			if (p == 0 || codes[p] != codes[p - 1]) {
+				different++;
+			}
+		}
+		int[] counts = new int[2 * different];
+		for (int p = 0, q = -2; p < codes.length; p++) {
+			if (p == 0 || codes[p] != codes[p - 1]) {
+				q += 2;
+				counts[q] = codes[p];
+			}
+			counts[q + 1]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Build the guide tree by UPGMA: keep joining the two closest clusters, and make the
+	 * distance to the new one the average distance to everything in it.
+	 */
+	void upgma() {
+		int n = members.length;
+		float[] d = distances.clone();
+		int[] alive = new int[n];		// The slots still in use, in order.
+		int[] node = new int[n];		// The tree node in each slot.
+		int[] size = new int[n];
+		int[] nearest = new int[n];
+		float[] closest = new float[n];
+		float[] height = new float[2 * n - 1];
+		for (int i = 0; i < n; i++) {
+			alive[i] = i;
+			node[i] = i;
+			size[i] = 1;
+		}
+		int count = n;
+		for (int i = 0; i < n; i++) {
+			findNearest(i, d, alive, count, nearest, closest);
+		}
+		for (int next = n; next < 2 * n - 1; next++) {
+			int a = alive[0];
+			for (int s = 1; s < count; s++) {
+				if (closest[alive[s]] < closest[a]) {
+					a = alive[s];
+				}
+			}
+			int b = nearest[a];
+			height[next] = closest[a] / 2;
+			join(next, node[a], node[b], height[next] - height[node[a]], height[next] - height[node[b]]);
+			count = remove(b, alive, count);
+			for (int s = 0; s < count; s++) {
+				int c = alive[s];
+				if (c != a) {
+					d[index(a, c)] = (size[a] * d[index(a, c)] + size[b] * d[index(b, c)]) / (size[a] + size[b]);
+				}
+			}
+			size[a] += size[b];
+			node[a] = next;
+			// Only the clusters that were nearest to one of the two have to look again.
+			for (int s = 0; s < count; s++) {
+				int c = alive[s];
+				if (c == a) {
+					continue;
+				}
+				if (nearest[c] == a || nearest[c] == b) {
+					findNearest(c, d, alive, count, nearest, closest);
+				} else if (d[index(a, c)] < closest[c]) {
+					closest[c] = d[index(a, c)];
+					nearest[c] = a;
+				}
+			}
+			findNearest(a, d, alive, count, nearest, closest);
+		}
+	}
+
+	/**
+	 * Find the nearest cluster to one in a slot.
+	 */
+	static void findNearest(int i, float[] d, int[] alive, int count, int[] nearest, float[] closest) {
+		closest[i] = Float.MAX_VALUE;
+		nearest[i] = -1;
+		for (int s = 0; s < count; s++) {
+			int j = alive[s];
+			if (j != i && (nearest[i] < 0 || d[index(i, j)] < closest[i])) {
+				closest[i] = d[index(i, j)];
+				nearest[i] = j;
+			}
+		}
+	}
+
+	/**
+	 * Take a slot out of use, keeping the rest in order.
+	 *
+	 * @return How many are left.
+	 */
+	static int remove(int slot, int[] alive, int count) {
+		for (int s = 0; s < count; s++) {
+			if (alive[s] == slot) {
+				System.arraycopy(alive, s + 1, alive, s, count - s - 1);
+				return count - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Add a node to the guide tree.
+	 */
+	void join(int node, int child1, int child2, float length1, float length2) {
+		left[node] = child1;
+		right[node] = child2;
+		branch[child1] = Math.max(0, length1);
+		branch[child2] = Math.max(0, length2);
+	}
+
+	/**
+	 * Build the guide tree by neighbor joining, which doesn't assume every sequence has
+	 * changed as fast as every other.
+	 */
+	void joinNeighbors() {
+		int n = members.length;
+		float[] d = distances.clone();
+		int[] alive = new int[n];
+		int[] node = new int[n];
+		double[] sums = new double[n];	// Each slot's total distance to the others.
+		for (int i = 0; i < n; i++) {
+			alive[i] = i;
+			node[i] = i;
+			for (int j = 0; j < n; j++) {
+				if (j != i) {
+					sums[i] += d[index(i, j)];
+				}
+			}
+		}
+		int count = n;
+		for (int next = n; next < 2 * n - 1; next++) {
+			if (count == 2) {
+				float last = d[index(alive[0], alive[1])];
+				join(next, node[alive[0]], node[alive[1]], last / 2, last / 2);
+				break;
+			}
+			// Join the pair that minimizes (r - 2) d(i, j) - R(i) - R(j).
+			int a = -1, b = -1;
+			double best = Double.MAX_VALUE;
+			for (int s = 1; s < count; s++) {
+				int i = alive[s], base = index(i, 0);
+				for (int t = 0; t < s; t++) {
+					// The slots are in order, so j < i, and the distance is in i's row.
+					int j = alive[t];
+					double q = (count - 2) * (double) d[base + j] - sums[i] - sums[j];
+					if (q < best) {
+						best = q;
+						a = i;
+						b = j;
+					}
+				}
+			}
+			float dab = d[index(a, b)];
+			float lengthA = (float) (dab / 2 + (sums[a] - sums[b]) / (2 * (count - 2)));
+			join(next, node[a], node[b], lengthA, dab - lengthA);
+			count = remove(b, alive, count);
+			sums[a] = 0;
+			for (int s = 0; s < count; s++) {
+				int c = alive[s];
+				if (c != a) {
+					float dac = (d[index(a, c)] + d[index(b, c)] - dab) / 2;
+					sums[c] += dac - d[index(a, c)] - d[index(b, c)];
+					d[index(a, c)] = dac;
+					sums[a] += dac;
+				}
+			}
+			node[a] = next;
+		}
+		rootAtMidpoint();
+	}
+
+	/**
+	 * Move the root of the guide tree to halfway along the longest path between two leaves,
+	 * the way Clustal does.  Neighbor joining leaves the root wherever the last join happened
+	 * to be, which can have whole families added to the alignment one sequence at a time.
+	 */
+	void rootAtMidpoint() {
+		int nodes = left.length, root = nodes - 1;
+		if (nodes < 3) {
+			return;
+		}
+		// Forget the root, and make the tree unrooted: every node has its neighbors and the
+		// lengths of the branches to them.
+		int[] neighbors = new int[3 * nodes];
+		float[] lengths = new float[3 * nodes];
+		int[] degree = new int[nodes];
+		for (int v = 0; v < root; v++) {
+			if (left[v] >= 0) {
+				connect(v, left[v], branch[left[v]], neighbors, lengths, degree);
+				connect(v, right[v], branch[right[v]], neighbors, lengths, degree);
+			}
+		}
+		connect(left[root], right[root], branch[left[root]] + branch[right[root]], neighbors, lengths, degree);
+
+		// The longest path runs between the leaf farthest from any leaf and the leaf farthest from that.
+		float[] distance = new float[nodes];
+		int[] previous = new int[nodes];
+		int u = farthest(0, neighbors, lengths, degree, distance, previous);
+		int w = farthest(u, neighbors, lengths, degree, distance, previous);
+		if (w == u) {
+			return;		// Every branch is zero long, so one root is as good as another.
+		}
+		float half = distance[w] / 2;
+		int x = w, y = previous[w];
+		while (distance[y] > half) {
+			x = y;
+			y = previous[y];
+		}
+
+		// Put the root on the branch between x and y, and hang everything else off it.
+		left[root] = x;
+		right[root] = y;
+		branch[x] = distance[x] - half;
+		branch[y] = half - distance[y];
+		int[] stack = new int[nodes];
+		int[] parent = new int[nodes];
+		int top = 0;
+		parent[x] = root;
+		parent[y] = root;
+		stack[top++] = x;
+		stack[top++] = y;
+		while (top > 0) {
+			int v = stack[--top];
+			int children = 0;
+			for (int e = 3 * v; e < 3 * v + degree[v]; e++) {
+				int c = neighbors[e];
+				if (c == parent[v] || (parent[v] == root && c == (v == x ? y : x))) {
+					continue;
+				}
+				parent[c] = v;
+				branch[c] = lengths[e];
+				if (children++ == 0) {
+					left[v] = c;
+				} else {
+					right[v] = c;
+				}
+				stack[top++] = c;
+			}
+		}
+	}
+
+	static void connect(int v, int c, float length, int[] neighbors, float[] lengths, int[] degree) {
+		neighbors[3 * v + degree[v]] = c;
+		lengths[3 * v + degree[v]++] = length;
+		neighbors[3 * c + degree[c]] = v;
+		lengths[3 * c + degree[c]++] = length;
+	}
+
+	/**
+	 * Find the node of an unrooted tree farthest from another, and how far every node is from
+	 * it, and which way.
+	 */
+	static int farthest(int from, int[] neighbors, float[] lengths, int[] degree, float[] distance, int[] previous) {
+		int[] stack = new int[degree.length];
+		int top = 0, best = from;
+		distance[from] = 0;
+		previous[from] = -1;
+		stack[top++] = from;
+		while (top > 0) {
+			int v = stack[--top];
+			if (distance[v] > distance[best]) {
+				best = v;
+			}
+			for (int e = 3 * v; e < 3 * v + degree[v]; e++) {
+				int c = neighbors[e];
+				if (c != previous[v]) {
+					previous[c] = v;
+					distance[c] = distance[v] + lengths[e];
+					stack[top++] = c;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Align the sequences along the guide tree, joining subtrees on all the threads as soon
+	 * as both halves are ready.
+	 */
+	void alignAlongTree(int[][] numbers) {
+		int n = numbers.length;
+		if (n == 1) {
+			rows = new byte[][] { bytes(numbers[0]) };
+			return;
+		}
+		int[] parent = new int[2 * n - 1];
+		parent[2 * n - 2] = -1;
+		LinkedList ready = new LinkedList();
+		Profile[] profiles = new Profile[2 * n - 1];
+		for (int v = n; v < 2 * n - 1; v++) {
+			parent[left[v]] = v;
+			parent[right[v]] = v;
+			if (left[v] < n && right[v] < n) {
+				ready.add(Integer.valueOf(v));
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			profiles[i] = new Profile(new int[] { i }, new byte[][] { bytes(numbers[i]) });
+		}
+		TreeStage stage = new TreeStage(profiles, parent, ready, n - 1);
+		Worker[] workers = new Worker[Math.max(1, Math.min(threads, n - 1))];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new ProfileWorker(stage);
+		}
+		run(workers);
+		Profile root = profiles[2 * n - 2];
+		rows = new byte[n][];
+		for (int r = 0; r < root.members.length; r++) {
+			rows[root.members[r]] = root.rows[r];
+		}
+	}
+
+	static byte[] bytes(int[] numbers) {
+		byte[] result = new byte[numbers.length];
+		for (int p = 0; p < numbers.length; p++) {
+			result[p] = (byte) numbers[p];
+		}
+		return result;
+	}
+
+	/**
+	 * An alignment of some of the sequences: which ones, and their rows.
+	 */
+	static class Profile {
+		int[] members;
+		byte[][] rows;
+
+		Profile(int[] members, byte[][] rows) {
+			this.members = members;
+			this.rows = rows;
+		}
+
+		int columns() {
+			return rows[0].length;
+		}
+	}
+
+	/**
+	 * What the workers aligning along the tree share: the profiles so far, and which nodes
+	 * are ready to be done.
+	 */
+	static class TreeStage {
+		Profile[] profiles;
+		int[] parent;
+		int[] pending;		// How many children each node is still waiting for.
+		LinkedList ready;
+		int remaining;		// Nodes not done yet.
+		boolean failed;
+
+		TreeStage(Profile[] profiles, int[] parent, LinkedList ready, int remaining) {
+			this.profiles = profiles;
+			this.parent = parent;
+			this.ready = ready;
+			this.remaining = remaining;
+			pending = new int[profiles.length];
+			Arrays.fill(pending, 2);
+			for (int v = 0; v < parent.length; v++) {
+				if (v < profiles.length - remaining && parent[v] >= 0) {
+					// A leaf is done from the start.
+					pending[parent[v]]--;
+				}
+			}
+		}
+
+		/**
+		 * Wait for a node to be ready, and take it.
+		 *
+		 * @return The node, or -1 if there aren't any more.
+		 */
+		synchronized int take() throws InterruptedException {
+			while (ready.isEmpty() && remaining > 0 && !failed) {
+				wait();
+			}
+			if (ready.isEmpty()) {
+				return -1;
+			}
+			return ((Integer) ready.removeFirst()).intValue();
+		}
+
+		/**
+		 * Hand in a node's profile, and let its parent go ahead if it's got both its children.
+		 */
+		synchronized void finish(int v, int child1, int child2, Profile profile) {
+			profiles[child1] = null;
+			profiles[child2] = null;
+			profiles[v] = profile;
+			remaining--;
+			if (parent[v] >= 0 && --pending[parent[v]] == 0) {
+				ready.add(Integer.valueOf(parent[v]));
+			}
+			notifyAll();
+		}
+
+		synchronized void fail() {
+			failed = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * One of the threads.  If it goes wrong, it leaves the problem here for
+	 * <code>execute</code> to pass on.
+	 */
+	abstract class Worker extends Thread {
+		Throwable problem;
+	}
+
+	/**
+	 * This works out rows of distances until there aren't any left.
+	 */
+	class DistanceWorker extends Worker {
+		int[][] numbers, kmers;
+		int k;
+		int[] selfScores;
+		int[] nextRow;		// Shared by every worker.
+		LinearSpaceAligner aligner;
+		int[] table;		// How many times each k-mer is in the sequence whose row it is.
+
+		DistanceWorker(int[][] numbers, int k, int[][] kmers, int[] selfScores, int[] nextRow) {
+			this.numbers = numbers;
+			this.k = k;
+			this.kmers = kmers;
+			this.selfScores = selfScores;
+			this.nextRow = nextRow;
+			if (kmers == null) {
+				aligner = new LinearSpaceAligner(scheme, alphabet);
+			} else {
+				table = new int[(int) Math.pow(alphabet.getQuantity() + 1, k)];
+			}
+		}
+
+		int takeRow() {
+			synchronized (nextRow) {
+				return nextRow[0] > 0 ? nextRow[0]-- : -1;
+			}
+		}
+
+		public void run() {
+			try {
+				int i;
+				while ((i = takeRow()) > 0) {
+					int base = index(i, 0);
+					if (kmers == null) {
+						for (int j = 0; j < i; j++) {
+							distances[base + j] = alignmentDistance(i, j);
+						}
+						continue;
+					}
+					// Count the row's k-mers once, and look the others up in the counts.
+					int[] a = kmers[i];
+					for (int p = 0; p < a.length; p += 2) {
+						table[a[p]] = a[p + 1];
+					}
+					for (int j = 0; j < i; j++) {
+						distances[base + j] = kmerDistance(i, j);
+					}
+					for (int p = 0; p < a.length; p += 2) {
+						table[a[p]] = 0;
+					}
+				}
+			} catch (Throwable t) {
+				problem = t;
+			}
+		}
+
+		float kmerDistance(int i, int j) {
+			int shorter = Math.min(numbers[i].length, numbers[j].length) - k + 1;
+			if (shorter <= 0) {
+				return 1;
+			}
+			int[] b = kmers[j];
+			int common = 0;
+			for (int q = 0; q < b.length; q += 2) {
+				common += Math.min(table[b[q]], b[q + 1]);
+			}
+			return 1 - (float) common / shorter;
+		}
+
+		float alignmentDistance(int i, int j) {
+			int self = Math.min(selfScores[i], selfScores[j]);
+			if (self <= 0) {
+				return 1;
+			}
+			return Math.max(0, Math.min(1, 1 - (float) aligner.score(numbers[i], numbers[j]) / self));
+		}
+	}
+
+	/**
+	 * This joins subtrees until the whole tree is done.  It keeps its scratch space from one
+	 * pair of profiles to the next.
+	 */
+	class ProfileWorker extends Worker {
+		TreeStage stage;
+		int[][] table = scheme.tableFor(alphabet);
+		int size = table.length;
+		int[] counts = new int[0];		// How many of each monomer are in each column of the first profile.
+		float[] against = new float[0];		// What each column of the second profile scores against each monomer.
+		int[] starts = new int[1];		// Where each column's list of the monomers in it starts.
+		int[] monomers = new int[0], amounts = new int[0];	// The lists: which monomers, and how many of each.
+		float[] paired = new float[0], down = new float[0], across = new float[0];
+		byte[] traceback = new byte[0];
+
+		ProfileWorker(TreeStage stage) {
+			this.stage = stage;
+		}
+
+		public void run() {
+			try {
+				int v;
+				while ((v = stage.take()) >= 0) {
+					stage.finish(v, left[v], right[v], align(stage.profiles[left[v]], stage.profiles[right[v]]));
+				}
+			} catch (InterruptedException e) {
+				// We've been stopped.
+			} catch (Throwable t) {
+				problem = t;
+				stage.fail();
+			}
+		}
+
+		/**
+		 * Align two profiles to each other (Gotoh's algorithm, with columns instead of monomers).
+		 */
+		Profile align(Profile a, Profile b) {
+			int n = a.columns(), m = b.columns();
+			// Count the monomers in each column of a, and list them so the scoring only looks at the ones there are.
+			if (counts.length < n * size) {
+				counts = new int[n * size];
+			}
+			Arrays.fill(counts, 0, n * size, 0);
+			for (int r = 0; r < a.rows.length; r++) {
+				byte[] row = a.rows[r];
+				for (int x = 0; x < n; x++) {
+					counts[x * size + row[x]]++;
+				}
+			}
+			if (starts.length < n + 1) {
+				starts = new int[n + 1];
+			}
+			if (monomers.length < n * size) {
+				monomers = new int[n * size];
+				amounts = new int[n * size];
+			}
+			int used = 0;
+			for (int x = 0; x < n; x++) {
+				starts[x] = used;
+				for (int c = 1; c < size; c++) {
+					if (counts[x * size + c] > 0) {
+						monomers[used] = c;
+						amounts[used++] = counts[x * size + c];
+					}
+				}
+			}
+			starts[n] = used;
+			if (against.length < m * size) {
+				against = new float[m * size];
+			}
+			Arrays.fill(against, 0, m * size, 0);
+			int[] columnCounts = new int[size];
+			float scale = 1f / ((float) a.rows.length * b.rows.length);
+			for (int y = 0; y < m; y++) {
+				Arrays.fill(columnCounts, 0);
+				for (int r = 0; r < b.rows.length; r++) {
+					columnCounts[b.rows[r][y]]++;
+				}
+				for (int c = 1; c < size; c++) {
+					if (columnCounts[c] > 0) {
+						for (int x = 1; x < size; x++) {
+							against[y * size + x] += columnCounts[c] * table[x][c] * scale;
+						}
+					}
+				}
+			}
+
+			// Fill in the three score rows and the traceback.
+			int width = m + 1;
+			if (paired.length < width) {
+				paired = new float[width];
+				down = new float[width];
+				across = new float[width];
+			}
+			if (traceback.length < (n + 1) * width) {
+				traceback = new byte[(n + 1) * width];
+			}
+			float open = scheme.getGapOpen(), extend = scheme.getGapExtension();
+			paired[0] = 0;
+			down[0] = NEG;
+			across[0] = NEG;
+			for (int j = 1; j <= m; j++) {
+				paired[j] = NEG;
+				down[j] = NEG;
+				across[j] = -open - (j - 1) * extend;
+				traceback[j] = (byte) ((j == 1 ? FROM_PAIRED : FROM_ACROSS) << 4);
+			}
+			for (int i = 1; i <= n; i++) {
+				// The diagonal cell's scores, from the row before, before they're overwritten.
+				float diagonalPaired = paired[0], diagonalDown = down[0], diagonalAcross = across[0];
+				paired[0] = NEG;
+				down[0] = -open - (i - 1) * extend;
+				across[0] = NEG;
+				traceback[i * width] = (byte) ((i == 1 ? FROM_PAIRED : FROM_DOWN) << 2);
+				int from = starts[i - 1], to = starts[i];
+				for (int j = 1; j <= m; j++) {
+					int bits;
+					// Pair column i of a with column j of b.
+					float best = diagonalPaired;
+					bits = FROM_PAIRED;
+					if (diagonalDown > best) {
+						best = diagonalDown;
+						bits = FROM_DOWN;
+					}
+					if (diagonalAcross > best) {
+						best = diagonalAcross;
+						bits = FROM_ACROSS;
+					}
+					float score = 0;
+					int base = (j - 1) * size;
+					for (int e = from; e < to; e++) {
+						score += amounts[e] * against[base + monomers[e]];
+					}
+					diagonalPaired = paired[j];
+					diagonalDown = down[j];
+					diagonalAcross = across[j];
+					float pairedHere = best + score;
+					// Column i of a against a gap, coming down from the cell above.  A gap can
+					// only start after a pair, never right after a gap the other way, the same as
+					// in the other aligners.
+					float downHere = diagonalPaired - open;
+					int downBits = FROM_PAIRED;
+					if (diagonalDown - extend > downHere) {
+						downHere = diagonalDown - extend;
+						downBits = FROM_DOWN;
+					}
+					// Column j of b against a gap, coming across from the cell to the left.
+					float acrossHere = paired[j - 1] - open;
+					int acrossBits = FROM_PAIRED;
+					if (across[j - 1] - extend > acrossHere) {
+						acrossHere = across[j - 1] - extend;
+						acrossBits = FROM_ACROSS;
+					}
+					paired[j] = pairedHere;
+					down[j] = downHere;
+					across[j] = acrossHere;
+					traceback[i * width + j] = (byte) (bits | downBits << 2 | acrossBits << 4);
+				}
+			}
+
+			// Trace back, from whichever state did best in the last cell.
+			int state = FROM_PAIRED;
+			if (down[m] > paired[m]) {
+				state = FROM_DOWN;
+			}
+			if (across[m] > (state == FROM_DOWN ? down[m] : paired[m])) {
+				state = FROM_ACROSS;
+			}
+			byte[] steps = new byte[n + m];
+			int length = 0;
+			for (int i = n, j = m; i > 0 || j > 0; ) {
+				int bits = traceback[i * width + j];
+				steps[length++] = (byte) state;
+				if (state == FROM_PAIRED) {
+					state = bits & 3;
+					i--;
+					j--;
+				} else if (state == FROM_DOWN) {
+					state = bits >> 2 & 3;
+					i--;
+				} else {
+					state = bits >> 4 & 3;
+					j--;
+				}
+			}
+
+			// Put the gaps into both profiles' rows.
+			int[] joined = new int[a.members.length + b.members.length];
+			byte[][] joinedRows = new byte[joined.length][];
+			System.arraycopy(a.members, 0, joined, 0, a.members.length);
+			System.arraycopy(b.members, 0, joined, a.members.length, b.members.length);
+			for (int r = 0; r < joined.length; r++) {
+				boolean first = r < a.rows.length;
+				byte[] row = first ? a.rows[r] : b.rows[r - a.rows.length];
+				byte[] gapped = new byte[length];
+				for (int s = length - 1, p = 0; s >= 0; s--) {
+					if (steps[s] == FROM_PAIRED || (first ? steps[s] == FROM_DOWN : steps[s] == FROM_ACROSS)) {
+						gapped[length - 1 - s] = row[p++];
+					}
+				}
+				joinedRows[r] = gapped;
+			}
+			return new Profile(joined, joinedRows);
+		}
+	}
+
+	/**
+	 * Get the name of a sequence: the first word of its comment, or its number if it hasn't got one.
+	 */
+	String name(int i) {
+		String name = members[i].getComment();
+		if (name != null) {
+			name = name.trim();
+			if (name.startsWith(">")) {
+				name = name.substring(1);
+			}
+			int space = name.indexOf(' ');
+			name = space < 0 ? name : name.substring(0, space);
+		}
+		return name == null || name.length() == 0 ? "seq" + i : name;
+	}
+
+	/**
+	 * @return How many columns the alignment has.
+	 */
+	public int getColumnCount() {
+		return rows == null ? 0 : rows[0].length;
+	}
+
+	/**
+	 * Get one sequence as aligned.
+	 *
+	 * @param i Which sequence, in the order they were given.
+	 * @return Its monomers' codes, with '-' for the gaps.
+	 */
+	public String getRow(int i) {
+		if (rows == null) {
+			throw new IllegalStateException("Nothing has been aligned yet.");
+		}
+		StringBuffer result = new StringBuffer(rows[i].length);
+		for (int p = 0; p < rows[i].length; p++) {
+			result.append(rows[i][p] == 0 ? '-' : alphabet.getByNumber(rows[i][p]).getCode().charValue());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Write the alignment out in FASTA format: each sequence's comment (or a name made up for
+	 * it), and then its row, with '-' for the gaps.
+	 *
+	 * @param out Where to write it.
+	 * @throws IOException If the writer does.
+	 */
+	public void write(Writer out) throws IOException {
+		int lineLength = 72;
+		for (int i = 0; i < members.length; i++) {
+			String comment = members[i].getComment();
+			out.write(comment == null || comment.length() == 0 ? ">seq" + i : comment);
+			String row = getRow(i);
+			for (int p = 0; p < row.length(); p += lineLength) {
+				out.write('\n');
+				out.write(row, p, Math.min(lineLength, row.length() - p));
+			}
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Get the distance between two sequences that the guide tree was built from.
+	 *
+	 * @param i One sequence, in the order they were given.
+	 * @param j Another.
+	 * @return The distance.
+	 */
+	public double getDistance(int i, int j) {
+		return i == j ? 0 : distances[index(i, j)];
+	}
+
+	/**
+	 * @return The guide tree in Newick format, with branch lengths, such as "((a:0.1,b:0.1):0.2,c:0.3);".
+	 */
+	public String getTree() {
+		if (left == null) {
+			throw new IllegalStateException("Nothing has been aligned yet.");
+		}
+		StringBuffer newick = new StringBuffer();
+		writeTree(left.length - 1, newick);
+		return newick.append(';').toString();
+	}
+
+	void writeTree(int node, StringBuffer newick) {
+		if (left[node] < 0) {
+			newick.append(name(node));
+		} else {
+			newick.append('(');
+			writeTree(left[node], newick);
+			newick.append(':').append(branch[left[node]]).append(',');
+			writeTree(right[node], newick);
+			newick.append(':').append(branch[right[node]]).append(')');
+		}
+	}
+
+	/**
+	 * @return The sequences to align.
+	 */
+	public List getSequences() {
+		return sequences;
+	}
+	/**
+	 * @param sequences The sequences to align, all of the same type.
+	 */
+	public void setSequences(Collection sequences) {
+		this.sequences = new ArrayList(sequences);
+	}
+	/**
+	 * @return How alignments are scored.
+	 */
+	public ScoringScheme getScoringScheme() {
+		return scheme;
+	}
+	/**
+	 * @param scheme How to score alignments.
+	 */
+	public void setScoringScheme(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+	/**
+	 * @return How the distances are worked out: KMER_DISTANCE or ALIGNMENT_DISTANCE.
+	 */
+	public int getDistanceMethod() {
+		return distance;
+	}
+	/**
+	 * @param distance How to work out the distances: KMER_DISTANCE (the default) or ALIGNMENT_DISTANCE.
+	 */
+	public void setDistanceMethod(int distance) {
+		if (distance != KMER_DISTANCE && distance != ALIGNMENT_DISTANCE) {
+			throw new IllegalArgumentException("Unknown distance: " + distance);
+		}
+		this.distance = distance;
+	}
+	/**
+	 * @return How the guide tree is built: UPGMA or NEIGHBOR_JOINING.
+	 */
+	public int getTreeMethod() {
+		return tree;
+	}
+	/**
+	 * @param tree How to build the guide tree: UPGMA (the default) or NEIGHBOR_JOINING.
+	 */
+	public void setTreeMethod(int tree) {
+		if (tree != UPGMA && tree != NEIGHBOR_JOINING) {
+			throw new IllegalArgumentException("Unknown tree method: " + tree);
+		}
+		this.tree = tree;
+	}
+	/**
+	 * @return The k-mer length for k-mer distances, or 0 if it's picked to suit the alphabet.
+	 */
+	public int getK() {
+		return k;
+	}
+	/**
+	 * @param k The k-mer length for k-mer distances, or 0 to pick one to suit the alphabet:
+	 * 6 for nucleotides and 3 for amino acids.  Each thread keeps a count of every possible
+	 * k-mer, so it can't be more than 8 for nucleotides or 4 for amino acids.
+	 */
+	public void setK(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("K must not be negative.");
+		}
+		this.k = k;
+	}
+	/**
+	 * The k-mer length actually used.
+	 */
+	int getEffectiveK() {
+		int radix = alphabet.getQuantity() + 1;
+		int chosen = k > 0 ? k : radix <= 8 ? 6 : 3;
+		if (Math.pow(radix, chosen) > MAX_KMER_CODES) {
+			throw new IllegalArgumentException("K-mers of " + chosen + " are too long for this alphabet.");
+		}
+		return chosen;
+	}
+	/**
+	 * @return How many threads to use.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * @param threads How many threads to use.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("It takes at least one thread.");
+		}
+		this.threads = threads;
+	}
+}
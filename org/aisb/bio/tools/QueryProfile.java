@@ -0,0 +1,108 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is a query sequence with its scores worked out ahead of time: for each monomer that
+ * could turn up in a target, a row of its scores against every position of the query.  The
+ * inner loop of an aligner runs along the query, so with a profile, each cell's score is the
+ * next element of one row, picked once per target monomer.  Making one takes the size of the
+ * alphabet times the length of the query, so it pays off once the query has been aligned
+ * against a target or two, and it can be reused for as many targets as you like.
+ * </p><p>
+ * A profile never changes once it's made, so it can be shared by any number of threads.  If
+ * the query is changed afterwards, the profile doesn't follow it; see <code>isProfileOf</code>.
+ * </p>
+ */
+public class QueryProfile {
+	ScoreTable table;
+	Sequence query;
+	int[] numbers;		// The monomer numbers of the query.
+	int[][] rows;		// rows[target monomer][query position]
+
+	/**
+	 * @param table The scores.
+	 * @param query The query.
+	 */
+	public QueryProfile(ScoreTable table, Sequence query) {
+		if (query.getAlphabet() != table.getAlphabet()) {
+			throw new IllegalArgumentException("The query isn't in the alphabet the score table covers.");
+		}
+		this.table = table;
+		this.query = query;
+		numbers = SequenceAligner.numbers(query);
+		rows = new int[table.size()][numbers.length];
+		for (int t = 1; t < rows.length; t++) {
+			int[] row = rows[t];
+			for (int j = 0; j < numbers.length; j++) {
+				row[j] = table.scores[numbers[j]][t];
+			}
+		}
+	}
+
+	/**
+	 * @return The query.
+	 */
+	public Sequence getQuery() {
+		return query;
+	}
+	/**
+	 * Say whether this is still the profile of a sequence.  A sequence can be changed after
+	 * its profile is made, so being the same one isn't enough: it has to have the same
+	 * monomers, too.  Checking takes the length of the query, which is nothing next to an
+	 * alignment.
+	 *
+	 * @param sequence The sequence.
+	 * @return True if the profile was made from it, and it hasn't changed since.
+	 */
+	public boolean isProfileOf(Sequence sequence) {
+		if (sequence != query || sequence.size() != numbers.length || sequence.getAlphabet() != table.getAlphabet()) {
+			return false;
+		}
+		for (int j = 0; j < numbers.length; j++) {
+			if (sequence.getIndex(j) != numbers[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * @return The score table the profile was made from.
+	 */
+	public ScoreTable getTable() {
+		return table;
+	}
+	/**
+	 * @return The length of the query.
+	 */
+	public int length() {
+		return numbers.length;
+	}
+	/**
+	 * @param position A position in the query, counting from zero.
+	 * @param number The number of a target monomer.
+	 * @return The score of that monomer against the query there.
+	 */
+	public int score(int position, int number) {
+		return rows[number][position];
+	}
+
+	/**
+	 * Get the scores of one target monomer against the whole query.  This is the profile
+	 * itself, not a copy, so it mustn't be changed.
+	 */
+	int[] row(int number) {
+		return rows[number];
+	}
+
+	/**
+	 * Get the monomer numbers of the query.  Again, not a copy.
+	 */
+	int[] numbers() {
+		return numbers;
+	}
+}
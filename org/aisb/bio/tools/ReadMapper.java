@@ -0,0 +1,567 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This finds where short DNA reads came from in a reference genome, and how they align there.
+ * It's a command bean: set the index of the reference, where the reads come from and where the
+ * results go, and call <code>execute</code>.
+ * </p><p>
+ * Each read is mapped the way minimap2 does it.  Its minimizers are looked up in a
+ * {@link MinimizerIndex}, ignoring any that turn up all over the genome, and each hit is an
+ * anchor: a k-mer of the read on one strand, at a place in the reference.  The anchors are
+ * chained by dynamic programming: a chain is a run of anchors on one strand, in order in both
+ * the read and the reference, that never wanders more than <code>band</code> bases off its
+ * diagonal, and it's scored by how many bases its anchors cover, less how far it wanders.
+ * The best chain says where the read goes, and the read is aligned there, from end to end,
+ * against the piece of the reference the chain spans (with <code>band</code> to spare either
+ * side), which is free to start and end anywhere.  Only the cells within <code>band</code> of
+ * the chain's diagonals are filled in, so that's a few dozen cells a base.  The mapping quality
+ * comes from how the best chain compares with the best one somewhere else.
+ * </p><p>
+ * The reads are shared out among several threads in batches.  Each thread keeps its own scratch
+ * space, and writes out a batch's results in one go, so they come out in batches, in whatever
+ * order they're finished in.  Each read gets one line, with these fields, separated by tabs:
+ * </p>
+ * <ol>
+ * <li>the name of the read (the first word of its comment, or its number if it hasn't got one),</li>
+ * <li>its length,</li>
+ * <li>the strand of the reference it's on ("+" or "-"),</li>
+ * <li>where the alignment starts in the reference, counting from zero,</li>
+ * <li>where it ends (one past the last base),</li>
+ * <li>the mapping quality, from 0 to 60,</li>
+ * <li>the alignment score,</li>
+ * <li>the edit distance (mismatches plus gap bases),</li>
+ * <li>and the CIGAR string, with the read (reverse complemented, on the minus strand) as the query.</li>
+ * </ol>
+ * <p>
+ * An unmapped read gets its name and length and a "*" for everything else.
+ * </p><p>
+ * The default scoring is BWA-MEM's: 1 for a match, -4 for a mismatch, and 7 for a gap one base
+ * long, plus 1 for each base longer.
+ * </p>
+ */
+public class ReadMapper {
+	static final int BATCH_SIZE = 256;		// How many reads a thread takes at a time.
+	static final int LOOKBACK = 50;			// How many anchors back a chain can look for the one before.
+	static final int NEG = Integer.MIN_VALUE / 4;	// Minus infinity, with room to subtract from.
+	static final int MAX_QUALITY = 60;
+
+	MinimizerIndex index;
+	Iterator reads;
+	Writer out;
+	ScoringScheme scheme = new ScoringScheme(new MatchComparator(1, -4), 7, 1);
+	int band = 20;				// How far off the diagonal an alignment can wander.
+	int maxOccurrences = 200;	// Minimizers found more often than this are ignored.
+	int minChainScore = 30;		// A chain has to cover this many bases to count.
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	// The results.
+	long readCount, mappedCount;
+	long nextRead;		// The number of the next read to be taken.
+	volatile IOException writeProblem;
+
+	/**
+	 * @param index The index of the reference genome.
+	 */
+	public ReadMapper(MinimizerIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Map all the reads, and write out the results.  This doesn't return until they've all
+	 * been written.
+	 *
+	 * @throws IOException If the results can't be written.
+	 */
+	public void execute() throws IOException {
+		if (index == null || reads == null || out == null) {
+			throw new IllegalStateException("Cannot execute until the index, reads and output have been set.");
+		}
+		readCount = 0;
+		mappedCount = 0;
+		nextRead = 0;
+		writeProblem = null;
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker();
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		Throwable problem = null;
+		for (int i = 0; i < threads; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				for (int j = 0; j < threads; j++) {
+					workers[j].interrupt();
+				}
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while mapping reads.");
+			}
+			if (problem == null) {
+				problem = workers[i].problem;
+			}
+		}
+		if (writeProblem != null) {
+			throw writeProblem;
+		}
+		if (problem instanceof RuntimeException) {
+			throw (RuntimeException) problem;
+		}
+		if (problem != null) {
+			throw (Error) problem;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Take the next batch of reads.
+	 *
+	 * @param worker The worker taking them.
+	 * @return How many there were.
+	 */
+	int takeReads(Worker worker) {
+		synchronized (reads) {
+			if (writeProblem != null) {
+				return 0;
+			}
+			Sequence[] batch = worker.batch;
+			int count = 0;
+			while (count < batch.length && reads.hasNext()) {
+				batch[count++] = (Sequence) reads.next();
+			}
+			worker.firstNumber = nextRead;
+			nextRead += count;
+			return count;
+		}
+	}
+
+	/**
+	 * Write out the results of a batch.
+	 */
+	void write(StringBuffer lines, int count, int mapped) {
+		synchronized (out) {
+			readCount += count;
+			mappedCount += mapped;
+			if (writeProblem != null) {
+				return;
+			}
+			try {
+				out.write(lines.toString());
+			} catch (IOException e) {
+				writeProblem = e;
+			}
+		}
+	}
+
+	/**
+	 * This maps batches of reads until there aren't any left.
+	 */
+	class Worker extends Thread {
+		Throwable problem;
+		// The scratch space, kept from one read to the next.
+		Sequence[] batch = new Sequence[BATCH_SIZE];
+		long firstNumber;		// The number of the first read in the batch.
+		MinimizerIndex.Sketch sketch = new MinimizerIndex.Sketch(index.k, index.w);
+		long[] anchors = new long[256];
+		int[] scores = new int[256], previous = new int[256], roots = new int[256];
+		int[] read = new int[256];
+		int[] h = new int[0], f = new int[0];
+		byte[] flags = new byte[0];
+		byte[] reversed = new byte[0];
+		int[][] table = scheme.tableFor(index.reference.getAlphabet());
+		int open = scheme.getGapOpen(), extend = scheme.getGapExtension();
+		// What the alignment found.
+		int refStart, refEnd, score, edits;
+		StringBuffer cigar = new StringBuffer();
+
+		public void run() {
+			try {
+				StringBuffer lines = new StringBuffer();
+				int count;
+				while ((count = takeReads(this)) > 0) {
+					int mapped = 0;
+					lines.setLength(0);
+					for (int i = 0; i < count; i++) {
+						if (map(batch[i], firstNumber + i, lines)) {
+							mapped++;
+						}
+						batch[i] = null;
+					}
+					write(lines, count, mapped);
+					if (isInterrupted()) {
+						return;
+					}
+				}
+			} catch (Throwable t) {
+				problem = t;
+			}
+		}
+
+		/**
+		 * Map one read, and add its line to the results.
+		 *
+		 * @return Whether it was mapped.
+		 */
+		boolean map(Sequence sequence, long number, StringBuffer lines) {
+			int n = sequence.size(), k = index.k;
+			String name = sequence.getComment();
+			if (name != null) {
+				// A FastaReader leaves the '>' on the front.
+				name = name.trim();
+				if (name.startsWith(">")) {
+					name = name.substring(1);
+				}
+				int space = name.indexOf(' ');
+				name = space < 0 ? name : name.substring(0, space);
+			}
+			lines.append(name == null || name.length() == 0 ? "read" + number : name).append('\t').append(n).append('\t');
+
+			// Look up the minimizers.
+			sketch.sketch(sequence);
+			int count = 0;
+			long[] entries = index.entries;
+			for (int s = 0; s < sketch.size; s++) {
+				long minimizer = sketch.minimizers[s];
+				long hash = minimizer >>> 32;
+				int position = (int) ((minimizer & 0xffffffffL) >>> 1), strand = (int) (minimizer & 1);
+				int from = index.find(hash), hits = index.count(hash, from, maxOccurrences);
+				if (hits > maxOccurrences) {
+					continue;
+				}
+				for (int e = from; e < from + hits; e++) {
+					long entry = entries[e];
+					int anchorStrand = strand ^ (int) (entry & 1);
+					// On the minus strand, the read is reverse complemented, so count from the other end.
+					int q = anchorStrand == 0 ? position : n - position - k;
+					if (count == anchors.length) {
+						growAnchors();
+					}
+					anchors[count++] = (long) anchorStrand << 62 | ((entry & 0xffffffffL) >>> 1) << 31 | q;
+				}
+			}
+			Arrays.sort(anchors, 0, count);
+
+			// Chain them.
+			int best = -1, second = 0;
+			for (int i = 0; i < count; i++) {
+				long a = anchors[i];
+				int r = (int) (a >>> 31 & 0x7fffffff), q = (int) (a & 0x7fffffff);
+				scores[i] = k;
+				previous[i] = -1;
+				for (int j = i - 1; j >= 0 && j >= i - LOOKBACK; j--) {
+					long b = anchors[j];
+					if (b >>> 62 != a >>> 62) {
+						break;
+					}
+					int dr = r - (int) (b >>> 31 & 0x7fffffff), dq = q - (int) (b & 0x7fffffff);
+					if (dr > n + band) {
+						break;
+					}
+					if (dr == 0 || dq <= 0 || Math.abs(dr - dq) > band) {
+						continue;
+					}
+					int chained = scores[j] + Math.min(k, Math.min(dr, dq)) - Math.abs(dr - dq);
+					if (chained > scores[i]) {
+						scores[i] = chained;
+						previous[i] = j;
+					}
+				}
+				roots[i] = previous[i] < 0 ? i : roots[previous[i]];
+				if (best < 0 || scores[i] > scores[best]) {
+					best = i;
+				}
+			}
+			if (best < 0 || scores[best] < minChainScore) {
+				lines.append("*\t*\t*\t*\t*\t*\t*\n");
+				return false;
+			}
+			for (int i = 0; i < count; i++) {
+				if (roots[i] != roots[best]) {
+					second = Math.max(second, scores[i]);
+				}
+			}
+			int quality = (int) (MAX_QUALITY * (1 - second / (double) scores[best]));
+
+			// Align the read where the chain says.
+			int strand = (int) (anchors[best] >>> 62);
+			long first = anchors[roots[best]], last = anchors[best];
+			int startDiagonal = (int) (first >>> 31 & 0x7fffffff) - (int) (first & 0x7fffffff);
+			int endDiagonal = (int) (last >>> 31 & 0x7fffffff) - (int) (last & 0x7fffffff);
+			if (read.length < n) {
+				read = new int[n];
+			}
+			for (int i = 0; i < n; i++) {
+				read[i] = strand == 0 ? sequence.getIndex(i) : 5 - sequence.getIndex(n - 1 - i);
+			}
+			if (!align(n, Math.min(startDiagonal, endDiagonal), Math.max(startDiagonal, endDiagonal))) {
+				lines.append("*\t*\t*\t*\t*\t*\t*\n");
+				return false;
+			}
+			lines.append(strand == 0 ? '+' : '-').append('\t').append(refStart).append('\t').append(refEnd).append('\t');
+			lines.append(quality).append('\t').append(score).append('\t').append(edits).append('\t').append(cigar).append('\n');
+			return true;
+		}
+
+		void growAnchors() {
+			int size = anchors.length * 2;
+			long[] moreAnchors = new long[size];
+			System.arraycopy(anchors, 0, moreAnchors, 0, anchors.length);
+			anchors = moreAnchors;
+			scores = new int[size];
+			previous = new int[size];
+			roots = new int[size];
+		}
+
+		/**
+		 * Align the read from end to end against the reference around some diagonals, with the
+		 * reference free to start and end anywhere.  Only the cells within the band of the
+		 * diagonals are filled in.  Each flag byte says where the cell's score came from (bits
+		 * 0-1: the diagonal, a gap in the read or a gap in the reference), and whether its gaps
+		 * were extensions (bit 2 across, bit 3 down).
+		 *
+		 * @param n The length of the read.
+		 * @param low The lowest diagonal (reference position minus read position).
+		 * @param high The highest.
+		 * @return Whether it fits on the reference at all.
+		 */
+		boolean align(int n, int low, int high) {
+			byte[] bases = index.bases;
+			int lo = Math.max(0, low - band), hi = Math.min(bases.length, high + n + band);
+			if (hi - lo < 1) {
+				return false;
+			}
+			int columns = hi - lo, width = high - low + 2 * band + 1;
+			if (h.length < columns + 2) {
+				h = new int[columns + 2];
+				f = new int[columns + 2];
+			}
+			if (flags.length < (n + 1) * width) {
+				flags = new byte[(n + 1) * width];
+			}
+			// The band of row i starts at column i + offset, which can be off the left edge.
+			int offset = low - band - lo;
+			int jlo = Math.max(0, offset), jhi = Math.min(columns, offset + width - 1);
+			for (int j = jlo; j <= jhi; j++) {
+				h[j] = 0;
+				f[j] = NEG;
+			}
+			h[jhi + 1] = NEG;
+			f[jhi + 1] = NEG;
+			for (int i = 1; i <= n; i++) {
+				int[] row = table[read[i - 1]];
+				int base = i + offset, rowFlags = i * width - base;
+				jlo = Math.max(0, base);
+				jhi = Math.min(columns, base + width - 1);
+				// The cell before the band is the first of the row above's band, so it's real.
+				int diagonal = jlo > 0 ? h[jlo - 1] : NEG, e = NEG, left = NEG;
+				for (int j = jlo; j <= jhi; j++) {
+					int up = h[j], flag = 0;
+					int down = up - open;
+					if (f[j] - extend > down) {
+						down = f[j] - extend;
+						flag |= 8;
+					}
+					f[j] = down;
+					int across = left - open;
+					if (e - extend > across) {
+						across = e - extend;
+						flag |= 4;
+					}
+					e = across;
+					int here = j > 0 ? diagonal + row[bases[lo + j - 1]] : NEG, from = 0;
+					if (across > here) {
+						here = across;
+						from = 1;
+					}
+					if (down > here) {
+						here = down;
+						from = 2;
+					}
+					flags[rowFlags + j] = (byte) (flag | from);
+					diagonal = up;
+					h[j] = here;
+					left = here;
+				}
+				// The cell just past the band has to look like it's not there to the next row.
+				if (jhi + 1 < h.length) {
+					h[jhi + 1] = NEG;
+					f[jhi + 1] = NEG;
+				}
+			}
+			// The best place to end, anywhere along the bottom row.
+			int bestJ = jlo;
+			for (int j = jlo; j <= jhi; j++) {
+				if (h[j] > h[bestJ]) {
+					bestJ = j;
+				}
+			}
+			score = h[bestJ];
+			if (score <= NEG / 2) {
+				return false;
+			}
+			// Trace back.
+			if (reversed.length < n + width + columns) {
+				reversed = new byte[n + width + columns];
+			}
+			int length = 0, i = n, j = bestJ, state = 0;
+			edits = 0;
+			while (i > 0) {
+				int flag = flags[i * width - (i + offset) + j];
+				if (state == 0) {
+					state = flag & 3;
+				}
+				if (state == 0) {
+					reversed[length++] = AlignmentPath.MATCH;
+					if (read[i - 1] != bases[lo + j - 1]) {
+						edits++;
+					}
+					i--;
+					j--;
+				} else if (state == 1) {
+					reversed[length++] = AlignmentPath.DELETE;
+					edits++;
+					state = (flag & 4) != 0 ? 1 : 0;
+					j--;
+				} else {
+					reversed[length++] = AlignmentPath.INSERT;
+					edits++;
+					state = (flag & 8) != 0 ? 2 : 0;
+					i--;
+				}
+			}
+			refStart = lo + j;
+			refEnd = lo + bestJ;
+			cigar.setLength(0);
+			for (int at = length - 1; at >= 0; ) {
+				int run = at;
+				while (run >= 0 && reversed[run] == reversed[at]) {
+					run--;
+				}
+				cigar.append(at - run).append((char) reversed[at]);
+				at = run;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @return The index of the reference genome.
+	 */
+	public MinimizerIndex getIndex() {
+		return index;
+	}
+	/**
+	 * @param index The index of the reference genome.
+	 */
+	public void setIndex(MinimizerIndex index) {
+		this.index = index;
+	}
+	/**
+	 * @param reads Where the reads come from: any iterator of nucleotide sequences, such as
+	 * a {@link org.aisb.bio.tools.io.FastaReader}.  It's only used by one thread at a time.
+	 */
+	public void setReads(Iterator reads) {
+		this.reads = reads;
+	}
+	/**
+	 * @param out Where to write the results.
+	 */
+	public void setOutput(Writer out) {
+		this.out = out;
+	}
+	/**
+	 * @return The scoring scheme.
+	 */
+	public ScoringScheme getScoringScheme() {
+		return scheme;
+	}
+	/**
+	 * @param scheme How to score the alignments.
+	 */
+	public void setScoringScheme(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+	/**
+	 * @return How far off the diagonal an alignment can wander.
+	 */
+	public int getBand() {
+		return band;
+	}
+	/**
+	 * @param band How far off the diagonal an alignment (or a chain) can wander, which is the
+	 * longest gap it can have.  The default is 20.
+	 */
+	public void setBand(int band) {
+		if (band < 0) {
+			throw new IllegalArgumentException("The band can't be negative.");
+		}
+		this.band = band;
+	}
+	/**
+	 * @return How often a minimizer can turn up in the reference and still be used.
+	 */
+	public int getMaxOccurrences() {
+		return maxOccurrences;
+	}
+	/**
+	 * @param maxOccurrences How often a minimizer can turn up in the reference and still be
+	 * used.  The default is 200.
+	 */
+	public void setMaxOccurrences(int maxOccurrences) {
+		if (maxOccurrences < 1) {
+			throw new IllegalArgumentException("The number of occurrences must be a positive integer.");
+		}
+		this.maxOccurrences = maxOccurrences;
+	}
+	/**
+	 * @return The lowest chain score a read can be mapped with.
+	 */
+	public int getMinChainScore() {
+		return minChainScore;
+	}
+	/**
+	 * @param minChainScore The lowest chain score a read can be mapped with, roughly the number
+	 * of bases its anchors have to cover.  The default is 30.
+	 */
+	public void setMinChainScore(int minChainScore) {
+		this.minChainScore = minChainScore;
+	}
+	/**
+	 * @return How many threads to map with.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * @param threads How many threads to map with.  The default is one for each processor.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be a positive integer.");
+		}
+		this.threads = threads;
+	}
+	/**
+	 * @return How many reads the last run went through.
+	 */
+	public long getReadCount() {
+		return readCount;
+	}
+	/**
+	 * @return How many of them were mapped.
+	 */
+	public long getMappedCount() {
+		return mappedCount;
+	}
+}
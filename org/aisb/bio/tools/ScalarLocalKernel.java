@@ -0,0 +1,72 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+/**
+ * <p>
+ * This is the plain Java version of the Smith-Waterman inner loop: Gotoh's recurrence, one
+ * row of the matrix at a time, with a query profile so each cell's score is one array
+ * load.  It works for any scores and gap penalties, so it's also what the vector kernel
+ * falls back on when the scores won't fit in its lanes.
+ * </p>
+ */
+class ScalarLocalKernel implements LocalKernel {
+	static final int NO_SCORE = Integer.MIN_VALUE / 4;	// Minus infinity, with room to subtract from.
+
+	QueryProfile profile;
+	int open, extend;
+	int[] h, e;			// The last row of scores, and of scores ending in a gap in the target.
+
+	public void setQuery(QueryProfile profile, int open, int extend) {
+		this.profile = profile;
+		this.open = open;
+		this.extend = extend;
+		h = new int[profile.length() + 1];
+		e = new int[profile.length() + 1];
+	}
+
+	public int align(int[] target, int length) {
+		int n = profile.length();
+		for (int j = 0; j <= n; j++) {
+			h[j] = 0;
+			e[j] = NO_SCORE;
+		}
+		int best = 0;
+		for (int i = 0; i < length; i++) {
+			int[] row = profile.row(target[i]);
+			int diagonal = 0, left = 0, f = NO_SCORE;
+			for (int j = 1; j <= n; j++) {
+				int up = h[j];
+				int down = max(up - open, e[j] - extend);
+				e[j] = down;
+				f = max(left - open, f - extend);
+				int here = diagonal + row[j - 1];
+				if (down > here) {
+					here = down;
+				}
+				if (f > here) {
+					here = f;
+				}
+				if (here < 0) {
+					here = 0;
+				}
+				if (here > best) {
+					best = here;
+				}
+				h[j] = here;
+				diagonal = up;
+				left = here;
+			}
+		}
+		return best;
+	}
+
+	public int getLaneBits() {
+		return 32;
+	}
+
+	static int max(int x, int y) {
+		return x > y ? x : y;
+	}
+}
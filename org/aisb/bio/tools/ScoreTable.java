@@ -0,0 +1,107 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is a comparator worked out ahead of time: the score of every pair of monomers in an
+ * alphabet, in a table indexed by monomer number.  Any {@link MonomerComparator} can be turned
+ * into one, whether it's an identity test, a similarity matrix or something else entirely,
+ * and once it has been, looking up a score is a couple of array loads instead of a method call
+ * that might do anything.  Numbers with no monomer (the holes in the amino acid alphabet)
+ * score zero.
+ * </p><p>
+ * For the inner loop of an aligner, a {@link QueryProfile} is better still.
+ * </p><p>
+ * A table never changes once it's made, so it can be shared by any number of threads.  It
+ * doesn't notice if the comparator it was made from changes.
+ * </p>
+ */
+public class ScoreTable {
+	Alphabet alphabet;
+	int[][] scores;		// scores[number1][number2]
+	int minimum, maximum;	// Over the monomers that exist.
+
+	/**
+	 * Work out every score in an alphabet.
+	 *
+	 * @param comparator The comparison function.
+	 * @param alphabet The alphabet.
+	 */
+	public ScoreTable(MonomerComparator comparator, Alphabet alphabet) {
+		this.alphabet = alphabet;
+		int size = alphabet.getQuantity() + 1;
+		scores = new int[size][size];
+		minimum = Integer.MAX_VALUE;
+		maximum = Integer.MIN_VALUE;
+		for (int a = 1; a < size; a++) {
+			if (alphabet.getByNumber(a) == null) {
+				continue;
+			}
+			for (int b = 1; b < size; b++) {
+				if (alphabet.getByNumber(b) != null) {
+					int score = comparator.compare(alphabet, a, b);
+					scores[a][b] = score;
+					minimum = Math.min(minimum, score);
+					maximum = Math.max(maximum, score);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make a profile of a query, for aligning it against any number of targets.
+	 *
+	 * @param query The query.
+	 * @return The profile.
+	 */
+	public QueryProfile profile(Sequence query) {
+		return new QueryProfile(this, query);
+	}
+
+	/**
+	 * @param number1 The number of the first monomer.
+	 * @param number2 The number of the second monomer.
+	 * @return The score.
+	 */
+	public int score(int number1, int number2) {
+		return scores[number1][number2];
+	}
+
+	/**
+	 * @return The alphabet this table covers.
+	 */
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+	/**
+	 * @return The lowest score of any pair of monomers.
+	 */
+	public int getMinimum() {
+		return minimum;
+	}
+	/**
+	 * @return The highest score of any pair of monomers.
+	 */
+	public int getMaximum() {
+		return maximum;
+	}
+	/**
+	 * @return One more than the highest monomer number, which is how big each side of the table is.
+	 */
+	public int size() {
+		return scores.length;
+	}
+
+	/**
+	 * Get the scores of one monomer against every other.  This is the table itself, not a
+	 * copy, so it mustn't be changed.
+	 */
+	int[] row(int number) {
+		return scores[number];
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.aisb.bio.things.Alphabet;
+
+/**
+ * <p>
+ * This is everything an aligner needs to know to score an alignment: how to compare two
+ * monomers, and what gaps cost.  A gap of length <i>L</i> costs
+ * <code>gapOpen + (L-1) * gapExtension</code>, so <code>gapOpen</code> is the whole cost
+ * of a gap one residue long.
+ * </p><p>
+ * A scoring scheme never changes once it's made, so one can be shared by any number of
+ * aligners and threads (as long as its comparator can).  It works out a {@link ScoreTable}
+ * for each alphabet the first time one's needed, so the comparator shouldn't change after that.
+ * </p>
+ */
+public class ScoringScheme {
+	MonomerComparator comparator;
+	int gapOpen;
+	int gapExtension;
+	// The score tables made so far, by alphabet.  It's replaced, never modified, so readers don't need to lock.
+	private volatile Map tables = Collections.EMPTY_MAP;
+
+	/**
+	 * @param comparator The comparison function to use.
+	 * @param gapOpen The penalty for a gap one residue long.
+	 * @param gapExtension The penalty for each residue a gap is longer than that.
+	 */
+	public ScoringScheme(MonomerComparator comparator, int gapOpen, int gapExtension) {
+		if (comparator == null) {
+			throw new IllegalArgumentException("A scoring scheme needs a comparator.");
+		}
+		this.comparator = comparator;
+		this.gapOpen = gapOpen;
+		this.gapExtension = gapExtension;
+	}
+
+	/**
+	 * @return The comparison function.
+	 */
+	public MonomerComparator getComparator() {
+		return comparator;
+	}
+	/**
+	 * @return The penalty for a gap one residue long.
+	 */
+	public int getGapOpen() {
+		return gapOpen;
+	}
+	/**
+	 * @return The penalty for each residue a gap is longer than one.
+	 */
+	public int getGapExtension() {
+		return gapExtension;
+	}
+
+	/**
+	 * @param length The length of a gap.
+	 * @return What it costs.
+	 */
+	public int gapPenalty(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative gap length: " + length);
+		}
+		return length == 0 ? 0 : gapOpen + (length - 1) * gapExtension;
+	}
+
+	/**
+	 * Score two monomers against each other.
+	 *
+	 * @param alphabet The alphabet both monomers belong to.
+	 * @param number1 The number of the first monomer.
+	 * @param number2 The number of the second monomer.
+	 * @return The score.
+	 */
+	public int score(Alphabet alphabet, int number1, int number2) {
+		return comparator.compare(alphabet, number1, number2);
+	}
+
+	/**
+	 * Get every score in an alphabet, worked out ahead of time, so an inner loop can look
+	 * them up instead of calling the comparator.  Each table is only worked out once.
+	 *
+	 * @param alphabet The alphabet.
+	 * @return The scores.
+	 */
+	public ScoreTable getScoreTable(Alphabet alphabet) {
+		ScoreTable table = (ScoreTable) tables.get(alphabet);
+		if (table == null) {
+			table = new ScoreTable(comparator, alphabet);
+			synchronized (this) {
+				Map newTables = new HashMap(tables);
+				newTables.put(alphabet, table);
+				tables = Collections.unmodifiableMap(newTables);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * The score table as a bare array, as table[number1][number2].  It's shared, so it
+	 * mustn't be changed.
+	 */
+	int[][] tableFor(Alphabet alphabet) {
+		return getScoreTable(alphabet).scores;
+	}
+
+	public String toString() {
+		return "[ScoringScheme: " + comparator.getClass().getName() + ", open " + gapOpen + ", extend " + gapExtension + "]";
+	}
+}
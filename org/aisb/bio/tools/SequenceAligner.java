@@ -68,6 +68,13 @@ public abstract class SequenceAligner {
 	 */
 	public abstract int getNumberOfAlignments();
 	
+	/**
+	 * Get the actual best alignment, with where it starts and ends, its score, and its columns.
+	 * 
+	 * @return The best alignment.
+	 */
+	public abstract Alignment getBestAlignment();
+	
 	/**
 	 * Get the actual best alignment, in the form of a string consisting of
 	 * tuples representing positions in the alignment.
@@ -95,4 +102,30 @@ public abstract class SequenceAligner {
 	 * Perform the operation.
 	 */
 	public abstract void execute();
+
+	/**
+	 * Pull out the monomer numbers of a sequence, so an inner loop can work on primitives.
+	 * 
+	 * @param sequence The sequence.
+	 * @return The number of each monomer, in order.
+	 */
+	static int[] numbers(Sequence sequence) {
+		return numbers(sequence, new int[sequence.size()]);
+	}
+
+	/**
+	 * Pull out the monomer numbers of a sequence into a buffer that's kept for the purpose.
+	 * 
+	 * @param sequence The sequence.
+	 * @param buffer Where to put them, if it's big enough.
+	 * @return The buffer, or a bigger one if it wasn't big enough.
+	 */
+	static int[] numbers(Sequence sequence, int[] buffer) {
+		int size = sequence.size();
+		int[] result = buffer.length < size ? new int[size] : buffer;
+		for (int i=0; i < size; i++) {
+			result[i] = sequence.getIndex(i);
+		}
+		return result;
+	}
 }
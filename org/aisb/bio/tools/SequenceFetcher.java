@@ -3,13 +3,13 @@
  */
 package org.aisb.bio.tools;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 
 import org.aisb.bio.things.AminoAcid;
 import org.aisb.bio.things.Sequence;
+import org.aisb.bio.tools.io.FastaReader;
 
 /**
  * Give this class the name of a sequence, and it will fetch it via the web.
@@ -91,17 +91,16 @@ public class SequenceFetcher {
 		// Construct the URL and get ready to read it.
 		URL seqUrl = new URL(urlBase + name);
 		InputStream in = (InputStream) seqUrl.getContent();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		// Construct the object to hold the sequence.
-		sequence = new Sequence();
-		sequence.setType(this.type);
-		
-		// Get ready to do the processing.
-		String line;
-		// With FASTA format, the first line is a comment.
-		sequence.setComment(reader.readLine());
-		while ((line = reader.readLine()) != null) {
-			sequence.appendFromString(line);
+		// The reply is FASTA; there should be just the one record in it.
+		FastaReader reader = new FastaReader(in);
+		reader.setType(this.type);
+		try {
+			sequence = reader.read();
+		} finally {
+			reader.close();
+		}
+		if (sequence == null) {
+			throw new IOException("No sequence came back for " + name);
 		}
 	}
 }
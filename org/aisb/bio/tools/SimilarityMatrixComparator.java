@@ -62,5 +62,12 @@ public class SimilarityMatrixComparator extends MonomerComparator {
 	public int compare(Monomer m1, Monomer m2) {
 		return value[m1.getNumber()-1][m2.getNumber()-1];
 	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.MonomerComparator#compare(org.aisb.bio.things.Alphabet, int, int)
+	 */
+	public int compare(Alphabet alphabet, int number1, int number2) {
+		return value[number1-1][number2-1];
+	}
 	
 }
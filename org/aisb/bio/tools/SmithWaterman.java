@@ -0,0 +1,379 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This implements the Smith/Waterman algorithm: the best local alignment of two sequences,
+ * with affine gap penalties.  The first sequence is the query and the second is the target,
+ * so to search a database, set the query once and then set and execute each target in turn;
+ * everything worked out about the query is kept and reused as long as the query and the
+ * scoring scheme don't change.
+ * </p><p>
+ * The score is worked out with a vector kernel if it was compiled (it's in the separate
+ * <code>vector</code> source directory) and the JVM has the vector API
+ * (<code>--add-modules jdk.incubator.vector</code>), and with a plain Java one otherwise.  The
+ * vector kernel is Farrar's striped algorithm; see <code>VectorStripedKernel</code>.  Either
+ * way, the score is the same, and <code>getGcups</code> says how fast it was worked out.
+ * </p><p>
+ * Searching a database usually only needs the scores, so the alignment itself isn't worked out
+ * until something asks for it.  That's done by filling in the whole matrix again the ordinary
+ * way, keeping a byte per cell to trace back through, so it's much slower than the score.
+ * </p><p>
+ * Unlike {@link Needleman}, a gap in one sequence is allowed right next to a gap in the other,
+ * which is the usual way to do local alignment.
+ * </p>
+ */
+public class SmithWaterman extends SequenceAligner {
+	static final String VECTOR_KERNEL = "org.aisb.bio.tools.VectorStripedKernel";
+	static final int NO_SCORE = Integer.MIN_VALUE / 4;
+
+	// The aligners align uses, one for each thread that uses it.
+	static final ThreadLocal workspaces = new ThreadLocal() {
+		protected Object initialValue() {
+			return new SmithWaterman(null);
+		}
+	};
+
+	ScoringScheme scheme;
+	boolean vectorized = true;	// Use the vector kernel, if we can.
+
+	// What the kernel has been set up for.
+	LocalKernel kernel;
+	QueryProfile kernelProfile;
+	ScoringScheme kernelScheme;
+	boolean kernelVectorized;
+
+	// The results.
+	int score;
+	long cells;
+	long elapsed;		// Nanoseconds.
+	int laneBits;
+	Alignment alignment;	// Not worked out until it's needed.
+
+	// Scratch space, kept from one alignment to the next.
+	int[] firstNumbers = new int[0], secondNumbers = new int[0];
+	byte[] flags = new byte[0];
+	int[] h = new int[0], down = new int[0];
+	byte[] reversed = new byte[0];
+	AlignmentPath path = new AlignmentPath();
+	int firstStart, firstEnd, secondStart, secondEnd;
+
+	/**
+	 * @param scheme How to score alignments.
+	 */
+	public SmithWaterman(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	/**
+	 * @param comparator The comparison function to use.
+	 * @param gapOpen The penalty for a gap one residue long.
+	 * @param gapExtension The penalty for each residue a gap is longer than that.
+	 */
+	public SmithWaterman(MonomerComparator comparator, int gapOpen, int gapExtension) {
+		this(new ScoringScheme(comparator, gapOpen, gapExtension));
+	}
+
+	/**
+	 * Find the best local alignment of two sequences, without all the setting up.  This is
+	 * safe to call from any number of threads at once.  Each thread keeps its own aligner
+	 * from one call to the next, scratch space and all, so calling this over and over doesn't
+	 * make any garbage to speak of except the alignments, and aligning one query against
+	 * lots of targets in a row only works out the query's profile once.
+	 * 
+	 * @param first The first sequence, the query.
+	 * @param second The second sequence, the target.
+	 * @param scheme How to score the alignment.
+	 * @return The alignment.
+	 */
+	public static Alignment align(Sequence first, Sequence second, ScoringScheme scheme) {
+		SmithWaterman aligner = (SmithWaterman) workspaces.get();
+		aligner.setScoringScheme(scheme);
+		aligner.setFirstSequence(first);
+		aligner.setSecondSequence(second);
+		aligner.execute();
+		return aligner.getBestAlignment();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#execute()
+	 */
+	public void execute() {
+		if (s1 == null || s2 == null) {
+			throw new IllegalStateException("Both sequences have to be set before aligning them.");
+		}
+		// The query could have been changed since it was set, not just replaced.
+		if (kernel == null || !kernelProfile.isProfileOf(s1) || kernelScheme != scheme || kernelVectorized != vectorized) {
+			kernel = vectorized ? makeVectorKernel() : null;
+			if (kernel == null) {
+				kernel = new ScalarLocalKernel();
+			}
+			kernelProfile = scheme.getScoreTable(s1.getAlphabet()).profile(s1);
+			kernel.setQuery(kernelProfile, scheme.getGapOpen(), scheme.getGapExtension());
+			kernelScheme = scheme;
+			kernelVectorized = vectorized;
+		}
+		secondNumbers = numbers(s2, secondNumbers);
+		long start = System.nanoTime();
+		score = kernel.align(secondNumbers, s2.size());
+		elapsed = System.nanoTime() - start;
+		cells = (long) s1.size() * s2.size();
+		laneBits = kernel.getLaneBits();
+		alignment = null;
+	}
+
+	/**
+	 * Load the vector kernel, if this JVM can run it.
+	 *
+	 * @return The kernel, or null if it can't be had.
+	 */
+	static LocalKernel makeVectorKernel() {
+		try {
+			return (LocalKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			// It wasn't compiled.
+			return null;
+		} catch (LinkageError e) {
+			// The vector API module isn't there.
+			return null;
+		}
+	}
+
+	/**
+	 * Work out the alignment itself, if we haven't yet.
+	 */
+	void locate() {
+		if (alignment != null) {
+			return;
+		}
+		if (s1 == null || s2 == null) {
+			throw new IllegalStateException("Nothing has been aligned yet.");
+		}
+		int n = s1.size(), m = s2.size(), w = m + 1;
+		int open = scheme.getGapOpen(), extend = scheme.getGapExtension();
+		int[][] table = scheme.tableFor(s1.getAlphabet());
+		firstNumbers = numbers(s1, firstNumbers);
+		secondNumbers = numbers(s2, secondNumbers);
+		int[] first = firstNumbers, second = secondNumbers;
+		// Each flag byte says where the cell's score came from (bits 0-1: 0 for nowhere,
+		// 1 for the diagonal, 2 for a gap in the second sequence, 3 for one in the first),
+		// and whether its gaps were extensions (bit 2 going down, bit 3 going across).
+		if (flags.length < (n + 1) * w) {
+			flags = new byte[(n + 1) * w];
+		}
+		if (h.length < w) {
+			h = new int[w];
+			down = new int[w];
+		}
+		for (int j=0; j < w; j++) {
+			h[j] = 0;
+			down[j] = NO_SCORE;
+			flags[j] = 0;
+		}
+		int best = 0, bestI = 0, bestJ = 0;
+		for (int i=1; i <= n; i++) {
+			int[] row = table[first[i-1]];
+			flags[i * w] = 0;
+			int diagonal = 0, left = 0, across = NO_SCORE;
+			for (int j=1; j <= m; j++) {
+				int up = h[j];
+				int flag = 0;
+				int d = up - open;
+				if (down[j] - extend > d) {
+					d = down[j] - extend;
+					flag |= 4;
+				}
+				down[j] = d;
+				int a = left - open;
+				if (across - extend > a) {
+					a = across - extend;
+					flag |= 8;
+				}
+				across = a;
+				int here = diagonal + row[second[j-1]];
+				int from = 1;
+				if (d > here) {
+					here = d;
+					from = 2;
+				}
+				if (a > here) {
+					here = a;
+					from = 3;
+				}
+				if (here <= 0) {
+					here = 0;
+					from = 0;
+				}
+				flags[i * w + j] = (byte) (flag | from);
+				if (here > best) {
+					best = here;
+					bestI = i;
+					bestJ = j;
+				}
+				h[j] = here;
+				diagonal = up;
+				left = here;
+			}
+		}
+		// Trace back from the best cell until the score drops to zero.
+		if (reversed.length < bestI + bestJ) {
+			reversed = new byte[bestI + bestJ];
+		}
+		int count = 0, i = bestI, j = bestJ, state = flags[i * w + j] & 3;
+		while (state != 0) {
+			int flag = flags[i * w + j];
+			if (state == 1) {
+				reversed[count++] = AlignmentPath.MATCH;
+				i--;
+				j--;
+				state = flags[i * w + j] & 3;
+			} else if (state == 2) {
+				reversed[count++] = AlignmentPath.INSERT;
+				i--;
+				state = (flag & 4) != 0 ? 2 : flags[i * w + j] & 3;
+			} else {
+				reversed[count++] = AlignmentPath.DELETE;
+				j--;
+				state = (flag & 8) != 0 ? 3 : flags[i * w + j] & 3;
+			}
+		}
+		path.clear();
+		path.addReversed(reversed, 0, count);
+		firstStart = i;
+		firstEnd = bestI;
+		secondStart = j;
+		secondEnd = bestJ;
+		alignment = new Alignment(s1, i, s2, j, path, score, scheme.getScoreTable(s1.getAlphabet()));
+	}
+
+	/**
+	 * Set how to score alignments.
+	 *
+	 * @param scheme The scoring scheme.
+	 */
+	public void setScoringScheme(ScoringScheme scheme) {
+		this.scheme = scheme;
+	}
+	/**
+	 * @return The scoring scheme.
+	 */
+	public ScoringScheme getScoringScheme() {
+		return scheme;
+	}
+	/**
+	 * @return True if we use the vector kernel when we can.
+	 */
+	public boolean isVectorized() {
+		return vectorized;
+	}
+	/**
+	 * Say whether to use the vector kernel when the JVM has the vector API.  It's on by
+	 * default; turning it off is mostly useful for comparing the two.
+	 *
+	 * @param vectorized True to use the vector kernel.
+	 */
+	public void setVectorized(boolean vectorized) {
+		this.vectorized = vectorized;
+	}
+	/**
+	 * @return How many bits each score took in the last alignment: 8 or 16 if the vector
+	 * kernel did it, 32 if the plain Java one did.
+	 */
+	public int getLaneBits() {
+		return laneBits;
+	}
+	/**
+	 * @return The number of matrix cells in the last alignment.
+	 */
+	public long getCells() {
+		return cells;
+	}
+	/**
+	 * @return How long the last score took to work out, in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+	/**
+	 * @return How fast the last score was worked out, in billions of cells per second.
+	 */
+	public double getGcups() {
+		return elapsed == 0 ? 0 : cells / (double) elapsed;
+	}
+	/**
+	 * @return Where the best alignment starts in the first sequence, counting from zero.
+	 */
+	public int getFirstStart() {
+		locate();
+		return firstStart;
+	}
+	/**
+	 * @return Where the best alignment ends in the first sequence (one past the last residue).
+	 */
+	public int getFirstEnd() {
+		locate();
+		return firstEnd;
+	}
+	/**
+	 * @return Where the best alignment starts in the second sequence, counting from zero.
+	 */
+	public int getSecondStart() {
+		locate();
+		return secondStart;
+	}
+	/**
+	 * @return Where the best alignment ends in the second sequence (one past the last residue).
+	 */
+	public int getSecondEnd() {
+		locate();
+		return secondEnd;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentScore()
+	 */
+	public int getBestAlignmentScore() {
+		return score;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getNumberOfAlignments()
+	 */
+	public int getNumberOfAlignments() {
+		// We only ever find one.
+		return 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignment()
+	 */
+	public Alignment getBestAlignment() {
+		locate();
+		return alignment;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentAsString()
+	 */
+	public String getBestAlignmentAsString() {
+		return getBestAlignment().toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentsAsStrings()
+	 */
+	public String[] getBestAlignmentsAsStrings() {
+		return new String[] { getBestAlignmentAsString() };
+	}
+
+	/* (non-Javadoc)
+	 * @see org.aisb.bio.tools.SequenceAligner#getBestAlignmentsAsMatrix()
+	 */
+	public Character[][] getBestAlignmentsAsMatrix() {
+		throw new UnsupportedOperationException("Local alignments don't keep an alignment matrix.");
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import java.util.List;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is an index of every short word (every run of a few monomers) in a database of
+ * sequences, for looking up where a word occurs without reading through the database.  It's
+ * what {@link DatabaseSearch} finds its seeds with.  It's meant for proteins, but any alphabet
+ * will do, as long as all the sequences are in the same one.
+ * </p><p>
+ * The sequences are copied into one long array, a byte per monomer, with a zero between each
+ * pair of them (and at each end), so anything running along the array can tell where one
+ * sequence stops.  Each word is given a number, counting only the monomers that exist (there
+ * are holes in the amino acid alphabet), and the positions of all the words are kept in one
+ * big array, sorted by word and then by position, with another array saying where each word's
+ * positions start.  That's four bytes per monomer for the positions, plus one for the copy,
+ * plus one int for every possible word: with words of three amino acids, a database of
+ * 100,000 proteins takes a couple of hundred megabytes.
+ * </p><p>
+ * An index never changes once it's made, so it can be shared by any number of threads and
+ * searches.  The sequences shouldn't change either, since the index wouldn't notice.
+ * </p>
+ */
+public class WordIndex {
+	public static final int DEFAULT_WORD_SIZE = 3;
+	public static final int MAX_WORDS = 1 << 24;	// Each word gets an int, so that's the most we'll allow.
+
+	Sequence[] sequences;
+	Alphabet alphabet;
+	int wordSize;
+	int radix;			// How many monomers there really are.
+	int[] dense;		// dense[number] is a monomer's number among the ones that exist, or -1.
+	int words;			// radix to the power of wordSize.
+
+	byte[] residues;	// All the sequences' monomer numbers, with zeroes around each one.
+	int[] starts;		// Where each sequence starts in residues, and one past the end of the last.
+	int[] wordStarts;	// Where each word's positions start, and one past the end of the last.
+	int[] positions;	// Where each word occurs in residues, by word and then by position.
+
+	/**
+	 * Index a database with the default word size.
+	 *
+	 * @param sequences The sequences, all in the same alphabet.
+	 */
+	public WordIndex(List sequences) {
+		this(sequences, DEFAULT_WORD_SIZE);
+	}
+
+	/**
+	 * @param sequences The sequences, all in the same alphabet.
+	 * @param wordSize How many monomers long each word is.
+	 */
+	public WordIndex(List sequences, int wordSize) {
+		if (sequences.isEmpty()) {
+			throw new IllegalArgumentException("There's no point indexing an empty database.");
+		}
+		if (wordSize < 1) {
+			throw new IllegalArgumentException("The word size must be a positive integer.");
+		}
+		this.sequences = (Sequence[]) sequences.toArray(new Sequence[sequences.size()]);
+		this.alphabet = this.sequences[0].getAlphabet();
+		this.wordSize = wordSize;
+		int quantity = alphabet.getQuantity();
+		if (quantity > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("The alphabet is too big to keep a monomer in a byte.");
+		}
+		dense = new int[quantity + 1];
+		dense[0] = -1;
+		for (int number = 1; number <= quantity; number++) {
+			dense[number] = alphabet.getByNumber(number) == null ? -1 : radix++;
+		}
+		long possible = 1;
+		for (int i = 0; i < wordSize; i++) {
+			possible *= radix;
+			if (possible > MAX_WORDS) {
+				throw new IllegalArgumentException("Words of " + wordSize + " monomers are too long to index.");
+			}
+		}
+		words = (int) possible;
+
+		// Copy the sequences.
+		long total = 1;
+		for (int s = 0; s < this.sequences.length; s++) {
+			if (this.sequences[s].getAlphabet() != alphabet) {
+				throw new IllegalArgumentException("The sequences aren't all in the same alphabet.");
+			}
+			total += this.sequences[s].size() + 1;
+		}
+		if (total > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The database is too big to index in one piece.");
+		}
+		residues = new byte[(int) total];
+		starts = new int[this.sequences.length + 1];
+		int at = 1;
+		for (int s = 0; s < this.sequences.length; s++) {
+			Sequence sequence = this.sequences[s];
+			starts[s] = at;
+			for (int i = 0; i < sequence.size(); i++) {
+				residues[at++] = (byte) sequence.getIndex(i);
+			}
+			at++;
+		}
+		starts[this.sequences.length] = at;
+
+		// Count the words, work out where each one's positions go, and then put them there.
+		// Going through the database in order leaves each word's positions sorted.
+		wordStarts = new int[words + 1];
+		forEachWord(null);
+		int sum = 0;
+		for (int code = 0; code <= words; code++) {
+			int count = wordStarts[code];
+			wordStarts[code] = sum;
+			sum += count;
+		}
+		positions = new int[sum];
+		int[] next = new int[words];
+		System.arraycopy(wordStarts, 0, next, 0, words);
+		forEachWord(next);
+	}
+
+	/**
+	 * Go through every word in the database.  With no array to fill in, count them in
+	 * wordStarts; otherwise put each one's position where the array says, and move along.
+	 */
+	private void forEachWord(int[] next) {
+		for (int s = 0; s < sequences.length; s++) {
+			int code = 0, filled = 0;
+			for (int at = starts[s], end = starts[s + 1] - 1; at < end; at++) {
+				int d = dense[residues[at]];
+				if (d < 0) {
+					filled = 0;
+					continue;
+				}
+				code = (code * radix + d) % words;
+				if (++filled >= wordSize) {
+					int position = at - wordSize + 1;
+					if (next == null) {
+						wordStarts[code]++;
+					} else {
+						positions[next[code]++] = position;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Work out the number of a word.
+	 *
+	 * @param numbers Monomer numbers.
+	 * @param offset Where the word starts among them.
+	 * @return The word's number, or -1 if one of its monomers doesn't exist.
+	 */
+	int code(int[] numbers, int offset) {
+		int code = 0;
+		for (int i = 0; i < wordSize; i++) {
+			int d = dense[numbers[offset + i]];
+			if (d < 0) {
+				return -1;
+			}
+			code = code * radix + d;
+		}
+		return code;
+	}
+
+	/**
+	 * Find out which sequence a position in the copy of the database is in.
+	 */
+	int sequenceAt(int position) {
+		int low = 0, high = sequences.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Count how many times a word occurs in the database.
+	 *
+	 * @param word The word, which has to be exactly the word size long.
+	 * @return How many times it occurs.
+	 */
+	public int count(Sequence word) {
+		if (word.size() != wordSize || word.getAlphabet() != alphabet) {
+			throw new IllegalArgumentException("The word has to be " + wordSize + " monomers of " + alphabet + ".");
+		}
+		int code = code(SequenceAligner.numbers(word), 0);
+		return code < 0 ? 0 : wordStarts[code + 1] - wordStarts[code];
+	}
+
+	/**
+	 * @param index Where the sequence is in the database, counting from zero.
+	 * @return The sequence.
+	 */
+	public Sequence getSequence(int index) {
+		return sequences[index];
+	}
+	/**
+	 * @return How many sequences are in the database.
+	 */
+	public int size() {
+		return sequences.length;
+	}
+	/**
+	 * @return The total length of the sequences in the database.
+	 */
+	public long getResidueCount() {
+		// Take off the zeroes around them.
+		return residues.length - 1 - sequences.length;
+	}
+	/**
+	 * @return The alphabet of the sequences.
+	 */
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+	/**
+	 * @return How many monomers long each word is.
+	 */
+	public int getWordSize() {
+		return wordSize;
+	}
+	/**
+	 * @return Roughly how much memory the index takes, in bytes, leaving out the sequences themselves.
+	 */
+	public long getMemoryUsage() {
+		return residues.length + 4L * (starts.length + wordStarts.length + positions.length);
+	}
+
+	/**
+	 * Turn a word's number back into letters.  This is meant for printing and debugging.
+	 *
+	 * @param code The word's number.
+	 * @return The word as a string, such as "WHY".
+	 */
+	public String decode(int code) {
+		char[] letters = new char[wordSize];
+		Monomer[] monomers = new Monomer[radix];
+		for (int number = 1; number < dense.length; number++) {
+			if (dense[number] >= 0) {
+				monomers[dense[number]] = alphabet.getByNumber(number);
+			}
+		}
+		for (int i = wordSize - 1; i >= 0; i--) {
+			letters[i] = monomers[code % radix].getCode().charValue();
+			code /= radix;
+		}
+		return new String(letters);
+	}
+}
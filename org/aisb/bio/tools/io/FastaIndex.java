@@ -0,0 +1,324 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * This is an index of the records in a multi-record FASTA file, saying where each record's
+ * sequence starts and how its lines are laid out.  With that, the position in the file of any
+ * residue of any record can be calculated, so a record (or part of one) can be read with a
+ * single seek instead of by parsing everything in front of it.  See {@link IndexedFastaReader}.
+ * </p><p>
+ * The index is saved in the same five-column, tab-separated format as the ".fai" files
+ * samtools makes: name, length, offset of the first residue, residues per line, and bytes
+ * per line (including the line terminator).  So an index made by either one can be used by the other.
+ * </p><p>
+ * As with samtools, every line of a record except the last must be the same length.
+ * </p>
+ */
+public class FastaIndex {
+	List entries = new ArrayList();
+	Map entriesByName = new HashMap();
+
+	/**
+	 * This describes where one record lives in the file.
+	 */
+	public static class Entry {
+		String name;
+		long length;
+		long offset;
+		int lineBases;
+		int lineWidth;
+
+		public Entry(String name, long length, long offset, int lineBases, int lineWidth) {
+			this.name = name;
+			this.length = length;
+			this.offset = offset;
+			this.lineBases = lineBases;
+			this.lineWidth = lineWidth;
+		}
+
+		/**
+		 * @return The record's name: the first word of its header, without the '&gt;'.
+		 */
+		public String getName() {
+			return name;
+		}
+		/**
+		 * @return The number of residues in the record.
+		 */
+		public long getLength() {
+			return length;
+		}
+		/**
+		 * @return The position in the file of the record's first residue.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+		/**
+		 * @return The number of residues on each full line.
+		 */
+		public int getLineBases() {
+			return lineBases;
+		}
+		/**
+		 * @return The number of bytes in each full line, including the line terminator.
+		 */
+		public int getLineWidth() {
+			return lineWidth;
+		}
+
+		/**
+		 * Work out where in the file a residue lives.
+		 *
+		 * @param position The residue's position in the record, from zero.
+		 * @return The position of the residue in the file.
+		 */
+		public long getFileOffset(long position) {
+			if (lineBases == 0) {
+				return offset;
+			}
+			return offset + (position / lineBases) * lineWidth + position % lineBases;
+		}
+	}
+
+	/**
+	 * @return The number of records in the index.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @param number The record's position in the file, from zero.
+	 * @return The entry for that record.
+	 */
+	public Entry getEntry(int number) {
+		return (Entry) entries.get(number);
+	}
+
+	/**
+	 * @param name The record's name.
+	 * @return The entry for that record, or null if there isn't one.
+	 */
+	public Entry getEntry(String name) {
+		return (Entry) entriesByName.get(name);
+	}
+
+	void add(Entry entry) {
+		if (entriesByName.containsKey(entry.name)) {
+			throw new IllegalArgumentException("Duplicate record name in FASTA file: " + entry.name);
+		}
+		entries.add(entry);
+		entriesByName.put(entry.name, entry);
+	}
+
+	/**
+	 * Save the index in ".fai" format.
+	 *
+	 * @param file Where to save it.
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			for (int i=0; i < entries.size(); i++) {
+				Entry e = (Entry) entries.get(i);
+				out.print(e.name + "\t" + e.length + "\t" + e.offset + "\t" + e.lineBases + "\t" + e.lineWidth + "\n");
+			}
+			if (out.checkError()) {
+				throw new IOException("Couldn't write the index " + file);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Load an index saved in ".fai" format.
+	 *
+	 * @param file Where to load it from.
+	 * @return The index.
+	 * @throws IOException
+	 */
+	public static FastaIndex load(File file) throws IOException {
+		FastaIndex index = new FastaIndex();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.length() == 0) {
+					continue;
+				}
+				String[] values = line.split("\t");
+				if (values.length < 5) {
+					throw new IOException("Line " + lineNumber + " of " + file + " doesn't have five columns.");
+				}
+				try {
+					index.add(new Entry(values[0], Long.parseLong(values[1]), Long.parseLong(values[2]),
+							Integer.parseInt(values[3]), Integer.parseInt(values[4])));
+				} catch (NumberFormatException e) {
+					throw new IOException("Line " + lineNumber + " of " + file + " isn't a valid index entry.");
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return index;
+	}
+
+	/**
+	 * Build an index by reading through a FASTA file once.
+	 *
+	 * @param file The FASTA file.
+	 * @return The index.
+	 * @throws IOException If the file can't be read or its lines aren't laid out consistently.
+	 */
+	public static FastaIndex build(File file) throws IOException {
+		Builder builder = new Builder(file);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				builder.scan(buffer.array(), buffer.limit());
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		return builder.finish();
+	}
+
+	/**
+	 * This keeps track of where we are while scanning a file to build an index.
+	 */
+	static class Builder {
+		static final int BETWEEN = 0, HEADER = 1, SEQUENCE = 2;
+
+		File file;
+		FastaIndex index = new FastaIndex();
+		long position = 0;			// Position in the file of the next byte.
+		int state = BETWEEN;
+		boolean atLineStart = true;
+		StringBuffer header = new StringBuffer();
+		String name;
+		long length, offset;
+		int lineBases, lineWidth;
+		int basesInLine, bytesInLine;
+		boolean sawShortLine;
+
+		Builder(File file) {
+			this.file = file;
+		}
+
+		void scan(byte[] bytes, int count) throws IOException {
+			for (int i=0; i < count; i++, position++) {
+				byte b = bytes[i];
+				if (state == HEADER) {
+					if (b == '\n') {
+						startRecord();
+					} else if (b != '\r') {
+						header.append((char) (b & 0xff));
+					}
+				} else if (atLineStart && b == '>') {
+					finishRecord();
+					state = HEADER;
+					header.setLength(0);
+				} else if (state == SEQUENCE) {
+					if (b == '\n') {
+						finishLine();
+					} else {
+						bytesInLine++;
+						if (b != '\r') {
+							basesInLine++;
+						}
+					}
+				} else if (b != '\n' && b != '\r' && b != ' ' && b != '\t') {
+					throw new IOException(file + " doesn't look like a FASTA file; found data before the first header.");
+				}
+				atLineStart = (b == '\n');
+			}
+		}
+
+		void startRecord() throws IOException {
+			String line = header.toString().trim();
+			int space = 0;
+			while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+				space++;
+			}
+			name = line.substring(0, space);
+			if (name.length() == 0) {
+				throw new IOException("A record in " + file + " has no name, at byte " + position);
+			}
+			offset = position + 1;
+			length = 0;
+			lineBases = 0;
+			lineWidth = 0;
+			basesInLine = 0;
+			bytesInLine = 0;
+			sawShortLine = false;
+			state = SEQUENCE;
+		}
+
+		void finishLine() throws IOException {
+			if (basesInLine > 0) {
+				if (sawShortLine) {
+					throw new IOException("Record " + name + " in " + file + " has lines of different lengths.");
+				}
+				if (lineBases == 0) {
+					lineBases = basesInLine;
+					lineWidth = bytesInLine + 1;
+				} else if (basesInLine > lineBases || bytesInLine + 1 != lineWidth && basesInLine == lineBases) {
+					throw new IOException("Record " + name + " in " + file + " has lines of different lengths.");
+				}
+				if (basesInLine < lineBases) {
+					sawShortLine = true;
+				}
+				length += basesInLine;
+			} else {
+				sawShortLine = true;
+			}
+			basesInLine = 0;
+			bytesInLine = 0;
+		}
+
+		void finishRecord() throws IOException {
+			if (state == HEADER) {
+				// The file ended in the middle of a header.
+				startRecord();
+			}
+			if (state == SEQUENCE) {
+				if (bytesInLine > 0) {
+					finishLine();
+				}
+				index.add(new Entry(name, length, offset, lineBases, lineWidth));
+			}
+			state = BETWEEN;
+		}
+
+		FastaIndex finish() throws IOException {
+			finishRecord();
+			return index;
+		}
+	}
+}
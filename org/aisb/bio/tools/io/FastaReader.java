@@ -0,0 +1,294 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This reads the records of a FASTA file one at a time, as a stream.  Only the record
+ * currently being read and a fixed-size buffer are ever held in memory, so a file of any size
+ * can be streamed through in constant space, as long as each record fits.
+ * </p><p>
+ * The bytes are decoded straight into each {@link Sequence}, without being turned into strings
+ * first.  As with {@link org.aisb.bio.tools.SequenceFetcher}, the sequences are amino acids
+ * unless you say otherwise, and the comment of each sequence is its whole header line.
+ * </p><p>
+ * You can call <code>read</code> until it returns null, or use this as an {@link Iterator}.
+ * The iterator can't throw an {@link IOException}, so it wraps them in an {@link IllegalStateException}.
+ * </p>
+ */
+public class FastaReader implements Iterator {
+	static final int BETWEEN = 0, HEADER = 1, SEQUENCE = 2;
+	static final int BUFFER_SIZE = 1 << 16;
+
+	ReadableByteChannel channel;	// Where the bytes come from, or...
+	ByteBuffer source;				// ...where they come from if they're already in memory.
+	byte[] buffer = new byte[BUFFER_SIZE];
+	ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+	int position = 0;
+	int limit = 0;
+	boolean atEnd = false;
+
+	Class type = AminoAcid.class;	// Default to operating on amino acids.
+	boolean packed = false;
+
+	int state = BETWEEN;
+	boolean atLineStart = true;
+	long lineNumber = 1;
+	StringBuffer header = new StringBuffer();
+	Sequence current;
+	Sequence lookahead;				// For the iterator.
+
+	/**
+	 * @param in Where to read the FASTA data from.
+	 */
+	public FastaReader(InputStream in) {
+		this(Channels.newChannel(in));
+	}
+
+	/**
+	 * @param channel Where to read the FASTA data from.
+	 */
+	public FastaReader(ReadableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Read FASTA data that's already in memory, such as part of a memory-mapped file.
+	 * Reading starts at the buffer's position and stops at its limit.
+	 *
+	 * @param source The FASTA data.
+	 */
+	public FastaReader(ByteBuffer source) {
+		this.source = source.slice();
+	}
+
+	/**
+	 * @return The type of monomer the sequences are made of.
+	 */
+	public Class getType() {
+		return type;
+	}
+	/**
+	 * @param type The type of monomer the sequences are made of.
+	 */
+	public void setType(Class type) {
+		this.type = type;
+	}
+	/**
+	 * @return True if the sequences will use packed storage.
+	 */
+	public boolean isPacked() {
+		return packed;
+	}
+	/**
+	 * @param packed True if the sequences should use packed storage (see {@link Sequence#setPacked(boolean)}).
+	 */
+	public void setPacked(boolean packed) {
+		this.packed = packed;
+	}
+
+	/**
+	 * Get more bytes into the buffer.
+	 *
+	 * @return False if there aren't any more.
+	 */
+	boolean fill() throws IOException {
+		if (atEnd) {
+			return false;
+		}
+		position = 0;
+		limit = 0;
+		if (source != null) {
+			int count = Math.min(buffer.length, source.remaining());
+			source.get(buffer, 0, count);
+			limit = count;
+		} else {
+			wrapper.clear();
+			while (limit == 0) {
+				int count = channel.read(wrapper);
+				if (count < 0) {
+					break;
+				}
+				limit = wrapper.position();
+			}
+		}
+		if (limit == 0) {
+			atEnd = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next record.
+	 *
+	 * @return The next record, or null if there aren't any more.
+	 * @throws IOException If the data can't be read, or isn't valid FASTA.
+	 */
+	public Sequence read() throws IOException {
+		if (lookahead != null) {
+			Sequence result = lookahead;
+			lookahead = null;
+			return result;
+		}
+		while (true) {
+			if (position >= limit && !fill()) {
+				// That's the end of the data, and of the last record.
+				if (state == HEADER) {
+					startRecord();
+				}
+				Sequence result = current;
+				current = null;
+				state = BETWEEN;
+				return result;
+			}
+			byte b = buffer[position];
+			if (state == SEQUENCE) {
+				if (atLineStart && b == '>') {
+					// This record is done, and the next one's starting.
+					Sequence result = current;
+					current = null;
+					startHeader();
+					return result;
+				}
+				// Decode as much of this line as is in the buffer.
+				int end = position;
+				while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') {
+					end++;
+				}
+				if (end > position) {
+					decode(position, end);
+					atLineStart = false;
+				}
+				position = end;
+				if (end < limit) {
+					endOfLineCharacter(buffer[end]);
+					position++;
+				}
+			} else if (state == HEADER) {
+				int end = position;
+				while (end < limit && buffer[end] != '\n') {
+					end++;
+				}
+				for (int i = position; i < end; i++) {
+					if (buffer[i] != '\r') {
+						header.append((char) (buffer[i] & 0xff));
+					}
+				}
+				position = end;
+				if (end < limit) {
+					position++;
+					lineNumber++;
+					startRecord();
+				}
+			} else {
+				if (atLineStart && b == '>') {
+					startHeader();
+				} else if (b == '\n' || b == '\r' || b == ' ' || b == '\t') {
+					endOfLineCharacter(b);
+					position++;
+				} else {
+					throw new IOException("This doesn't look like FASTA data; found data before the first header, on line " + lineNumber + ".");
+				}
+			}
+		}
+	}
+
+	void endOfLineCharacter(byte b) {
+		if (b == '\n') {
+			atLineStart = true;
+			lineNumber++;
+		}
+	}
+
+	void startHeader() {
+		state = HEADER;
+		header.setLength(0);
+		header.append('>');
+		position++;
+		atLineStart = false;
+	}
+
+	void startRecord() {
+		current = new Sequence(type);
+		current.setPacked(packed);
+		current.setComment(header.toString());
+		state = SEQUENCE;
+		atLineStart = true;
+	}
+
+	/**
+	 * Decode part of a line into the current record, saying exactly where any bad character is.
+	 */
+	void decode(int start, int end) throws IOException {
+		try {
+			current.appendFrom(buffer, start, end - start);
+		} catch (IllegalArgumentException e) {
+			Alphabet alphabet = current.getAlphabet();
+			for (int i = start; i < end; i++) {
+				char code = (char) (buffer[i] & 0xff);
+				if (alphabet.getByCode(code) == null) {
+					throw new IOException("Invalid element '" + code + "' on line " + lineNumber + ", in the record " + current.getComment());
+				}
+			}
+			throw e;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		if (lookahead == null) {
+			try {
+				lookahead = read();
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't read FASTA data: " + e.getMessage());
+			}
+		}
+		return lookahead != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Sequence result = lookahead;
+		lookahead = null;
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Can't remove records from a FASTA file.");
+	}
+
+	/**
+	 * Close the underlying stream.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.aisb.bio.things.Alphabet;
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This writes sequences out in FASTA format, one record at a time, straight to a
+ * {@link Writer} or a channel.  Unlike {@link Sequence#getFasta()}, the record is never
+ * built up as one big string; it goes through a fixed-size buffer that's reused for every
+ * record, so writing a whole genome takes no more memory than writing one protein.
+ * </p><p>
+ * Each record is a header line (the sequence's comment, with a '&gt;' put in front if it
+ * doesn't already have one) followed by the residues, wrapped at the line length.
+ * Lines end with '\n'.  Call <code>flush</code> or <code>close</code> when you're done, or the
+ * last part of the output may still be sitting in the buffer.
+ * </p>
+ */
+public class FastaWriter {
+	static final int BUFFER_SIZE = 1 << 16;
+
+	Writer writer;					// Where the characters go, or...
+	WritableByteChannel channel;	// ...where the bytes go.
+	char[] chars;
+	ByteBuffer bytes;
+	int count = 0;
+	int lineLength = 72;			// The same as Sequence.getFasta.
+
+	Alphabet alphabet;				// The alphabet codes was made for.
+	char[] codes;					// Letter codes, by monomer number.
+
+	/**
+	 * @param writer Where to write the FASTA data.
+	 */
+	public FastaWriter(Writer writer) {
+		this.writer = writer;
+		this.chars = new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * @param out Where to write the FASTA data.
+	 */
+	public FastaWriter(OutputStream out) {
+		this(Channels.newChannel(out));
+	}
+
+	/**
+	 * @param channel Where to write the FASTA data.
+	 */
+	public FastaWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * @return The number of residues on each line.
+	 */
+	public int getLineLength() {
+		return lineLength;
+	}
+	/**
+	 * @param lineLength The number of residues on each line.
+	 */
+	public void setLineLength(int lineLength) {
+		if (lineLength < 1) {
+			throw new IllegalArgumentException("The line length must be a positive integer.");
+		}
+		this.lineLength = lineLength;
+	}
+
+	/**
+	 * Write one record.
+	 *
+	 * @param sequence The sequence to write.
+	 * @throws IOException
+	 */
+	public void write(Sequence sequence) throws IOException {
+		String comment = sequence.getComment();
+		if (comment == null || !comment.startsWith(">")) {
+			put('>');
+		}
+		if (comment != null) {
+			for (int i = 0; i < comment.length(); i++) {
+				put(comment.charAt(i));
+			}
+		}
+		put('\n');
+		char[] codes = getCodes(sequence.getAlphabet());
+		int size = sequence.size();
+		int column = 0;
+		for (int i = 0; i < size; i++) {
+			put(codes[sequence.getIndex(i)]);
+			if (++column == lineLength) {
+				put('\n');
+				column = 0;
+			}
+		}
+		if (column != 0) {
+			put('\n');
+		}
+	}
+
+	/**
+	 * The letter code of every monomer in an alphabet, by number, so writing a residue
+	 * doesn't have to go through the monomer objects.
+	 */
+	char[] getCodes(Alphabet alphabet) {
+		if (alphabet != this.alphabet) {
+			Monomer[] monomers = alphabet.getMonomers();
+			codes = new char[monomers.length + 1];
+			for (int i = 0; i < monomers.length; i++) {
+				if (monomers[i] == null) {
+					continue;	// Some alphabets have holes, such as amino acid 'B'.
+				}
+				codes[monomers[i].getNumber()] = monomers[i].getCode().charValue();
+			}
+			this.alphabet = alphabet;
+		}
+		return codes;
+	}
+
+	void put(char c) throws IOException {
+		if (writer != null) {
+			if (count == chars.length) {
+				drain();
+			}
+			chars[count++] = c;
+		} else {
+			if (!bytes.hasRemaining()) {
+				drain();
+			}
+			bytes.put((byte) c);
+		}
+	}
+
+	/**
+	 * Hand everything in the buffer to the writer or channel.
+	 */
+	void drain() throws IOException {
+		if (writer != null) {
+			writer.write(chars, 0, count);
+			count = 0;
+		} else {
+			bytes.flip();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			bytes.clear();
+		}
+	}
+
+	/**
+	 * Make sure everything written so far has been passed along.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		drain();
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Flush, then close the underlying writer or channel.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		flush();
+		if (writer != null) {
+			writer.close();
+		} else {
+			channel.close();
+		}
+	}
+}
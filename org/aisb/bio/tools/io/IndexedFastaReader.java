@@ -0,0 +1,254 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This gives random access to the records in a large multi-record FASTA file.  The first time a
+ * file is opened, it's scanned once to build a {@link FastaIndex}, which is saved next to it
+ * (as "<i>file</i>.fai") so later runs can skip the scan.  After that, fetching any record, or
+ * any range of residues within a record, maps just that part of the file into memory and parses
+ * it directly out of the mapping.  Loading one protein out of a 10 GB database costs one seek.
+ * </p><p>
+ * As with {@link org.aisb.bio.tools.SequenceFetcher}, the sequences are amino acids unless you
+ * say otherwise, and the comment of each sequence is its whole header line.
+ * </p><p>
+ * Fetching is safe to do from several threads at once.  Call <code>close</code> when you're done.
+ * </p>
+ */
+public class IndexedFastaReader {
+	File file;
+	RandomAccessFile raf;
+	FileChannel channel;
+	FastaIndex index;
+	Class type = AminoAcid.class;	// Default to operating on amino acids.
+	boolean packed = false;
+
+	/**
+	 * Open a FASTA file, using its saved index if there's an up-to-date one, and building
+	 * (and trying to save) one if not.
+	 *
+	 * @param file The FASTA file.
+	 * @throws IOException
+	 */
+	public IndexedFastaReader(File file) throws IOException {
+		this.file = file;
+		File indexFile = getIndexFile(file);
+		if (indexFile.exists() && indexFile.lastModified() >= file.lastModified()) {
+			index = FastaIndex.load(indexFile);
+		} else {
+			index = FastaIndex.build(file);
+			try {
+				index.save(indexFile);
+			} catch (IOException e) {
+				// We can still do our job without a saved index; it'll just be rebuilt next time.
+			}
+		}
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+	}
+
+	/**
+	 * Open a FASTA file with an index that's already been loaded or built.
+	 *
+	 * @param file The FASTA file.
+	 * @param index Its index.
+	 * @throws IOException
+	 */
+	public IndexedFastaReader(File file, FastaIndex index) throws IOException {
+		this.file = file;
+		this.index = index;
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+	}
+
+	/**
+	 * @param file A FASTA file.
+	 * @return Where its index is kept.
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + ".fai");
+	}
+
+	/**
+	 * @return The index of the records in the file.
+	 */
+	public FastaIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return The type of monomer the sequences are made of.
+	 */
+	public Class getType() {
+		return type;
+	}
+	/**
+	 * @param type The type of monomer the sequences are made of.
+	 */
+	public void setType(Class type) {
+		this.type = type;
+	}
+	/**
+	 * @return True if the sequences will use packed storage.
+	 */
+	public boolean isPacked() {
+		return packed;
+	}
+	/**
+	 * @param packed True if the sequences should use packed storage (see {@link Sequence#setPacked(boolean)}).
+	 */
+	public void setPacked(boolean packed) {
+		this.packed = packed;
+	}
+
+	/**
+	 * Fetch a whole record by name.
+	 *
+	 * @param name The record's name.
+	 * @return The sequence.
+	 * @throws IOException
+	 */
+	public Sequence getSequence(String name) throws IOException {
+		FastaIndex.Entry entry = getEntry(name);
+		return getSequence(entry, 0, entry.getLength());
+	}
+
+	/**
+	 * Fetch a whole record by its position in the file.
+	 *
+	 * @param number The record's position in the file, from zero.
+	 * @return The sequence.
+	 * @throws IOException
+	 */
+	public Sequence getSequence(int number) throws IOException {
+		FastaIndex.Entry entry = index.getEntry(number);
+		return getSequence(entry, 0, entry.getLength());
+	}
+
+	/**
+	 * Fetch part of a record.
+	 *
+	 * @param name The record's name.
+	 * @param from The position of the first residue to fetch, from zero.
+	 * @param to The position just past the last residue to fetch.
+	 * @return The sequence.
+	 * @throws IOException
+	 */
+	public Sequence getSequence(String name, long from, long to) throws IOException {
+		return getSequence(getEntry(name), from, to);
+	}
+
+	FastaIndex.Entry getEntry(String name) {
+		FastaIndex.Entry entry = index.getEntry(name);
+		if (entry == null) {
+			throw new IllegalArgumentException("No record named " + name + " in " + file);
+		}
+		return entry;
+	}
+
+	/**
+	 * Fetch part of a record, given its index entry.
+	 *
+	 * @param entry The record's index entry.
+	 * @param from The position of the first residue to fetch, from zero.
+	 * @param to The position just past the last residue to fetch.
+	 * @return The sequence.
+	 * @throws IOException
+	 */
+	public Sequence getSequence(FastaIndex.Entry entry, long from, long to) throws IOException {
+		if (from < 0 || to > entry.getLength() || from > to) {
+			throw new IndexOutOfBoundsException("Range " + from + "-" + to + " is outside record " + entry.getName());
+		}
+		if (to - from > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many residues for one sequence: " + (to - from));
+		}
+		Sequence sequence = new Sequence(type);
+		sequence.setPacked(packed);
+		sequence.setComment(readHeader(entry));
+		if (from == to) {
+			return sequence;
+		}
+		long start = entry.getFileOffset(from);
+		long end = entry.getFileOffset(to - 1) + 1;
+		if (end - start > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Range " + from + "-" + to + " of " + entry.getName() + " is too big to map at once.");
+		}
+		MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		// Walk the region a line at a time, skipping the line terminators.
+		int lineBases = entry.getLineBases();
+		int terminator = entry.getLineWidth() - lineBases;
+		int position = 0;
+		long residue = from;
+		int firstLine = lineBases - (int) (from % lineBases);
+		int count = (int) Math.min(firstLine, to - from);
+		while (residue < to) {
+			region.limit(position + count).position(position);
+			try {
+				sequence.appendFrom(region);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Bad data in record " + entry.getName() + " on the line starting at residue "
+						+ (residue + 1) + ": " + e.getMessage());
+			}
+			residue += count;
+			position += count + terminator;
+			region.limit(region.capacity());
+			count = (int) Math.min(lineBases, to - residue);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Read a record's header line, by reading backwards from the start of its sequence.
+	 */
+	String readHeader(FastaIndex.Entry entry) throws IOException {
+		// The header ends with the line terminator just before the sequence.
+		long end = entry.getOffset() - 1;
+		if (end > 0) {
+			ByteBuffer b = ByteBuffer.allocate(1);
+			channel.read(b, end - 1);
+			if (b.get(0) == '\r') {
+				end--;
+			}
+		}
+		int window = 256;
+		while (true) {
+			long start = Math.max(0, end - window);
+			ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					break;
+				}
+			}
+			byte[] bytes = buffer.array();
+			int i = bytes.length - 1;
+			while (i >= 0 && bytes[i] != '\n') {
+				i--;
+			}
+			if (i >= 0 || start == 0) {
+				return new String(bytes, i + 1, bytes.length - i - 1, "ISO-8859-1");
+			}
+			window *= 2;
+		}
+	}
+
+	/**
+	 * Let go of the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		raf.close();
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.aisb.bio.things.AminoAcid;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This loads every record of a (big) FASTA file into memory, using all the processors.
+ * The file is cut into byte ranges that each start at the beginning of a record (a '&gt;' at
+ * the start of a line), and the ranges are parsed at the same time on a fork/join pool,
+ * each by its own {@link FastaReader}.  The records come back in the order they're in
+ * the file, exactly as if it had been read straight through.
+ * </p><p>
+ * This class implements the "command bean" design pattern, like
+ * {@link org.aisb.bio.tools.SequenceFetcher}: set the file (and the type, if it isn't amino
+ * acids), call <code>execute</code>, and then get the sequences.
+ * </p>
+ */
+public class ParallelFastaLoader {
+	static final int CHUNKS_PER_THREAD = 4;
+	static final int MINIMUM_CHUNK = 1 << 20;	// Not worth splitting smaller than this.
+
+	File file;
+	Class type = AminoAcid.class;	// Default to operating on amino acids.
+	boolean packed = false;
+	int parallelism = Runtime.getRuntime().availableProcessors();
+	List sequences;
+
+	/**
+	 * @return The file to load.
+	 */
+	public File getFile() {
+		return file;
+	}
+	/**
+	 * @param file The file to load.
+	 */
+	public void setFile(File file) {
+		this.file = file;
+	}
+	/**
+	 * @return The type of monomer the sequences are made of.
+	 */
+	public Class getType() {
+		return type;
+	}
+	/**
+	 * @param type The type of monomer the sequences are made of.
+	 */
+	public void setType(Class type) {
+		this.type = type;
+	}
+	/**
+	 * @return True if the sequences will use packed storage.
+	 */
+	public boolean isPacked() {
+		return packed;
+	}
+	/**
+	 * @param packed True if the sequences should use packed storage (see {@link Sequence#setPacked(boolean)}).
+	 */
+	public void setPacked(boolean packed) {
+		this.packed = packed;
+	}
+	/**
+	 * @return How many threads to parse with.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	/**
+	 * @param parallelism How many threads to parse with.  The default is one per processor.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be a positive integer.");
+		}
+		this.parallelism = parallelism;
+	}
+	/**
+	 * @return The sequences, in the order they're in the file.
+	 */
+	public List getSequences() {
+		return sequences;
+	}
+
+	/**
+	 * Load the file.
+	 *
+	 * @throws IOException If the file can't be read, or isn't valid FASTA.
+	 */
+	public void execute() throws IOException {
+		if (file == null) {
+			throw new IllegalStateException("Cannot execute until a file has been set.");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ForkJoinPool pool = null;
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] boundaries = findBoundaries(channel);
+			pool = new ForkJoinPool(parallelism);
+			sequences = (List) pool.invoke(new ParseTask(channel, boundaries, 0, boundaries.length - 1));
+		} catch (RuntimeException e) {
+			// Dig out the real problem, if it was one of ours.
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof LoadFailure) {
+					throw ((LoadFailure) t).problem;
+				}
+			}
+			throw e;
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			raf.close();
+		}
+	}
+
+	/**
+	 * Work out where to cut the file.  Each cut is moved forward from where it would ideally
+	 * go to the start of the next record, so no record gets split.
+	 *
+	 * @return The start of each chunk, followed by the end of the file.
+	 */
+	long[] findBoundaries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int chunks = (int) Math.max(1, Math.min((long) parallelism * CHUNKS_PER_THREAD, size / MINIMUM_CHUNK));
+		long[] boundaries = new long[chunks + 1];
+		int count = 1;	// The first chunk always starts at zero.
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		for (int i = 1; i < chunks; i++) {
+			long target = Math.max(size * i / chunks, boundaries[count - 1] + 1);
+			long cut = findRecordStart(channel, buffer, target, size);
+			if (cut < size && cut > boundaries[count - 1]) {
+				boundaries[count++] = cut;
+			}
+		}
+		boundaries[count++] = size;
+		long[] result = new long[count];
+		System.arraycopy(boundaries, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Find the first '&gt;' at the start of a line, at or after a position.
+	 *
+	 * @return Its position, or the size of the file if there isn't one.
+	 */
+	long findRecordStart(FileChannel channel, ByteBuffer buffer, long from, long size) throws IOException {
+		// We need to see the byte before, to know if we're at the start of a line.
+		long position = from - 1;
+		byte previous = 0;
+		while (position < size) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count <= 0) {
+				break;
+			}
+			byte[] bytes = buffer.array();
+			for (int i = 0; i < count; i++) {
+				if (bytes[i] == '>' && previous == '\n' && position + i >= from) {
+					return position + i;
+				}
+				previous = bytes[i];
+			}
+			position += count;
+		}
+		return size;
+	}
+
+	/**
+	 * This parses a run of chunks, splitting the run in half until it's down to one chunk.
+	 */
+	class ParseTask extends RecursiveTask {
+		private static final long serialVersionUID = 1L;
+
+		FileChannel channel;
+		long[] boundaries;
+		int first, last;	// The chunks from first up to (not including) last.
+
+		ParseTask(FileChannel channel, long[] boundaries, int first, int last) {
+			this.channel = channel;
+			this.boundaries = boundaries;
+			this.first = first;
+			this.last = last;
+		}
+
+		protected Object compute() {
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				ParseTask right = new ParseTask(channel, boundaries, middle, last);
+				right.fork();
+				List result = (List) new ParseTask(channel, boundaries, first, middle).compute();
+				result.addAll((List) right.join());
+				return result;
+			}
+			long start = boundaries[first];
+			FastaReader reader = new FastaReader(new RegionChannel(channel, start, boundaries[last]));
+			reader.setType(type);
+			reader.setPacked(packed);
+			List result = new ArrayList();
+			try {
+				Sequence sequence;
+				while ((sequence = reader.read()) != null) {
+					result.add(sequence);
+				}
+			} catch (IOException e) {
+				IOException problem = new IOException("In the part of " + file + " starting at byte " + start + ": " + e.getMessage());
+				problem.initCause(e);
+				throw new LoadFailure(problem);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * This reads part of a file, without disturbing anyone else reading other parts of it.
+	 */
+	static class RegionChannel implements ReadableByteChannel {
+		FileChannel channel;
+		long position, end;
+
+		RegionChannel(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		public int read(ByteBuffer destination) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			int limit = destination.limit();
+			if (destination.remaining() > end - position) {
+				destination.limit(destination.position() + (int) (end - position));
+			}
+			int count = channel.read(destination, position);
+			destination.limit(limit);
+			if (count > 0) {
+				position += count;
+			}
+			return count;
+		}
+
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		public void close() {
+			// The file belongs to the loader.
+		}
+	}
+
+	/**
+	 * This carries an IOException out of the fork/join pool.
+	 */
+	static class LoadFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		IOException problem;
+
+		LoadFailure(IOException problem) {
+			super(problem);
+			this.problem = problem;
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.aisb.bio.things.ByteMonomerList;
+import org.aisb.bio.things.CompactMonomerList;
+import org.aisb.bio.things.Monomer;
+import org.aisb.bio.things.Nucleotide;
+import org.aisb.bio.things.PackedNucleotideList;
+import org.aisb.bio.things.Sequence;
+
+/**
+ * <p>
+ * This is a binary file holding a collection of sequences, already in the compact form
+ * a packed {@link Sequence} keeps in memory.  Parsing and checking the text of a big FASTA
+ * file every time a program starts is slow; write it out as an archive once, and after that
+ * opening it only maps the file into memory and reads the index at the end.  Loading a
+ * sequence is then a bulk copy, with no parsing at all.
+ * </p><p>
+ * The layout, all little-endian, with everything starting on an eight-byte boundary:
+ * </p>
+ * <pre>
+ * "AISBSEQA" (8 bytes), version (int), zero (int)
+ * for each record:
+ *     type number (int), storage (int: 0 = a byte each, 1 = two bits each),
+ *     residue count (int), comment length in bytes (int, -1 for none),
+ *     the comment in UTF-8, padding,
+ *     the residues (monomer numbers, or bases packed 32 to a long), padding
+ * the index:
+ *     type count (int), then for each type its class name (int length, UTF-8), padding,
+ *     record count (long), then the offset of each record (long)
+ * offset of the index (long), "AISBSEQA" (8 bytes)
+ * </pre>
+ * <p>
+ * Nucleotide sequences are stored two bits to a base, and everything else one byte to a
+ * residue.  Sequences read back are packed (see {@link Sequence#setPacked(boolean)}).
+ * </p><p>
+ * Reading is safe to do from several threads at once.  Call <code>close</code> when you're done.
+ * </p>
+ */
+public class SequenceArchive {
+	static final byte[] MAGIC = { 'A', 'I', 'S', 'B', 'S', 'E', 'Q', 'A' };
+	static final int VERSION = 1;
+	static final int BYTES = 0, PACKED = 1;
+	static final int BUFFER_SIZE = 1 << 20;
+
+	File file;
+	RandomAccessFile raf;
+	FileChannel channel;
+	ByteBuffer mapped;		// The whole file, if it's small enough to map in one go.
+	Class[] types;
+	long[] offsets;			// Where each record starts, followed by where the index starts.
+
+	/**
+	 * Open an archive.
+	 *
+	 * @param file The archive.
+	 * @throws IOException If it can't be read, or isn't an archive.
+	 */
+	public SequenceArchive(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "r");
+		try {
+			channel = raf.getChannel();
+			long size = channel.size();
+			if (size < 32) {
+				throw new IOException(file + " is too short to be a sequence archive.");
+			}
+			if (size <= Integer.MAX_VALUE) {
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			ByteBuffer header = region(0, 16);
+			checkMagic(header);
+			if (header.getInt() != VERSION) {
+				throw new IOException(file + " was written by a different version of the archive format.");
+			}
+			ByteBuffer trailer = region(size - 16, 16);
+			long indexOffset = trailer.getLong();
+			checkMagic(trailer);
+			if (indexOffset < 16 || indexOffset > size - 16) {
+				throw new IOException(file + " has a damaged index.");
+			}
+			readIndex(region(indexOffset, (int) Math.min(size - 16 - indexOffset, Integer.MAX_VALUE)), indexOffset);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	void checkMagic(ByteBuffer buffer) throws IOException {
+		for (int i=0; i < MAGIC.length; i++) {
+			if (buffer.get() != MAGIC[i]) {
+				throw new IOException(file + " isn't a sequence archive.");
+			}
+		}
+	}
+
+	void readIndex(ByteBuffer index, long indexOffset) throws IOException {
+		types = new Class[index.getInt()];
+		for (int i=0; i < types.length; i++) {
+			String name = readString(index, index.getInt());
+			// Don't run the static initializer of whatever the file names until we know it's a monomer.
+			try {
+				types[i] = Class.forName(name, false, SequenceArchive.class.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new IOException(file + " holds sequences of an unknown type: " + name);
+			}
+			if (!Monomer.class.isAssignableFrom(types[i])) {
+				throw new IOException(file + " holds sequences of something that isn't a monomer: " + name);
+			}
+		}
+		align(index);
+		long count = index.getLong();
+		if (count < 0 || count > index.remaining() / 8) {
+			throw new IOException(file + " has a damaged index.");
+		}
+		offsets = new long[(int) count + 1];
+		index.asLongBuffer().get(offsets, 0, (int) count);
+		offsets[(int) count] = indexOffset;
+	}
+
+	/**
+	 * Get part of the file, ready to read from.
+	 */
+	ByteBuffer region(long offset, int length) throws IOException {
+		if (mapped != null) {
+			ByteBuffer result = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			result.limit((int) offset + length).position((int) offset);
+			return result.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static String readString(ByteBuffer buffer, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	static void align(ByteBuffer buffer) {
+		buffer.position((buffer.position() + 7) & ~7);
+	}
+
+	/**
+	 * @return The number of sequences in the archive.
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Load one sequence.
+	 *
+	 * @param number The sequence's position in the archive, from zero.
+	 * @return The sequence.
+	 * @throws IOException If the archive is damaged.
+	 */
+	public Sequence getSequence(int number) throws IOException {
+		if (number < 0 || number >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + number + ", Size: " + size());
+		}
+		long length = offsets[number + 1] - offsets[number];
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Record " + number + " of " + file + " is too big to load.");
+		}
+		ByteBuffer record = region(offsets[number], (int) length);
+		try {
+			int type = record.getInt();
+			int storage = record.getInt();
+			int size = record.getInt();
+			int commentLength = record.getInt();
+			String comment = commentLength < 0 ? null : readString(record, commentLength);
+			align(record);
+			CompactMonomerList data;
+			if (storage == PACKED) {
+				long[] words = new long[(size + 31) >>> 5];
+				record.asLongBuffer().get(words);
+				data = new PackedNucleotideList(words, size);
+			} else {
+				byte[] values = new byte[size];
+				record.get(values);
+				data = new ByteMonomerList(types[type], values, size);
+			}
+			Sequence sequence = new Sequence(types[type], data);
+			sequence.setComment(comment);
+			return sequence;
+		} catch (RuntimeException e) {
+			// Bad counts turn up as buffer underflows, bad types as array bounds, and so on.
+			IOException problem = new IOException("Record " + number + " of " + file + " is damaged: " + e);
+			problem.initCause(e);
+			throw problem;
+		}
+	}
+
+	/**
+	 * Load every sequence.
+	 *
+	 * @return The sequences, in the order they were written.
+	 * @throws IOException If the archive is damaged.
+	 */
+	public List getSequences() throws IOException {
+		List result = new ArrayList(size());
+		for (int i=0; i < size(); i++) {
+			result.add(getSequence(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Let go of the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		mapped = null;
+		raf.close();
+	}
+
+	/**
+	 * Write a collection of sequences out as an archive.
+	 *
+	 * @param file Where to write the archive.
+	 * @param sequences The sequences.
+	 * @throws IOException
+	 */
+	public static void write(File file, Collection sequences) throws IOException {
+		write(file, sequences.iterator());
+	}
+
+	/**
+	 * Write sequences out as an archive, as they come.  Only one sequence is looked at at a
+	 * time, so this can turn a {@link FastaReader} straight into an archive of any size.
+	 *
+	 * @param file Where to write the archive.
+	 * @param sequences The sequences.
+	 * @throws IOException
+	 */
+	public static void write(File file, Iterator sequences) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			Output out = new Output(raf.getChannel());
+			out.put(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(0);
+			List typeNames = new ArrayList();
+			long[] offsets = new long[16];
+			int count = 0;
+			while (sequences.hasNext()) {
+				Sequence sequence = (Sequence) sequences.next();
+				if (count == offsets.length) {
+					long[] newOffsets = new long[count * 2];
+					System.arraycopy(offsets, 0, newOffsets, 0, count);
+					offsets = newOffsets;
+				}
+				offsets[count++] = out.position();
+				String typeName = sequence.getType().getName();
+				int type = typeNames.indexOf(typeName);
+				if (type < 0) {
+					type = typeNames.size();
+					typeNames.add(typeName);
+				}
+				writeRecord(out, sequence, type);
+			}
+			long indexOffset = out.position();
+			out.putInt(typeNames.size());
+			for (int i=0; i < typeNames.size(); i++) {
+				byte[] name = ((String) typeNames.get(i)).getBytes("UTF-8");
+				out.putInt(name.length);
+				out.put(name);
+			}
+			out.align();
+			out.putLong(count);
+			for (int i=0; i < count; i++) {
+				out.putLong(offsets[i]);
+			}
+			out.putLong(indexOffset);
+			out.put(MAGIC);
+			out.flush();
+		} finally {
+			raf.close();
+		}
+	}
+
+	static void writeRecord(Output out, Sequence sequence, int type) throws IOException {
+		int size = sequence.size();
+		boolean packed = Nucleotide.class.isAssignableFrom(sequence.getType())
+				&& sequence.getAlphabet().getQuantity() == 4;
+		out.putInt(type);
+		out.putInt(packed ? PACKED : BYTES);
+		out.putInt(size);
+		if (sequence.getComment() == null) {
+			out.putInt(-1);
+		} else {
+			byte[] comment = sequence.getComment().getBytes("UTF-8");
+			out.putInt(comment.length);
+			out.put(comment);
+		}
+		out.align();
+		if (packed) {
+			for (int i=0; i < size; i += 32) {
+				long word = 0;
+				int end = Math.min(size, i + 32);
+				for (int j = end - 1; j >= i; j--) {
+					word = (word << 2) | (sequence.getIndex(j) - 1);
+				}
+				out.putLong(word);
+			}
+		} else {
+			for (int i=0; i < size; i++) {
+				out.putByte(sequence.getIndex(i));
+			}
+		}
+		out.align();
+	}
+
+	/**
+	 * This buffers what's being written, and keeps track of where we are in the file.
+	 */
+	static class Output {
+		FileChannel channel;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		long flushed = 0;	// How much has already gone to the file.
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		long position() {
+			return flushed + buffer.position();
+		}
+
+		void room(int count) throws IOException {
+			if (buffer.remaining() < count) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				flushed += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		void putByte(int value) throws IOException {
+			room(1);
+			buffer.put((byte) value);
+		}
+
+		void putInt(int value) throws IOException {
+			room(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			room(8);
+			buffer.putLong(value);
+		}
+
+		void put(byte[] bytes) throws IOException {
+			if (bytes.length > buffer.capacity()) {
+				flush();
+				ByteBuffer whole = ByteBuffer.wrap(bytes);
+				while (whole.hasRemaining()) {
+					flushed += channel.write(whole);
+				}
+				return;
+			}
+			room(bytes.length);
+			buffer.put(bytes);
+		}
+
+		void align() throws IOException {
+			while ((position() & 7) != 0) {
+				putByte(0);
+			}
+		}
+	}
+}
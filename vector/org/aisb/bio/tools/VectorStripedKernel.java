@@ -0,0 +1,240 @@
+/*
+ * Created on Oct 18, 2026
+ */
+package org.aisb.bio.tools;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>
+ * This is Farrar's "striped" Smith-Waterman, using the Java vector API.  The query is dealt
+ * out across the lanes of a vector the way cards are dealt: lane <i>l</i> works on query
+ * positions <i>l*segments</i> through <i>(l+1)*segments - 1</i>, so a whole vector of cells
+ * with no dependencies on each other can be done at once.  The only dependency it gets
+ * wrong is a gap running along the query from one lane's stretch into the next; that's
+ * patched up afterwards by the "lazy F" loop, which hardly ever has to go around more than
+ * once or twice.
+ * </p><p>
+ * Scores are done in 8-bit lanes first, which is as many cells at a time as the hardware
+ * allows.  If the score gets too big for that, the target is done again in 16-bit lanes,
+ * and if it's too big for those, the scalar kernel does it.  Since a local score never
+ * goes below zero, all the lanes are clamped at zero; that keeps them from wrapping around
+ * on the way down, and it doesn't change any score that matters.
+ * </p><p>
+ * This class needs the <code>jdk.incubator.vector</code> module (Java 16 and later), so it
+ * lives in a source directory of its own, <code>vector</code>, which has to be compiled with
+ * <code>--add-modules jdk.incubator.vector</code> onto the same class path as the rest.  The
+ * rest of the package compiles without it, and nothing refers to it by name: {@link
+ * SmithWaterman} loads it if it's there and the JVM was started with the module, and uses the
+ * scalar kernel if not.
+ * </p>
+ */
+class VectorStripedKernel extends ScalarLocalKernel {
+	static final VectorSpecies BYTES = ByteVector.SPECIES_PREFERRED;
+	static final VectorSpecies SHORTS = ShortVector.SPECIES_PREFERRED;
+
+	int minimumScore, maximumScore;
+	int laneBits;
+	// Profiles for each lane width, made when they're first needed.
+	byte[][] byteProfile;
+	short[][] shortProfile;
+	int byteSegments, shortSegments;
+	byte[] byteH, byteHLoad, byteE;
+	short[] shortH, shortHLoad, shortE;
+
+	public void setQuery(QueryProfile profile, int open, int extend) {
+		super.setQuery(profile, open, extend);
+		minimumScore = profile.getTable().getMinimum();
+		maximumScore = profile.getTable().getMaximum();
+		byteProfile = null;
+		shortProfile = null;
+	}
+
+	public int align(int[] target, int length) {
+		// The lazy F loop counts on a gap getting no cheaper by being opened again.
+		boolean usable = open >= extend && extend >= 0 && profile.length() > 0;
+		if (usable && fits(Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+			int score = alignBytes(target, length);
+			if (score >= 0) {
+				laneBits = 8;
+				return score;
+			}
+		}
+		if (usable && fits(Short.MIN_VALUE, Short.MAX_VALUE)) {
+			int score = alignShorts(target, length);
+			if (score >= 0) {
+				laneBits = 16;
+				return score;
+			}
+		}
+		laneBits = 32;
+		return super.align(target, length);
+	}
+
+	public int getLaneBits() {
+		return laneBits;
+	}
+
+	/**
+	 * Can the scores and penalties be done in lanes with this range at all?
+	 */
+	boolean fits(int minimum, int maximum) {
+		return minimumScore >= minimum && maximumScore < maximum && open <= maximum;
+	}
+
+	/**
+	 * The 8-bit version.
+	 *
+	 * @return The score, or -1 if it got too big.
+	 */
+	int alignBytes(int[] target, int length) {
+		int lanes = BYTES.length();
+		if (byteProfile == null) {
+			byteSegments = (profile.length() + lanes - 1) / lanes;
+			int size = byteSegments * lanes;
+			byteProfile = new byte[profile.getTable().size()][size];
+			for (int t = 1; t < byteProfile.length; t++) {
+				int[] row = profile.row(t);
+				for (int k = 0; k < size; k++) {
+					int position = (k % lanes) * byteSegments + k / lanes;
+					byteProfile[t][k] = (byte) (position < row.length ? row[position] : Byte.MIN_VALUE);
+				}
+			}
+			byteH = new byte[size];
+			byteHLoad = new byte[size];
+			byteE = new byte[size];
+		}
+		int segments = byteSegments;
+		// Once a score passes this, adding a score to it might not fit any more.
+		int limit = Byte.MAX_VALUE - maximumScore;
+		ByteVector zero = ByteVector.zero(BYTES);
+		ByteVector gapOpen = ByteVector.broadcast(BYTES, (byte) open);
+		ByteVector gapExtend = ByteVector.broadcast(BYTES, (byte) extend);
+		ByteVector best = zero;
+		byte[] store = byteH, load = byteHLoad;
+		java.util.Arrays.fill(store, (byte) 0);
+		java.util.Arrays.fill(byteE, (byte) 0);
+		for (int i = 0; i < length; i++) {
+			byte[] scoreRow = byteProfile[target[i]];
+			ByteVector f = zero;
+			// The diagonal for the first segment is the last segment of the row above, moved over a lane.
+			ByteVector h = zero.slice(lanes - 1, ByteVector.fromArray(BYTES, store, (segments - 1) * lanes));
+			byte[] swap = load;
+			load = store;
+			store = swap;
+			for (int s = 0, offset = 0; s < segments; s++, offset += lanes) {
+				h = h.add(ByteVector.fromArray(BYTES, scoreRow, offset));
+				ByteVector e = ByteVector.fromArray(BYTES, byteE, offset);
+				h = h.max(e).max(f).max(zero);
+				best = best.max(h);
+				h.intoArray(store, offset);
+				ByteVector opened = h.sub(gapOpen);
+				e.sub(gapExtend).max(opened).max(zero).intoArray(byteE, offset);
+				f = f.sub(gapExtend).max(opened).max(zero);
+				h = ByteVector.fromArray(BYTES, load, offset);
+			}
+			// Carry gaps along the query across the boundaries between lanes.
+			lazy: for (int pass = 0; pass < lanes; pass++) {
+				f = zero.slice(lanes - 1, f);
+				for (int s = 0, offset = 0; s < segments; s++, offset += lanes) {
+					h = ByteVector.fromArray(BYTES, store, offset).max(f);
+					h.intoArray(store, offset);
+					best = best.max(h);
+					ByteVector opened = h.sub(gapOpen);
+					ByteVector.fromArray(BYTES, byteE, offset).max(opened).intoArray(byteE, offset);
+					f = f.sub(gapExtend).max(zero);
+					// Stop once no lane has a gap worth carrying on.  Zero stands for "no gap", so it
+					// never needs carrying.  A gap that ties with opening a new one still does,
+					// because the new one might only exist thanks to the gap.
+					if (!f.compare(VectorOperators.GE, opened).and(f.compare(VectorOperators.GT, zero)).anyTrue()) {
+						break lazy;
+					}
+				}
+			}
+			if (best.reduceLanes(VectorOperators.MAX) > limit) {
+				return -1;
+			}
+		}
+		byteHLoad = load;
+		byteH = store;
+		return best.reduceLanes(VectorOperators.MAX);
+	}
+
+	/**
+	 * The 16-bit version, which is the same as the 8-bit version except for the types.
+	 *
+	 * @return The score, or -1 if it got too big.
+	 */
+	int alignShorts(int[] target, int length) {
+		int lanes = SHORTS.length();
+		if (shortProfile == null) {
+			shortSegments = (profile.length() + lanes - 1) / lanes;
+			int size = shortSegments * lanes;
+			shortProfile = new short[profile.getTable().size()][size];
+			for (int t = 1; t < shortProfile.length; t++) {
+				int[] row = profile.row(t);
+				for (int k = 0; k < size; k++) {
+					int position = (k % lanes) * shortSegments + k / lanes;
+					shortProfile[t][k] = (short) (position < row.length ? row[position] : Short.MIN_VALUE);
+				}
+			}
+			shortH = new short[size];
+			shortHLoad = new short[size];
+			shortE = new short[size];
+		}
+		int segments = shortSegments;
+		int limit = Short.MAX_VALUE - maximumScore;
+		ShortVector zero = ShortVector.zero(SHORTS);
+		ShortVector gapOpen = ShortVector.broadcast(SHORTS, (short) open);
+		ShortVector gapExtend = ShortVector.broadcast(SHORTS, (short) extend);
+		ShortVector best = zero;
+		short[] store = shortH, load = shortHLoad;
+		java.util.Arrays.fill(store, (short) 0);
+		java.util.Arrays.fill(shortE, (short) 0);
+		for (int i = 0; i < length; i++) {
+			short[] scoreRow = shortProfile[target[i]];
+			ShortVector f = zero;
+			ShortVector h = zero.slice(lanes - 1, ShortVector.fromArray(SHORTS, store, (segments - 1) * lanes));
+			short[] swap = load;
+			load = store;
+			store = swap;
+			for (int s = 0, offset = 0; s < segments; s++, offset += lanes) {
+				h = h.add(ShortVector.fromArray(SHORTS, scoreRow, offset));
+				ShortVector e = ShortVector.fromArray(SHORTS, shortE, offset);
+				h = h.max(e).max(f).max(zero);
+				best = best.max(h);
+				h.intoArray(store, offset);
+				ShortVector opened = h.sub(gapOpen);
+				e.sub(gapExtend).max(opened).max(zero).intoArray(shortE, offset);
+				f = f.sub(gapExtend).max(opened).max(zero);
+				h = ShortVector.fromArray(SHORTS, load, offset);
+			}
+			lazy: for (int pass = 0; pass < lanes; pass++) {
+				f = zero.slice(lanes - 1, f);
+				for (int s = 0, offset = 0; s < segments; s++, offset += lanes) {
+					h = ShortVector.fromArray(SHORTS, store, offset).max(f);
+					h.intoArray(store, offset);
+					best = best.max(h);
+					ShortVector opened = h.sub(gapOpen);
+					ShortVector.fromArray(SHORTS, shortE, offset).max(opened).intoArray(shortE, offset);
+					f = f.sub(gapExtend).max(zero);
+					// Stop once no lane has a gap worth carrying on.  Zero stands for "no gap", so it
+					// never needs carrying.  A gap that ties with opening a new one still does,
+					// because the new one might only exist thanks to the gap.
+					if (!f.compare(VectorOperators.GE, opened).and(f.compare(VectorOperators.GT, zero)).anyTrue()) {
+						break lazy;
+					}
+				}
+			}
+			if (best.reduceLanes(VectorOperators.MAX) > limit) {
+				return -1;
+			}
+		}
+		shortHLoad = load;
+		shortH = store;
+		return best.reduceLanes(VectorOperators.MAX);
+	}
+}